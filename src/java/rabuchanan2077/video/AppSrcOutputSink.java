@@ -0,0 +1,98 @@
+package rabuchanan2077.video;
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+import org.freedesktop.gstreamer.Buffer;
+import org.freedesktop.gstreamer.Bus;
+import org.freedesktop.gstreamer.Caps;
+import org.freedesktop.gstreamer.Format;
+import org.freedesktop.gstreamer.Gst;
+import org.freedesktop.gstreamer.Pipeline;
+import org.freedesktop.gstreamer.elements.AppSrc;
+
+/**
+Sink feeding output frames into a Gstreamer pipeline through an appsrc, for encoding or streaming them,
+with pipeline the rest of it after the appsrc, such as
+  videoconvert ! x264enc tune=zerolatency ! mp4mux ! filesink location=/tmp/VideoMapper.mp4
+or just filesink location=/tmp/VideoMapper.raw to check the frames locally. With a planar pixel-format, frames are I420,
+which encoders take as they are, without the videoconvert.
+Frames are timestamped by the appsrc as they are pushed, and the stream is ended cleanly when the sink stops,
+so files are finalized.
+*/
+class AppSrcOutputSink extends OutputSink {
+
+	private static final Logger logger_ = Logger.getLogger(AppSrcOutputSink.class.getName());
+
+	protected final String pipelineString_;
+	protected final double fps_;
+	protected Pipeline pipeline_ = null;
+	protected AppSrc appSrc_ = null;
+	protected final CountDownLatch ended_ = new CountDownLatch(1);
+
+	public AppSrcOutputSink(String name, String prefix, Properties properties, int width, int height, ByteOrder byteOrder, PixelFormat format) {
+
+		super(name, prefix, properties, width, height, byteOrder, format, 2);
+
+		String pipeline = properties.getProperty(prefix + "pipeline");
+		if (pipeline == null) {
+			throw new IllegalArgumentException("No " + prefix + "pipeline configured.");
+		}
+		pipelineString_ = pipeline.trim();
+		fps_ = Double.parseDouble(properties.getProperty(prefix + "fps", properties.getProperty("output-fps", "0")).trim());
+	}
+
+	@Override
+	protected void open() {
+
+		GstreamerFrameSource.init();
+		pipeline_ = (Pipeline)Gst.parseLaunch("appsrc name=" + name_ + " ! " + pipelineString_);
+		appSrc_ = (AppSrc)pipeline_.getElementByName(name_);
+		appSrc_.setCaps(new Caps("video/x-raw,format=" + format_.getCapsFormat(byteOrder_)
+			+ ",width=" + width_ + ",height=" + height_ + ",framerate=" + Math.round(fps_ * 1000) + "/1000"));
+		appSrc_.setStreamType(AppSrc.Type.STREAM);
+		appSrc_.set("format", Format.TIME);
+		appSrc_.set("is-live", true);
+		appSrc_.set("do-timestamp", true);
+		pipeline_.getBus().connect((Bus.ERROR)(source, code, message) -> logger_.severe(name_ + ": " + message));
+		pipeline_.getBus().connect((Bus.EOS)(source) -> ended_.countDown());
+		pipeline_.play();
+	}
+
+	@Override
+	protected boolean write(IntBuffer pixels, long pts) {
+
+		Buffer buffer = new Buffer(width_ * height_ * 4);
+		buffer.map(true).order(byteOrder_).asIntBuffer().put(0, pixels, 0, width_ * height_);
+		buffer.unmap();
+		appSrc_.pushBuffer(buffer);
+		return true;
+	}
+
+	@Override
+	protected boolean write(byte[] frame, long pts) {
+
+		Buffer buffer = new Buffer(frame.length);
+		buffer.map(true).put(frame);
+		buffer.unmap();
+		appSrc_.pushBuffer(buffer);
+		return true;
+	}
+
+	@Override
+	protected void close() {
+
+		if (pipeline_ == null) {
+			return;
+		}
+		appSrc_.endOfStream();
+		try {
+			ended_.await(5, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		pipeline_.stop();
+	}
+}
@@ -0,0 +1,104 @@
+package rabuchanan2077.video;
+
+import java.nio.*;
+
+/**
+Table of a camera that shares seam pixels with other cameras, see SeamBlend. Its own table writes the pixels only the
+camera maps, its shared table reads the camera's samples of the shared pixels into the blend's buffer for it, and the
+blend then recomposes those pixels from the latest samples of all the cameras contributing to them.
+Compositors apply it like any other table: remapping does all three, gathering appends the shared samples to the
+region, and scattering hands them to the blend. Restoring the background leaves the shared pixels to the blend,
+copying the pixels it writes out of the output takes the shared ones too, which the blend changes, and the native
+display resamples the camera's own and shared pixels together, unblended.
+*/
+class BlendRemapTable extends RemapTable {
+
+	protected final RemapTable own_;
+	protected final RemapTable shared_;
+	protected final RemapTable whole_; // own and shared pixels at their output indices, for resampling
+	protected final SeamBlend blend_;
+	protected final int camera_;
+
+	public BlendRemapTable(RemapTable own, RemapTable shared, RemapTable whole, SeamBlend blend, int camera) {
+
+		super(own);
+		own_ = own;
+		shared_ = shared;
+		whole_ = whole;
+		blend_ = blend;
+		camera_ = camera;
+	}
+
+	@Override
+	public void remap(IntBuffer cameraFramePixels, int[] outputPixels) {
+
+		own_.remap(cameraFramePixels, outputPixels);
+		shared_.remap(cameraFramePixels, blend_.getSamples(camera_));
+		blend_.blend(camera_, outputPixels);
+	}
+
+	@Override
+	public void remap(IntBuffer cameraFramePixels, IntBuffer outputPixels) {
+
+		own_.remap(cameraFramePixels, outputPixels);
+		shared_.remap(cameraFramePixels, blend_.getSamples(camera_));
+		blend_.blend(camera_, outputPixels);
+	}
+
+	@Override
+	public void gather(IntBuffer cameraFramePixels, int[] region, int offset) {
+
+		own_.gather(cameraFramePixels, region, offset);
+		shared_.gather(cameraFramePixels, region, offset + own_.getMappedPixels());
+	}
+
+	@Override
+	public void scatter(int[] region, int offset, int[] outputPixels) {
+
+		own_.scatter(region, offset, outputPixels);
+		shared_.scatter(region, offset + own_.getMappedPixels(), blend_.getSamples(camera_));
+		blend_.blend(camera_, outputPixels);
+	}
+
+	@Override
+	public void restore(int[] background, int[] outputPixels) {
+
+		own_.restore(background, outputPixels);
+	}
+
+	@Override
+	public void restore(int[] background, IntBuffer outputPixels) {
+
+		own_.restore(background, outputPixels);
+	}
+
+	@Override
+	public void copy(IntBuffer outputPixels, int[] pixels) {
+
+		whole_.copy(outputPixels, pixels);
+	}
+
+	@Override
+	public RemapTable resample(int outputWidth, int outputHeight, int width, int height, int minSpan) {
+
+		return whole_.resample(outputWidth, outputHeight, width, height, minSpan);
+	}
+
+	@Override
+	public int getMappedPixels() {
+
+		return own_.getMappedPixels() + shared_.getMappedPixels();
+	}
+
+	@Override
+	public long getSize() {
+
+		return own_.getSize() + shared_.getSize() + (whole_ != own_ ? whole_.getSize() : 0);
+	}
+
+	@Override
+	public String toString() {
+
+		return own_ + ", and " + shared_.getMappedPixels() + " pixels blended at seams, " + shared_.getSize()/1024 + " KB";
+	}
+}
@@ -0,0 +1,374 @@
+package rabuchanan2077.video;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.image.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
+
+/**
+Display at the window's own resolution, for display-mode native. Each camera writes its frames straight into a view
+the size of the image on screen, through a table resampled from its output table for that size, so nothing is scaled
+when painting. A thread of its own renders the view through a BufferStrategy, whose back buffers are accelerated
+volatile images where the platform has them, rather than waiting for Swing to repaint; repaint requests made while
+it renders are coalesced into one more rendering.
+The view has a lock of its own, separate from the compositor's, held by cameras while they write and by rendering only
+while it copies the view. On resize, the tables for the new size are resampled on a background thread, and until they
+are ready the previous view is shown scaled.
+Every camera frame is remapped twice while the view is shown, once for the output and once for the view, which about
+doubles the remapping work; cameras skip the view while the canvas isn't showing, as when its window is minimized.
+*/
+class DisplayCanvas extends Canvas {
+
+	private static final long serialVersionUID = 1L;
+
+	protected final int outputWidth_;
+	protected final int outputHeight_;
+	protected final Supplier<int[]> background_; // output pixels no camera writes, which may change with a reload
+	protected final int minSpan_;
+	protected final Metrics metrics_;
+	protected final java.util.List<Layer> layers_ = new CopyOnWriteArrayList<>();
+
+	// the view cameras write into, replaced once the tables for a new size are ready
+	protected volatile View view_ = null;
+	protected final Lock viewLock_ = new ReentrantLock();
+
+	// tables are resampled on this thread, one pass at a time, with requests made during a pass picked up by another
+	protected final ExecutorService builder_;
+	protected final AtomicBoolean building_ = new AtomicBoolean(false);
+
+	// rendering, owned by the render thread but for the request flag, guarded by the canvas
+	protected Thread renderer_ = null;
+	protected BufferStrategy strategy_ = null;
+	protected boolean renderRequested_ = false;
+	protected volatile boolean stopped_ = false;
+	protected volatile boolean showing_ = false; // on screen, and not in a minimized window
+
+	public DisplayCanvas(int outputWidth, int outputHeight, Supplier<int[]> background, int minSpan, Metrics metrics) {
+
+		outputWidth_ = outputWidth;
+		outputHeight_ = outputHeight;
+		background_ = background;
+		minSpan_ = minSpan;
+		metrics_ = metrics;
+		builder_ = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "VideoMapper display tables");
+			thread.setDaemon(true);
+			return thread;
+		});
+		setBackground(Color.BLACK);
+		addComponentListener(new ComponentAdapter() {
+
+			@Override
+			public void componentResized(ComponentEvent e) {
+
+				build();
+				requestRender();
+			}
+		});
+		addHierarchyListener(e -> {
+			if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0) {
+				updateShowing();
+			}
+		});
+	}
+
+	/**
+	Returns the input through which one camera writes its frames into the view.
+	*/
+	public Layer createLayer() {
+
+		Layer layer = new Layer();
+		layers_.add(layer);
+		build();
+		return layer;
+	}
+
+	/**
+	Asks for the view to be rendered; requests made before the render thread gets to it make a single rendering.
+	*/
+	public synchronized void requestRender() {
+
+		renderRequested_ = true;
+		notifyAll();
+	}
+
+	public void stop() {
+
+		stopped_ = true;
+		builder_.shutdownNow();
+		requestRender();
+	}
+
+	@Override
+	public void addNotify() {
+
+		super.addNotify();
+		if (renderer_ == null) {
+			renderer_ = new Thread(this::renderLoop, "VideoMapper display");
+			renderer_.setDaemon(true);
+			renderer_.start();
+		}
+		Window window = getWindow();
+		if (window != null) {
+			window.addWindowStateListener(e -> updateShowing());
+		}
+		updateShowing();
+		build();
+	}
+
+	/**
+	Follows whether the view is on screen, for cameras to skip writing into it while it isn't.
+	*/
+	protected void updateShowing() {
+
+		Window window = getWindow();
+		boolean iconified = window instanceof Frame && (((Frame)window).getExtendedState() & Frame.ICONIFIED) != 0;
+		showing_ = isShowing() && !iconified;
+	}
+
+	protected Window getWindow() {
+
+		Container parent = getParent();
+		while (parent != null && !(parent instanceof Window)) {
+			parent = parent.getParent();
+		}
+		return (Window)parent;
+	}
+
+	// the render thread draws everything; AWT's own repaints, as after the window was covered, just ask it to
+
+	@Override
+	public void paint(Graphics g) {
+
+		requestRender();
+	}
+
+	@Override
+	public void update(Graphics g) {
+
+		requestRender();
+	}
+
+	@Override
+	public Dimension getPreferredSize() {
+
+		return new Dimension(outputWidth_, outputHeight_);
+	}
+
+	/**
+	Returns where the output image goes on the canvas, scaled to fit and centered.
+	*/
+	protected Rectangle getViewBounds() {
+
+		double scale = Math.min(((double)getWidth())/outputWidth_, ((double)getHeight())/outputHeight_);
+		int w = (int)Math.round(outputWidth_ * scale);
+		int h = (int)Math.round(outputHeight_ * scale);
+		return new Rectangle((getWidth()-w)/2, (getHeight()-h)/2, w, h);
+	}
+
+	/**
+	Schedules resampling the tables for the current size, unless a pass that hasn't started yet will.
+	*/
+	protected void build() {
+
+		if (!stopped_ && building_.compareAndSet(false, true)) {
+			try {
+				builder_.execute(this::buildTables);
+			}
+			catch (RejectedExecutionException ex) { // stopped
+				building_.set(false);
+			}
+		}
+	}
+
+	/**
+	Resamples every camera's table that doesn't match its current output table and the view, then swaps in the view
+	if it is a new one. Cameras skip their frames for the view while their table is being resampled.
+	*/
+	protected void buildTables() {
+
+		building_.set(false); // changes from here on are picked up by another pass
+		Rectangle bounds = getViewBounds();
+		if (bounds.width < 1 || bounds.height < 1) {
+			return;
+		}
+		int[] background = background_.get();
+		View view = view_;
+		if (view == null || view.width_ != bounds.width || view.height_ != bounds.height || view.outputBackground_ != background) {
+			view = new View(bounds.width, bounds.height, background, outputWidth_, outputHeight_);
+		}
+		for (Layer layer : layers_) {
+			RemapTable source = layer.source_;
+			ViewTable table = layer.table_;
+			if (source != null && (table == null || table.view_ != view || table.source_ != source)) {
+				layer.table_ = new ViewTable(view, source, source.resample(outputWidth_, outputHeight_, view.width_, view.height_, minSpan_));
+			}
+		}
+		if (view != view_) {
+			view_ = view;
+		}
+		requestRender();
+	}
+
+	protected void renderLoop() {
+
+		while (!stopped_) {
+			synchronized (this) {
+				while (!renderRequested_ && !stopped_) {
+					try {
+						wait();
+					}
+					catch (InterruptedException ex) {
+						return;
+					}
+				}
+				renderRequested_ = false;
+			}
+			if (!stopped_) {
+				render();
+			}
+		}
+	}
+
+	/**
+	Copies the view under its lock and draws the copy, unscaled unless the canvas was resized and the view for its new
+	size isn't ready yet, retrying as long as the back buffers' contents were lost meanwhile.
+	*/
+	protected void render() {
+
+		View view = view_;
+		if (view == null || !isDisplayable()) {
+			return;
+		}
+		if (strategy_ == null) {
+			createBufferStrategy(2);
+			strategy_ = getBufferStrategy();
+		}
+		long t0 = System.nanoTime();
+		viewLock_.lock();
+		try {
+			metrics_.record(Metrics.Stage.LOCK, System.nanoTime() - t0);
+			System.arraycopy(view.pixels_, 0, view.shown_, 0, view.pixels_.length);
+		}
+		finally {
+			viewLock_.unlock();
+		}
+		Rectangle bounds = getViewBounds();
+		do {
+			do {
+				Graphics g = strategy_.getDrawGraphics();
+				try {
+					g.setColor(Color.BLACK);
+					g.fillRect(0, 0, getWidth(), bounds.y);
+					g.fillRect(0, bounds.y + bounds.height, getWidth(), getHeight() - bounds.y - bounds.height);
+					g.fillRect(0, bounds.y, bounds.x, bounds.height);
+					g.fillRect(bounds.x + bounds.width, bounds.y, getWidth() - bounds.x - bounds.width, bounds.height);
+					g.drawImage(view.image_, bounds.x, bounds.y, bounds.width, bounds.height, null);
+				}
+				finally {
+					g.dispose();
+				}
+			} while (strategy_.contentsRestored());
+			strategy_.show();
+		} while (strategy_.contentsLost());
+		Toolkit.getDefaultToolkit().sync();
+		metrics_.record(Metrics.Stage.PAINT, System.nanoTime() - t0);
+	}
+
+	/**
+	The image on screen: what cameras write, with the layout as background, and the copy of it being rendered.
+	*/
+	protected static class View {
+
+		protected final int width_;
+		protected final int height_;
+		protected final int[] outputBackground_; // it was scaled from
+		protected final int[] background_;
+		protected final int[] pixels_; // guarded by viewLock_
+		protected final int[] shown_; // owned by the render thread
+		protected final BufferedImage image_; // over shown_
+
+		protected View(int width, int height, int[] outputBackground, int outputWidth, int outputHeight) {
+
+			width_ = width;
+			height_ = height;
+			outputBackground_ = outputBackground;
+			background_ = new int[width*height];
+			for (int y = 0; y < height; y++) {
+				int row = RemapTable.getResampledIndex(y, height, outputHeight) * outputWidth;
+				for (int x = 0; x < width; x++) {
+					background_[y*width + x] = outputBackground[row + RemapTable.getResampledIndex(x, width, outputWidth)];
+				}
+			}
+			pixels_ = background_.clone();
+			shown_ = background_.clone();
+			DirectColorModel colorModel = new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF); // as TYPE_INT_RGB
+			WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(shown_, shown_.length), width, height, width, colorModel.getMasks(), null);
+			image_ = new BufferedImage(colorModel, raster, false, null);
+			image_.setAccelerationPriority(0.0f); // changes with every frame, so not worth caching
+		}
+	}
+
+	/**
+	A camera's table resampled for a view, from the output table it was resampled from.
+	*/
+	protected static class ViewTable {
+
+		protected final View view_;
+		protected final RemapTable source_;
+		protected final RemapTable table_;
+
+		protected ViewTable(View view, RemapTable source, RemapTable table) {
+
+			view_ = view;
+			source_ = source;
+			table_ = table;
+		}
+	}
+
+	public class Layer {
+
+		protected volatile RemapTable source_ = null; // the output table the camera last wrote with
+		protected volatile ViewTable table_ = null; // resampled from it by the builder
+		protected ViewTable written_ = null; // the table last written with, guarded by viewLock_
+
+		/**
+		Copies the pixels of a camera frame that the output table selects into the view, at the view's resolution,
+		unless the table for it is still being resampled.
+		*/
+		public void write(RemapTable remapTable, IntBuffer cameraFramePixels) {
+
+			if (!showing_) { // frames written meanwhile would never be seen; the first ones after it shows replace them
+				return;
+			}
+			View view = view_;
+			ViewTable table = table_;
+			if (source_ != remapTable) {
+				source_ = remapTable;
+				build();
+				return;
+			}
+			if (view == null || table == null || table.view_ != view || table.source_ != remapTable) {
+				return;
+			}
+			long t0 = System.nanoTime();
+			viewLock_.lock();
+			try {
+				metrics_.record(Metrics.Stage.LOCK, System.nanoTime() - t0);
+				if (written_ != null && written_ != table && written_.view_ == view) { // pixels of the old table keep the background
+					written_.table_.restore(view.background_, view.pixels_);
+				}
+				written_ = table;
+				table.table_.remap(cameraFramePixels, view.pixels_);
+			}
+			finally {
+				viewLock_.unlock();
+			}
+		}
+	}
+}
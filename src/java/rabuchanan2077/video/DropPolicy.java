@@ -0,0 +1,21 @@
+package rabuchanan2077.video;
+
+import java.util.*;
+
+/**
+What gives when a bounded queue of frames is full, for camera channels by <camera>.drop and for output sinks by
+<sink>.drop: oldest (the default) drops the longest-queued frame, keeping latency low, newest drops the frame offered,
+and block makes whoever offers it wait, a camera's pipeline or the output.
+*/
+enum DropPolicy {
+
+	OLDEST, NEWEST, BLOCK;
+
+	/**
+	Reads the policy of the drop property with the given prefix.
+	*/
+	public static DropPolicy create(Properties properties, String prefix) {
+
+		return valueOf(properties.getProperty(prefix + "drop", "oldest").trim().toUpperCase());
+	}
+}
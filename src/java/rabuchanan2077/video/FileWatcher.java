@@ -0,0 +1,87 @@
+package rabuchanan2077.video;
+
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+
+/**
+Calls back when any of a set of files changes, once the changes have settled, on a low-priority daemon thread.
+Directories are watched rather than the files themselves, because editors often save by writing a new file
+and renaming it over the old one; a burst of events, as a save makes, leads to a single callback.
+*/
+class FileWatcher {
+
+	private static final Logger logger_ = Logger.getLogger(FileWatcher.class.getName());
+
+	protected final String name_;
+	protected final Set<Path> files_ = new HashSet<>();
+	protected final long settleMillis_;
+	protected final Runnable onChange_;
+	protected final WatchService watchService_;
+
+	public FileWatcher(String name, Collection<Path> files, long settleMillis, Runnable onChange) throws Exception {
+
+		name_ = name;
+		settleMillis_ = settleMillis;
+		onChange_ = onChange;
+		watchService_ = FileSystems.getDefault().newWatchService();
+		Set<Path> directories = new HashSet<>();
+		for (Path file : files) {
+			file = file.toAbsolutePath().normalize();
+			files_.add(file);
+			if (directories.add(file.getParent())) {
+				file.getParent().register(watchService_, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+			}
+		}
+	}
+
+	public void start() {
+
+		Thread thread = new Thread(name_) {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						if (!isChanged(watchService_.take())) {
+							continue;
+						}
+						WatchKey key;
+						while ((key = watchService_.poll(settleMillis_, TimeUnit.MILLISECONDS)) != null) {
+							isChanged(key); // part of the same burst
+						}
+						try {
+							onChange_.run();
+						}
+						catch (Exception ex) {
+							logger_.log(Level.SEVERE, name_ + " failed.", ex);
+						}
+					}
+				}
+				catch (InterruptedException ex) {
+					// stopped
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	Consumes the key's events, returning whether any was for a watched file.
+	*/
+	protected boolean isChanged(WatchKey key) {
+
+		boolean changed = false;
+		Path directory = (Path)key.watchable();
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW
+			    || event.context() instanceof Path && files_.contains(directory.resolve((Path)event.context()))) {
+				changed = true;
+			}
+		}
+		key.reset();
+		return changed;
+	}
+}
@@ -0,0 +1,183 @@
+package rabuchanan2077.video;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+import java.util.logging.*;
+
+/**
+Hands camera frames from their sources to the compositor on a shared pool of threads, so that cameras don't each
+need a thread of their own blocked waiting for frames. Each camera has a channel: a bounded queue of frames that its
+source offers to, from whatever thread delivers them, such as a Gstreamer streaming thread, and that the pool drains
+one frame at a time, in order, so a camera's frames are never handled concurrently.
+When a channel is full, its drop policy says what gives, see DropPolicy; block makes the source wait, which holds up
+its pipeline.
+Dropped frames show as gaps in the frames' timestamps, where the cameras count them.
+A channel is closed before its source is stopped: stopping a Gstreamer pipeline waits for its streaming threads,
+one of which may be blocked offering to the channel, waiting for pool threads that may all be busy stopping sources.
+*/
+class FrameIngest {
+
+	private static final Logger logger_ = Logger.getLogger(FrameIngest.class.getName());
+
+	protected final ExecutorService executor_;
+	protected volatile boolean stopped_ = false;
+
+	public FrameIngest(int threads) {
+
+		AtomicInteger n = new AtomicInteger();
+		executor_ = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "VideoMapper camera " + n.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public Channel open(String name, Consumer<FrameSource.Frame> consumer, int capacity, DropPolicy dropPolicy) {
+
+		return new Channel(name, consumer, capacity, dropPolicy);
+	}
+
+	/**
+	Runs a task on the pool, such as tearing down a source from outside its own threads.
+	*/
+	public void execute(Runnable task) {
+
+		if (!stopped_) {
+			executor_.execute(task);
+		}
+	}
+
+	/**
+	Stops taking frames, disposes of those still queued and waits for the frames being handled, called once the sources are stopped.
+	*/
+	public void stop() {
+
+		stopped_ = true;
+		executor_.shutdown();
+		try {
+			if (!executor_.awaitTermination(5, TimeUnit.SECONDS)) {
+				logger_.warning("Camera frames still being handled at shutdown.");
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public class Channel {
+
+		protected final String name_;
+		protected final Consumer<FrameSource.Frame> consumer_;
+		protected final BlockingQueue<FrameSource.Frame> queue_;
+		protected final DropPolicy dropPolicy_;
+		protected final AtomicBoolean draining_ = new AtomicBoolean(false);
+		protected volatile boolean closed_ = false;
+
+		protected Channel(String name, Consumer<FrameSource.Frame> consumer, int capacity, DropPolicy dropPolicy) {
+
+			name_ = name;
+			consumer_ = consumer;
+			queue_ = new ArrayBlockingQueue<>(Math.max(1, capacity));
+			dropPolicy_ = dropPolicy;
+		}
+
+		/**
+		Queues a frame for the consumer, which disposes of it, as a dropped frame is disposed of here.
+		*/
+		public void offer(FrameSource.Frame frame) {
+
+			if (stopped_ || closed_) {
+				frame.dispose();
+				return;
+			}
+			while (!queue_.offer(frame)) {
+				if (dropPolicy_ == DropPolicy.NEWEST) {
+					frame.dispose();
+					return;
+				}
+				if (dropPolicy_ == DropPolicy.OLDEST) {
+					FrameSource.Frame dropped = queue_.poll(); // null if the pool took it meanwhile, making room
+					if (dropped != null) {
+						dropped.dispose();
+					}
+				}
+				else {
+					try {
+						if (queue_.offer(frame, 100, TimeUnit.MILLISECONDS)) {
+							break;
+						}
+						if (stopped_ || closed_) {
+							frame.dispose();
+							return;
+						}
+					}
+					catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						frame.dispose();
+						return;
+					}
+				}
+			}
+			schedule();
+		}
+
+		protected void schedule() {
+
+			if (draining_.compareAndSet(false, true)) {
+				try {
+					executor_.execute(this::drain);
+				}
+				catch (RejectedExecutionException ex) { // stopped
+					draining_.set(false);
+					clear();
+				}
+			}
+		}
+
+		/**
+		Hands queued frames to the consumer until none is left, then lets the next offer schedule it again.
+		*/
+		protected void drain() {
+
+			FrameSource.Frame frame;
+			while ((frame = queue_.poll()) != null) {
+				if (stopped_ || closed_) {
+					frame.dispose();
+					continue;
+				}
+				try {
+					consumer_.accept(frame);
+				}
+				catch (Exception ex) {
+					logger_.log(Level.SEVERE, name_ + ": frame not handled.", ex);
+				}
+			}
+			draining_.set(false);
+			if (!queue_.isEmpty()) { // offered after the last poll, before draining_ was cleared
+				schedule();
+			}
+		}
+
+		/**
+		Stops taking frames and disposes of those queued, releasing a source blocked offering one within its next wait.
+		*/
+		public void close() {
+
+			closed_ = true;
+			clear();
+		}
+
+		/**
+		Disposes of the frames still queued.
+		*/
+		public void clear() {
+
+			FrameSource.Frame frame;
+			while ((frame = queue_.poll()) != null) {
+				frame.dispose();
+			}
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package rabuchanan2077.video;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+
+/**
+Records one camera's frames as they arrive, for replay by ReplayFrameSource: the raw pixels go back to back into
+segment files that are preallocated and memory-mapped whole, so recording a frame is a single copy, and a small index
+file gets a record per frame with its place in the segments, size, timestamps and arrival time.
+Both are written through the page cache as each frame arrives, so a recording survives the process being killed.
+Each segment is filled and mapped on a background thread while the one before it is being written, because faulting in
+the pages of a sparse file as frames land in it costs several times the copy.
+
+A recording directory holds, per camera, index and segment-00000.raw, segment-00001.raw, ...
+The index, in big-endian byte order, starts with a header of
+  int magic 'VMRI', int version, int pixel byte order (0 little-endian BGRx, 1 big-endian xRGB),
+  int pixel format: 0 for packed pixels in that byte order, or the FourCC of a planar one such as 'I420'
+followed by a record per frame of
+  long arrival: System.nanoTime() on arrival, relative to the first frame's
+  long pts, long duration: as the source gave them, -1 if unknown
+  long capture: capture time estimated from the source's clock, relative to the first frame's arrival, or NO_TIME
+  long offset, int segment: where the pixels are
+  int width, int height, int frame size in bytes, 0 in recordings of packed pixels made before it was recorded
+*/
+class FrameRecorder {
+
+	private static final Logger logger_ = Logger.getLogger(FrameRecorder.class.getName());
+
+	public static final int INDEX_MAGIC = 0x564D5249; // VMRI
+	public static final int INDEX_VERSION = 1;
+	public static final int HEADER_BYTES = 16;
+	public static final int RECORD_BYTES = 56;
+	public static final String INDEX_FILE = "index";
+	protected static final int PAGE_BYTES = 4096;
+
+	protected final String name_;
+	protected final Path directory_;
+	protected final long segmentBytes_;
+	protected final FileChannel index_;
+	protected final ByteBuffer record_ = ByteBuffer.allocate(RECORD_BYTES);
+	protected long start_ = VideoMapper.NO_TIME;
+	protected int segment_ = -1;
+	protected MappedByteBuffer segmentBuffer_ = null;
+	protected Future<MappedByteBuffer> preparedSegment_ = null;
+	protected boolean failed_ = false;
+	protected final ExecutorService preparer_;
+
+	/**
+	Starts a recording in the directory, replacing any recording there.
+	*/
+	public FrameRecorder(String name, Path directory, long segmentBytes, ByteOrder byteOrder, PixelFormat format) throws IOException {
+
+		name_ = name;
+		directory_ = directory;
+		segmentBytes_ = segmentBytes;
+		Files.createDirectories(directory_);
+		try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory_, "segment-*.raw")) {
+			for (Path segment : segments) {
+				Files.delete(segment);
+			}
+		}
+		index_ = FileChannel.open(directory_.resolve(INDEX_FILE),
+			StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		header.putInt(INDEX_MAGIC).putInt(INDEX_VERSION).putInt(byteOrder == ByteOrder.LITTLE_ENDIAN ? 0 : 1)
+			.putInt(format.isPlanar() ? FrameRing.fourcc(format.getCapsFormat(byteOrder)) : 0).flip();
+		index_.write(header);
+		preparer_ = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, name_ + " recorder");
+			thread.setDaemon(true);
+			return thread;
+		});
+		preparedSegment_ = prepareSegment(0, segmentBytes_);
+	}
+
+	public static Path getSegmentPath(Path directory, int segment) {
+
+		return directory.resolve(String.format("segment-%05d.raw", segment));
+	}
+
+	/**
+	Appends a frame to the recording. A recording that fails, say on a full disk, logs why and stops.
+	*/
+	public void record(FrameSource.Frame frame, long arrival, long captureNanos) {
+
+		if (failed_) {
+			return;
+		}
+		ByteBuffer pixels = frame.map();
+		if (pixels == null) {
+			return;
+		}
+		try {
+			int frameBytes = pixels.remaining();
+			if (segmentBuffer_ == null || segmentBuffer_.remaining() < frameBytes) {
+				nextSegment(frameBytes);
+			}
+			long offset = segmentBuffer_.position();
+			segmentBuffer_.put(pixels);
+			if (start_ == VideoMapper.NO_TIME) {
+				start_ = arrival;
+			}
+			record_.clear();
+			record_.putLong(arrival - start_).putLong(frame.getPTS()).putLong(frame.getDuration())
+				.putLong(captureNanos == VideoMapper.NO_TIME ? VideoMapper.NO_TIME : captureNanos - start_)
+				.putLong(offset).putInt(segment_).putInt(frame.getWidth()).putInt(frame.getHeight()).putInt(frameBytes).flip();
+			while (record_.hasRemaining()) {
+				index_.write(record_);
+			}
+		}
+		catch (IOException ex) {
+			logger_.log(Level.SEVERE, name_ + ": recording failed, stopped.", ex);
+			failed_ = true;
+		}
+		finally {
+			frame.unmap();
+		}
+	}
+
+	/**
+	Moves on to the next segment, prepared in the background unless it is too small for the frame,
+	and starts preparing the one after it.
+	*/
+	protected void nextSegment(int frameBytes) throws IOException {
+
+		segment_++;
+		long size = Math.min(Integer.MAX_VALUE, Math.max(segmentBytes_, frameBytes));
+		try {
+			segmentBuffer_ = preparedSegment_.get();
+		}
+		catch (InterruptedException | ExecutionException ex) {
+			throw new IOException("Segment " + segment_ + " could not be preallocated.", ex);
+		}
+		if (segmentBuffer_.capacity() < frameBytes) {
+			segmentBuffer_ = allocateSegment(getSegmentPath(directory_, segment_), size);
+		}
+		preparedSegment_ = prepareSegment(segment_ + 1, size);
+	}
+
+	protected Future<MappedByteBuffer> prepareSegment(int segment, long size) {
+
+		Path path = getSegmentPath(directory_, segment);
+		return preparer_.submit(() -> allocateSegment(path, size));
+	}
+
+	/**
+	Creates and maps a segment file, touching every page through the mapping so that its blocks are allocated
+	and its pages resident before frames are written to it.
+	*/
+	protected static MappedByteBuffer allocateSegment(Path path, long size) throws IOException {
+
+		try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+			file.setLength(size);
+			MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			for (long i = 0; i < size; i += PAGE_BYTES) { // long, as a segment may be up to Integer.MAX_VALUE bytes
+				buffer.put((int)i, (byte)0);
+			}
+			return buffer;
+		}
+	}
+
+	public void close() {
+
+		preparer_.shutdownNow();
+		try {
+			index_.close();
+		}
+		catch (IOException ex) {
+			ex.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,384 @@
+package rabuchanan2077.video;
+
+import java.io.*;
+import java.lang.invoke.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.channels.FileChannel.*;
+import java.nio.file.*;
+import java.time.*;
+
+/**
+Shared-memory export of output frames: a memory-mapped file holding a ring of frame slots,
+written without OS file locks and readable in place by other processes.
+
+Layout, all fields in the file's byte order, which is that of the output pixels, native unless byte-order says
+otherwise. Readers find it from the magic number, which like the FourCCs is an int with its first character in the
+most significant byte: in a little-endian file, as on x86 and ARM, the magic's bytes read 'RFMV' and a format of
+'BGRx' reads 'xRGB' byte by byte, while as ints in the file's byte order both read as given here.
+<pre>
+file header (64 bytes)
+   0  int   magic 'VMFR' (0x564D4652)
+   4  int   version
+   8  int   slot count
+  12  int   width
+  16  int   height
+  20  int   pixel format, as a FourCC such as 'BGRx', or 'I420' for planar Y, U and V as Gstreamer lays them out
+  24  int   slot payload size in bytes
+  28  int   offset of slot 0
+  32  int   slot size in bytes, a multiple of 64; slot i starts at offset of slot 0 + i * slot size
+  40  long  sequence number of the most recently completed frame, 0 if none yet
+slot header (64 bytes), followed by the payload
+   0  long  seqlock: odd while the slot is being written, otherwise twice the frame sequence number
+   8  long  frame sequence number, starting at 1
+  16  long  timestamp, nanoseconds since the epoch, by the monotonic clock from the writer's start
+  24  long  presentation timestamp of the newest contributing camera frame, nanoseconds, or -1
+  32  int   width
+  36  int   height
+  40  int   pixel format
+  44  int   payload size in bytes
+</pre>
+Frame n is written to slot n % slot count. A reader takes the latest sequence number from the file header,
+reads the slot's seqlock, the payload and the seqlock again, and accepts the frame only if both seqlock values
+equal twice the expected sequence number; anything else means the slot was overwritten during the read.
+The slot header's timestamps belong to the same check: read them between the two seqlock reads, with the payload.
+Gaps in the sequence numbers a reader accepts are frames it missed.
+*/
+class FrameRing {
+
+	public static final int MAGIC = 0x564D4652; // 'VMFR'
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 64;
+	public static final int SLOT_HEADER_SIZE = 64;
+
+	public static final int FORMAT_BGRX = fourcc("BGRx");
+	public static final int FORMAT_XRGB = fourcc("xRGB");
+	public static final int FORMAT_I420 = fourcc("I420");
+
+	protected static final int MAGIC_OFFSET = 0;
+	protected static final int VERSION_OFFSET = 4;
+	protected static final int SLOTS_OFFSET = 8;
+	protected static final int WIDTH_OFFSET = 12;
+	protected static final int HEIGHT_OFFSET = 16;
+	protected static final int FORMAT_OFFSET = 20;
+	protected static final int PAYLOAD_SIZE_OFFSET = 24;
+	protected static final int SLOT_OFFSET_OFFSET = 28;
+	protected static final int SLOT_SIZE_OFFSET = 32;
+	protected static final int LATEST_OFFSET = 40;
+
+	protected static final int SLOT_SEQLOCK = 0;
+	protected static final int SLOT_SEQUENCE = 8;
+	protected static final int SLOT_TIMESTAMP = 16;
+	protected static final int SLOT_PTS = 24;
+	protected static final int SLOT_WIDTH = 32;
+	protected static final int SLOT_HEIGHT = 36;
+	protected static final int SLOT_FORMAT = 40;
+	protected static final int SLOT_PAYLOAD_SIZE = 44;
+
+	protected final FileChannel channel_;
+	protected final MappedByteBuffer buffer_;
+	protected final VarHandle longHandle_;
+	protected final int slots_;
+	protected final int width_;
+	protected final int height_;
+	protected final int format_;
+	protected final int payloadSize_;
+	protected final int slotOffset_;
+	protected final int slotSize_;
+
+	protected FrameRing(FileChannel channel, MappedByteBuffer buffer, int slots, int width, int height, int format, int payloadSize) {
+
+		channel_ = channel;
+		buffer_ = buffer;
+		longHandle_ = MethodHandles.byteBufferViewVarHandle(long[].class, buffer.order());
+		slots_ = slots;
+		width_ = width;
+		height_ = height;
+		format_ = format;
+		payloadSize_ = payloadSize;
+		slotOffset_ = HEADER_SIZE;
+		slotSize_ = SLOT_HEADER_SIZE + (payloadSize + 63)/64*64; // keeps every seqlock 8-byte aligned
+	}
+
+	public static int fourcc(String s) {
+
+		return (s.charAt(0) << 24) | (s.charAt(1) << 16) | (s.charAt(2) << 8) | s.charAt(3);
+	}
+
+	public int getSlots() {
+
+		return slots_;
+	}
+
+	public int getWidth() {
+
+		return width_;
+	}
+
+	public int getHeight() {
+
+		return height_;
+	}
+
+	public int getFormat() {
+
+		return format_;
+	}
+
+	protected int getSlotStart(long sequence) {
+
+		return slotOffset_ + (int)(sequence % slots_) * slotSize_;
+	}
+
+	/**
+	Creates or replaces the ring file and returns its writer. There must only be one writer per file.
+	*/
+	public static Writer create(String path, int slots, int width, int height, int format, int payloadSize, ByteOrder byteOrder) throws IOException {
+
+		FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		long size = HEADER_SIZE + (long)slots * (SLOT_HEADER_SIZE + (payloadSize + 63)/64*64);
+		channel.truncate(size); // a leftover ring of another size would confuse readers
+		MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, size);
+		buffer.order(byteOrder);
+		return new Writer(channel, buffer, slots, width, height, format, payloadSize);
+	}
+
+	/**
+	Opens an existing ring file for reading.
+	*/
+	public static Reader open(String path) throws IOException {
+
+		FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+		MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		if (buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+			buffer.order(buffer.order() == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+			if (buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+				channel.close();
+				throw new IOException(path + " is not a frame ring.");
+			}
+		}
+		if (buffer.getInt(VERSION_OFFSET) != VERSION) {
+			channel.close();
+			throw new IOException(path + " has unsupported frame ring version " + buffer.getInt(VERSION_OFFSET) + ".");
+		}
+		return new Reader(channel, buffer, buffer.getInt(SLOTS_OFFSET), buffer.getInt(WIDTH_OFFSET), buffer.getInt(HEIGHT_OFFSET),
+		                  buffer.getInt(FORMAT_OFFSET), buffer.getInt(PAYLOAD_SIZE_OFFSET));
+	}
+
+	public void close() throws IOException {
+
+		channel_.close();
+	}
+
+	public static class Writer extends FrameRing {
+
+		protected final ByteBuffer[] payload_;
+		protected final IntBuffer[] pixels_;
+		protected final long epochNanos_; // added to System.nanoTime() for the time since the epoch, as Instant.now() allocates
+		protected long sequence_;
+
+		protected Writer(FileChannel channel, MappedByteBuffer buffer, int slots, int width, int height, int format, int payloadSize) {
+
+			super(channel, buffer, slots, width, height, format, payloadSize);
+
+			Instant start = Instant.now();
+			epochNanos_ = start.getEpochSecond()*1_000_000_000L + start.getNano() - System.nanoTime();
+			payload_ = new ByteBuffer[slots_];
+			pixels_ = new IntBuffer[slots_];
+			for (int i = 0; i < slots_; i++) {
+				int slot = getSlotStart(i);
+				payload_[i] = buffer_.duplicate().position(slot + SLOT_HEADER_SIZE).limit(slot + SLOT_HEADER_SIZE + payloadSize_)
+				                     .slice().order(buffer_.order());
+				pixels_[i] = payload_[i].asIntBuffer();
+			}
+
+			// readers treat a zero latest sequence as an empty ring, so it goes first
+			longHandle_.setVolatile(buffer_, LATEST_OFFSET, 0L);
+			for (int i = 0; i < slots_; i++) {
+				longHandle_.setVolatile(buffer_, getSlotStart(i) + SLOT_SEQLOCK, 0L);
+			}
+			buffer_.putInt(VERSION_OFFSET, VERSION);
+			buffer_.putInt(SLOTS_OFFSET, slots_);
+			buffer_.putInt(WIDTH_OFFSET, width_);
+			buffer_.putInt(HEIGHT_OFFSET, height_);
+			buffer_.putInt(FORMAT_OFFSET, format_);
+			buffer_.putInt(PAYLOAD_SIZE_OFFSET, payloadSize_);
+			buffer_.putInt(SLOT_OFFSET_OFFSET, slotOffset_);
+			buffer_.putInt(SLOT_SIZE_OFFSET, slotSize_);
+			VarHandle.releaseFence();
+			buffer_.putInt(MAGIC_OFFSET, MAGIC);
+		}
+
+		/**
+		Writes one frame of packed 32-bit pixels into the next slot and publishes it.
+		*/
+		public long write(int[] pixels, long pts) {
+
+			return write(IntBuffer.wrap(pixels), pts);
+		}
+
+		/**
+		Writes one frame of packed 32-bit pixels held in a buffer, from index 0, leaving its position alone.
+		*/
+		public long write(IntBuffer pixels, long pts) {
+
+			long sequence = sequence_ + 1;
+			int slot = getSlotStart(sequence);
+			beginSlot(slot, sequence);
+			pixels_[(int)(sequence % slots_)].put(0, pixels, 0, Math.min(pixels.capacity(), payloadSize_/4));
+			endSlot(slot, sequence, pts);
+			return sequence;
+		}
+
+		/**
+		Writes one frame of bytes, such as a planar frame, into the next slot and publishes it.
+		*/
+		public long write(byte[] frame, long pts) {
+
+			long sequence = sequence_ + 1;
+			int slot = getSlotStart(sequence);
+			beginSlot(slot, sequence);
+			payload_[(int)(sequence % slots_)].put(0, frame, 0, Math.min(frame.length, payloadSize_));
+			endSlot(slot, sequence, pts);
+			return sequence;
+		}
+
+		protected void beginSlot(int slot, long sequence) {
+
+			// odd seqlock before any payload store becomes visible
+			longHandle_.setVolatile(buffer_, slot + SLOT_SEQLOCK, 2*sequence - 1);
+			VarHandle.storeStoreFence();
+		}
+
+		protected void endSlot(int slot, long sequence, long pts) {
+
+			buffer_.putLong(slot + SLOT_SEQUENCE, sequence);
+			buffer_.putLong(slot + SLOT_TIMESTAMP, epochNanos_ + System.nanoTime());
+			buffer_.putLong(slot + SLOT_PTS, pts);
+			buffer_.putInt(slot + SLOT_WIDTH, width_);
+			buffer_.putInt(slot + SLOT_HEIGHT, height_);
+			buffer_.putInt(slot + SLOT_FORMAT, format_);
+			buffer_.putInt(slot + SLOT_PAYLOAD_SIZE, payloadSize_);
+			longHandle_.setRelease(buffer_, slot + SLOT_SEQLOCK, 2*sequence);
+			longHandle_.setRelease(buffer_, LATEST_OFFSET, sequence);
+			sequence_ = sequence;
+		}
+	}
+
+	public static class Reader extends FrameRing {
+
+		// of the frame last read by read(), checked with its payload
+		protected long timestamp_ = -1;
+		protected long pts_ = -1;
+
+		protected Reader(FileChannel channel, MappedByteBuffer buffer, int slots, int width, int height, int format, int payloadSize) {
+
+			super(channel, buffer, slots, width, height, format, payloadSize);
+		}
+
+		/**
+		Sequence number of the most recently completed frame, 0 if none yet.
+		*/
+		public long getLatest() {
+
+			return (long)longHandle_.getAcquire(buffer_, LATEST_OFFSET);
+		}
+
+		/**
+		Returns a read-only view of a frame's payload in place, or null if the frame has already been overwritten.
+		The view may be overwritten at any time, so whatever was read from it must be confirmed with isValid() afterwards.
+		*/
+		public ByteBuffer getPayload(long sequence) {
+
+			int slot = getSlotStart(sequence);
+			if (!isValid(sequence)) {
+				return null;
+			}
+			return buffer_.duplicate().position(slot + SLOT_HEADER_SIZE).limit(slot + SLOT_HEADER_SIZE + payloadSize_).slice().asReadOnlyBuffer().order(buffer_.order());
+		}
+
+		/**
+		True if the slot of the frame still holds that frame, completely written.
+		*/
+		public boolean isValid(long sequence) {
+
+			VarHandle.loadLoadFence(); // payload reads complete before the seqlock check
+			return (long)longHandle_.getAcquire(buffer_, getSlotStart(sequence) + SLOT_SEQLOCK) == 2*sequence;
+		}
+
+		/**
+		Copies a frame into the array, returning false if it was overwritten before or during the copy.
+		*/
+		public boolean read(long sequence, int[] pixels) {
+
+			ByteBuffer payload = getPayload(sequence);
+			if (payload == null) {
+				return false;
+			}
+			payload.asIntBuffer().get(pixels, 0, Math.min(pixels.length, payloadSize_/4));
+			return readTimes(sequence);
+		}
+
+		/**
+		Copies a frame's bytes into the array, returning false if it was overwritten before or during the copy.
+		*/
+		public boolean read(long sequence, byte[] frame) {
+
+			ByteBuffer payload = getPayload(sequence);
+			if (payload == null) {
+				return false;
+			}
+			payload.get(frame, 0, Math.min(frame.length, payloadSize_));
+			return readTimes(sequence);
+		}
+
+		/**
+		Reads the frame's timestamps before the seqlock check that confirms them along with its payload,
+		keeping them only if it passes.
+		*/
+		protected boolean readTimes(long sequence) {
+
+			long timestamp = getTimestamp(sequence);
+			long pts = getPTS(sequence);
+			if (!isValid(sequence)) {
+				return false;
+			}
+			timestamp_ = timestamp;
+			pts_ = pts;
+			return true;
+		}
+
+		/**
+		Timestamp of a frame in its slot, which like a payload view may be overwritten at any time, so it must be
+		confirmed with isValid() afterwards; read() does this for the frame it copies, see getLastTimestamp().
+		*/
+		public long getTimestamp(long sequence) {
+
+			return buffer_.getLong(getSlotStart(sequence) + SLOT_TIMESTAMP);
+		}
+
+		/**
+		Presentation timestamp of a frame in its slot, to be confirmed as getTimestamp() is.
+		*/
+		public long getPTS(long sequence) {
+
+			return buffer_.getLong(getSlotStart(sequence) + SLOT_PTS);
+		}
+
+		/**
+		Timestamp of the frame last copied by read(), -1 before any.
+		*/
+		public long getLastTimestamp() {
+
+			return timestamp_;
+		}
+
+		/**
+		Presentation timestamp of the frame last copied by read(), -1 before any.
+		*/
+		public long getLastPTS() {
+
+			return pts_;
+		}
+	}
+}
@@ -0,0 +1,356 @@
+package rabuchanan2077.video;
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
+import java.util.logging.*;
+
+/**
+Supplier of one camera's frames, selected by the camera's source property:
+gstreamer (the default) runs the camera's pipeline into an appsink, synthetic generates a moving test pattern,
+file replays raw frames from a memory-mapped file, and replay plays back a FrameRecorder recording.
+Frames are handed to a consumer one at a time, which may keep a frame past its return, until it disposes of it.
+Sources that produce or read frames themselves do so on a thread of their own, which waits for each frame;
+a Gstreamer source hands frames over from its pipeline's streaming thread as they come, without a thread of its own.
+*/
+abstract class FrameSource {
+
+	private static final Logger logger_ = Logger.getLogger(FrameSource.class.getName());
+
+	protected final String name_;
+	protected volatile boolean stopped_ = false;
+	protected Thread thread_ = null;
+	protected Runnable onEnd_ = null;
+	protected final AtomicBoolean ended_ = new AtomicBoolean(false);
+
+	// System.nanoTime() minus the clock the frame timestamps are given in, or NO_TIME while unknown
+	protected volatile long clockOffset_ = VideoMapper.NO_TIME;
+
+	// frame pacing of sources that produce frames themselves; 0 for as fast as they are taken
+	protected final long period_;
+	protected long start_ = 0;
+	protected long next_ = 0;
+
+	protected FrameSource(String name, double fps) {
+
+		name_ = name;
+		period_ = fps > 0 ? Math.round(1e9 / fps) : 0;
+	}
+
+	/**
+	Creates the source configured for a camera; frames are delivered as packed 32-bit pixels in the given byte order,
+	or in a planar format.
+	*/
+	public static FrameSource create(String name, Properties properties, ByteOrder byteOrder, PixelFormat format) throws Exception {
+
+		String source = properties.getProperty(name + ".source", properties.getProperty("replay") != null ? "replay" : "gstreamer").trim();
+		switch (source.toLowerCase()) {
+			case "gstreamer": return new GstreamerFrameSource(name, properties.getProperty(name + ".pipeline"), byteOrder, format,
+			                                                  Boolean.parseBoolean(properties.getProperty(name + ".source-roi", "false").trim()));
+			case "synthetic": return new SyntheticFrameSource(name, properties, byteOrder, format);
+			case "file": return new RawFileFrameSource(name, properties, format);
+			case "replay": return new ReplayFrameSource(name, properties, byteOrder, format);
+		}
+		throw new IllegalArgumentException(name + ".source " + source + " is not gstreamer, synthetic, file or replay.");
+	}
+
+	/**
+	Parses a WIDTHxHEIGHT size property.
+	*/
+	protected static int[] getSize(Properties properties, String name, String defaultSize) {
+
+		String[] s = properties.getProperty(name, defaultSize).trim().split("x");
+		return new int[] {Integer.parseInt(s[0].trim()), Integer.parseInt(s[1].trim())};
+	}
+
+	/**
+	Starts the source, then passes each frame to the consumer until the source is stopped, or the stream ends or fails,
+	when onEnd is run, once, on the source's thread; it must not stop the source there.
+	*/
+	public void start(Consumer<Frame> consumer, Runnable onEnd, Metrics metrics) throws Exception {
+
+		onEnd_ = onEnd;
+		open();
+		thread_ = new Thread(name_ + " source") {
+			@Override
+			public void run() {
+				try {
+					while (!stopped_) {
+						long t0 = System.nanoTime();
+						Frame frame = next();
+						metrics.record(Metrics.Stage.PULL, System.nanoTime() - t0);
+						if (frame == null) {
+							end("end of stream.");
+							break;
+						}
+						metrics.countFrame();
+						consumer.accept(frame);
+					}
+				}
+				catch (InterruptedException ex) {
+					// stopped
+				}
+				catch (Exception ex) {
+					logger_.log(Level.SEVERE, name_ + ": frame source failed.", ex);
+					end("stream failed.");
+				}
+			}
+		};
+		thread_.setDaemon(true);
+		thread_.start();
+	}
+
+	/**
+	Reports the end of the stream, unless the source was stopped or has ended already.
+	*/
+	protected void end(String reason) {
+
+		if (!stopped_ && ended_.compareAndSet(false, true)) {
+			logger_.info(name_ + ": " + reason);
+			if (onEnd_ != null) {
+				onEnd_.run();
+			}
+		}
+	}
+
+	/**
+	Stops the source and waits for its thread, if it has one, to hand over its last frame. It may be stopped more than once.
+	*/
+	public void stop() {
+
+		stopped_ = true;
+		if (thread_ != null && thread_ != Thread.currentThread()) {
+			thread_.interrupt();
+			try {
+				thread_.join(1000);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		close();
+	}
+
+	/**
+	Starts producing frames, before the first next().
+	*/
+	protected void open() throws Exception {
+	}
+
+	protected void close() {
+	}
+
+	/**
+	Returns the next frame, waiting for it as needed, or null at the end of the stream.
+	*/
+	protected abstract Frame next() throws InterruptedException;
+
+	/**
+	Asks the source to deliver only a region of its frames, scaled to the region's frame size, from a frame soon
+	after this returns, or whole frames again if region is full. Returns false if the source can't.
+	Frames of other sizes may come before the change is complete.
+	*/
+	public boolean setRegion(SourceRegion region) {
+
+		return false;
+	}
+
+	public long getClockOffset() {
+
+		return clockOffset_;
+	}
+
+	/**
+	Measures the clock offset again, for sources whose clock may drift from System.nanoTime().
+	*/
+	public void updateClockOffset() {
+	}
+
+	/**
+	For sources that produce their own frames: waits until the next frame is due, and returns its timestamp,
+	the time since the first frame. A source that falls behind starts a new schedule rather than catching up in a burst.
+	*/
+	protected long awaitFrame() throws InterruptedException {
+
+		long now = System.nanoTime();
+		if (clockOffset_ == VideoMapper.NO_TIME) {
+			start_ = now;
+			next_ = now;
+			clockOffset_ = start_;
+		}
+		if (period_ > 0) {
+			if (next_ - now < -period_) {
+				next_ = now;
+			}
+			now = awaitDeadline(next_);
+			next_ += period_;
+		}
+		return now - start_;
+	}
+
+	/**
+	Waits until System.nanoTime() reaches the deadline, and returns the time it woke up.
+	*/
+	protected static long awaitDeadline(long deadline) throws InterruptedException {
+
+		long now;
+		while ((now = System.nanoTime()) - deadline < 0) {
+			LockSupport.parkNanos(deadline - now);
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+		return now;
+	}
+
+	/**
+	One camera frame. It stays valid until disposed of, and its pixels while mapped.
+	*/
+	public static abstract class Frame {
+
+		public abstract int getWidth();
+
+		public abstract int getHeight();
+
+		/**
+		Presentation timestamp in nanoseconds, on the source's clock, or -1 if unknown.
+		*/
+		public abstract long getPTS();
+
+		/**
+		Nominal frame duration in nanoseconds, or -1 if unknown.
+		*/
+		public abstract long getDuration();
+
+		/**
+		Returns the frame's pixels, or null if they can't be read.
+		*/
+		public abstract ByteBuffer map();
+
+		public void unmap() {
+		}
+
+		public void dispose() {
+		}
+	}
+
+	/**
+	Frame handed to several consumers, each of which disposes of it. Its frame is mapped once, by the first consumer
+	that maps it, for all of them, since a frame may not be mapped twice at a time, and stays mapped until the last
+	consumer has disposed of it, when it is unmapped and disposed of.
+	*/
+	public static class SharedFrame extends Frame {
+
+		protected final Frame frame_;
+		protected final AtomicInteger references_;
+		protected ByteBuffer pixels_ = null; // guarded by the frame
+		protected boolean mapped_ = false;
+
+		public SharedFrame(Frame frame, int consumers) {
+
+			frame_ = frame;
+			references_ = new AtomicInteger(consumers);
+		}
+
+		@Override
+		public int getWidth() {
+
+			return frame_.getWidth();
+		}
+
+		@Override
+		public int getHeight() {
+
+			return frame_.getHeight();
+		}
+
+		@Override
+		public long getPTS() {
+
+			return frame_.getPTS();
+		}
+
+		@Override
+		public long getDuration() {
+
+			return frame_.getDuration();
+		}
+
+		@Override
+		public synchronized ByteBuffer map() {
+
+			if (!mapped_) {
+				pixels_ = frame_.map();
+				mapped_ = true;
+			}
+			return pixels_ == null ? null : pixels_.duplicate(); // each consumer with a position and byte order of its own
+		}
+
+		@Override
+		public void dispose() {
+
+			if (references_.decrementAndGet() == 0) {
+				synchronized (this) {
+					if (pixels_ != null) {
+						frame_.unmap();
+						pixels_ = null;
+					}
+				}
+				frame_.dispose();
+			}
+		}
+	}
+
+	/**
+	Frame whose pixels are a buffer that nobody writes while frames of it are in use.
+	*/
+	protected static class BufferFrame extends Frame {
+
+		protected final ByteBuffer pixels_;
+		protected final int width_;
+		protected final int height_;
+		protected final long pts_;
+		protected final long duration_;
+
+		protected BufferFrame(ByteBuffer pixels, int width, int height, long pts, long duration) {
+
+			pixels_ = pixels;
+			width_ = width;
+			height_ = height;
+			pts_ = pts;
+			duration_ = duration;
+		}
+
+		@Override
+		public int getWidth() {
+
+			return width_;
+		}
+
+		@Override
+		public int getHeight() {
+
+			return height_;
+		}
+
+		@Override
+		public long getPTS() {
+
+			return pts_;
+		}
+
+		@Override
+		public long getDuration() {
+
+			return duration_;
+		}
+
+		@Override
+		public ByteBuffer map() {
+
+			return pixels_.duplicate(); // callers set the byte order of what they get
+		}
+	}
+}
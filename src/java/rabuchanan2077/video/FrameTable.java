@@ -0,0 +1,19 @@
+package rabuchanan2077.video;
+
+/**
+A compiled mapping of one camera's frames into the output: a RemapTable for packed pixels or a PlanarRemapTable for
+planar frames. Cameras keep theirs as either, and write frames with it through the layer of the compositor for their
+pixel format, which takes the one kind it applies.
+*/
+interface FrameTable {
+
+	/**
+	Number of output pixels the table writes.
+	*/
+	public int getMappedPixels();
+
+	/**
+	Size of the table in bytes.
+	*/
+	public long getSize();
+}
@@ -0,0 +1,243 @@
+package rabuchanan2077.video;
+
+import java.nio.*;
+import java.util.function.*;
+import org.freedesktop.gstreamer.Bin;
+import org.freedesktop.gstreamer.Buffer;
+import org.freedesktop.gstreamer.Bus;
+import org.freedesktop.gstreamer.Caps;
+import org.freedesktop.gstreamer.Clock;
+import org.freedesktop.gstreamer.ClockTime;
+import org.freedesktop.gstreamer.Element;
+import org.freedesktop.gstreamer.FlowReturn;
+import org.freedesktop.gstreamer.Gst;
+import org.freedesktop.gstreamer.Pipeline;
+import org.freedesktop.gstreamer.Sample;
+import org.freedesktop.gstreamer.Structure;
+import org.freedesktop.gstreamer.elements.AppSink;
+
+/**
+Camera frames from a Gstreamer pipeline, taken from an appsink that keeps only the newest frame.
+Frames are handed over on the pipeline's streaming thread as the appsink signals each one, so a camera needs no thread
+of its own blocked waiting for them, and the stream ends on an end-of-stream or an error from the pipeline.
+Gstreamer is initialized when the first such source opens, so configurations without one never load it.
+With source-roi, the pipeline decodes only a region of the frames: a videocrop, videoscale and capsfilter
+go in before its final videoconvert, or at its end if it has none, and setRegion() sets them while it plays,
+so the conversion to BGRx and everything after it handle only the region's pixels.
+With a planar pixel-format, the appsink asks for I420 or NV12, which most decoders put out, so a final videoconvert
+converts nothing and can be left out.
+*/
+class GstreamerFrameSource extends FrameSource {
+
+	private static String[] initArguments_ = new String[0];
+
+	protected final String pipelineString_;
+	protected final ByteOrder byteOrder_;
+	protected final PixelFormat format_;
+	protected final boolean regions_;
+
+	// keep a reference to running pipeline to keep it from getting GCed and crashing
+	protected Pipeline pipeline_ = null;
+	protected AppSink appSink_ = null;
+	protected Element crop_ = null;
+	protected Element scale_ = null;
+
+	public GstreamerFrameSource(String name, String pipelineString, ByteOrder byteOrder, PixelFormat format, boolean regions) {
+
+		super(name, 0);
+
+		if (pipelineString == null) {
+			throw new IllegalArgumentException("No " + name + ".pipeline configured.");
+		}
+		byteOrder_ = byteOrder;
+		format_ = format;
+		regions_ = regions;
+		if (regions) {
+			// crop and scale while still in the decoder's format, before the conversion
+			String region = "videocrop name=" + name + "-crop ! videoscale ! capsfilter name=" + name + "-scale caps=video/x-raw";
+			int convert = pipelineString.lastIndexOf('!');
+			pipelineString = convert >= 0 && pipelineString.substring(convert + 1).trim().startsWith("videoconvert")
+			               ? pipelineString.substring(0, convert) + "! " + region + " " + pipelineString.substring(convert)
+			               : pipelineString + " ! " + region;
+		}
+		pipelineString_ = pipelineString;
+	}
+
+	/**
+	Sets the command line arguments Gstreamer is initialized with, such as --gst-debug.
+	*/
+	public static synchronized void setInitArguments(String[] args) {
+
+		initArguments_ = args.clone();
+	}
+
+	protected static synchronized void init() {
+
+		if (!Gst.isInitialized()) {
+			Gst.init("VideoMapper", initArguments_);
+		}
+	}
+
+	/**
+	Starts the pipeline, with the appsink signalling each frame rather than a thread pulling them.
+	*/
+	@Override
+	public void start(Consumer<Frame> consumer, Runnable onEnd, Metrics metrics) throws Exception {
+
+		onEnd_ = onEnd;
+		open();
+		long[] last = {System.nanoTime()};
+		appSink_.set("emit-signals", true);
+		appSink_.connect((AppSink.NEW_SAMPLE)(sink) -> {
+			Sample sample = sink.pullSample();
+			if (sample == null || stopped_) {
+				if (sample != null) {
+					sample.dispose();
+				}
+				return FlowReturn.OK;
+			}
+			long now = System.nanoTime();
+			metrics.record(Metrics.Stage.PULL, now - last[0]); // the wait for the frame, as when pulling
+			last[0] = now;
+			metrics.countFrame();
+			consumer.accept(new SampleFrame(sample));
+			return FlowReturn.OK;
+		});
+		Bus bus = pipeline_.getBus();
+		bus.connect((Bus.EOS)(source) -> end("end of stream."));
+		bus.connect((Bus.ERROR)(source, code, message) -> end("stream failed: " + message));
+		pipeline_.play();
+	}
+
+	@Override
+	protected void open() {
+
+		init();
+		Bin bin = Bin.launch(pipelineString_, true);
+		pipeline_ = new Pipeline();
+		appSink_ = new AppSink(name_);
+		appSink_.set("drop", true);
+		appSink_.set("max-buffers", 1);
+		appSink_.setCaps(new Caps("video/x-raw,format=" + format_.getCapsFormat(byteOrder_)));
+		pipeline_.addMany(bin, appSink_);
+		pipeline_.linkMany(bin, appSink_);
+		if (regions_) {
+			crop_ = bin.getElementByName(name_ + "-crop");
+			scale_ = bin.getElementByName(name_ + "-scale");
+		}
+	}
+
+	/**
+	Sets the crop, then the scale, each renegotiating the caps downstream; frames in between come cropped but unscaled.
+	*/
+	@Override
+	public synchronized boolean setRegion(SourceRegion region) {
+
+		if (crop_ == null || scale_ == null) {
+			return false;
+		}
+		crop_.set("left", region.x_);
+		crop_.set("top", region.y_);
+		crop_.set("right", region.sourceWidth_ - region.x_ - region.width_);
+		crop_.set("bottom", region.sourceHeight_ - region.y_ - region.height_);
+		scale_.setCaps(region.isFull() ? new Caps("video/x-raw")
+		                               : new Caps("video/x-raw,width=" + region.frameWidth_ + ",height=" + region.frameHeight_));
+		return true;
+	}
+
+	/**
+	Takes the pipeline down to the null state, which returns once its streaming threads have left the appsink.
+	*/
+	@Override
+	protected synchronized void close() {
+
+		if (pipeline_ != null) {
+			pipeline_.stop();
+			pipeline_ = null;
+			crop_ = null;
+			scale_ = null;
+		}
+	}
+
+	@Override
+	protected Frame next() {
+
+		Sample sample = appSink_.pullSample();
+		return sample == null ? null : new SampleFrame(sample);
+	}
+
+	/**
+	Measures the offset from the pipeline's running time, in which buffer timestamps are given, to System.nanoTime().
+	Timestamps of live sources are running times at capture, so this turns them into capture times.
+	*/
+	@Override
+	public void updateClockOffset() {
+
+		Pipeline pipeline = pipeline_;
+		Clock clock = pipeline == null ? null : pipeline.getClock();
+		if (clock != null) {
+			clockOffset_ = System.nanoTime() - (clock.getTime().toNanos() - pipeline.getBaseTime().toNanos());
+		}
+	}
+
+	protected static class SampleFrame extends Frame {
+
+		protected final Sample sample_;
+		protected final Buffer buffer_;
+		protected final int width_;
+		protected final int height_;
+
+		protected SampleFrame(Sample sample) {
+
+			sample_ = sample;
+			buffer_ = sample.getBuffer();
+			Structure capsStruct = sample.getCaps().getStructure(0);
+			width_ = capsStruct.getInteger("width");
+			height_ = capsStruct.getInteger("height");
+		}
+
+		@Override
+		public int getWidth() {
+
+			return width_;
+		}
+
+		@Override
+		public int getHeight() {
+
+			return height_;
+		}
+
+		@Override
+		public long getPTS() {
+
+			ClockTime pts = buffer_.getPresentationTimestamp();
+			return pts.isValid() ? pts.toNanos() : -1;
+		}
+
+		@Override
+		public long getDuration() {
+
+			ClockTime duration = buffer_.getDuration();
+			return duration.isValid() ? duration.toNanos() : -1;
+		}
+
+		@Override
+		public ByteBuffer map() {
+
+			return buffer_.map(false);
+		}
+
+		@Override
+		public void unmap() {
+
+			buffer_.unmap();
+		}
+
+		@Override
+		public void dispose() {
+
+			sample_.dispose();
+		}
+	}
+}
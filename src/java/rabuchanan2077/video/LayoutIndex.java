@@ -0,0 +1,193 @@
+package rabuchanan2077.video;
+
+import java.awt.image.*;
+import java.util.*;
+
+/**
+The layout image as a plane of one-byte labels, one per distinct color, and per label the horizontal spans of its
+pixels in raster order, built in one pass over the image and shared by every mapper that masks by layout color.
+A mapper then visits only its own pixels, span by span, rather than testing a mask of its own at every output pixel.
+Colors beyond the first 255 share the label OTHER, which no mapper can select; isOther() tells them apart from
+colors the layout doesn't have, for mappers to warn about a mask they can't use.
+*/
+class LayoutIndex {
+
+	public static final int MAX_LABELS = 255;
+	public static final int OTHER = 255;
+
+	protected final int width_;
+	protected final int height_;
+	protected final byte[] labels_;
+	protected final int[] colors_; // RGB of each label
+	protected final int[][] spans_; // per label, {y, x0, x1}* sorted by y, then x
+	protected final Set<Integer> otherColors_ = new HashSet<>(); // RGB of the colors labeled OTHER
+
+	public LayoutIndex(BufferedImage layout) {
+
+		width_ = layout.getWidth();
+		height_ = layout.getHeight();
+		labels_ = new byte[width_ * height_];
+		Map<Integer, Integer> labelOfColor = new HashMap<>();
+		java.util.List<SpanBuilder> builders = new ArrayList<>();
+		int[] row = new int[width_];
+		for (int y = 0; y < height_; y++) {
+			layout.getRGB(0, y, width_, 1, row, 0, width_);
+			int x0 = 0;
+			int label = 0;
+			for (int x = 0; x < width_; x++) {
+				int rgb = row[x] & 0x00FFFFFF;
+				if (x == 0 || rgb != (row[x-1] & 0x00FFFFFF)) {
+					if (x > 0 && label != OTHER) {
+						builders.get(label).add(y, x0, x);
+					}
+					Integer l = labelOfColor.get(rgb);
+					if (l == null) {
+						l = builders.size() < MAX_LABELS ? builders.size() : OTHER;
+						labelOfColor.put(rgb, l);
+						if (l != OTHER) {
+							builders.add(new SpanBuilder(rgb));
+						}
+						else {
+							otherColors_.add(rgb);
+						}
+					}
+					label = l;
+					x0 = x;
+				}
+				labels_[y*width_ + x] = (byte)label;
+			}
+			if (label != OTHER) {
+				builders.get(label).add(y, x0, width_);
+			}
+		}
+		colors_ = new int[builders.size()];
+		spans_ = new int[builders.size()][];
+		for (int l = 0; l < builders.size(); l++) {
+			colors_[l] = builders.get(l).color_;
+			spans_[l] = builders.get(l).toArray();
+		}
+	}
+
+	public int getWidth() {
+
+		return width_;
+	}
+
+	public int getHeight() {
+
+		return height_;
+	}
+
+	/**
+	Returns the label of a layout color, or -1 if no pixel has it, or it is one of those labeled OTHER.
+	*/
+	public int getLabel(int rgb) {
+
+		rgb &= 0x00FFFFFF;
+		for (int l = 0; l < colors_.length; l++) {
+			if (colors_[l] == rgb) {
+				return l;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	True if pixels of the layout have the color, but it is one of those beyond MAX_LABELS, labeled OTHER.
+	*/
+	public boolean isOther(int rgb) {
+
+		return otherColors_.contains(rgb & 0x00FFFFFF);
+	}
+
+	public int getLabel(int x, int y) {
+
+		return labels_[y*width_ + x] & 0xFF;
+	}
+
+	/**
+	Returns the label's spans as {y, x0, x1}* with x1 exclusive, sorted by y, then x.
+	*/
+	public int[] getSpans(int label) {
+
+		return spans_[label];
+	}
+
+	/**
+	Returns the index in getSpans(label) of the label's first span in row y or below.
+	*/
+	public int getFirstSpan(int label, int y) {
+
+		int[] spans = spans_[label];
+		int lo = 0;
+		int hi = spans.length / 3;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (spans[3*mid] < y) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return 3*lo;
+	}
+
+	/**
+	Counts the label's pixels within a rectangle, x1 and y1 exclusive.
+	*/
+	public int count(int label, int x0, int x1, int y0, int y1) {
+
+		int[] spans = spans_[label];
+		int n = 0;
+		for (int i = getFirstSpan(label, y0); i < spans.length && spans[i] < y1; i += 3) {
+			n += Math.max(0, Math.min(spans[i+2], x1) - Math.max(spans[i+1], x0));
+		}
+		return n;
+	}
+
+	/**
+	Size of the index in bytes.
+	*/
+	public long getSize() {
+
+		long size = labels_.length;
+		for (int[] spans : spans_) {
+			size += 4L*spans.length;
+		}
+		return size;
+	}
+
+	@Override
+	public String toString() {
+
+		return String.format("%d labels in %dx%d, %d KB", colors_.length, width_, height_, getSize()/1024);
+	}
+
+	protected static class SpanBuilder {
+
+		protected final int color_;
+		protected int[] spans_ = new int[3*64];
+		protected int n_ = 0;
+
+		protected SpanBuilder(int color) {
+
+			color_ = color;
+		}
+
+		protected void add(int y, int x0, int x1) {
+
+			if (n_ == spans_.length) {
+				spans_ = Arrays.copyOf(spans_, 2*n_);
+			}
+			spans_[n_++] = y;
+			spans_[n_++] = x0;
+			spans_[n_++] = x1;
+		}
+
+		protected int[] toArray() {
+
+			return Arrays.copyOf(spans_, n_);
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package rabuchanan2077.video;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.channels.FileChannel.*;
+import java.util.*;
+
+/**
+Sink overwriting a single memory-mapped frame in its file (default /tmp/VideoMapper.videoFrame), for older readers.
+A frame is skipped, rather than waited for, while a reader holds the OS file lock.
+*/
+class LockedFileOutputSink extends OutputSink {
+
+	protected final FileChannel outputFileChannel_;
+	protected final ByteBuffer outputMappedBuffer_;
+
+	public LockedFileOutputSink(String name, String prefix, Properties properties, int width, int height, ByteOrder byteOrder, PixelFormat format)
+	        throws IOException {
+
+		super(name, prefix, properties, width, height, byteOrder, format, 0);
+
+		outputFileChannel_ = new RandomAccessFile(properties.getProperty(prefix + "file", "/tmp/VideoMapper.videoFrame").trim(), "rw").getChannel();
+		outputMappedBuffer_ = outputFileChannel_.map(MapMode.READ_WRITE, 0, format.getFrameBytes(width, height)).order(byteOrder);
+	}
+
+	@Override
+	protected boolean write(IntBuffer pixels, long pts) throws IOException {
+
+		outputMappedBuffer_.rewind();
+		FileLock lock = outputFileChannel_.tryLock();
+		if (lock == null) {
+			metrics_.countSkipped();
+			return false;
+		}
+		outputMappedBuffer_.asIntBuffer().put(0, pixels, 0, width_ * height_);
+		lock.release();
+		return true;
+	}
+
+	@Override
+	protected boolean write(byte[] frame, long pts) throws IOException {
+
+		outputMappedBuffer_.rewind();
+		FileLock lock = outputFileChannel_.tryLock();
+		if (lock == null) {
+			metrics_.countSkipped();
+			return false;
+		}
+		outputMappedBuffer_.put(frame);
+		lock.release();
+		return true;
+	}
+
+	@Override
+	protected void close() {
+
+		try {
+			outputFileChannel_.close();
+		}
+		catch (IOException ex) {
+			ex.printStackTrace();
+		}
+	}
+}
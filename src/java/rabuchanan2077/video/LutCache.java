@@ -0,0 +1,177 @@
+package rabuchanan2077.video;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.channels.FileChannel.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.logging.*;
+
+/**
+On-disk store for finished pixel remap tables.
+Building a table means evaluating the projection math for every output pixel of every mapper,
+which is slow enough to show as a black screen at startup; a cached table is read back through
+a memory-mapped channel instead. Each table lives in its own file, named by a digest of everything
+that went into building it, so a changed calibration or layout simply misses the cache.
+*/
+class LutCache {
+
+	private static final Logger logger_ = Logger.getLogger(LutCache.class.getName());
+
+	// bump when the table layout or the mapping math changes, so stale files are never reused
+	private static final int FORMAT_VERSION = 4;
+	private static final int MAGIC = 0x4C555400 | FORMAT_VERSION; // "LUT" + version
+	private static final int HEADER_BYTES = 8; // magic, section count, then each section's entry count and entries
+
+	protected final File directory_;
+
+	public LutCache(File directory) {
+
+		directory_ = directory;
+	}
+
+	/**
+	Returns the sections of the cached table for the key, or null if there is none or it can't be read.
+	*/
+	public int[][] load(String key) {
+
+		File file = getFile(key);
+		if (!file.isFile()) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer mbb = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			mbb.order(ByteOrder.nativeOrder());
+			if (mbb.remaining() < HEADER_BYTES || mbb.getInt(0) != MAGIC) {
+				return null;
+			}
+			IntBuffer ib = mbb.position(HEADER_BYTES).slice().order(mbb.order()).asIntBuffer();
+			int sections = mbb.getInt(4);
+			if (sections < 0 || sections > ib.remaining()) {
+				return null;
+			}
+			int[][] map = new int[sections][];
+			for (int i = 0; i < map.length; i++) {
+				int n = ib.get();
+				if (n < 0 || n > ib.remaining()) {
+					return null;
+				}
+				map[i] = new int[n];
+				ib.get(map[i]);
+			}
+			return ib.hasRemaining() ? null : map;
+		}
+		catch (Exception ex) {
+			logger_.log(Level.WARNING, "Unreadable LUT cache file " + file + ", rebuilding.", ex);
+			return null;
+		}
+	}
+
+	/**
+	Saves the sections of a table under the key; failures are logged and otherwise ignored, since the cache is only an optimization.
+	*/
+	public void store(String key, int[][] map) {
+
+		File file = getFile(key);
+		try {
+			Files.createDirectories(directory_.toPath());
+			// write to a temporary file and rename, so a concurrent or interrupted writer never leaves a partial table
+			File tmp = File.createTempFile(file.getName(), ".tmp", directory_);
+			try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				long size = HEADER_BYTES;
+				for (int[] section : map) {
+					size += 4 + (long)section.length*4;
+				}
+				MappedByteBuffer mbb = channel.map(MapMode.READ_WRITE, 0, size);
+				mbb.order(ByteOrder.nativeOrder());
+				mbb.putInt(MAGIC);
+				mbb.putInt(map.length);
+				IntBuffer ib = mbb.slice().order(mbb.order()).asIntBuffer();
+				for (int[] section : map) {
+					ib.put(section.length);
+					ib.put(section);
+				}
+				mbb.force();
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (Exception ex) {
+			logger_.log(Level.WARNING, "Could not write LUT cache file " + file + ".", ex);
+		}
+	}
+
+	protected File getFile(String key) {
+
+		return new File(directory_, key + ".lut");
+	}
+
+	/**
+	Accumulates the inputs of a table build into a hex digest usable as a cache key.
+	*/
+	public static class Key {
+
+		private final MessageDigest digest_;
+
+		public Key() {
+
+			try {
+				digest_ = MessageDigest.getInstance("SHA-256");
+			}
+			catch (NoSuchAlgorithmException ex) {
+				throw new RuntimeException(ex); // every Java platform is required to provide SHA-256
+			}
+			add(FORMAT_VERSION);
+		}
+
+		public Key add(String s) {
+
+			byte[] b = (s == null ? "\u0000" : s).getBytes(StandardCharsets.UTF_8);
+			add(b.length);
+			digest_.update(b);
+			return this;
+		}
+
+		public Key add(int i) {
+
+			digest_.update(ByteBuffer.allocate(4).putInt(i).array());
+			return this;
+		}
+
+		public Key add(byte[] b) {
+
+			if (b == null) {
+				return add(-1);
+			}
+			add(b.length);
+			digest_.update(b);
+			return this;
+		}
+
+		/**
+		Adds all properties whose names start with the prefix, in sorted order.
+		*/
+		public Key addProperties(Properties properties, String prefix) {
+
+			for (String name : new TreeSet<>(properties.stringPropertyNames())) {
+				if (name.startsWith(prefix)) {
+					add(name);
+					add(properties.getProperty(name).trim());
+				}
+			}
+			return this;
+		}
+
+		@Override
+		public String toString() {
+
+			StringBuilder sb = new StringBuilder();
+			for (byte b : digest_.digest()) {
+				sb.append(String.format("%02x", b & 0xFF));
+			}
+			return sb.toString();
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package rabuchanan2077.video;
+
+import java.util.*;
+
+/**
+Order of a mapper's entries in the pixel mapping table: raster, as the mapper emits them, output row by output row,
+or tile by tile, with the tiles themselves in raster order (tile) or along a Z-order curve (morton).
+Where a mapper rotates or unwarps, consecutive output pixels of a row read camera pixels far apart, often a whole
+camera row each; within a small output tile they come from a small patch of the camera frame, which stays in cache
+while the tile is copied. Runs of the table are cut at tile edges, so tiles are best not much narrower than 16 pixels.
+Configured by lut-order raster|tile|morton and lut-tile W or WxH, for all mappers or as <mapper>.lut-order and
+<mapper>.lut-tile for one; the JMH RemapBenchmark reports which pays off for which mapper.
+*/
+class LutOrder {
+
+	public enum Mode { RASTER, TILE, MORTON }
+
+	public static final LutOrder RASTER = new LutOrder(Mode.RASTER, 1, 1);
+
+	protected final Mode mode_;
+	protected final int tileWidth_;
+	protected final int tileHeight_;
+
+	public LutOrder(Mode mode, int tileWidth, int tileHeight) {
+
+		if (tileWidth < 1 || tileHeight < 1) {
+			throw new IllegalArgumentException("Tiles of " + tileWidth + "x" + tileHeight + " pixels.");
+		}
+		mode_ = mode;
+		tileWidth_ = tileWidth;
+		tileHeight_ = tileHeight;
+	}
+
+	/**
+	Reads a mapper's order, falling back to the one for all mappers, and to raster.
+	*/
+	public static LutOrder create(String mapperName, Properties properties) {
+
+		String mode = properties.getProperty(mapperName + ".lut-order", properties.getProperty("lut-order", "raster")).trim();
+		String[] tile = properties.getProperty(mapperName + ".lut-tile", properties.getProperty("lut-tile", "32")).trim().split("x");
+		int tileWidth = Integer.parseInt(tile[0].trim());
+		int tileHeight = tile.length > 1 ? Integer.parseInt(tile[1].trim()) : tileWidth;
+		return new LutOrder(Mode.valueOf(mode.toUpperCase()), tileWidth, tileHeight);
+	}
+
+	public boolean isRaster() {
+
+		return mode_ == Mode.RASTER;
+	}
+
+	/**
+	Returns the sort key of the tile of an output pixel, less than 2^48; pixels of a tile share it.
+	*/
+	public long getTileKey(int x, int y) {
+
+		int tileX = x / tileWidth_;
+		int tileY = y / tileHeight_;
+		switch (mode_) {
+			case TILE: return (long)tileY << 24 | tileX;
+			case MORTON: return interleave(tileX) | interleave(tileY) << 1;
+		}
+		return 0;
+	}
+
+	/**
+	Spreads the low 16 bits of v to the even bits of the result.
+	*/
+	protected static long interleave(int v) {
+
+		long x = v & 0xFFFF;
+		x = (x | x << 8) & 0x00FF00FFL;
+		x = (x | x << 4) & 0x0F0F0F0FL;
+		x = (x | x << 2) & 0x33333333L;
+		x = (x | x << 1) & 0x55555555L;
+		return x;
+	}
+
+	@Override
+	public String toString() {
+
+		return mode_ == Mode.RASTER ? "raster" : mode_.name().toLowerCase() + " " + tileWidth_ + "x" + tileHeight_;
+	}
+}
@@ -0,0 +1,274 @@
+package rabuchanan2077.video;
+
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+import javax.management.*;
+
+/**
+Timing of each stage of the video path for one camera, or for the stages shared by all cameras,
+published as an MBean under rabuchanan2077.video:type=Metrics and summarized in the periodic log line.
+Recording only increments preallocated counters, so the frame path allocates nothing for it.
+Histograms have a bucket per power of two nanoseconds, which bounds percentiles to within a factor of two.
+*/
+class Metrics implements DynamicMBean {
+
+	private static final Logger logger_ = Logger.getLogger(Metrics.class.getName());
+
+	public enum Stage {
+		PULL("pull", "waiting in pullSample()"),
+		MAP("map", "mapping the camera buffer"),
+		RECORD("record", "copying the camera frame into the recording"),
+		WRITE("write", "writing the camera's pixels into the output"),
+		LOCK("lock", "waiting for the output lock"),
+		EXPORT("export", "copying an output frame to the export sinks: the ring, a locked file, a raw pipe or an appsrc"),
+		PAINT("paint", "painting the output"),
+		LATENCY("latency", "from capture, by the buffer's presentation timestamp, to publication of an output frame holding it");
+
+		public final String name_;
+		public final String description_;
+
+		Stage(String name, String description) {
+
+			name_ = name;
+			description_ = description;
+		}
+	}
+
+	protected final String name_;
+	protected final Histogram[] histograms_ = new Histogram[Stage.values().length];
+	protected final AtomicLong frames_ = new AtomicLong();
+	protected final AtomicLong dropped_ = new AtomicLong();
+	protected final AtomicLong skipped_ = new AtomicLong();
+	protected final MBeanInfo info_;
+
+	// totals at the last summary, owned by the thread writing the log line
+	protected long summaryFrames_ = 0;
+	protected long summaryDropped_ = 0;
+	protected final long[] summaryCount_ = new long[histograms_.length];
+	protected final long[] summarySum_ = new long[histograms_.length];
+
+	public Metrics(String name) {
+
+		name_ = name;
+		for (int i = 0; i < histograms_.length; i++) {
+			histograms_[i] = new Histogram();
+		}
+
+		java.util.List<MBeanAttributeInfo> attributes = new ArrayList<>();
+		attributes.add(new MBeanAttributeInfo("Frames", "long", "Camera frames received", true, false, false));
+		attributes.add(new MBeanAttributeInfo("DroppedFrames", "long", "Camera frames missing from the presentation timestamp sequence, mostly dropped by the appsink", true, false, false));
+		attributes.add(new MBeanAttributeInfo("SkippedFrames", "long", "Camera frames replaced by a newer one before an output tick took them", true, false, false));
+		for (Stage stage : Stage.values()) {
+			attributes.add(new MBeanAttributeInfo(stage.name_ + "Count", "long", "Times " + stage.description_, true, false, false));
+			for (String statistic : new String[] {"Mean", "P50", "P99", "Max"}) {
+				attributes.add(new MBeanAttributeInfo(stage.name_ + statistic + "Millis", "double", statistic + " milliseconds " + stage.description_, true, false, false));
+			}
+		}
+		info_ = new MBeanInfo(getClass().getName(), "Video path timing of " + name, attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, null, null);
+	}
+
+	/**
+	Registers with the platform MBean server; failure only costs the JMX view, so it is logged and ignored.
+	*/
+	public Metrics register() {
+
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("rabuchanan2077.video:type=Metrics,name=" + ObjectName.quote(name_)));
+		}
+		catch (Exception ex) {
+			logger_.log(Level.WARNING, "Could not register metrics MBean for " + name_ + ".", ex);
+		}
+		return this;
+	}
+
+	public void record(Stage stage, long nanos) {
+
+		histograms_[stage.ordinal()].record(nanos);
+	}
+
+	public void countFrame() {
+
+		frames_.incrementAndGet();
+	}
+
+	public void countDropped(long frames) {
+
+		dropped_.addAndGet(frames);
+	}
+
+	public void countSkipped() {
+
+		skipped_.incrementAndGet();
+	}
+
+	public long getFrames() {
+
+		return frames_.get();
+	}
+
+	public long getDropped() {
+
+		return dropped_.get();
+	}
+
+	public Histogram getHistogram(Stage stage) {
+
+		return histograms_[stage.ordinal()];
+	}
+
+	/**
+	Appends the frame rate and the mean time of every stage recorded since the previous summary,
+	for the periodic log line; only one thread may write summaries.
+	*/
+	public void summarize(StringBuilder sb, double seconds) {
+
+		long frames = frames_.get();
+		long dropped = dropped_.get();
+		sb.append(name_).append(String.format(" %.1ffps", (frames - summaryFrames_)/seconds));
+		if (dropped > summaryDropped_) {
+			sb.append(" dropped ").append(dropped - summaryDropped_);
+		}
+		summaryFrames_ = frames;
+		summaryDropped_ = dropped;
+		for (Stage stage : Stage.values()) {
+			Histogram histogram = histograms_[stage.ordinal()];
+			long count = histogram.getCount();
+			long sum = histogram.getSum();
+			int i = stage.ordinal();
+			if (count > summaryCount_[i]) {
+				sb.append(' ').append(stage.name_).append(String.format(" %.2fms", (sum - summarySum_[i])/1e6/(count - summaryCount_[i])));
+			}
+			summaryCount_[i] = count;
+			summarySum_[i] = sum;
+		}
+	}
+
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+
+		switch (attribute) {
+			case "Frames": return frames_.get();
+			case "DroppedFrames": return dropped_.get();
+			case "SkippedFrames": return skipped_.get();
+		}
+		for (Stage stage : Stage.values()) {
+			if (attribute.startsWith(stage.name_)) {
+				Histogram histogram = histograms_[stage.ordinal()];
+				switch (attribute.substring(stage.name_.length())) {
+					case "Count": return histogram.getCount();
+					case "MeanMillis": return histogram.getMean()/1e6;
+					case "P50Millis": return histogram.getPercentile(0.50)/1e6;
+					case "P99Millis": return histogram.getPercentile(0.99)/1e6;
+					case "MaxMillis": return histogram.getMax()/1e6;
+				}
+			}
+		}
+		throw new AttributeNotFoundException(attribute);
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+
+		AttributeList list = new AttributeList();
+		for (String attribute : attributes) {
+			try {
+				list.add(new Attribute(attribute, getAttribute(attribute)));
+			}
+			catch (AttributeNotFoundException ex) {
+				// left out, as the interface specifies
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+
+		throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException {
+
+		throw new MBeanException(new UnsupportedOperationException(actionName));
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+
+		return info_;
+	}
+
+	/**
+	Lock-free histogram of durations in nanoseconds, safe to record into from any number of threads.
+	*/
+	public static class Histogram {
+
+		// bucket i holds durations in [2^(i-1), 2^i) ns, bucket 0 those under 1 ns; 2^40 ns is over 18 minutes
+		protected static final int BUCKETS = 41;
+
+		protected final AtomicLongArray counts_ = new AtomicLongArray(BUCKETS);
+		protected final AtomicLong count_ = new AtomicLong();
+		protected final AtomicLong sum_ = new AtomicLong();
+		protected final AtomicLong max_ = new AtomicLong();
+
+		public void record(long nanos) {
+
+			nanos = Math.max(nanos, 0);
+			counts_.incrementAndGet(Math.min(64 - Long.numberOfLeadingZeros(nanos), BUCKETS - 1));
+			count_.incrementAndGet();
+			sum_.addAndGet(nanos);
+			for (long max = max_.get(); nanos > max && !max_.compareAndSet(max, nanos); max = max_.get()) {
+			}
+		}
+
+		public long getCount() {
+
+			return count_.get();
+		}
+
+		public long getSum() {
+
+			return sum_.get();
+		}
+
+		public long getMax() {
+
+			return max_.get();
+		}
+
+		public double getMean() {
+
+			long count = count_.get();
+			return count == 0 ? 0 : (double)sum_.get()/count;
+		}
+
+		/**
+		Upper bound of the bucket holding the given fraction of recorded durations, capped at the maximum.
+		*/
+		public long getPercentile(double fraction) {
+
+			long total = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				total += counts_.get(i);
+			}
+			long rank = (long)Math.ceil(fraction*total);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts_.get(i);
+				if (seen >= rank && seen > 0) {
+					return Math.min(1L << i, max_.get());
+				}
+			}
+			return 0;
+		}
+	}
+}
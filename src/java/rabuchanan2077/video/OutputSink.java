@@ -0,0 +1,310 @@
+package rabuchanan2077.video;
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+import java.util.logging.*;
+
+/**
+Destination of finished output frames, selected by its type: ring (the shared-memory frame ring), file (a single frame
+guarded by a file lock), raw (frames back to back into a file or named pipe) or appsrc (a Gstreamer pipeline fed
+through an appsrc, such as an encoder).
+
+Each sink has its own queue of queue frames, written on a thread of its own, so a slow sink neither holds up the
+publishing thread nor the other sinks. With queue 0 the publishing thread writes the frame itself, which suits sinks
+that never block, like the ring. When the queue is full, the drop policy says what gives: oldest drops the longest-queued
+frame, keeping latency low, newest drops the frame being published, and block makes the publishing thread wait,
+passing the backpressure on to the cameras. Frames written, dropped and the time taken writing are in the sink's metrics.
+Writing and closing take turns on a lock, and nothing is written once the sink is stopped, so a frame still being
+published inline when the sink is stopped is either written before it closes or not at all.
+
+Frames are packed 32-bit pixels, or with a planar pixel-format, I420 frames as bytes, which every sink writes as they are.
+Properties are read with the sink's prefix, <sink>. for sinks named in output-sinks and export- for the one
+configured by export.
+*/
+abstract class OutputSink {
+
+	private static final Logger logger_ = Logger.getLogger(OutputSink.class.getName());
+
+	protected final String name_;
+	protected final int width_;
+	protected final int height_;
+	protected final ByteOrder byteOrder_;
+	protected final PixelFormat format_;
+	protected final Metrics metrics_;
+	protected final DropPolicy dropPolicy_;
+
+	// frames cycle from free_ through pending_ to the writer thread and back, so none is allocated while running
+	protected final BlockingQueue<SinkFrame> free_;
+	protected final BlockingQueue<SinkFrame> pending_;
+	protected Thread thread_ = null;
+	protected volatile boolean stopped_ = false;
+	protected final Lock writeLock_ = new ReentrantLock(); // held while writing and closing
+
+	protected OutputSink(String name, String prefix, Properties properties, int width, int height, ByteOrder byteOrder, PixelFormat format,
+	                     int defaultQueue) {
+
+		name_ = name;
+		width_ = width;
+		height_ = height;
+		byteOrder_ = byteOrder;
+		format_ = format;
+		metrics_ = new Metrics(name);
+		int queue = Integer.parseInt(properties.getProperty(prefix + "queue", Integer.toString(defaultQueue)).trim());
+		dropPolicy_ = DropPolicy.create(properties, prefix);
+		if (queue > 0) {
+			// every frame fits in either queue: the frame just written is freed before the writer takes the next one,
+			// so the publisher can queue it with queue frames still waiting
+			free_ = new ArrayBlockingQueue<>(queue + 1);
+			pending_ = new ArrayBlockingQueue<>(queue + 1);
+			for (int i = 0; i <= queue; i++) {
+				free_.add(format.isPlanar() ? new SinkFrame(new byte[format.getFrameBytes(width, height)]) : new SinkFrame(new int[width * height]));
+			}
+		}
+		else {
+			free_ = null;
+			pending_ = null;
+		}
+	}
+
+	/**
+	Creates a sink of the given type for output frames of the given size, in packed 32-bit pixels of the given byte order,
+	or in a planar format.
+	*/
+	public static OutputSink create(String name, String type, String prefix, Properties properties, int width, int height,
+	                                ByteOrder byteOrder, PixelFormat format) throws Exception {
+
+		switch (type.trim().toLowerCase()) {
+			case "ring": return new RingOutputSink(name, prefix, properties, width, height, byteOrder, format);
+			case "file": return new LockedFileOutputSink(name, prefix, properties, width, height, byteOrder, format);
+			case "raw": return new RawOutputSink(name, prefix, properties, width, height, byteOrder, format);
+			case "appsrc": return new AppSrcOutputSink(name, prefix, properties, width, height, byteOrder, format);
+		}
+		throw new IllegalArgumentException(name + " sink type " + type + " is not ring, file, raw or appsrc.");
+	}
+
+	public String getName() {
+
+		return name_;
+	}
+
+	public Metrics getMetrics() {
+
+		return metrics_;
+	}
+
+	/**
+	Opens the sink and starts its writer thread, if it has a queue.
+	*/
+	public void start() throws Exception {
+
+		metrics_.register();
+		open();
+		if (pending_ == null) {
+			return;
+		}
+		thread_ = new Thread(name_ + " sink") {
+			@Override
+			public void run() {
+				try {
+					while (!stopped_) {
+						SinkFrame frame = pending_.take();
+						writeTimed(frame.buffer_, frame.bytes_, frame.pts_);
+						free_.add(frame);
+					}
+				}
+				catch (InterruptedException ex) {
+					// stopped
+				}
+			}
+		};
+		thread_.setDaemon(true);
+		thread_.start();
+	}
+
+	/**
+	Called by the publishing thread with each finished frame, which it may change again once this returns.
+	*/
+	public void publish(int[] pixels, long pts) {
+
+		publish(IntBuffer.wrap(pixels), pts);
+	}
+
+	/**
+	As publish() with an array, for a frame held in a buffer, such as one off the heap, which is copied only once,
+	straight into the sink or its queue. Sinks read the buffer by index, leaving its position alone.
+	*/
+	public void publish(IntBuffer pixels, long pts) {
+
+		if (stopped_) {
+			return;
+		}
+		if (pending_ == null) {
+			writeTimed(pixels, null, pts);
+			return;
+		}
+		SinkFrame frame = takeFree();
+		if (frame != null) {
+			pixels.get(0, frame.pixels_);
+			frame.pts_ = pts;
+			pending_.add(frame);
+		}
+	}
+
+	/**
+	Called by the publishing thread with each finished planar frame, as publish() is with packed pixels.
+	*/
+	public void publish(byte[] frame, long pts) {
+
+		if (stopped_) {
+			return;
+		}
+		if (pending_ == null) {
+			writeTimed(null, frame, pts);
+			return;
+		}
+		SinkFrame queued = takeFree();
+		if (queued != null) {
+			System.arraycopy(frame, 0, queued.bytes_, 0, queued.bytes_.length);
+			queued.pts_ = pts;
+			pending_.add(queued);
+		}
+	}
+
+	/**
+	Returns a frame to queue the next one in, as the drop policy gives one, or null if the frame is to be dropped.
+	*/
+	protected SinkFrame takeFree() {
+
+		SinkFrame frame;
+		while ((frame = free_.poll()) == null) {
+			if (dropPolicy_ == DropPolicy.NEWEST) {
+				metrics_.countDropped(1);
+				return null;
+			}
+			if (dropPolicy_ == DropPolicy.OLDEST) {
+				frame = pending_.poll(); // null if the writer took it meanwhile, and so will soon free one
+				if (frame != null) {
+					metrics_.countDropped(1);
+					break;
+				}
+				Thread.yield();
+			}
+			else {
+				try {
+					frame = free_.poll(100, TimeUnit.MILLISECONDS);
+					if (frame != null) {
+						break;
+					}
+					if (stopped_) { // no writer left to free one
+						return null;
+					}
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					return null;
+				}
+			}
+		}
+		return frame;
+	}
+
+	/**
+	Writes a frame of either packed pixels or, if pixels is null, planar bytes.
+	*/
+	protected void writeTimed(IntBuffer pixels, byte[] frame, long pts) {
+
+		long t0 = System.nanoTime();
+		writeLock_.lock();
+		try {
+			if (stopped_) {
+				return;
+			}
+			if (pixels != null ? write(pixels, pts) : write(frame, pts)) {
+				metrics_.countFrame();
+			}
+		}
+		catch (Exception ex) {
+			logger_.log(Level.SEVERE, name_ + ": output frame not written.", ex);
+		}
+		finally {
+			writeLock_.unlock();
+		}
+		metrics_.record(Metrics.Stage.EXPORT, System.nanoTime() - t0);
+	}
+
+	/**
+	Stops the writer thread, dropping queued frames, and closes the sink once a frame being written, by the writer
+	thread or inline by the publishing thread, is done. A write stuck for a second, such as opening a named pipe
+	nobody reads, leaves the sink open rather than holding up shutdown.
+	*/
+	public void stop() {
+
+		stopped_ = true;
+		if (thread_ != null) {
+			thread_.interrupt();
+			try {
+				thread_.join(1000);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		try {
+			if (!writeLock_.tryLock(1, TimeUnit.SECONDS)) {
+				logger_.warning(name_ + ": still writing a frame, left open.");
+				return;
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		try {
+			close();
+		}
+		finally {
+			writeLock_.unlock();
+		}
+	}
+
+	protected void open() throws Exception {
+	}
+
+	/**
+	Writes one frame, reading the pixels by index from 0, returning false if it had to be left out;
+	only ever called by one thread at a time.
+	*/
+	protected abstract boolean write(IntBuffer pixels, long pts) throws Exception;
+
+	/**
+	Writes one planar frame, as write() does packed pixels.
+	*/
+	protected abstract boolean write(byte[] frame, long pts) throws Exception;
+
+	protected void close() {
+	}
+
+	protected static class SinkFrame {
+
+		protected final int[] pixels_;
+		protected final IntBuffer buffer_; // over pixels_
+		protected final byte[] bytes_;
+		protected long pts_ = -1;
+
+		protected SinkFrame(int[] pixels) {
+
+			pixels_ = pixels;
+			buffer_ = IntBuffer.wrap(pixels);
+			bytes_ = null;
+		}
+
+		protected SinkFrame(byte[] bytes) {
+
+			pixels_ = null;
+			buffer_ = null;
+			bytes_ = bytes;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package rabuchanan2077.video;
+
+import java.nio.*;
+import java.util.concurrent.*;
+
+/**
+Remap table applied in chunks on a fork/join pool shared by all cameras, for outputs too large for one core per camera.
+Each chunk covers about as many mapped pixels as fit in a core's cache along with their table entries;
+idle pool threads steal whole ranges of chunks from busy ones. Every method returns only once all chunks are done,
+so the compositor still publishes the camera's pixels as part of one frame, exactly as with a single-threaded table.
+*/
+class ParallelRemapTable extends RemapTable {
+
+	// roughly a 256 KB L2 cache's worth of pixels, at 4 bytes of output and 4 to 8 bytes of table each
+	protected static final int MAX_CHUNK_PIXELS = 32768;
+	// below this, the fork/join overhead outweighs the work
+	protected static final int MIN_CHUNK_PIXELS = 4096;
+	// chunks per pool thread and frame at least, so stealing can even out uneven chunks
+	protected static final int CHUNKS_PER_THREAD = 4;
+
+	protected final RemapTable whole_; // the unpartitioned table, which loads each camera frame for all chunks
+	protected final RemapTable[] chunks_;
+	protected final int[] regionOffset_; // region buffer offset of each chunk
+	protected final ForkJoinPool pool_;
+
+	public ParallelRemapTable(RemapTable table, int chunkPixels, ForkJoinPool pool) {
+
+		this(table, table, table.partition(chunkPixels), pool);
+	}
+
+	protected ParallelRemapTable(RemapTable table, RemapTable whole, RemapTable[] chunks, ForkJoinPool pool) {
+
+		super(table);
+
+		whole_ = whole;
+		chunks_ = chunks;
+		regionOffset_ = new int[chunks.length];
+		for (int i = 1; i < chunks.length; i++) {
+			regionOffset_[i] = regionOffset_[i-1] + chunks[i-1].getMappedPixels();
+		}
+		pool_ = pool;
+	}
+
+	/**
+	Chunk size for an output image of the given number of pixels: small enough to give every pool thread several chunks
+	of a frame, but no larger than a cache's worth.
+	*/
+	public static int getChunkPixels(int outputPixels, int parallelism) {
+
+		return Math.max(MIN_CHUNK_PIXELS, Math.min(MAX_CHUNK_PIXELS, outputPixels / (CHUNKS_PER_THREAD*parallelism)));
+	}
+
+	/**
+	Vectorizes every chunk, or none if the vector kernel is unavailable. The chunks share one copy of each camera frame,
+and the result is checked once, as a whole.
+	*/
+	@Override
+	public RemapTable vectorize(int cameraHeight) {
+
+		RemapTable whole = newVectorTable(this, null);
+		if (whole == null) {
+			return this;
+		}
+		RemapTable[] chunks = new RemapTable[chunks_.length];
+		for (int i = 0; i < chunks.length; i++) {
+			chunks[i] = newVectorTable(chunks_[i], whole);
+		}
+		RemapTable vector = new ParallelRemapTable(this, whole, chunks, pool_);
+		return matches(vector, cameraHeight) ? vector : this;
+	}
+
+	@Override
+	public void remap(IntBuffer cameraFramePixels, int[] outputPixels) {
+
+		whole_.load(cameraFramePixels);
+		apply((chunk, i) -> chunk.remap(cameraFramePixels, outputPixels));
+	}
+
+	@Override
+	public void remap(IntBuffer cameraFramePixels, IntBuffer outputPixels) {
+
+		apply((chunk, i) -> chunk.remap(cameraFramePixels, outputPixels));
+	}
+
+	@Override
+	public void remap(byte[] frame, int offset, int step, byte[] output, int outputOffset) {
+
+		apply((chunk, i) -> chunk.remap(frame, offset, step, output, outputOffset));
+	}
+
+	@Override
+	public void gather(IntBuffer cameraFramePixels, int[] region, int offset) {
+
+		whole_.load(cameraFramePixels);
+		apply((chunk, i) -> chunk.gather(cameraFramePixels, region, offset + regionOffset_[i]));
+	}
+
+	@Override
+	public void scatter(int[] region, int offset, int[] outputPixels) {
+
+		apply((chunk, i) -> chunk.scatter(region, offset + regionOffset_[i], outputPixels));
+	}
+
+	// chunks only read the camera frame with absolute gets, which leave the shared buffer's position alone
+	protected void apply(ChunkOperation operation) {
+
+		if (chunks_.length > 0) {
+			pool_.invoke(new ChunkAction(0, chunks_.length, operation));
+		}
+	}
+
+	@Override
+	public String toString() {
+
+		return super.toString() + " in " + chunks_.length + " chunks";
+	}
+
+	protected interface ChunkOperation {
+
+		void apply(RemapTable chunk, int i);
+	}
+
+	/**
+	Applies an operation to a range of chunks, halving the range until it is a single chunk.
+	*/
+	protected class ChunkAction extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		protected final int from_;
+		protected final int to_;
+		protected final ChunkOperation operation_;
+
+		protected ChunkAction(int from, int to, ChunkOperation operation) {
+
+			from_ = from;
+			to_ = to;
+			operation_ = operation;
+		}
+
+		@Override
+		protected void compute() {
+
+			if (to_ - from_ == 1) {
+				operation_.apply(chunks_[from_], from_);
+				return;
+			}
+			int middle = (from_ + to_) >>> 1;
+			invokeAll(new ChunkAction(from_, middle, operation_), new ChunkAction(middle, to_, operation_));
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package rabuchanan2077.video;
+
+import java.nio.*;
+import java.util.*;
+
+/**
+Pixel format of camera frames, set by pixel-format: rgb (the default) for packed 32-bit pixels, BGRx with little-endian
+byte-order and xRGB with big-endian, or one of the planar YUV 4:2:0 formats that decoders put out, i420 (Y, U and V
+planes) or nv12 (a Y plane and one of interleaved U and V samples), which the pipeline then needs no videoconvert for.
+Planar frames are laid out as Gstreamer lays them out by default: the rows of every plane padded to a multiple
+of 4 bytes, and odd sizes rounded up for the chroma planes. Colors convert as BT.601 with video levels.
+*/
+enum PixelFormat {
+
+	RGB, I420, NV12;
+
+	public static PixelFormat create(Properties properties) {
+
+		return valueOf(properties.getProperty("pixel-format", "rgb").trim().toUpperCase());
+	}
+
+	public boolean isPlanar() {
+
+		return this != RGB;
+	}
+
+	/**
+	Format name in Gstreamer caps.
+	*/
+	public String getCapsFormat(ByteOrder byteOrder) {
+
+		switch (this) {
+			case I420: return "I420";
+			case NV12: return "NV12";
+		}
+		return byteOrder == ByteOrder.LITTLE_ENDIAN ? "BGRx" : "xRGB";
+	}
+
+	public int getFrameBytes(int width, int height) {
+
+		if (!isPlanar()) {
+			return width * height * 4;
+		}
+		return getPlaneOffsets(width, height)[1] + getChromaStride(width) * getChromaHeight(height) * (this == I420 ? 2 : 1);
+	}
+
+	public static int getLumaStride(int width) {
+
+		return (width + 3) & ~3;
+	}
+
+	/**
+	Bytes from one row of a chroma plane to the next.
+	*/
+	public int getChromaStride(int width) {
+
+		return this == NV12 ? getLumaStride(width) : (getChromaWidth(width) + 3) & ~3;
+	}
+
+	/**
+	Bytes from one chroma sample to the next in a row: 2 where U and V are interleaved.
+	*/
+	public int getChromaStep() {
+
+		return this == NV12 ? 2 : 1;
+	}
+
+	/**
+	Offsets of the first Y, U and V samples of a planar frame.
+	*/
+	public int[] getPlaneOffsets(int width, int height) {
+
+		int u = getLumaStride(width) * ((height + 1) & ~1);
+		return new int[] {0, u, this == NV12 ? u + 1 : u + getChromaStride(width) * getChromaHeight(height)};
+	}
+
+	public static int getChromaWidth(int width) {
+
+		return (width + 1) / 2;
+	}
+
+	public static int getChromaHeight(int height) {
+
+		return (height + 1) / 2;
+	}
+
+	/**
+	Converts 0xRRGGBB pixels to a planar frame in this format, each chroma sample from the average of its 2x2 pixels.
+	*/
+	public void fromRGB(int[] rgb, int width, int height, byte[] frame) {
+
+		int lumaStride = getLumaStride(width);
+		int chromaStride = getChromaStride(width);
+		int step = getChromaStep();
+		int[] offsets = getPlaneOffsets(width, height);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int p = rgb[y*width + x];
+				frame[y*lumaStride + x] = (byte)toY(p >> 16 & 0xFF, p >> 8 & 0xFF, p & 0xFF);
+			}
+		}
+		for (int cy = 0; cy < getChromaHeight(height); cy++) {
+			for (int cx = 0; cx < getChromaWidth(width); cx++) {
+				int r = 0, g = 0, b = 0, n = 0;
+				for (int y = 2*cy; y < Math.min(2*cy + 2, height); y++) {
+					for (int x = 2*cx; x < Math.min(2*cx + 2, width); x++) {
+						int p = rgb[y*width + x];
+						r += p >> 16 & 0xFF;
+						g += p >> 8 & 0xFF;
+						b += p & 0xFF;
+						n++;
+					}
+				}
+				r = (r + n/2) / n;
+				g = (g + n/2) / n;
+				b = (b + n/2) / n;
+				int c = cy*chromaStride + cx*step;
+				frame[offsets[1] + c] = (byte)toU(r, g, b);
+				frame[offsets[2] + c] = (byte)toV(r, g, b);
+			}
+		}
+	}
+
+	/**
+	Converts a planar frame in this format to 0xRRGGBB pixels.
+	*/
+	public void toRGB(byte[] frame, int width, int height, int[] rgb) {
+
+		int lumaStride = getLumaStride(width);
+		int chromaStride = getChromaStride(width);
+		int step = getChromaStep();
+		int[] offsets = getPlaneOffsets(width, height);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int c = (y >> 1)*chromaStride + (x >> 1)*step;
+				int l = 298 * ((frame[y*lumaStride + x] & 0xFF) - 16) + 128;
+				int u = (frame[offsets[1] + c] & 0xFF) - 128;
+				int v = (frame[offsets[2] + c] & 0xFF) - 128;
+				rgb[y*width + x] = clamp((l + 409*v) >> 8) << 16 | clamp((l - 100*u - 208*v) >> 8) << 8 | clamp((l + 516*u) >> 8);
+			}
+		}
+	}
+
+	protected static int toY(int r, int g, int b) {
+
+		return ((66*r + 129*g + 25*b + 128) >> 8) + 16;
+	}
+
+	protected static int toU(int r, int g, int b) {
+
+		return ((-38*r - 74*g + 112*b + 128) >> 8) + 128;
+	}
+
+	protected static int toV(int r, int g, int b) {
+
+		return ((112*r - 94*g - 18*b + 128) >> 8) + 128;
+	}
+
+	protected static int clamp(int c) {
+
+		return c < 0 ? 0 : c > 255 ? 255 : c;
+	}
+}
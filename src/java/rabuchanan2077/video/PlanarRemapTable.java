@@ -0,0 +1,190 @@
+package rabuchanan2077.video;
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+Pixel mapping table for planar YUV 4:2:0 camera frames, which it composites into a planar I420 output frame without
+converting colors: a luma table maps the Y plane at full resolution, and a chroma table, built from the same mapper
+table, maps both chroma planes at half resolution in each direction, reading U and V with the same sample indices.
+Each output chroma sample takes the camera chroma sample under the first output pixel of its 2x2 block that the camera
+maps, in raster order; bilinear pixels blend the four chroma samples around their position at chroma resolution.
+Where two cameras' regions meet inside a block, the later one's chroma wins, as it does for overlapping pixels.
+It counts mapped pixels as its luma table does. Remapping first reads the frame onto the heap with one bulk copy,
+so that the plane tables index an array rather than the frame's buffer; compositors remap one frame at a time.
+*/
+class PlanarRemapTable implements FrameTable {
+
+	protected final RemapTable luma_;
+	protected final RemapTable chroma_;
+	protected final int[] cameraOffsets_; // first Y, U and V sample of camera frames
+	protected final int cameraStep_; // bytes between chroma samples
+	protected final int[] outputOffsets_; // first Y, U and V sample of output frames
+	protected byte[] frame_ = new byte[0]; // the frame being remapped
+
+	protected PlanarRemapTable(RemapTable luma, RemapTable chroma, int[] cameraOffsets, int cameraStep, int[] outputOffsets) {
+
+		luma_ = luma;
+		chroma_ = chroma;
+		cameraOffsets_ = cameraOffsets;
+		cameraStep_ = cameraStep;
+		outputOffsets_ = outputOffsets;
+	}
+
+	/**
+	Compiles the tables from maps as for RemapTable.compile(), with camera indices into frames of the given size and format
+	and output indices into an output image of the given size, each table reordered by the tile keys of its output pixels
+	unless tileKeys is null.
+	*/
+	public static PlanarRemapTable compile(int[] map, int[] bilinear, int cameraWidth, int cameraHeight, PixelFormat format,
+	                                       int outputWidth, int outputHeight, int minSpan, IntToLongFunction tileKeys) {
+
+		int cameraLumaStride = PixelFormat.getLumaStride(cameraWidth);
+		int cameraChromaStride = format.getChromaStride(cameraWidth) / format.getChromaStep(); // in samples
+		int chromaWidth = PixelFormat.getChromaWidth(cameraWidth);
+		int chromaHeight = PixelFormat.getChromaHeight(cameraHeight);
+		int outputLumaStride = PixelFormat.getLumaStride(outputWidth);
+		int outputChromaStride = PixelFormat.I420.getChromaStride(outputWidth);
+		int outputChromaWidth = PixelFormat.getChromaWidth(outputWidth);
+
+		// luma samples are the pixels themselves, at the planes' strides
+		int[] lumaMap = new int[map.length];
+		for (int i = 0; i < map.length; i += 2) {
+			lumaMap[i+0] = restride(map[i+0], outputWidth, outputLumaStride);
+			lumaMap[i+1] = restride(map[i+1], cameraWidth, cameraLumaStride);
+		}
+		int[] lumaBilinear = bilinear.clone();
+		for (int i = 0; i < bilinear.length; i += 3) {
+			lumaBilinear[i+0] = restride(bilinear[i+0], outputWidth, outputLumaStride);
+			lumaBilinear[i+1] = restride(bilinear[i+1], cameraWidth, cameraLumaStride);
+		}
+
+		// chroma: per output block, the sample of its first pixel the camera maps, ranked 0 to 3 in raster order
+		int blocks = outputChromaWidth * PixelFormat.getChromaHeight(outputHeight);
+		byte[] rank = new byte[blocks];
+		Arrays.fill(rank, (byte)4);
+		int[] index = new int[blocks];
+		int[] weights = new int[blocks];
+		boolean[] blended = new boolean[blocks];
+		for (int i = 0; i < map.length; i += 2) {
+			int x = map[i] % outputWidth;
+			int y = map[i] / outputWidth;
+			int b = (y >> 1)*outputChromaWidth + (x >> 1);
+			int r = (y & 1)*2 + (x & 1);
+			if (r < rank[b]) {
+				rank[b] = (byte)r;
+				index[b] = (map[i+1] / cameraWidth >> 1)*cameraChromaStride + (map[i+1] % cameraWidth >> 1);
+				blended[b] = false;
+			}
+		}
+		int[] sample = new int[2];
+		for (int i = 0; i < bilinear.length; i += 3) {
+			int x = bilinear[i] % outputWidth;
+			int y = bilinear[i] / outputWidth;
+			int b = (y >> 1)*outputChromaWidth + (x >> 1);
+			int r = (y & 1)*2 + (x & 1);
+			if (r < rank[b]) {
+				// the luma position, from the weights of its right and lower neighbors, at chroma resolution,
+				// where each sample sits midway between the 2x2 luma samples it covers
+				int w = bilinear[i+2];
+				double cx = bilinear[i+1] % cameraWidth + (((w >>> 8) & 0xFF) + (w >>> 24)) / 256.;
+				double cy = bilinear[i+1] / cameraWidth + (((w >>> 16) & 0xFF) + (w >>> 24)) / 256.;
+				RemapTable.getBilinearSample((cx - 0.5) / 2, (cy - 0.5) / 2, chromaWidth, chromaHeight, sample, 0);
+				rank[b] = (byte)r;
+				index[b] = restride(sample[0], chromaWidth, cameraChromaStride);
+				weights[b] = sample[1];
+				blended[b] = true;
+			}
+		}
+		int nearest = 0;
+		for (int b = 0; b < blocks; b++) {
+			nearest += rank[b] < 4 && !blended[b] ? 1 : 0;
+		}
+		int[] chromaMap = new int[2*nearest];
+		int[] chromaBilinear = new int[3*(blocks - nearest)];
+		int n = 0;
+		int m = 0;
+		for (int b = 0; b < blocks; b++) {
+			if (rank[b] == 4) {
+				continue;
+			}
+			int o = restride(b, outputChromaWidth, outputChromaStride);
+			if (blended[b]) {
+				chromaBilinear[m++] = o;
+				chromaBilinear[m++] = index[b];
+				chromaBilinear[m++] = weights[b];
+			}
+			else {
+				chromaMap[n++] = o;
+				chromaMap[n++] = index[b];
+			}
+		}
+
+		RemapTable luma = RemapTable.compile(lumaMap, lumaBilinear, cameraLumaStride, minSpan);
+		RemapTable chroma = RemapTable.compile(chromaMap, Arrays.copyOf(chromaBilinear, m), cameraChromaStride, minSpan);
+		if (tileKeys != null) {
+			luma = luma.reorder(o -> tileKeys.applyAsLong(o / outputLumaStride * outputWidth + o % outputLumaStride));
+			chroma = chroma.reorder(o -> tileKeys.applyAsLong(2*(o / outputChromaStride) * outputWidth + 2*(o % outputChromaStride)));
+		}
+		return new PlanarRemapTable(luma, chroma, format.getPlaneOffsets(cameraWidth, cameraHeight), format.getChromaStep(),
+		                            PixelFormat.I420.getPlaneOffsets(outputWidth, outputHeight));
+	}
+
+	protected static int restride(int index, int width, int stride) {
+
+		return index / width * stride + index % width;
+	}
+
+	/**
+	Returns the table with both planes' tables applied in chunks on the pool, as ParallelRemapTable does.
+	*/
+	public PlanarRemapTable parallelize(int chunkPixels, ForkJoinPool pool) {
+
+		return new PlanarRemapTable(new ParallelRemapTable(luma_, chunkPixels, pool), new ParallelRemapTable(chroma_, chunkPixels, pool),
+		                            cameraOffsets_, cameraStep_, outputOffsets_);
+	}
+
+	/**
+	Copies every mapped sample of a planar camera frame into the I420 output frame.
+	*/
+	public void remap(ByteBuffer frame, byte[] output) {
+
+		if (frame_.length != frame.limit()) {
+			frame_ = new byte[frame.limit()];
+		}
+		frame.get(0, frame_);
+		luma_.remap(frame_, cameraOffsets_[0], 1, output, outputOffsets_[0]);
+		chroma_.remap(frame_, cameraOffsets_[1], cameraStep_, output, outputOffsets_[1]);
+		chroma_.remap(frame_, cameraOffsets_[2], cameraStep_, output, outputOffsets_[2]);
+	}
+
+	/**
+	Puts the background back on every output sample the table writes.
+	*/
+	public void restore(byte[] background, byte[] output) {
+
+		luma_.restore(background, output, outputOffsets_[0]);
+		chroma_.restore(background, output, outputOffsets_[1]);
+		chroma_.restore(background, output, outputOffsets_[2]);
+	}
+
+	@Override
+	public int getMappedPixels() {
+
+		return luma_.getMappedPixels();
+	}
+
+	@Override
+	public long getSize() {
+
+		return luma_.getSize() + chroma_.getSize();
+	}
+
+	@Override
+	public String toString() {
+
+		return "luma " + luma_ + ", chroma " + chroma_;
+	}
+}
@@ -0,0 +1,223 @@
+package rabuchanan2077.video;
+
+import java.util.*;
+import java.util.logging.*;
+
+/**
+Keeps the cameras' frames processed in time when the machine can't keep up with all of them at full quality.
+Every interval, it compares each camera's mean time to map and write a frame with a deadline, and counts the frames
+lost upstream, which appsinks and camera queues drop silently once processing falls behind. While any camera is late,
+it degrades one step further per interval, along a ladder that gives up the least wanted work first: the panorama
+mappers of each camera that has them, then each camera's table for one at half density, then every other frame of
+each camera, all in order of camera priority, lowest first, so that the birdseye view keeps its frame rate longest.
+Once every camera has been well within the deadline for some intervals in a row, it takes back one step at a time;
+a step that has to be taken again right after doubles the intervals to wait, until the cameras are back at full quality.
+Every step either way is logged with the cameras' timings that led to it. Nothing is counted until every camera has
+composited frames for an interval, past the first frames, which are slow while tables are built and code compiled.
+*/
+class QualityController {
+
+	private static final Logger logger_ = Logger.getLogger(QualityController.class.getName());
+
+	/**
+	How much of its work a camera does, each level including the ones before.
+	*/
+	public enum Level {
+		FULL("full quality"),
+		NO_PANORAMA("panorama mappers skipped"),
+		HALF_DENSITY("half-density table"),
+		DROPPING("every other frame dropped");
+
+		public final String description_;
+
+		Level(String description) {
+
+			description_ = description;
+		}
+	}
+
+	/**
+	A camera as the controller sees it.
+	*/
+	public interface Camera {
+
+		public String getName();
+
+		public Metrics getMetrics();
+
+		/**
+		Lower priorities are degraded first.
+		*/
+		public int getPriority();
+
+		public boolean hasPanorama();
+
+		public void setLevel(Level level);
+	}
+
+	protected final java.util.List<Camera> cameras_;
+	protected final long deadline_; // ns per frame
+	protected final double headroom_; // fraction of the deadline cameras must stay under to recover
+	protected final double dropFraction_; // fraction of lost frames that counts as late
+	protected final int recoverIntervals_;
+
+	// the ladder, and how far down it the cameras are; guarded by this, as reloads rebuild the ladder
+	protected final java.util.List<Step> steps_ = new ArrayList<>();
+	protected int applied_ = 0;
+	protected int healthy_ = 0;
+	protected int recoverAfter_; // intervals to wait, recoverIntervals_ unless backed off
+	protected int sinceRecovery_ = Integer.MAX_VALUE;
+	protected boolean started_ = false; // once every camera has composited frames in an interval, after the slow first ones
+	protected final long[] lastFrames_;
+	protected final long[] lastDropped_;
+	protected final long[] lastCount_;
+	protected final long[] lastSum_;
+
+	public QualityController(Collection<? extends Camera> cameras, double deadlineMillis, double headroom, double dropFraction, int recoverIntervals) {
+
+		cameras_ = new ArrayList<>(cameras);
+		deadline_ = Math.round(deadlineMillis * 1e6);
+		headroom_ = headroom;
+		dropFraction_ = dropFraction;
+		recoverIntervals_ = recoverIntervals;
+		recoverAfter_ = recoverIntervals;
+		lastFrames_ = new long[cameras_.size()];
+		lastDropped_ = new long[cameras_.size()];
+		lastCount_ = new long[cameras_.size()];
+		lastSum_ = new long[cameras_.size()];
+		buildLadder();
+	}
+
+	/**
+	Builds the ladder again, after a reload may have added or removed a camera's panorama mappers, keeping the cameras
+	as many steps down it as they were, and setting each to its level on the new ladder.
+	*/
+	public synchronized void rebuild() {
+
+		steps_.clear();
+		buildLadder();
+		applied_ = Math.min(applied_, steps_.size());
+		for (Camera camera : cameras_) {
+			camera.setLevel(getLevel(camera));
+		}
+	}
+
+	protected void buildLadder() {
+
+		java.util.List<Camera> byPriority = new ArrayList<>(cameras_);
+		byPriority.sort(Comparator.comparingInt(Camera::getPriority)); // stable, so equal priorities keep configured order
+		for (Level level : new Level[] {Level.NO_PANORAMA, Level.HALF_DENSITY, Level.DROPPING}) {
+			for (Camera camera : byPriority) {
+				if (level != Level.NO_PANORAMA || camera.hasPanorama()) {
+					steps_.add(new Step(camera, level));
+				}
+			}
+		}
+	}
+
+	/**
+	Reads the cameras' metrics since the last call and takes a step down the ladder or back up it if called for.
+	*/
+	public synchronized void evaluate() {
+
+		boolean late = false;
+		boolean relaxed = true;
+		boolean started = true;
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < cameras_.size(); i++) {
+			Metrics metrics = cameras_.get(i).getMetrics();
+			long frames = metrics.getFrames();
+			long dropped = metrics.getDropped();
+			long count = metrics.getHistogram(Metrics.Stage.WRITE).getCount();
+			long sum = metrics.getHistogram(Metrics.Stage.MAP).getSum() + metrics.getHistogram(Metrics.Stage.WRITE).getSum();
+			long received = frames - lastFrames_[i];
+			long lost = dropped - lastDropped_[i];
+			long processed = count - lastCount_[i];
+			long mean = processed > 0 ? (sum - lastSum_[i]) / processed : 0;
+			lastFrames_[i] = frames;
+			lastDropped_[i] = dropped;
+			lastCount_[i] = count;
+			lastSum_[i] = sum;
+
+			started &= processed > 0;
+			boolean cameraLate = mean > deadline_ || lost > dropFraction_ * (received + lost);
+			late |= cameraLate;
+			relaxed &= mean < headroom_ * deadline_ && lost == 0;
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append(cameras_.get(i).getName()).append(String.format(" %.2fms", mean/1e6));
+			if (lost > 0) {
+				sb.append(" lost ").append(lost);
+			}
+			if (cameraLate) {
+				sb.append(" late");
+			}
+		}
+
+		if (!started_) {
+			started_ = started; // the interval it starts with only sets where the next one counts from
+			return;
+		}
+		sinceRecovery_ = Math.max(sinceRecovery_, sinceRecovery_ + 1);
+		if (late) {
+			healthy_ = 0;
+			if (sinceRecovery_ <= recoverAfter_) { // the last step taken back was too soon
+				recoverAfter_ = Math.min(2*recoverAfter_, 64*recoverIntervals_);
+			}
+			if (applied_ < steps_.size()) {
+				Step step = steps_.get(applied_++);
+				step.camera_.setLevel(step.level_);
+				logger_.warning(String.format("QoS: over the %.2fms deadline (%s), %s: %s.", deadline_/1e6, sb, step.camera_.getName(), step.level_.description_));
+			}
+		}
+		else if (relaxed && applied_ > 0) {
+			if (++healthy_ >= recoverAfter_) {
+				healthy_ = 0;
+				sinceRecovery_ = 0;
+				if (applied_ == 1) {
+					recoverAfter_ = recoverIntervals_;
+				}
+				Step step = steps_.get(--applied_);
+				Level level = getLevel(step.camera_);
+				step.camera_.setLevel(level);
+				logger_.info(String.format("QoS: within the %.2fms deadline (%s), %s: %s.", deadline_/1e6, sb, step.camera_.getName(), level.description_));
+			}
+		}
+		else {
+			healthy_ = 0;
+		}
+	}
+
+	/**
+	Returns the level of the camera with the steps applied.
+	*/
+	protected Level getLevel(Camera camera) {
+
+		Level level = Level.FULL;
+		for (int i = 0; i < applied_; i++) {
+			if (steps_.get(i).camera_ == camera) {
+				level = steps_.get(i).level_;
+			}
+		}
+		return level;
+	}
+
+	@Override
+	public synchronized String toString() {
+
+		return "qos step " + applied_ + " of " + steps_.size();
+	}
+
+	protected static class Step {
+
+		protected final Camera camera_;
+		protected final Level level_;
+
+		protected Step(Camera camera, Level level) {
+
+			camera_ = camera;
+			level_ = level;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package rabuchanan2077.video;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+Frames replayed from a file of raw frames, back to back in the camera format the mapper asks Gstreamer for:
+BGRx with little-endian byte-order, xRGB with big-endian, or the planar pixel-format. Such a file can be recorded with
+  gst-launch-1.0 ... ! videoconvert ! video/x-raw,format=BGRx ! filesink location=camera.raw
+The file is memory-mapped, in segments of whole frames below the 2GB limit of a mapping, and frames are handed out
+as slices of it, without copying. Frames come at source-fps, or as fast as they are taken with 0, looping at the end unless
+source-loop is false.
+*/
+class RawFileFrameSource extends FrameSource {
+
+	protected final Path file_;
+	protected final int width_;
+	protected final int height_;
+	protected final boolean loop_;
+	protected final int frameBytes_;
+	protected final int framesPerSegment_;
+	protected final long frameCount_;
+	protected MappedByteBuffer[] segments_ = null;
+	protected long index_ = 0;
+
+	public RawFileFrameSource(String name, Properties properties, PixelFormat format) throws IOException {
+
+		super(name, Double.parseDouble(properties.getProperty(name + ".source-fps", "30")));
+
+		String file = properties.getProperty(name + ".source-file");
+		if (file == null) {
+			throw new IllegalArgumentException("No " + name + ".source-file configured.");
+		}
+		file_ = Paths.get(file.trim());
+		int[] size = getSize(properties, name + ".source-size", "1296x972");
+		width_ = size[0];
+		height_ = size[1];
+		loop_ = Boolean.parseBoolean(properties.getProperty(name + ".source-loop", "true").trim());
+		frameBytes_ = format.getFrameBytes(width_, height_);
+		framesPerSegment_ = Math.max(1, Integer.MAX_VALUE / frameBytes_);
+		frameCount_ = Files.size(file_) / frameBytes_;
+		if (frameCount_ == 0) {
+			throw new IOException(file_ + " is shorter than one " + width_ + "x" + height_ + " frame.");
+		}
+	}
+
+	@Override
+	protected void open() throws IOException {
+
+		try (FileChannel channel = FileChannel.open(file_, StandardOpenOption.READ)) {
+			segments_ = new MappedByteBuffer[(int)((frameCount_ + framesPerSegment_ - 1) / framesPerSegment_)];
+			for (int s = 0; s < segments_.length; s++) {
+				long first = (long)s * framesPerSegment_;
+				long frames = Math.min(framesPerSegment_, frameCount_ - first);
+				segments_[s] = channel.map(FileChannel.MapMode.READ_ONLY, first * frameBytes_, frames * frameBytes_);
+			}
+		}
+	}
+
+	@Override
+	protected Frame next() throws InterruptedException {
+
+		if (index_ == frameCount_) {
+			if (!loop_) {
+				return null;
+			}
+			index_ = 0;
+		}
+		long pts = awaitFrame();
+		ByteBuffer pixels = segments_[(int)(index_ / framesPerSegment_)].slice((int)(index_ % framesPerSegment_) * frameBytes_, frameBytes_);
+		index_++;
+		return new BufferFrame(pixels, width_, height_, pts, period_ > 0 ? period_ : -1);
+	}
+}
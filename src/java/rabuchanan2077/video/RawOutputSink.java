@@ -0,0 +1,86 @@
+package rabuchanan2077.video;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.logging.*;
+
+/**
+Sink writing output frames back to back, as raw BGRx (xRGB with big-endian byte-order), or I420 with a planar
+pixel-format, into its file, which may be a named pipe read by another process, for instance
+  gst-launch-1.0 filesrc location=... ! rawvideoparse width=... height=... format=bgrx ! ...
+The file is opened by the writer thread, which for a pipe waits there until a reader opens it; a reader that goes away
+costs the frames written meanwhile, and the pipe is opened again for the next one.
+*/
+class RawOutputSink extends OutputSink {
+
+	private static final Logger logger_ = Logger.getLogger(RawOutputSink.class.getName());
+
+	protected final String file_;
+	protected final ByteBuffer buffer_;
+	protected final IntBuffer pixels_;
+	protected FileChannel channel_ = null;
+
+	public RawOutputSink(String name, String prefix, Properties properties, int width, int height, ByteOrder byteOrder, PixelFormat format) {
+
+		super(name, prefix, properties, width, height, byteOrder, format, 2);
+
+		String file = properties.getProperty(prefix + "file");
+		if (file == null) {
+			throw new IllegalArgumentException("No " + prefix + "file configured.");
+		}
+		file_ = file.trim();
+		buffer_ = ByteBuffer.allocateDirect(format.getFrameBytes(width, height)).order(byteOrder);
+		pixels_ = buffer_.asIntBuffer();
+	}
+
+	@Override
+	protected boolean write(IntBuffer pixels, long pts) throws IOException {
+
+		pixels_.put(0, pixels, 0, width_ * height_);
+		return writeBuffer();
+	}
+
+	@Override
+	protected boolean write(byte[] frame, long pts) throws IOException {
+
+		buffer_.clear();
+		buffer_.put(frame);
+		return writeBuffer();
+	}
+
+	protected boolean writeBuffer() throws IOException {
+
+		if (channel_ == null) {
+			channel_ = new FileOutputStream(file_).getChannel();
+		}
+		buffer_.clear();
+		try {
+			while (buffer_.hasRemaining()) {
+				channel_.write(buffer_);
+			}
+		}
+		catch (IOException ex) {
+			logger_.warning(name_ + ": " + file_ + " closed, " + ex);
+			metrics_.countDropped(1);
+			close();
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	protected void close() {
+
+		if (channel_ != null) {
+			try {
+				channel_.close();
+			}
+			catch (IOException ex) {
+				// already gone
+			}
+			channel_ = null;
+		}
+	}
+}
@@ -0,0 +1,845 @@
+package rabuchanan2077.video;
+
+import java.nio.*;
+import java.util.*;
+import java.util.function.*;
+import java.util.logging.*;
+import java.util.stream.*;
+
+/**
+Compiled form of a camera's pixel mapping table, as used on the per-frame path.
+Where consecutive output pixels map to consecutive camera pixels, the run is stored once as a span
+and copied with a single bulk read from the camera frame. Other runs of consecutive output pixels
+store only their camera indices, and isolated pixels stay as (output index, camera index) pairs.
+Pixels of bilinear mappers are blended from four camera pixels with precomputed 8-bit weights,
+using integer arithmetic on all channels of a packed pixel at once.
+Pairs and bilinear samples are kept as parallel arrays rather than interleaved, so a vector kernel
+(see vectorize()) can load each of them as lanes directly.
+*/
+class RemapTable implements FrameTable {
+
+	private static final Logger logger_ = Logger.getLogger(RemapTable.class.getName());
+
+	protected static final String VECTOR_TABLE_CLASS = "rabuchanan2077.video.VectorRemapTable";
+
+	// output runs shorter than this are cheaper as pairs
+	protected static final int MIN_RUN = 4;
+
+	protected final int[] spans_; // {outputStart, cameraStart, length}*
+	protected final int[] runs_; // {outputStart, length}*, camera indices in runIndex_
+	protected final int[] runIndex_; // cameraIndex*
+	protected final int[] pairOutput_; // outputIndex*
+	protected final int[] pairIndex_; // cameraIndex*, one per pairOutput_ entry
+	protected final int[] bilinearRuns_; // {outputStart, length}*, samples in bilinearIndex_ and bilinearWeights_
+	protected final int[] bilinearIndex_; // cameraIndex*, see getBilinearSample()
+	protected final int[] bilinearWeights_; // weights*, one per bilinearIndex_ entry
+	protected final int cameraWidth_;
+	protected final int mappedPixels_;
+
+	protected RemapTable(int[] spans, int[] runs, int[] runIndex, int[] pairOutput, int[] pairIndex,
+	                     int[] bilinearRuns, int[] bilinearIndex, int[] bilinearWeights, int cameraWidth, int mappedPixels) {
+
+		spans_ = spans;
+		runs_ = runs;
+		runIndex_ = runIndex;
+		pairOutput_ = pairOutput;
+		pairIndex_ = pairIndex;
+		bilinearRuns_ = bilinearRuns;
+		bilinearIndex_ = bilinearIndex;
+		bilinearWeights_ = bilinearWeights;
+		cameraWidth_ = cameraWidth;
+		mappedPixels_ = mappedPixels;
+	}
+
+	/**
+	Shares the sections of another table, for kernels that only change how a table is applied.
+	*/
+	protected RemapTable(RemapTable table) {
+
+		this(table.spans_, table.runs_, table.runIndex_, table.pairOutput_, table.pairIndex_,
+		     table.bilinearRuns_, table.bilinearIndex_, table.bilinearWeights_, table.cameraWidth_, table.mappedPixels_);
+	}
+
+	/**
+	Compiles a map of {outputIndex, cameraIndex} pairs and one of bilinear {outputIndex, cameraIndex, weights} triples,
+	both sorted by output index, for camera frames of the given width.
+	Contiguous camera runs shorter than minSpan are not worth a bulk read and are left in output runs; 0 disables spans.
+	*/
+	public static RemapTable compile(int[] map, int[] bilinear, int cameraWidth, int minSpan) {
+
+		int[] spans = new int[minSpan > 0 ? 3*(map.length/2/minSpan) : 0];
+		int[] runs = new int[map.length/MIN_RUN];
+		int[] runIndex = new int[map.length/2];
+		int[] pairs = new int[map.length];
+		int s = 0;
+		int r = 0;
+		int ri = 0;
+		int p = 0;
+		for (int i = 0; i < map.length; ) {
+			// maximal run of consecutive output pixels
+			int j = i + 2;
+			while (j < map.length && map[j] == map[j-2]+1) {
+				j += 2;
+			}
+			// split it around contiguous camera runs long enough to be spans
+			int segment = i;
+			for (int k = i; k < j; ) {
+				int l = k + 2;
+				while (l < j && map[l+1] == map[l-1]+1) {
+					l += 2;
+				}
+				if (minSpan > 0 && (l-k)/2 >= minSpan) {
+					if (segment < k) {
+						if ((k-segment)/2 >= MIN_RUN) {
+							runs[r++] = map[segment];
+							runs[r++] = (k-segment)/2;
+							for (int m = segment; m < k; m += 2) {
+								runIndex[ri++] = map[m+1];
+							}
+						}
+						else {
+							System.arraycopy(map, segment, pairs, p, k-segment);
+							p += k-segment;
+						}
+					}
+					spans[s++] = map[k];
+					spans[s++] = map[k+1];
+					spans[s++] = (l-k)/2;
+					segment = l;
+				}
+				k = l;
+			}
+			if (segment < j) {
+				if ((j-segment)/2 >= MIN_RUN) {
+					runs[r++] = map[segment];
+					runs[r++] = (j-segment)/2;
+					for (int m = segment; m < j; m += 2) {
+						runIndex[ri++] = map[m+1];
+					}
+				}
+				else {
+					System.arraycopy(map, segment, pairs, p, j-segment);
+					p += j-segment;
+				}
+			}
+			i = j;
+		}
+		// bilinear samples are stored in runs of consecutive output pixels too, however short
+		int[] bilinearRuns = new int[2*(bilinear.length/3)];
+		int[] bilinearIndex = new int[bilinear.length/3];
+		int[] bilinearWeights = new int[bilinear.length/3];
+		int br = 0;
+		for (int i = 0, k = 0; i < bilinear.length; i += 3, k++) {
+			if (br == 0 || bilinear[i] != bilinearRuns[br-2] + bilinearRuns[br-1]) {
+				bilinearRuns[br++] = bilinear[i];
+				bilinearRuns[br++] = 0;
+			}
+			bilinearRuns[br-1]++;
+			bilinearIndex[k] = bilinear[i+1];
+			bilinearWeights[k] = bilinear[i+2];
+		}
+		int[] pairOutput = new int[p/2];
+		int[] pairIndex = new int[p/2];
+		for (int i = 0; i < p/2; i++) {
+			pairOutput[i] = pairs[2*i+0];
+			pairIndex[i] = pairs[2*i+1];
+		}
+		return new RemapTable(Arrays.copyOf(spans, s), Arrays.copyOf(runs, r), Arrays.copyOf(runIndex, ri), pairOutput, pairIndex,
+		                      Arrays.copyOf(bilinearRuns, br), bilinearIndex, bilinearWeights, cameraWidth, map.length/2 + bilinear.length/3);
+	}
+
+	/**
+	Returns the table with a kernel that uses the incubating Vector API (jdk.incubator.vector), or the table itself
+	if that module isn't loaded (it needs --add-modules jdk.incubator.vector) or the vector kernel's output for a test frame
+	differs in any pixel from this scalar kernel's. The returned table holds a frame buffer of its own, so unlike a scalar
+	table it must not remap two frames at once.
+	*/
+	public RemapTable vectorize(int cameraHeight) {
+
+		RemapTable vector = newVectorTable(this, null);
+		return vector != null && matches(vector, cameraHeight) ? vector : this;
+	}
+
+	/**
+	Returns a vector kernel table sharing the sections of the table, or null if the kernel is unavailable.
+	Unless frameOwner is null, the new table reads camera frames from the buffer of that vector kernel table,
+	which must cover it, and leaves loading frames to frameOwner.load().
+	*/
+	protected static RemapTable newVectorTable(RemapTable table, RemapTable frameOwner) {
+
+		if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			logger_.warning("The vector remap kernel needs --add-modules jdk.incubator.vector, using the scalar kernel.");
+			return null;
+		}
+		try {
+			return (RemapTable)Class.forName(VECTOR_TABLE_CLASS).getDeclaredConstructor(RemapTable.class, RemapTable.class).newInstance(table, frameOwner);
+		}
+		catch (ReflectiveOperationException | LinkageError ex) {
+			logger_.log(Level.WARNING, "The vector remap kernel is unavailable, using the scalar kernel.", ex);
+			return null;
+		}
+	}
+
+	/**
+	True if another kernel for the same table produces bit-identical output to this one on a noise frame,
+	through both the remap and the gather paths.
+	*/
+	protected boolean matches(RemapTable other, int cameraHeight) {
+
+		IntBuffer frame = IntBuffer.allocate(cameraWidth_*cameraHeight);
+		Random random = new Random(cameraWidth_*31 + cameraHeight);
+		for (int i = 0; i < frame.capacity(); i++) {
+			frame.put(i, random.nextInt());
+		}
+		int outputSize = getOutputSize();
+		int[] expected = new int[outputSize];
+		int[] actual = new int[outputSize];
+		remap(frame, expected);
+		other.remap(frame, actual);
+		int[] expectedRegion = new int[mappedPixels_];
+		int[] actualRegion = new int[mappedPixels_];
+		gather(frame, expectedRegion);
+		other.gather(frame, actualRegion);
+		if (!Arrays.equals(expected, actual) || !Arrays.equals(expectedRegion, actualRegion)) {
+			logger_.severe("The vector remap kernel's output differs from the scalar kernel's, using the scalar kernel.");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	Splits the table into consecutive chunks of at most chunkPixels mapped pixels each, cutting spans and runs where needed.
+	The chunks' region buffers, laid end to end, are this table's: chunk i gathers into the region slice that starts
+	at the sum of the mapped pixels of the chunks before it.
+	*/
+	public RemapTable[] partition(int chunkPixels) {
+
+		java.util.List<RemapTable> chunks = new ArrayList<>();
+		int s = 0, sOffset = 0;
+		int r = 0, rOffset = 0, ri = 0;
+		int p = 0;
+		int b = 0, bOffset = 0, bi = 0;
+		while (s < spans_.length || r < runs_.length || p < pairIndex_.length || b < bilinearRuns_.length) {
+			int budget = chunkPixels;
+			IntStream.Builder spans = IntStream.builder();
+			IntStream.Builder runs = IntStream.builder();
+			IntStream.Builder bilinearRuns = IntStream.builder();
+			int ri0 = ri;
+			int p0 = p;
+			int bi0 = bi;
+			for ( ; budget > 0 && s < spans_.length; ) {
+				int n = Math.min(budget, spans_[s+2] - sOffset);
+				spans.add(spans_[s+0] + sOffset).add(spans_[s+1] + sOffset).add(n);
+				budget -= n;
+				sOffset += n;
+				if (sOffset == spans_[s+2]) {
+					s += 3;
+					sOffset = 0;
+				}
+			}
+			for ( ; budget > 0 && r < runs_.length; ) {
+				int n = Math.min(budget, runs_[r+1] - rOffset);
+				runs.add(runs_[r+0] + rOffset).add(n);
+				budget -= n;
+				rOffset += n;
+				ri += n;
+				if (rOffset == runs_[r+1]) {
+					r += 2;
+					rOffset = 0;
+				}
+			}
+			if (budget > 0 && p < pairIndex_.length) {
+				int n = Math.min(budget, pairIndex_.length - p);
+				budget -= n;
+				p += n;
+			}
+			for ( ; budget > 0 && b < bilinearRuns_.length; ) {
+				int n = Math.min(budget, bilinearRuns_[b+1] - bOffset);
+				bilinearRuns.add(bilinearRuns_[b+0] + bOffset).add(n);
+				budget -= n;
+				bOffset += n;
+				bi += n;
+				if (bOffset == bilinearRuns_[b+1]) {
+					b += 2;
+					bOffset = 0;
+				}
+			}
+			chunks.add(new RemapTable(spans.build().toArray(), runs.build().toArray(), Arrays.copyOfRange(runIndex_, ri0, ri),
+			                          Arrays.copyOfRange(pairOutput_, p0, p), Arrays.copyOfRange(pairIndex_, p0, p), bilinearRuns.build().toArray(),
+			                          Arrays.copyOfRange(bilinearIndex_, bi0, bi), Arrays.copyOfRange(bilinearWeights_, bi0, bi),
+			                          cameraWidth_, chunkPixels - budget));
+		}
+		return chunks.toArray(new RemapTable[chunks.size()]);
+	}
+
+	/**
+	Returns the table with its runs, pairs and bilinear runs in the order of the tile keys of their output pixels,
+	as from LutOrder.getTileKey(), cutting runs where the key changes and keeping table order among entries of the same key.
+	Spans stay as they are: they read the camera frame sequentially anyway. The table writes the same output as this one.
+	*/
+	public RemapTable reorder(IntToLongFunction tileKey) {
+
+		int[][] runs = reorderRuns(runs_, new int[][] {runIndex_}, tileKey);
+		int[][] bilinearRuns = reorderRuns(bilinearRuns_, new int[][] {bilinearIndex_, bilinearWeights_}, tileKey);
+		long[] keys = new long[pairOutput_.length];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = tileKey.applyAsLong(pairOutput_[i]);
+		}
+		int[] order = sortByKey(keys, keys.length);
+		int[] pairOutput = new int[order.length];
+		int[] pairIndex = new int[order.length];
+		for (int i = 0; i < order.length; i++) {
+			pairOutput[i] = pairOutput_[order[i]];
+			pairIndex[i] = pairIndex_[order[i]];
+		}
+		return new RemapTable(spans_, runs[0], runs[1], pairOutput, pairIndex, bilinearRuns[0], bilinearRuns[1], bilinearRuns[2],
+		                      cameraWidth_, mappedPixels_);
+	}
+
+	/**
+	Cuts {outputStart, length}* runs into pieces of a single tile key each and sorts them by it, returning the new runs
+	followed by the per-pixel sample arrays, in the new order.
+	*/
+	protected static int[][] reorderRuns(int[] runs, int[][] samples, IntToLongFunction tileKey) {
+
+		int pixels = samples[0].length;
+		long[] keys = new long[pixels];
+		int[] starts = new int[pixels];
+		int[] lengths = new int[pixels];
+		int[] offsets = new int[pixels];
+		int n = 0;
+		for (int i = 0, k = 0; i < runs.length; i += 2) {
+			int o = runs[i+0];
+			int end = o + runs[i+1];
+			while (o < end) {
+				long key = tileKey.applyAsLong(o);
+				int length = 1;
+				while (o + length < end && tileKey.applyAsLong(o + length) == key) {
+					length++;
+				}
+				keys[n] = key;
+				starts[n] = o;
+				lengths[n] = length;
+				offsets[n] = k;
+				n++;
+				o += length;
+				k += length;
+			}
+		}
+		int[] order = sortByKey(keys, n);
+		int[][] sorted = new int[1 + samples.length][];
+		sorted[0] = new int[2*n];
+		for (int s = 0; s < samples.length; s++) {
+			sorted[1+s] = new int[pixels];
+		}
+		for (int j = 0, k = 0; j < n; j++) {
+			int piece = order[j];
+			sorted[0][2*j+0] = starts[piece];
+			sorted[0][2*j+1] = lengths[piece];
+			for (int s = 0; s < samples.length; s++) {
+				System.arraycopy(samples[s], offsets[piece], sorted[1+s], k, lengths[piece]);
+			}
+			k += lengths[piece];
+		}
+		return sorted;
+	}
+
+	/**
+	Returns the indices of the first n keys in key order, those of equal keys in index order.
+	*/
+	protected static int[] sortByKey(long[] keys, int n) {
+
+		// keys are replaced by their rank among the distinct keys, so that rank and index fit in one long
+		long[] distinct = Arrays.copyOf(keys, n);
+		Arrays.sort(distinct);
+		long[] ranked = new long[n];
+		for (int i = 0; i < n; i++) {
+			ranked[i] = (long)Arrays.binarySearch(distinct, keys[i]) << 32 | i;
+		}
+		Arrays.sort(ranked);
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = (int)ranked[i];
+		}
+		return order;
+	}
+
+	/**
+	One more than the largest output index the table writes.
+	*/
+	protected int getOutputSize() {
+
+		int size = 0;
+		for (int i = 0; i < spans_.length; i += 3) {
+			size = Math.max(size, spans_[i+0] + spans_[i+2]);
+		}
+		for (int i = 0; i < runs_.length; i += 2) {
+			size = Math.max(size, runs_[i+0] + runs_[i+1]);
+		}
+		for (int o : pairOutput_) {
+			size = Math.max(size, o + 1);
+		}
+		for (int i = 0; i < bilinearRuns_.length; i += 2) {
+			size = Math.max(size, bilinearRuns_[i+0] + bilinearRuns_[i+1]);
+		}
+		return size;
+	}
+
+	/**
+	Converts an unrounded camera image position to a bilinear sample: the index of the top left of the four camera pixels
+	around it, and their weights packed as bytes {top left, top right, bottom left, bottom right} from least significant.
+	The weights are fixed point with 256 as one and always sum to exactly 256, so blending divides by a shift; the top left
+	weight is whatever the others leave, which lets it be 256, packed as 0, for a sample right on a camera pixel;
+	on the frame's right and lower edges, a camera pixel takes 255 of it, within a level of exact.
+	Positions outside the frame are clamped to its edge, and the four pixels always lie inside it, which needs a frame
+	at least 2 pixels in each direction.
+	*/
+	public static void getBilinearSample(double x, double y, int width, int height, int[] sample, int offset) {
+
+		x = Math.max(Math.min(x, width-1), 0);
+		y = Math.max(Math.min(y, height-1), 0);
+		int x0 = Math.min((int)x, width-2);
+		int y0 = Math.min((int)y, height-2);
+		double fx = x - x0;
+		double fy = y - y0;
+		
+		int[] w = {
+			(int)Math.round(256*(1-fx)*(1-fy)),
+			(int)Math.round(256*fx*(1-fy)),
+			(int)Math.round(256*(1-fx)*fy),
+			(int)Math.round(256*fx*fy),
+		};
+		// rounding can leave the sum off by one or two; the largest weight absorbs the difference
+		int largest = 0;
+		for (int i = 1; i < 4; i++) {
+			if (w[i] > w[largest]) {
+				largest = i;
+			}
+		}
+		w[largest] += 256 - (w[0] + w[1] + w[2] + w[3]);
+		// only the top left weight may be whole: on the frame's right or lower edge, the other pixel's is one short of it
+		for (int i = 1; i < 4; i++) {
+			if (w[i] > 255) {
+				w[0] += w[i] - 255;
+				w[i] = 255;
+			}
+		}
+		
+		sample[offset+0] = y0*width + x0;
+		sample[offset+1] = (w[0] & 0xFF) | w[1] << 8 | w[2] << 16 | w[3] << 24;
+	}
+
+	/**
+	Blends four packed 32-bit pixels with weights from getBilinearSample(), each 8-bit channel independently.
+	Two channels are processed per multiply, in the 16-bit halves of an int; with weights summing to 256 neither half can
+	carry into the other, and the rounded division by 256 is a shift.
+	*/
+	public static int blend(int p00, int p01, int p10, int p11, int weights) {
+
+		int w01 = (weights >>> 8) & 0xFF;
+		int w10 = (weights >>> 16) & 0xFF;
+		int w11 = weights >>> 24;
+		int w00 = 256 - w01 - w10 - w11;
+		int rb = (p00 & 0x00FF00FF)*w00 + (p01 & 0x00FF00FF)*w01 + (p10 & 0x00FF00FF)*w10 + (p11 & 0x00FF00FF)*w11;
+		int xg = ((p00 >>> 8) & 0x00FF00FF)*w00 + ((p01 >>> 8) & 0x00FF00FF)*w01 + ((p10 >>> 8) & 0x00FF00FF)*w10 + ((p11 >>> 8) & 0x00FF00FF)*w11;
+		rb = ((rb + 0x00800080) >>> 8) & 0x00FF00FF;
+		xg = ((xg + 0x00800080) >>> 8) & 0x00FF00FF;
+		return rb | xg << 8;
+	}
+
+	protected int blend(IntBuffer cameraFramePixels, int i) {
+
+		int c = bilinearIndex_[i];
+		return blend(cameraFramePixels.get(c), cameraFramePixels.get(c+1),
+		             cameraFramePixels.get(c+cameraWidth_), cameraFramePixels.get(c+cameraWidth_+1), bilinearWeights_[i]);
+	}
+
+	/**
+	Prepares for reading a camera frame, for kernels that can't read it in place; the scalar kernel needs nothing.
+	*/
+	protected void load(IntBuffer cameraFramePixels) {
+	}
+
+	/**
+	Copies every mapped pixel of a camera frame into the output image.
+	*/
+	public void remap(IntBuffer cameraFramePixels, int[] outputPixels) {
+
+		for (int i = 0; i < spans_.length; i += 3) {
+			cameraFramePixels.get(spans_[i+1], outputPixels, spans_[i+0], spans_[i+2]);
+		}
+		for (int i = 0, k = 0; i < runs_.length; i += 2) {
+			int o = runs_[i+0];
+			int end = o + runs_[i+1];
+			while (o < end) {
+				outputPixels[o++] = cameraFramePixels.get(runIndex_[k++]);
+			}
+		}
+		for (int i = 0; i < pairIndex_.length; i++) {
+			outputPixels[pairOutput_[i]] = cameraFramePixels.get(pairIndex_[i]);
+		}
+		if (bilinearIndex_.length > 0) {
+			remapBilinear(cameraFramePixels, outputPixels);
+		}
+	}
+
+	// the bilinear loops have methods of their own, so the JIT compiles and profiles them apart from the nearest-pixel loops
+	protected void remapBilinear(IntBuffer cameraFramePixels, int[] outputPixels) {
+
+		for (int i = 0, k = 0; i < bilinearRuns_.length; i += 2) {
+			int o = bilinearRuns_[i+0];
+			int end = o + bilinearRuns_[i+1];
+			while (o < end) {
+				outputPixels[o++] = blend(cameraFramePixels, k++);
+			}
+		}
+	}
+
+	/**
+	Copies every mapped pixel of a camera frame into an output image held in a buffer, such as an off-heap framebuffer.
+	*/
+	public void remap(IntBuffer cameraFramePixels, IntBuffer outputPixels) {
+
+		for (int i = 0; i < spans_.length; i += 3) {
+			outputPixels.put(spans_[i+0], cameraFramePixels, spans_[i+1], spans_[i+2]);
+		}
+		for (int i = 0, k = 0; i < runs_.length; i += 2) {
+			int o = runs_[i+0];
+			int end = o + runs_[i+1];
+			while (o < end) {
+				outputPixels.put(o++, cameraFramePixels.get(runIndex_[k++]));
+			}
+		}
+		for (int i = 0; i < pairIndex_.length; i++) {
+			outputPixels.put(pairOutput_[i], cameraFramePixels.get(pairIndex_[i]));
+		}
+		for (int i = 0, k = 0; i < bilinearRuns_.length; i += 2) {
+			int o = bilinearRuns_[i+0];
+			int end = o + bilinearRuns_[i+1];
+			while (o < end) {
+				outputPixels.put(o++, blend(cameraFramePixels, k++));
+			}
+		}
+	}
+
+	/**
+	Reads the mapped pixels of a camera frame into a compact region buffer of getMappedPixels() entries,
+	in table order, for a later scatter().
+	*/
+	public void gather(IntBuffer cameraFramePixels, int[] region) {
+
+		gather(cameraFramePixels, region, 0);
+	}
+
+	/**
+	Gathers into the region buffer from the offset on.
+	*/
+	public void gather(IntBuffer cameraFramePixels, int[] region, int offset) {
+
+		int k = offset;
+		for (int i = 0; i < spans_.length; i += 3) {
+			cameraFramePixels.get(spans_[i+1], region, k, spans_[i+2]);
+			k += spans_[i+2];
+		}
+		for (int i = 0; i < runIndex_.length; i++) {
+			region[k++] = cameraFramePixels.get(runIndex_[i]);
+		}
+		for (int i = 0; i < pairIndex_.length; i++) {
+			region[k++] = cameraFramePixels.get(pairIndex_[i]);
+		}
+		if (bilinearIndex_.length > 0) {
+			gatherBilinear(cameraFramePixels, region, k);
+		}
+	}
+
+	protected void gatherBilinear(IntBuffer cameraFramePixels, int[] region, int k) {
+
+		for (int i = 0; i < bilinearIndex_.length; i++) {
+			region[k++] = blend(cameraFramePixels, i);
+		}
+	}
+
+	/**
+	Writes a region buffer filled by gather() to its place in the output image.
+	*/
+	public void scatter(int[] region, int[] outputPixels) {
+
+		scatter(region, 0, outputPixels);
+	}
+
+	/**
+	Scatters the part of a region buffer from the offset on, as filled by gather() with the same offset.
+	*/
+	public void scatter(int[] region, int offset, int[] outputPixels) {
+
+		int k = offset;
+		for (int i = 0; i < spans_.length; i += 3) {
+			System.arraycopy(region, k, outputPixels, spans_[i+0], spans_[i+2]);
+			k += spans_[i+2];
+		}
+		for (int i = 0; i < runs_.length; i += 2) {
+			System.arraycopy(region, k, outputPixels, runs_[i+0], runs_[i+1]);
+			k += runs_[i+1];
+		}
+		for (int i = 0; i < pairOutput_.length; i++) {
+			outputPixels[pairOutput_[i]] = region[k++];
+		}
+		for (int i = 0; i < bilinearRuns_.length; i += 2) {
+			System.arraycopy(region, k, outputPixels, bilinearRuns_[i+0], bilinearRuns_[i+1]);
+			k += bilinearRuns_[i+1];
+		}
+	}
+
+	/**
+	Copies every mapped sample of one 8-bit plane of a planar camera frame into a plane of the output, for a table
+	compiled with sample indices and a camera width in samples: the plane's samples start at offset in the frame,
+	step bytes apart (2 for the interleaved chroma of NV12), and the output plane's at outputOffset.
+	Spans of a plane of its own are copied in bulk.
+	*/
+	public void remap(byte[] frame, int offset, int step, byte[] output, int outputOffset) {
+
+		for (int i = 0; i < spans_.length; i += 3) {
+			if (step == 1) {
+				System.arraycopy(frame, offset + spans_[i+1], output, outputOffset + spans_[i+0], spans_[i+2]);
+				continue;
+			}
+			for (int j = 0, c = offset + step*spans_[i+1], o = outputOffset + spans_[i+0]; j < spans_[i+2]; j++, c += step) {
+				output[o++] = frame[c];
+			}
+		}
+		for (int i = 0, k = 0; i < runs_.length; i += 2) {
+			int o = outputOffset + runs_[i+0];
+			int end = o + runs_[i+1];
+			while (o < end) {
+				output[o++] = frame[offset + step*runIndex_[k++]];
+			}
+		}
+		for (int i = 0; i < pairIndex_.length; i++) {
+			output[outputOffset + pairOutput_[i]] = frame[offset + step*pairIndex_[i]];
+		}
+		for (int i = 0, k = 0; i < bilinearRuns_.length; i += 2) {
+			int o = outputOffset + bilinearRuns_[i+0];
+			int end = o + bilinearRuns_[i+1];
+			while (o < end) {
+				output[o++] = (byte)blend(frame, offset, step, k++);
+			}
+		}
+	}
+
+	/**
+	Blends the four samples of bilinear sample i of an 8-bit plane, rounding as blend() does for each channel.
+	*/
+	protected int blend(byte[] frame, int offset, int step, int i) {
+
+		int c = offset + step*bilinearIndex_[i];
+		int below = step*cameraWidth_;
+		int weights = bilinearWeights_[i];
+		int w01 = (weights >>> 8) & 0xFF;
+		int w10 = (weights >>> 16) & 0xFF;
+		int w11 = weights >>> 24;
+		int v = (frame[c] & 0xFF)*(256 - w01 - w10 - w11) + (frame[c+step] & 0xFF)*w01
+		      + (frame[c+below] & 0xFF)*w10 + (frame[c+below+step] & 0xFF)*w11;
+		return (v + 128) >>> 8;
+	}
+
+	/**
+	Copies the samples the table writes from a background plane into the output plane, both starting at outputOffset.
+	*/
+	public void restore(byte[] background, byte[] output, int outputOffset) {
+
+		for (int i = 0; i < spans_.length; i += 3) {
+			System.arraycopy(background, outputOffset + spans_[i+0], output, outputOffset + spans_[i+0], spans_[i+2]);
+		}
+		for (int i = 0; i < runs_.length; i += 2) {
+			System.arraycopy(background, outputOffset + runs_[i+0], output, outputOffset + runs_[i+0], runs_[i+1]);
+		}
+		for (int i = 0; i < pairOutput_.length; i++) {
+			output[outputOffset + pairOutput_[i]] = background[outputOffset + pairOutput_[i]];
+		}
+		for (int i = 0; i < bilinearRuns_.length; i += 2) {
+			System.arraycopy(background, outputOffset + bilinearRuns_[i+0], output, outputOffset + bilinearRuns_[i+0], bilinearRuns_[i+1]);
+		}
+	}
+
+	/**
+	Copies the pixels the table writes from a background image into the output image.
+	*/
+	public void restore(int[] background, int[] outputPixels) {
+
+		for (int i = 0; i < spans_.length; i += 3) {
+			System.arraycopy(background, spans_[i+0], outputPixels, spans_[i+0], spans_[i+2]);
+		}
+		for (int i = 0; i < runs_.length; i += 2) {
+			System.arraycopy(background, runs_[i+0], outputPixels, runs_[i+0], runs_[i+1]);
+		}
+		for (int i = 0; i < pairOutput_.length; i++) {
+			outputPixels[pairOutput_[i]] = background[pairOutput_[i]];
+		}
+		for (int i = 0; i < bilinearRuns_.length; i += 2) {
+			System.arraycopy(background, bilinearRuns_[i+0], outputPixels, bilinearRuns_[i+0], bilinearRuns_[i+1]);
+		}
+	}
+
+	/**
+	Copies the pixels the table writes from a background image into an output image held in a buffer.
+	*/
+	public void restore(int[] background, IntBuffer outputPixels) {
+
+		for (int i = 0; i < spans_.length; i += 3) {
+			outputPixels.put(spans_[i+0], background, spans_[i+0], spans_[i+2]);
+		}
+		for (int i = 0; i < runs_.length; i += 2) {
+			outputPixels.put(runs_[i+0], background, runs_[i+0], runs_[i+1]);
+		}
+		for (int i = 0; i < pairOutput_.length; i++) {
+			outputPixels.put(pairOutput_[i], background[pairOutput_[i]]);
+		}
+		for (int i = 0; i < bilinearRuns_.length; i += 2) {
+			outputPixels.put(bilinearRuns_[i+0], background, bilinearRuns_[i+0], bilinearRuns_[i+1]);
+		}
+	}
+
+	/**
+	Copies the pixels the table writes from an output image held in a buffer into an image of the same layout,
+	so that the image takes just the pixels a camera has changed.
+	*/
+	public void copy(IntBuffer outputPixels, int[] pixels) {
+
+		for (int i = 0; i < spans_.length; i += 3) {
+			outputPixels.get(spans_[i+0], pixels, spans_[i+0], spans_[i+2]);
+		}
+		for (int i = 0; i < runs_.length; i += 2) {
+			outputPixels.get(runs_[i+0], pixels, runs_[i+0], runs_[i+1]);
+		}
+		for (int i = 0; i < pairOutput_.length; i++) {
+			pixels[pairOutput_[i]] = outputPixels.get(pairOutput_[i]);
+		}
+		for (int i = 0; i < bilinearRuns_.length; i += 2) {
+			outputPixels.get(bilinearRuns_[i+0], pixels, bilinearRuns_[i+0], bilinearRuns_[i+1]);
+		}
+	}
+
+	/**
+	Returns a table for an image of width x height that the output image of outputWidth x outputHeight is scaled to:
+	each of its pixels takes the camera sample of the output pixel under its center, as the output image scaled with
+	nearest-neighbor interpolation would show, without going through the output image. The table is in raster order.
+	*/
+	public RemapTable resample(int outputWidth, int outputHeight, int width, int height, int minSpan) {
+
+		// camera index of each output pixel, -2-i for bilinear sample i, -1 where not mapped
+		int[] source = new int[outputWidth*outputHeight];
+		Arrays.fill(source, -1);
+		for (int i = 0; i < spans_.length; i += 3) {
+			for (int j = 0; j < spans_[i+2]; j++) {
+				source[spans_[i+0] + j] = spans_[i+1] + j;
+			}
+		}
+		for (int i = 0, k = 0; i < runs_.length; i += 2) {
+			for (int j = 0; j < runs_[i+1]; j++) {
+				source[runs_[i+0] + j] = runIndex_[k++];
+			}
+		}
+		for (int i = 0; i < pairOutput_.length; i++) {
+			source[pairOutput_[i]] = pairIndex_[i];
+		}
+		for (int i = 0, k = 0; i < bilinearRuns_.length; i += 2) {
+			for (int j = 0; j < bilinearRuns_[i+1]; j++) {
+				source[bilinearRuns_[i+0] + j] = -2 - k++;
+			}
+		}
+
+		int[] map = new int[2*width*height];
+		int[] bilinear = new int[3*width*height];
+		int n = 0;
+		int m = 0;
+		for (int y = 0; y < height; y++) {
+			int row = getResampledIndex(y, height, outputHeight) * outputWidth;
+			for (int x = 0; x < width; x++) {
+				int s = source[row + getResampledIndex(x, width, outputWidth)];
+				if (s >= 0) {
+					map[n++] = y*width + x;
+					map[n++] = s;
+				}
+				else if (s < -1) {
+					bilinear[m++] = y*width + x;
+					bilinear[m++] = bilinearIndex_[-2 - s];
+					bilinear[m++] = bilinearWeights_[-2 - s];
+				}
+			}
+		}
+		return compile(Arrays.copyOf(map, n), Arrays.copyOf(bilinear, m), cameraWidth_, minSpan);
+	}
+
+	/**
+	Returns maps as compile() takes them, for half the sampling density in each direction: every pixel of a 2x2 block
+	of output pixels takes the camera pixel of the block's top left one, or its own where the maps don't have that one,
+	and bilinear samples become their most heavily weighted camera pixel. Such a table reads a quarter of the camera
+	pixels, and blends none.
+	*/
+	public static int[][] halveDensity(int[] map, int[] bilinear, int outputWidth, int cameraWidth) {
+
+		int size = 0;
+		for (int i = 0; i < map.length; i += 2) {
+			size = Math.max(size, map[i] + 1);
+		}
+		for (int i = 0; i < bilinear.length; i += 3) {
+			size = Math.max(size, bilinear[i] + 1);
+		}
+		// nearest camera pixel of every output pixel, -1 where not mapped
+		int[] source = new int[size];
+		Arrays.fill(source, -1);
+		for (int i = 0; i < map.length; i += 2) {
+			source[map[i]] = map[i+1];
+		}
+		for (int i = 0; i < bilinear.length; i += 3) {
+			int weights = bilinear[i+2];
+			int heaviest = 0;
+			int heaviestWeight = 256 - (weights >>> 8 & 0xFF) - (weights >>> 16 & 0xFF) - (weights >>> 24); // the top left's
+			for (int j = 1; j < 4; j++) {
+				if ((weights >>> 8*j & 0xFF) > heaviestWeight) {
+					heaviest = j;
+					heaviestWeight = weights >>> 8*j & 0xFF;
+				}
+			}
+			source[bilinear[i]] = bilinear[i+1] + (heaviest & 1) + (heaviest >> 1)*cameraWidth;
+		}
+		int[] half = new int[2*(map.length/2 + bilinear.length/3)];
+		int n = 0;
+		for (int o = 0; o < size; o++) {
+			if (source[o] >= 0) {
+				int block = (o / outputWidth & ~1)*outputWidth + (o % outputWidth & ~1);
+				half[n++] = o;
+				half[n++] = source[block] >= 0 ? source[block] : source[o];
+			}
+		}
+		return new int[][] {half, new int[0]};
+	}
+
+	/**
+	Returns the coordinate of the output pixel under the center of pixel i of size of them, scaled from outputSize pixels.
+	*/
+	public static int getResampledIndex(int i, int size, int outputSize) {
+
+		return (int)((2L*i + 1) * outputSize / (2L*size));
+	}
+
+	@Override
+	public int getMappedPixels() {
+
+		return mappedPixels_;
+	}
+
+	@Override
+	public long getSize() {
+
+		return 4L*(spans_.length + runs_.length + runIndex_.length + pairOutput_.length + pairIndex_.length
+		         + bilinearRuns_.length + bilinearIndex_.length + bilinearWeights_.length);
+	}
+
+	@Override
+	public String toString() {
+
+		return spans_.length/3 + " spans, " + runs_.length/2 + " runs, " + pairIndex_.length + " pairs and " + bilinearIndex_.length + " bilinear samples for "
+		     + mappedPixels_ + " pixels, " + getSize()/1024 + " KB";
+	}
+}
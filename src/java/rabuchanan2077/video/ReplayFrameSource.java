@@ -0,0 +1,140 @@
+package rabuchanan2077.video;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+Plays back a camera's FrameRecorder recording from <camera>.source-dir, by default the camera's directory under the
+replay property. With source-timing original, frames come at the times they arrived while recording, jitter and
+all; with fast, as fast as they are taken, for measuring compositing throughput on real footage.
+Frames keep their recorded timestamps, so dropped-frame counts come out as recorded, and their latency is measured from
+the recorded capture time shifted to when the frame is replayed. The recording loops unless source-loop is false.
+*/
+class ReplayFrameSource extends FrameSource {
+
+	protected final Path directory_;
+	protected final boolean originalTiming_;
+	protected final boolean loop_;
+	protected final ByteBuffer index_;
+	protected final int frameCount_;
+	protected final MappedByteBuffer[] segments_;
+	protected final long cycle_; // from the first frame's arrival to the first frame's in the next loop
+	protected int frame_ = 0;
+	protected long cycleStart_ = VideoMapper.NO_TIME;
+
+	public ReplayFrameSource(String name, Properties properties, ByteOrder byteOrder, PixelFormat format) throws IOException {
+
+		super(name, 0);
+
+		String directory = properties.getProperty(name + ".source-dir");
+		if (directory == null) {
+			String replay = properties.getProperty("replay");
+			if (replay == null) {
+				throw new IllegalArgumentException("No " + name + ".source-dir or replay configured.");
+			}
+			directory_ = Paths.get(replay.trim(), name);
+		}
+		else {
+			directory_ = Paths.get(directory.trim());
+		}
+		String timing = properties.getProperty(name + ".source-timing", properties.getProperty("replay-timing", "original")).trim();
+		if (!timing.equals("original") && !timing.equals("fast")) {
+			throw new IllegalArgumentException(name + ".source-timing " + timing + " is not original or fast.");
+		}
+		originalTiming_ = timing.equals("original");
+		loop_ = Boolean.parseBoolean(properties.getProperty(name + ".source-loop", "true").trim());
+
+		index_ = ByteBuffer.wrap(Files.readAllBytes(directory_.resolve(FrameRecorder.INDEX_FILE)));
+		if (index_.remaining() < FrameRecorder.HEADER_BYTES || index_.getInt(0) != FrameRecorder.INDEX_MAGIC) {
+			throw new IOException(directory_ + " holds no recording.");
+		}
+		if (index_.getInt(4) != FrameRecorder.INDEX_VERSION) {
+			throw new IOException(directory_ + " holds a version " + index_.getInt(4) + " recording.");
+		}
+		if ((index_.getInt(8) == 0) != (byteOrder == ByteOrder.LITTLE_ENDIAN)) {
+			throw new IOException(directory_ + " was recorded in the other byte-order.");
+		}
+		if (index_.getInt(12) != (format.isPlanar() ? FrameRing.fourcc(format.getCapsFormat(byteOrder)) : 0)) {
+			throw new IOException(directory_ + " was recorded in another pixel-format.");
+		}
+		frameCount_ = (index_.capacity() - FrameRecorder.HEADER_BYTES) / FrameRecorder.RECORD_BYTES; // a torn last record is left out
+		if (frameCount_ == 0) {
+			throw new IOException(directory_ + " holds no frames.");
+		}
+
+		int segmentCount = 0;
+		for (int f = 0; f < frameCount_; f++) {
+			segmentCount = Math.max(segmentCount, getSegment(f) + 1);
+		}
+		segments_ = new MappedByteBuffer[segmentCount];
+
+		// the last frame is held for the average frame interval before looping
+		long last = getArrival(frameCount_ - 1);
+		cycle_ = frameCount_ > 1 ? last + last / (frameCount_ - 1) : 0;
+	}
+
+	protected int getRecord(int f) {
+
+		return FrameRecorder.HEADER_BYTES + f * FrameRecorder.RECORD_BYTES;
+	}
+
+	protected long getArrival(int f) {
+
+		return index_.getLong(getRecord(f));
+	}
+
+	protected int getSegment(int f) {
+
+		return index_.getInt(getRecord(f) + 40);
+	}
+
+	@Override
+	protected void open() throws IOException {
+
+		for (int s = 0; s < segments_.length; s++) {
+			try (FileChannel channel = FileChannel.open(FrameRecorder.getSegmentPath(directory_, s), StandardOpenOption.READ)) {
+				segments_[s] = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			}
+		}
+	}
+
+	@Override
+	protected Frame next() throws InterruptedException {
+
+		if (frame_ == frameCount_) {
+			if (!loop_) {
+				return null;
+			}
+			frame_ = 0;
+			cycleStart_ += cycle_;
+		}
+		int record = getRecord(frame_);
+		long arrival = index_.getLong(record);
+		long pts = index_.getLong(record + 8);
+		long duration = index_.getLong(record + 16);
+		long capture = index_.getLong(record + 24);
+		long offset = index_.getLong(record + 32);
+		int width = index_.getInt(record + 44);
+		int height = index_.getInt(record + 48);
+		int bytes = index_.getInt(record + 52);
+
+		long now = System.nanoTime();
+		if (cycleStart_ == VideoMapper.NO_TIME) {
+			cycleStart_ = now;
+		}
+		if (originalTiming_) {
+			now = awaitDeadline(cycleStart_ + arrival);
+		}
+
+		// the frame's recorded capture time, or arrival if unknown, moved to its arrival now
+		if (pts >= 0) {
+			clockOffset_ = now - arrival + (capture != VideoMapper.NO_TIME ? capture : arrival) - pts;
+		}
+		ByteBuffer pixels = segments_[getSegment(frame_)].slice((int)offset, bytes > 0 ? bytes : width * height * 4);
+		frame_++;
+		return new BufferFrame(pixels, width, height, pts, duration);
+	}
+}
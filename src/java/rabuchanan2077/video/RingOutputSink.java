@@ -0,0 +1,49 @@
+package rabuchanan2077.video;
+
+import java.nio.*;
+import java.util.*;
+
+/**
+Sink writing output frames into a FrameRing, the shared-memory export, in its file (default /tmp/VideoMapper.frameRing)
+with slots frame slots (default 4). Ring writes never wait for readers, so by default the publishing thread writes them itself.
+*/
+class RingOutputSink extends OutputSink {
+
+	protected final FrameRing.Writer frameRing_;
+
+	public RingOutputSink(String name, String prefix, Properties properties, int width, int height, ByteOrder byteOrder, PixelFormat format)
+	        throws Exception {
+
+		super(name, prefix, properties, width, height, byteOrder, format, 0);
+
+		frameRing_ = FrameRing.create(properties.getProperty(prefix + "file", "/tmp/VideoMapper.frameRing").trim(),
+		                              Integer.parseInt(properties.getProperty(prefix + "slots", "4").trim()),
+		                              width, height,
+		                              FrameRing.fourcc(format.getCapsFormat(byteOrder)), format.getFrameBytes(width, height), byteOrder);
+	}
+
+	@Override
+	protected boolean write(IntBuffer pixels, long pts) {
+
+		frameRing_.write(pixels, pts);
+		return true;
+	}
+
+	@Override
+	protected boolean write(byte[] frame, long pts) {
+
+		frameRing_.write(frame, pts);
+		return true;
+	}
+
+	@Override
+	protected void close() {
+
+		try {
+			frameRing_.close();
+		}
+		catch (Exception ex) {
+			ex.printStackTrace();
+		}
+	}
+}
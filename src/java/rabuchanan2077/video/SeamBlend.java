@@ -0,0 +1,357 @@
+package rabuchanan2077.video;
+
+import java.nio.*;
+import java.util.*;
+import java.util.stream.*;
+
+/**
+Blends the output pixels that more than one camera maps, at the seams between their regions, where otherwise whichever
+camera wrote last wins, showing hard edges that flicker as the cameras update at different rates.
+Mappers with a blend zone reach that many pixels past the edge of their mask, with a weight falling from full inside it,
+through half at the edge, to none at the far side of the zone. Where cameras reach the same pixel, each one's weight is
+normalized against the others' into an 8-bit fixed-point alpha, once, when the output is set up.
+Each camera's table then writes the pixels only it maps as before, and reads its samples of shared pixels into a buffer
+of its own here, which holds its latest; a blending pass recomposes just the shared pixels the camera contributes to,
+from the latest samples of every camera contributing to them, so blending costs the seam pixels only.
+Pixels of a blend zone that no other camera maps are dropped, so the layout's edges stay where nothing blends,
+and a camera is left out of a pixel until it has samples, or where its table turns out not to sample the pixel after all,
+the others' alphas scaled up to make up for it.
+The samples and the output are only touched by one thread at a time, as the compositors serialize writing the output.
+*/
+class SeamBlend {
+
+	// set in a camera's weight at a pixel inside the mask of the mapper that maps it, rather than only in its blend zone
+	public static final int OWNED = 0x100;
+
+	/**
+	A camera's reach into the output.
+	*/
+	public interface Coverage {
+
+		/**
+		Returns the camera's weight at an output pixel, 1 to 255 with OWNED set inside its mapper's mask, or 0 where it maps nothing.
+		*/
+		public int getWeight(int x, int y);
+	}
+
+	protected final int[] pixels_; // output index of each shared pixel, ascending
+	protected final int[] start_; // contributions to shared pixel k are start_[k] to start_[k+1]
+	protected final int[] camera_; // contributing camera
+	protected final int[] alpha_; // of each contribution, summing to 255 for each pixel
+	protected final int[][] slots_; // shared pixels each camera contributes to, ascending
+	protected final BitSet[] dropped_; // output pixels of each camera's blend zones that no other camera maps
+	protected final int[][] samples_; // each camera's latest sample of each shared pixel it contributes to
+	protected final boolean[][] written_; // shared pixels each camera's table samples, from its last split()
+	protected final boolean[] sampled_; // cameras that have samples
+
+	public SeamBlend(int width, int height, java.util.List<? extends Coverage> cameras) {
+
+		int n = cameras.size();
+
+		// each row's shared pixels as {x, weight*}, and pixels to drop as {x, camera}, found in parallel
+		int[][] shared = new int[height][];
+		int[][] dropped = new int[height][];
+		IntStream.range(0, height).parallel().forEach(y -> {
+			int[] row = new int[0];
+			int[] drop = new int[0];
+			int r = 0;
+			int d = 0;
+			int[] weights = new int[n];
+			for (int x = 0; x < width; x++) {
+				int count = 0;
+				int last = 0;
+				for (int c = 0; c < n; c++) {
+					weights[c] = cameras.get(c).getWeight(x, y);
+					if ((weights[c] & 0xFF) > 0) {
+						count++;
+						last = c;
+					}
+				}
+				if (count > 1) {
+					if (r + 1 + n > row.length) {
+						row = Arrays.copyOf(row, 2*row.length + 1 + n);
+					}
+					row[r++] = x;
+					for (int c = 0; c < n; c++) {
+						row[r++] = weights[c] & 0xFF;
+					}
+				}
+				else if (count == 1 && (weights[last] & OWNED) == 0) {
+					if (d + 2 > drop.length) {
+						drop = Arrays.copyOf(drop, 2*drop.length + 2);
+					}
+					drop[d++] = x;
+					drop[d++] = last;
+				}
+			}
+			shared[y] = Arrays.copyOf(row, r);
+			dropped[y] = Arrays.copyOf(drop, d);
+		});
+
+		int pixels = 0;
+		for (int[] row : shared) {
+			pixels += row.length / (1 + n);
+		}
+		pixels_ = new int[pixels];
+		start_ = new int[pixels + 1];
+		int[] camera = new int[n*pixels];
+		int[] alpha = new int[n*pixels];
+		int[] slots = new int[n];
+		int k = 0;
+		int e = 0;
+		for (int y = 0; y < height; y++) {
+			int[] row = shared[y];
+			for (int i = 0; i < row.length; i += 1 + n) {
+				// alphas rounded from each weight's share, the last taking what rounding leaves, so they sum to 255
+				int total = 0;
+				for (int c = 0; c < n; c++) {
+					total += row[i+1+c];
+				}
+				int sum = 0;
+				int remaining = total;
+				pixels_[k] = y*width + row[i];
+				start_[k] = e;
+				for (int c = 0; c < n; c++) {
+					int w = row[i+1+c];
+					if (w == 0) {
+						continue;
+					}
+					remaining -= w;
+					int a = remaining == 0 ? 255 - sum : (int)Math.round(255. * w / total);
+					sum += a;
+					if (a > 0) {
+						camera[e] = c;
+						alpha[e++] = a;
+						slots[c]++;
+					}
+				}
+				k++;
+			}
+		}
+		start_[k] = e;
+		camera_ = Arrays.copyOf(camera, e);
+		alpha_ = Arrays.copyOf(alpha, e);
+
+		slots_ = new int[n][];
+		samples_ = new int[n][];
+		for (int c = 0; c < n; c++) {
+			slots_[c] = new int[slots[c]];
+			samples_[c] = new int[pixels];
+			slots[c] = 0;
+		}
+		for (k = 0; k < pixels; k++) {
+			for (e = start_[k]; e < start_[k+1]; e++) {
+				slots_[camera_[e]][slots[camera_[e]]++] = k;
+			}
+		}
+		dropped_ = new BitSet[n];
+		for (int c = 0; c < n; c++) {
+			dropped_[c] = new BitSet();
+		}
+		for (int y = 0; y < height; y++) {
+			for (int i = 0; i < dropped[y].length; i += 2) {
+				dropped_[dropped[y][i+1]].set(y*width + dropped[y][i]);
+			}
+		}
+		written_ = new boolean[n][pixels];
+		sampled_ = new boolean[n];
+	}
+
+	/**
+	Returns the signed chamfer distance of each pixel of a width x height image to the nearest pixel on the other side of
+	an edge, in thirds of a pixel: positive inside, negative outside, and at most max either way.
+	*/
+	public static int[] getSignedDistances(boolean[] inside, int width, int height, int max) {
+
+		int[] toOutside = getDistances(inside, false, width, height, max);
+		int[] toInside = getDistances(inside, true, width, height, max);
+		for (int i = 0; i < toOutside.length; i++) {
+			toOutside[i] = inside[i] ? toOutside[i] : -toInside[i];
+		}
+		return toOutside;
+	}
+
+	/**
+	Two-pass 3-4 chamfer distance of each pixel to the nearest one whose inside flag is target, at most max.
+	*/
+	protected static int[] getDistances(boolean[] inside, boolean target, int width, int height, int max) {
+
+		int[] d = new int[width*height];
+		for (int i = 0; i < d.length; i++) {
+			d[i] = inside[i] == target ? 0 : max;
+		}
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int i = y*width + x;
+				if (x > 0) d[i] = Math.min(d[i], d[i-1] + 3);
+				if (y > 0) {
+					d[i] = Math.min(d[i], d[i-width] + 3);
+					if (x > 0) d[i] = Math.min(d[i], d[i-width-1] + 4);
+					if (x < width-1) d[i] = Math.min(d[i], d[i-width+1] + 4);
+				}
+			}
+		}
+		for (int y = height-1; y >= 0; y--) {
+			for (int x = width-1; x >= 0; x--) {
+				int i = y*width + x;
+				if (x < width-1) d[i] = Math.min(d[i], d[i+1] + 3);
+				if (y < height-1) {
+					d[i] = Math.min(d[i], d[i+width] + 3);
+					if (x < width-1) d[i] = Math.min(d[i], d[i+width+1] + 4);
+					if (x > 0) d[i] = Math.min(d[i], d[i+width-1] + 4);
+				}
+			}
+		}
+		return d;
+	}
+
+	/**
+	Returns the weight, 0 to 255, at a signed distance from getSignedDistances() to the edge of a mask with a blend zone
+	of blend pixels: half at the edge, between the pixels either side of it, and falling off linearly across the zone.
+	*/
+	public static int getWeight(int distance, int blend) {
+
+		double s = distance > 0 ? distance/3. - .5 : -(-distance/3. - .5);
+		return (int)Math.round(255 * Math.min(Math.max((s + blend) / (2.*blend), 0), 1));
+	}
+
+	/**
+	Splits a camera's maps, as merged from its mappers, into the pixels only it writes, its samples of shared pixels
+	with output indices replaced by the shared pixels' indices, as the camera's samples are indexed, and the two together
+	at their output indices, each as {pairs, bilinear triples}. Pixels of its blend zones it doesn't write are dropped.
+	The camera then blends into just the shared pixels the maps sample: coverage is worked out ahead of the camera's
+	frame size, and a pixel it reaches may still fall outside the frame.
+	*/
+	public int[][][] split(int camera, int[][] map) {
+
+		int[][][] split = new int[3][2][];
+		boolean[] written = new boolean[pixels_.length];
+		for (int s = 0; s < 2; s++) {
+			int stride = s == 0 ? 2 : 3;
+			int[] m = map[s];
+			int[] own = new int[m.length];
+			int[] shared = new int[m.length];
+			int[] whole = new int[m.length];
+			int no = 0;
+			int ns = 0;
+			int nw = 0;
+			for (int i = 0; i < m.length; i += stride) {
+				int o = m[i];
+				int k = Arrays.binarySearch(pixels_, o);
+				if (k >= 0) {
+					if (Arrays.binarySearch(slots_[camera], k) < 0) {
+						continue;
+					}
+					shared[ns] = k;
+					System.arraycopy(m, i+1, shared, ns+1, stride-1);
+					ns += stride;
+					written[k] = true;
+				}
+				else if (dropped_[camera].get(o)) {
+					continue;
+				}
+				else {
+					System.arraycopy(m, i, own, no, stride);
+					no += stride;
+				}
+				System.arraycopy(m, i, whole, nw, stride);
+				nw += stride;
+			}
+			split[0][s] = Arrays.copyOf(own, no);
+			split[1][s] = Arrays.copyOf(shared, ns);
+			split[2][s] = Arrays.copyOf(whole, nw);
+		}
+		written_[camera] = written;
+		return split;
+	}
+
+	/**
+	Returns the buffer a camera's shared-pixel table writes its samples into, indexed by shared pixel.
+	*/
+	public int[] getSamples(int camera) {
+
+		return samples_[camera];
+	}
+
+	/**
+	Recomposes the shared pixels a camera contributes to from the latest samples of every camera contributing to them,
+	once the camera has written its samples.
+	*/
+	public void blend(int camera, int[] outputPixels) {
+
+		sampled_[camera] = true;
+		boolean[] written = written_[camera];
+		for (int k : slots_[camera]) {
+			if (written[k]) {
+				outputPixels[pixels_[k]] = blend(k);
+			}
+		}
+	}
+
+	public void blend(int camera, IntBuffer outputPixels) {
+
+		sampled_[camera] = true;
+		boolean[] written = written_[camera];
+		for (int k : slots_[camera]) {
+			if (written[k]) {
+				outputPixels.put(pixels_[k], blend(k));
+			}
+		}
+	}
+
+	/**
+	Blends shared pixel k, two channels per multiply as RemapTable.blend() does, with an exact rounded division by 255,
+	which the weights here sum to.
+	At least one camera contributing to it must have sampled it.
+	*/
+	protected int blend(int k) {
+
+		int total = 0;
+		for (int e = start_[k]; e < start_[k+1]; e++) {
+			int c = camera_[e];
+			total += sampled_[c] && written_[c][k] ? alpha_[e] : 0;
+		}
+		int rb = 0;
+		int xg = 0;
+		for (int e = start_[k]; e < start_[k+1]; e++) {
+			int c = camera_[e];
+			if (sampled_[c] && written_[c][k]) {
+				int a = total == 255 ? alpha_[e] : alpha_[e] * 255 / total;
+				int p = samples_[c][k];
+				rb += (p & 0x00FF00FF) * a;
+				xg += ((p >>> 8) & 0x00FF00FF) * a;
+			}
+		}
+		rb += 0x00800080;
+		rb = ((rb + ((rb >>> 8) & 0x00FF00FF)) >>> 8) & 0x00FF00FF;
+		xg += 0x00800080;
+		xg = ((xg + ((xg >>> 8) & 0x00FF00FF)) >>> 8) & 0x00FF00FF;
+		return rb | xg << 8;
+	}
+
+	/**
+	True for a blend of the same shared pixels, alphas and dropped pixels, whatever the samples.
+	*/
+	@Override
+	public boolean equals(Object o) {
+
+		if (!(o instanceof SeamBlend)) {
+			return false;
+		}
+		SeamBlend other = (SeamBlend)o;
+		return Arrays.equals(pixels_, other.pixels_) && Arrays.equals(start_, other.start_) && Arrays.equals(camera_, other.camera_)
+		    && Arrays.equals(alpha_, other.alpha_) && Arrays.equals(dropped_, other.dropped_);
+	}
+
+	@Override
+	public int hashCode() {
+
+		return Arrays.hashCode(pixels_) ^ Arrays.hashCode(alpha_);
+	}
+
+	@Override
+	public String toString() {
+
+		return pixels_.length + " shared pixels, " + camera_.length + " samples";
+	}
+}
@@ -0,0 +1,213 @@
+package rabuchanan2077.video;
+
+import java.util.*;
+
+/**
+The part of a camera's frames that is decoded for the compositor: a crop of the source frames, in source pixels,
+scaled to a frame size of its own. The full region, the whole source frame unscaled, is the default.
+
+analyze() derives a region from a camera's pixel mapping table: the bounding box of the camera pixels it reads,
+and a scale from its sampling density, the distance in camera pixels between the samples of neighboring output pixels.
+Where that is above one camera pixel, the table skips camera pixels, which a smaller frame need not decode.
+The scale keeps a distinct camera pixel for neighboring samples in all but the most magnified parts of the table:
+a fraction MAGNIFIED of the output pixels, whose samples are the closest together, get coarser ones.
+*/
+class SourceRegion {
+
+	// fraction of mapped output pixels whose sampling density may be lost to scaling
+	public static final double MAGNIFIED = 0.1;
+
+	// distance between output pixels over which sampling density is measured, to average out rounding to camera pixels
+	protected static final int STEP = 8;
+
+	protected final int sourceWidth_;
+	protected final int sourceHeight_;
+	protected final int x_;
+	protected final int y_;
+	protected final int width_;
+	protected final int height_;
+	protected final int frameWidth_;
+	protected final int frameHeight_;
+
+	public SourceRegion(int sourceWidth, int sourceHeight, int x, int y, int width, int height, int frameWidth, int frameHeight) {
+
+		if (x < 0 || y < 0 || width < 1 || height < 1 || x + width > sourceWidth || y + height > sourceHeight || frameWidth < 2 || frameHeight < 2) {
+			throw new IllegalArgumentException("Region " + width + "x" + height + "+" + x + "+" + y + " of " + sourceWidth + "x" + sourceHeight
+			                                   + " scaled to " + frameWidth + "x" + frameHeight + ".");
+		}
+		sourceWidth_ = sourceWidth;
+		sourceHeight_ = sourceHeight;
+		x_ = x;
+		y_ = y;
+		width_ = width;
+		height_ = height;
+		frameWidth_ = frameWidth;
+		frameHeight_ = frameHeight;
+	}
+
+	public static SourceRegion full(int sourceWidth, int sourceHeight) {
+
+		return new SourceRegion(sourceWidth, sourceHeight, 0, 0, sourceWidth, sourceHeight, sourceWidth, sourceHeight);
+	}
+
+	/**
+	Derives the region a table reads from source frames of the given size, as {{outputIndex, cameraIndex}*, {outputIndex, cameraIndex, weights}*}
+	like CameraConfiguration.getMap(), widened by margin source pixels on each side. The scale is that of the sampling density
+	unless scale is given, above 0; it is never more than 1. Crop and frame sizes are kept even, as the common YUV formats need.
+	*/
+	public static SourceRegion analyze(int[][] map, int outputWidth, int sourceWidth, int sourceHeight, int margin, double scale) {
+
+		int[] nearest = map[0];
+		int[] bilinear = map[1];
+		int outputSize = 0;
+		for (int i = 0; i < nearest.length; i += 2) {
+			outputSize = Math.max(outputSize, nearest[i] + 1);
+		}
+		for (int i = 0; i < bilinear.length; i += 3) {
+			outputSize = Math.max(outputSize, bilinear[i] + 1);
+		}
+		if (outputSize == 0) {
+			return full(sourceWidth, sourceHeight);
+		}
+
+		// camera pixel of each output pixel, and the bounding box of all camera pixels read
+		int[] camera = new int[outputSize];
+		Arrays.fill(camera, -1);
+		int x0 = sourceWidth, y0 = sourceHeight, x1 = 0, y1 = 0;
+		for (int i = 0; i < nearest.length; i += 2) {
+			camera[nearest[i]] = nearest[i+1];
+			int x = nearest[i+1] % sourceWidth;
+			int y = nearest[i+1] / sourceWidth;
+			x0 = Math.min(x0, x);
+			y0 = Math.min(y0, y);
+			x1 = Math.max(x1, x + 1);
+			y1 = Math.max(y1, y + 1);
+		}
+		for (int i = 0; i < bilinear.length; i += 3) {
+			camera[bilinear[i]] = bilinear[i+1];
+			int x = bilinear[i+1] % sourceWidth;
+			int y = bilinear[i+1] / sourceWidth;
+			x0 = Math.min(x0, x);
+			y0 = Math.min(y0, y);
+			x1 = Math.max(x1, x + 2); // bilinear samples read the pixels right of and below the one they name
+			y1 = Math.max(y1, y + 2);
+		}
+		x0 = Math.max(0, x0 - margin) & ~1;
+		y0 = Math.max(0, y0 - margin) & ~1;
+		x1 = Math.min(sourceWidth, (x1 + margin + 1) & ~1);
+		y1 = Math.min(sourceHeight, (y1 + margin + 1) & ~1);
+
+		if (scale <= 0) {
+			scale = 1 / getDensity(camera, outputWidth, sourceWidth);
+		}
+		scale = Math.min(1, scale);
+		int frameWidth = Math.max(2, (int)Math.round((x1 - x0) * scale / 2) * 2);
+		int frameHeight = Math.max(2, (int)Math.round((y1 - y0) * scale / 2) * 2);
+		if (frameWidth > x1 - x0 || frameHeight > y1 - y0) { // odd source edges, left unscaled
+			frameWidth = x1 - x0;
+			frameHeight = y1 - y0;
+		}
+		return new SourceRegion(sourceWidth, sourceHeight, x0, y0, x1 - x0, y1 - y0, frameWidth, frameHeight);
+	}
+
+	/**
+	Returns the distance between neighboring samples in camera pixels that all but MAGNIFIED of the output pixels
+	sample at or above, at least 1. Each output pixel's is the lesser of those to the right and below.
+	*/
+	protected static double getDensity(int[] camera, int outputWidth, int sourceWidth) {
+
+		float[] steps = new float[camera.length];
+		int n = 0;
+		for (int o = 0; o < camera.length; o++) {
+			if (camera[o] < 0) {
+				continue;
+			}
+			double step = Double.MAX_VALUE;
+			if (o % outputWidth + STEP < outputWidth && o + STEP < camera.length && camera[o + STEP] >= 0) {
+				step = Math.min(step, distance(camera[o], camera[o + STEP], sourceWidth) / STEP);
+			}
+			if (o + STEP*outputWidth < camera.length && camera[o + STEP*outputWidth] >= 0) {
+				step = Math.min(step, distance(camera[o], camera[o + STEP*outputWidth], sourceWidth) / STEP);
+			}
+			if (step < Double.MAX_VALUE) {
+				steps[n++] = (float)step;
+			}
+		}
+		if (n == 0) {
+			return 1;
+		}
+		Arrays.sort(steps, 0, n);
+		return Math.max(1, steps[(int)(MAGNIFIED * (n - 1))]);
+	}
+
+	protected static double distance(int a, int b, int sourceWidth) {
+
+		return Math.hypot(a % sourceWidth - b % sourceWidth, a / sourceWidth - b / sourceWidth);
+	}
+
+	public boolean isFull() {
+
+		return x_ == 0 && y_ == 0 && width_ == sourceWidth_ && height_ == sourceHeight_ && frameWidth_ == width_ && frameHeight_ == height_;
+	}
+
+	public boolean isFrameSize(int width, int height) {
+
+		return frameWidth_ == width && frameHeight_ == height;
+	}
+
+	/**
+	Converts a source image position to one in the region's frames, with pixel centers at whole numbers in both.
+	*/
+	public double toFrameX(double x) {
+
+		double scale = (double)frameWidth_ / width_;
+		return (x - x_) * scale + 0.5 * (scale - 1); // exactly x - x_ when unscaled
+	}
+
+	public double toFrameY(double y) {
+
+		double scale = (double)frameHeight_ / height_;
+		return (y - y_) * scale + 0.5 * (scale - 1);
+	}
+
+	/**
+	Converts a position in the region's frames back to one in the source image.
+	*/
+	public double toSourceX(double x) {
+
+		double scale = (double)width_ / frameWidth_;
+		return (x - 0.5 * (1 / scale - 1)) * scale + x_;
+	}
+
+	public double toSourceY(double y) {
+
+		double scale = (double)height_ / frameHeight_;
+		return (y - 0.5 * (1 / scale - 1)) * scale + y_;
+	}
+
+	/**
+	Fraction of the source frame's pixels left in the region's frames.
+	*/
+	public double getFraction() {
+
+		return (double)frameWidth_ * frameHeight_ / ((double)sourceWidth_ * sourceHeight_);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+
+		return o instanceof SourceRegion && toString().equals(o.toString());
+	}
+
+	@Override
+	public int hashCode() {
+
+		return toString().hashCode();
+	}
+
+	@Override
+	public String toString() {
+
+		return width_ + "x" + height_ + "+" + x_ + "+" + y_ + " of " + sourceWidth_ + "x" + sourceHeight_ + " at " + frameWidth_ + "x" + frameHeight_;
+	}
+}
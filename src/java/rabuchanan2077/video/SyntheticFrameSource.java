@@ -0,0 +1,102 @@
+package rabuchanan2077.video;
+
+import java.nio.*;
+import java.util.*;
+
+/**
+Test pattern frames, for running the compositor without cameras: color ramps with a bar sweeping across them,
+rendered once into a few frames that are then cycled, so generating a frame costs nothing.
+A region is rendered as the decoder would scale it, sampling the pattern at the source pixel nearest each frame pixel.
+With a planar pixel-format, the pattern is converted to it as it is rendered.
+*/
+class SyntheticFrameSource extends FrameSource {
+
+	protected final int width_;
+	protected final int height_;
+	protected final ByteOrder byteOrder_;
+	protected final PixelFormat format_;
+	protected volatile Rendering rendering_;
+	protected int index_ = 0;
+
+	public SyntheticFrameSource(String name, Properties properties, ByteOrder byteOrder, PixelFormat format) {
+
+		super(name, Double.parseDouble(properties.getProperty(name + ".source-fps", "30")));
+
+		int[] size = getSize(properties, name + ".source-size", "1296x972");
+		width_ = size[0];
+		height_ = size[1];
+		byteOrder_ = byteOrder;
+		format_ = format;
+		int frames = Math.max(1, Integer.parseInt(properties.getProperty(name + ".source-frames", "4").trim()));
+		rendering_ = new Rendering(SourceRegion.full(width_, height_), frames);
+	}
+
+	/**
+	Renders frame f of a cycle of n in the pixel format: red across, green down, and a blue bar moving one step to the right per frame.
+	*/
+	protected ByteBuffer render(SourceRegion region, int f, int n) {
+
+		int[] pixels = new int[region.frameWidth_ * region.frameHeight_];
+		int p = 0;
+		int barWidth = Math.max(1, width_ / 16);
+		int barX = (int)((long)width_ * f / n);
+		for (int fy = 0; fy < region.frameHeight_; fy++) {
+			int y = Math.max(0, Math.min(height_ - 1, (int)Math.round(region.toSourceY(fy))));
+			int g = 255 * y / Math.max(1, height_ - 1);
+			for (int fx = 0; fx < region.frameWidth_; fx++) {
+				int x = Math.max(0, Math.min(width_ - 1, (int)Math.round(region.toSourceX(fx))));
+				int r = 255 * x / Math.max(1, width_ - 1);
+				int b = x >= barX && x < barX + barWidth ? 255 : 0;
+				pixels[p++] = r << 16 | g << 8 | b;
+			}
+		}
+		ByteBuffer frame = ByteBuffer.allocateDirect(format_.getFrameBytes(region.frameWidth_, region.frameHeight_)).order(byteOrder_);
+		if (format_.isPlanar()) {
+			byte[] planes = new byte[frame.capacity()];
+			format_.fromRGB(pixels, region.frameWidth_, region.frameHeight_, planes);
+			frame.put(planes);
+		}
+		else {
+			frame.asIntBuffer().put(pixels);
+		}
+		return frame.clear().asReadOnlyBuffer();
+	}
+
+	@Override
+	public boolean setRegion(SourceRegion region) {
+
+		if (region.sourceWidth_ != width_ || region.sourceHeight_ != height_) {
+			return false;
+		}
+		rendering_ = new Rendering(region, rendering_.frames_.length);
+		return true;
+	}
+
+	@Override
+	protected Frame next() throws InterruptedException {
+
+		long pts = awaitFrame();
+		Rendering rendering = rendering_;
+		ByteBuffer pixels = rendering.frames_[index_];
+		index_ = (index_ + 1) % rendering.frames_.length;
+		return new BufferFrame(pixels, rendering.region_.frameWidth_, rendering.region_.frameHeight_, pts, period_ > 0 ? period_ : -1);
+	}
+
+	/**
+	The frames of the cycle, for one region.
+	*/
+	protected class Rendering {
+
+		protected final SourceRegion region_;
+		protected final ByteBuffer[] frames_;
+
+		protected Rendering(SourceRegion region, int frames) {
+
+			region_ = region;
+			frames_ = new ByteBuffer[frames];
+			for (int f = 0; f < frames; f++) {
+				frames_[f] = render(region, f, frames);
+			}
+		}
+	}
+}
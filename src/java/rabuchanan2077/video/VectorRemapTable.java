@@ -0,0 +1,188 @@
+package rabuchanan2077.video;
+
+import java.nio.*;
+import jdk.incubator.vector.*;
+
+/**
+Remap table whose runs, pairs and bilinear samples are applied with the Vector API, a vector of camera indices at a time:
+a gather load from the camera frame, then a contiguous store to the output, or a scatter store for pairs.
+Bilinear blending is the same integer arithmetic as RemapTable.blend(), lane-wise, so the output is bit-exact.
+The Vector API gathers only from arrays, so the part of each camera frame the table reads is first copied into a buffer of the table's own,
+or, for the chunks of a ParallelRemapTable, into one buffer that all of them share.
+Only loaded through RemapTable.vectorize(), since this class can't link without the jdk.incubator.vector module.
+*/
+class VectorRemapTable extends RemapTable {
+
+	protected static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+	protected final int frameStart_; // first camera index the table reads
+	protected final int[] frame_; // camera pixels from frameStart_ on
+	protected final boolean ownsFrame_; // false when frame_ is another table's, loaded by that table
+
+	public VectorRemapTable(RemapTable table, RemapTable frameOwner) {
+
+		super(table);
+
+		if (frameOwner != null) {
+			frameStart_ = ((VectorRemapTable)frameOwner).frameStart_;
+			frame_ = ((VectorRemapTable)frameOwner).frame_;
+			ownsFrame_ = false;
+			return;
+		}
+		int start = Integer.MAX_VALUE;
+		int end = 0;
+		for (int i = 0; i < spans_.length; i += 3) {
+			start = Math.min(start, spans_[i+1]);
+			end = Math.max(end, spans_[i+1] + spans_[i+2]);
+		}
+		for (int c : runIndex_) {
+			start = Math.min(start, c);
+			end = Math.max(end, c + 1);
+		}
+		for (int c : pairIndex_) {
+			start = Math.min(start, c);
+			end = Math.max(end, c + 1);
+		}
+		for (int c : bilinearIndex_) {
+			start = Math.min(start, c);
+			end = Math.max(end, c + cameraWidth_ + 2);
+		}
+		frameStart_ = start < end ? start : 0;
+		frame_ = new int[Math.max(end - frameStart_, 0)];
+		ownsFrame_ = true;
+	}
+
+	@Override
+	protected void load(IntBuffer cameraFramePixels) {
+
+		if (ownsFrame_) {
+			cameraFramePixels.get(frameStart_, frame_, 0, frame_.length);
+		}
+	}
+
+	@Override
+	public void remap(IntBuffer cameraFramePixels, int[] outputPixels) {
+
+		load(cameraFramePixels);
+		int[] frame = frame_;
+		int base = -frameStart_; // gather offset, so table indices address the buffer directly
+		for (int i = 0; i < spans_.length; i += 3) {
+			System.arraycopy(frame, spans_[i+1] + base, outputPixels, spans_[i+0], spans_[i+2]);
+		}
+		for (int i = 0, k = 0; i < runs_.length; i += 2) {
+			int o = runs_[i+0];
+			int n = runs_[i+1];
+			int j = 0;
+			for (int bound = SPECIES.loopBound(n); j < bound; j += SPECIES.length()) {
+				IntVector.fromArray(SPECIES, frame, base, runIndex_, k + j).intoArray(outputPixels, o + j);
+			}
+			for ( ; j < n; j++) {
+				outputPixels[o + j] = frame[runIndex_[k + j] + base];
+			}
+			k += n;
+		}
+		int n = pairIndex_.length;
+		int j = 0;
+		for (int bound = SPECIES.loopBound(n); j < bound; j += SPECIES.length()) {
+			IntVector.fromArray(SPECIES, frame, base, pairIndex_, j).intoArray(outputPixels, 0, pairOutput_, j);
+		}
+		for ( ; j < n; j++) {
+			outputPixels[pairOutput_[j]] = frame[pairIndex_[j] + base];
+		}
+		if (bilinearIndex_.length > 0) {
+			remapBilinear(frame, base, outputPixels);
+		}
+	}
+
+	protected void remapBilinear(int[] frame, int base, int[] outputPixels) {
+
+		for (int i = 0, k = 0; i < bilinearRuns_.length; i += 2) {
+			int o = bilinearRuns_[i+0];
+			int n = bilinearRuns_[i+1];
+			int j = 0;
+			for (int bound = SPECIES.loopBound(n); j < bound; j += SPECIES.length()) {
+				blend(frame, base, k + j).intoArray(outputPixels, o + j);
+			}
+			for ( ; j < n; j++) {
+				outputPixels[o + j] = blendOne(frame, base, k + j);
+			}
+			k += n;
+		}
+	}
+
+	@Override
+	public void gather(IntBuffer cameraFramePixels, int[] region, int offset) {
+
+		load(cameraFramePixels);
+		int[] frame = frame_;
+		int base = -frameStart_;
+		int k = offset;
+		for (int i = 0; i < spans_.length; i += 3) {
+			System.arraycopy(frame, spans_[i+1] + base, region, k, spans_[i+2]);
+			k += spans_[i+2];
+		}
+		k = gather(frame, base, runIndex_, region, k);
+		k = gather(frame, base, pairIndex_, region, k);
+		if (bilinearIndex_.length > 0) {
+			gatherBilinear(frame, base, region, k);
+		}
+	}
+
+	protected static int gather(int[] frame, int base, int[] index, int[] region, int k) {
+
+		int n = index.length;
+		int j = 0;
+		for (int bound = SPECIES.loopBound(n); j < bound; j += SPECIES.length()) {
+			IntVector.fromArray(SPECIES, frame, base, index, j).intoArray(region, k + j);
+		}
+		for ( ; j < n; j++) {
+			region[k + j] = frame[index[j] + base];
+		}
+		return k + n;
+	}
+
+	protected void gatherBilinear(int[] frame, int base, int[] region, int k) {
+
+		int n = bilinearIndex_.length;
+		int j = 0;
+		for (int bound = SPECIES.loopBound(n); j < bound; j += SPECIES.length()) {
+			blend(frame, base, j).intoArray(region, k + j);
+		}
+		for ( ; j < n; j++) {
+			region[k + j] = blendOne(frame, base, j);
+		}
+	}
+
+	/**
+	Blends the bilinear samples from i on, one per lane, exactly as RemapTable.blend() does.
+	*/
+	protected IntVector blend(int[] frame, int base, int i) {
+
+		IntVector p00 = IntVector.fromArray(SPECIES, frame, base, bilinearIndex_, i);
+		IntVector p01 = IntVector.fromArray(SPECIES, frame, base + 1, bilinearIndex_, i);
+		IntVector p10 = IntVector.fromArray(SPECIES, frame, base + cameraWidth_, bilinearIndex_, i);
+		IntVector p11 = IntVector.fromArray(SPECIES, frame, base + cameraWidth_ + 1, bilinearIndex_, i);
+		IntVector weights = IntVector.fromArray(SPECIES, bilinearWeights_, i);
+		IntVector w01 = weights.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+		IntVector w10 = weights.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+		IntVector w11 = weights.lanewise(VectorOperators.LSHR, 24);
+		IntVector w00 = IntVector.broadcast(SPECIES, 256).sub(w01).sub(w10).sub(w11);
+		IntVector rb = p00.and(0x00FF00FF).mul(w00)
+		          .add(p01.and(0x00FF00FF).mul(w01))
+		          .add(p10.and(0x00FF00FF).mul(w10))
+		          .add(p11.and(0x00FF00FF).mul(w11));
+		IntVector xg = p00.lanewise(VectorOperators.LSHR, 8).and(0x00FF00FF).mul(w00)
+		          .add(p01.lanewise(VectorOperators.LSHR, 8).and(0x00FF00FF).mul(w01))
+		          .add(p10.lanewise(VectorOperators.LSHR, 8).and(0x00FF00FF).mul(w10))
+		          .add(p11.lanewise(VectorOperators.LSHR, 8).and(0x00FF00FF).mul(w11));
+		rb = rb.add(0x00800080).lanewise(VectorOperators.LSHR, 8).and(0x00FF00FF);
+		xg = xg.add(0x00800080).lanewise(VectorOperators.LSHR, 8).and(0x00FF00FF);
+		return rb.or(xg.lanewise(VectorOperators.LSHL, 8));
+	}
+
+	protected int blendOne(int[] frame, int base, int i) {
+
+		int c = bilinearIndex_[i] + base;
+		return blend(frame[c], frame[c+1], frame[c+cameraWidth_], frame[c+cameraWidth_+1], bilinearWeights_[i]);
+	}
+}
@@ -9,24 +9,18 @@ import java.io.*;
 import java.nio.*;
 import java.nio.channels.*;
 import java.nio.channels.FileChannel.*;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
 import java.util.concurrent.locks.*;
+import java.util.function.*;
 import java.util.logging.*;
+import java.util.stream.*;
 
 import javax.swing.*;
 import javax.imageio.*;
 
-import org.freedesktop.gstreamer.Element;
-import org.freedesktop.gstreamer.Structure;
-import org.freedesktop.gstreamer.elements.AppSink;
-import org.freedesktop.gstreamer.Bin;
-import org.freedesktop.gstreamer.Buffer;
-import org.freedesktop.gstreamer.Caps;
-import org.freedesktop.gstreamer.FlowReturn;
-import org.freedesktop.gstreamer.Gst;
-import org.freedesktop.gstreamer.Pipeline;
-import org.freedesktop.gstreamer.Sample;
 
 /**
 This class integrates multiple Gstreamer video feeds into a single composite view,
@@ -39,23 +33,60 @@ class VideoMapper {
 	private static final Logger logger_ = Logger.getLogger(VideoMapper.class.getName());
 
 	protected final Properties properties_;
+	
+	// with outputs, this output's name; the first output reads the cameras' frames, the others take them from it
+	protected final String outputName_;
+	protected final VideoMapper primary_; // null for the first output
+	protected final java.util.List<VideoMapper> outputs_ = new ArrayList<>(); // the others, of the first output
+	protected static final String OUTPUT_PREFIX = "output."; // of the properties of one output
+	protected final boolean sharedFrames_; // cameras' frames go to more than one output
 		
 	protected final BufferedImage outputLayout_;
+	protected final byte[] outputLayoutBytes_;
+	protected final LayoutIndex outputLayoutIndex_;
 	protected final Dimension outputResolution_;
 	protected final ByteOrder byteOrder_;
+	protected final PixelFormat pixelFormat_;
 	protected final java.util.List<CameraConfiguration> cameraConfiguration_ = new LinkedList<>();
+	protected final SeamBlend seamBlend_; // where mappers have blend zones, the output pixels cameras share, or null
 	
-	protected BufferedImage outputImage_ = null;
-	protected FileChannel outputFileChannel_ = null;
-	protected ByteBuffer outputMappedBuffer_ = null;
+	protected final Compositor compositor_;
+	protected final PackedCompositor packedCompositor_; // the compositor, for packed pixels, or null
+	protected final PlanarCompositor planarCompositor_; // the compositor, for planar frames, or null
+	protected final double outputFPS_;
+	protected final boolean outputSkipUnchanged_;
+	protected ScheduledExecutorService outputScheduler_ = null;
+	protected final java.util.List<OutputSink> outputSinks_ = new ArrayList<>();
 	protected OutputJComponent outputJComponent_ = null;
-	protected final Lock outputLock_ = new ReentrantLock(true);
+	protected final boolean displayNative_;
+	protected volatile DisplayCanvas displayCanvas_ = null;
+	protected final LutCache lutCache_;
+	protected final int remapSpanMin_;
+	protected final boolean remapVector_;
+	protected final ForkJoinPool remapPool_;
+	protected final int remapChunkPixels_;
+	protected final Metrics outputMetrics_;
+	protected final boolean hotReload_;
+	protected final FrameIngest ingest_;
+	protected final QualityController qualityController_;
+	protected java.util.Timer metricsTimer_ = null;
+	protected final AtomicBoolean stopped_ = new AtomicBoolean(false);
+	
+	// output pixels no camera writes, from the layout; replaced when a reload changes the layout
+	protected volatile int[] outputBackground_;
+	protected volatile byte[] outputPlanarBackground_ = null; // the same in I420, with a planar pixel-format
 	
-	protected AtomicInteger frames_ = new AtomicInteger();
+	// marks a capture time that isn't known, since System.nanoTime() may take any other value
+	protected static final long NO_TIME = Long.MIN_VALUE;
+	
+	// a source region is asked for only if it leaves at most this fraction of the pixels,
+	// and frames of other sizes are skipped for at most this long while the frame source changes over to it
+	protected static final double REGION_FRACTION_MAX = 0.8;
+	protected static final long REGION_TIMEOUT = 2_000_000_000L;
 
 	public static void main(String[] args) {
 	
-		args = Gst.init("VideoMapper", args);
+		GstreamerFrameSource.setInitArguments(args);
 		
 		Properties properties = new Properties();
 		try {
@@ -65,32 +96,75 @@ class VideoMapper {
 			System.err.println("No configuration properties loaded, exiting."); // TODO: usage hints
 			System.exit(1);
 		}
-		VideoMapper videoMapper = new VideoMapper(properties);
+		
+		// without a display, outputs go only to the sinks, and AWT is kept headless so nothing connects to a display
+		boolean display = Boolean.parseBoolean(properties.getProperty("display", "true").trim());
+		if (!display) {
+			System.setProperty("java.awt.headless", "true");
+		}
+		VideoMapper videoMapper;
+		try {
+			videoMapper = new VideoMapper(properties);
+			videoMapper.start();
+			videoMapper.watch(Paths.get(System.getProperty("properties", "VideoMapper.properties")));
+		}
+		catch (Exception ex) {
+			logger_.log(Level.SEVERE, "Startup failed, exiting.", ex);
+			System.exit(1);
+			return;
+		}
+		if (!display || GraphicsEnvironment.isHeadless()) { // frames are only composited and exported
+			return;
+		}
 			
 		EventQueue.invokeLater(new Runnable() {
 
 			@Override
 			public void run() {
 
-				JFrame frame = new JFrame("VideoMapper");
-				frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-				frame.add(videoMapper.getOutputJComponent());
-				frame.pack();
-				frame.setVisible(true);
+				for (VideoMapper output : videoMapper.getOutputs()) { // a window for each output with display
+					if (Boolean.parseBoolean(output.properties_.getProperty("display", "true").trim())) {
+						JFrame frame = new JFrame(output.outputName_ == null ? "VideoMapper" : "VideoMapper " + output.outputName_);
+						frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+						frame.add(output.getOutputComponent());
+						frame.pack();
+						frame.setVisible(true);
+					}
+				}
 			}
 		});
 	}
 
+	/**
+	Reads the configuration and sets up the output and the cameras, without starting any video stream or thread,
+	so a VideoMapper can also be built headless, without Gstreamer, for benchmarks.
+	*/
 	public VideoMapper(Properties properties) {
 	
-		properties_ = properties;
+		this(properties, getOutputNames(properties), 0, null);
+	}
+	
+	/**
+	Sets up one of the configured outputs, each with a layout, resolution, mappers, compositor, rate and sinks of its own.
+	The first, with no primary, builds the others once its cameras are set up; its cameras read the frames, decoded once,
+	and hand each to the same camera of every other output, which composites it on its own channel of the camera threads.
+	*/
+	protected VideoMapper(Properties configuration, java.util.List<String> outputs, int output, VideoMapper primary) {
+	
+		outputName_ = outputs.isEmpty() ? null : outputs.get(output);
+		properties_ = outputName_ == null ? configuration : getOutputProperties(configuration, outputName_);
+		primary_ = primary;
+		sharedFrames_ = outputs.size() > 1;
+		outputMetrics_ = new Metrics(outputName_ == null ? "output" : outputName_);
 		
 		// layout and component size
 		BufferedImage layout = null;
+		byte[] layoutBytes = null;
 		Dimension resolution = null;
 		try {
 			// layout assigns pixels to output mappers by color
-			layout = ImageIO.read(new FileInputStream(properties_.getProperty("layout")));
+			layoutBytes = Files.readAllBytes(Paths.get(properties_.getProperty("layout")));
+			layout = ImageIO.read(new ByteArrayInputStream(layoutBytes));
 			resolution = new Dimension(layout.getWidth(), layout.getHeight());
 		}
 		catch (Exception ex) {
@@ -104,30 +178,103 @@ class VideoMapper {
 			}
 		}
 		outputLayout_ = layout;
+		outputLayoutBytes_ = layout == null ? null : layoutBytes;
+		outputLayoutIndex_ = layout == null ? null : new LayoutIndex(layout); // shared by all mappers
 		outputResolution_ = resolution;
-		String bo = properties_.getProperty("byte-order");
+		outputBackground_ = createBackground(outputLayout_);
+		String bo = (primary != null ? primary.properties_ : properties_).getProperty("byte-order"); // the frames' are the first output's
 		byteOrder_ = "BE".equalsIgnoreCase(bo) ? ByteOrder.BIG_ENDIAN
 		           : "LE".equalsIgnoreCase(bo) ? ByteOrder.LITTLE_ENDIAN
 			   : ByteOrder.nativeOrder(); // TODO: tested only for LE
+		
+		// with a planar pixel-format, camera frames stay in the decoder's YUV and the output is I420, converted only for display
+		pixelFormat_ = primary != null ? primary.pixelFormat_ : PixelFormat.create(properties_);
+		if (pixelFormat_.isPlanar()) {
+			outputPlanarBackground_ = createPlanarBackground(outputBackground_);
+		}
 			   
-		outputImage_ = new BufferedImage(outputResolution_.width, outputResolution_.height, BufferedImage.TYPE_INT_RGB); // TODO: check byte order
-		outputImage_.setAccelerationPriority(0.0f);
-		if (outputLayout_ != null) {
-			outputImage_.createGraphics().drawImage(outputLayout_, 0, 0, null);
+		// with an output rate, frames are composited and published on a fixed schedule rather than on every camera frame
+		outputFPS_ = Double.parseDouble(properties_.getProperty("output-fps", "0").trim());
+		outputSkipUnchanged_ = Boolean.parseBoolean(properties_.getProperty("output-skip-unchanged", "true").trim());
+
+		// cameras write disjoint regions, so they need not take turns unless the compositor mode says so;
+		// framebuffer has them write straight into off-heap memory, with framebuffer-file into a mapped file that is the export
+		String compositor = properties_.getProperty("compositor", "locked").trim();
+		boolean doubleBuffered = "double-buffered".equalsIgnoreCase(compositor);
+		boolean framebuffer = "framebuffer".equalsIgnoreCase(compositor);
+		String framebufferFile = properties_.getProperty("framebuffer-file", "").trim();
+		if (pixelFormat_.isPlanar()) {
+			if (doubleBuffered || framebuffer) {
+				logger_.info("Planar frames are composited with the locked compositor.");
+			}
+			planarCompositor_ = new PlanarCompositor(outputFPS_ > 0);
+			packedCompositor_ = null;
+			compositor_ = planarCompositor_;
+		}
+		else {
+			packedCompositor_ = framebuffer ? new FramebufferCompositor(outputFPS_ > 0, framebufferFile)
+			                  : doubleBuffered ? new DoubleBufferedCompositor(outputFPS_ > 0) : new LockingCompositor(outputFPS_ > 0);
+			planarCompositor_ = null;
+			compositor_ = packedCompositor_;
 		}
 		
-		try {
-			outputFileChannel_ = new RandomAccessFile("/tmp/VideoMapper.videoFrame", "rw").getChannel();
-			outputMappedBuffer_ = outputFileChannel_.map(MapMode.READ_WRITE, 0, outputResolution_.width * outputResolution_.height * 4).order(byteOrder_);
+		// the display shows the output image scaled to the window, or with display-mode native, at the window's resolution
+		// through tables of its own, which needs packed pixels
+		boolean displayNative = "native".equalsIgnoreCase(properties_.getProperty("display-mode", "scaled").trim());
+		if (displayNative && pixelFormat_.isPlanar()) {
+			logger_.info("Planar frames are displayed scaled.");
+		}
+		displayNative_ = displayNative && !pixelFormat_.isPlanar();
+		
+		// finished frames go to the sinks named in output-sinks, each with its own queue and drop policy,
+		// or else to the single one configured by export: a ring of seqlocked slots or, for older readers, a locked frame
+		String sinks = properties_.getProperty("output-sinks");
+		if (sinks == null) {
+			String export = properties_.getProperty("export", framebuffer && !framebufferFile.isEmpty() ? "none" : "ring").trim();
+			if (!"none".equalsIgnoreCase(export)) {
+				addOutputSink("export", export, "export-");
+			}
+		}
+		else {
+			for (String sink : sinks.split(",")) {
+				sink = sink.trim();
+				if (!sink.isEmpty()) {
+					addOutputSink(sink, properties_.getProperty(sink + ".type", "ring"), sink + ".");
+				}
+			}
 		}
-		catch(Exception ex) {
-			ex.printStackTrace();
+		
+		// calibration, mapper and layout changes are picked up while running, keeping each mapper's table for reuse
+		hotReload_ = Boolean.parseBoolean(properties_.getProperty("hot-reload", "false").trim());
+		
+		// pixel mapping tables survive restarts unless disabled with an empty lut-cache property
+		String lutCacheDirectory = properties_.getProperty("lut-cache", "/tmp/VideoMapper.lutCache").trim();
+		lutCache_ = lutCacheDirectory.isEmpty() ? null : new LutCache(new File(lutCacheDirectory));
+		
+		// shortest run of contiguous camera pixels worth a bulk copy, 0 for index pairs only
+		remapSpanMin_ = Integer.parseInt(properties_.getProperty("remap-span-min", "8").trim());
+		
+		// scalar, or vector for the Vector API kernel, which needs the JVM started with --add-modules jdk.incubator.vector
+		remapVector_ = "vector".equalsIgnoreCase(properties_.getProperty("remap-kernel", "scalar").trim());
+		if (remapVector_ && pixelFormat_.isPlanar()) {
+			logger_.warning("The vector remap kernel handles packed pixels only, using the scalar kernel for planar frames.");
 		}
+		
+		// threads shared by all cameras, of all outputs, for remapping chunks of a frame in parallel, 0 for one thread per camera
+		int remapThreads = Integer.parseInt(properties_.getProperty("remap-threads", "0").trim());
+		remapPool_ = primary != null ? primary.remapPool_ : remapThreads > 0 ? new ForkJoinPool(remapThreads) : null;
+		int remapChunkPixels = Integer.parseInt(properties_.getProperty("remap-chunk-pixels", "0").trim());
+		remapChunkPixels_ = remapChunkPixels > 0 || remapPool_ == null ? remapChunkPixels
+		                  : ParallelRemapTable.getChunkPixels(outputResolution_.width*outputResolution_.height, remapPool_.getParallelism());
+		
+		// threads shared by all cameras, of all outputs, for handling their frames, each camera's in order, however many cameras there are
+		int cameraThreads = Integer.parseInt(properties_.getProperty("camera-threads", "0").trim());
+		ingest_ = primary != null ? primary.ingest_ : new FrameIngest(cameraThreads > 0 ? cameraThreads : Runtime.getRuntime().availableProcessors());
 
 		// input video streams
 		for (int i = 0; ; i++) {
 			String cameraName = properties_.getProperty("camera"+i);
-			if (cameraName == null) {
+			if (cameraName == null || cameraName.trim().isEmpty()) { // an empty one ends a list an output inherits
 				break;
 			}
 			try {
@@ -138,20 +285,355 @@ class VideoMapper {
 			}
 		}
 		if (cameraConfiguration_.isEmpty()) {
-			System.err.println("No valid camera configurations loaded, exiting.");
-			System.exit(1);
+			throw new RuntimeException("No valid camera configurations loaded.");
+		}
+		seamBlend_ = createSeamBlend(cameraConfiguration_);
+		
+		// with a deadline for processing a camera frame, overloaded cameras give up work by priority until they meet it
+		double qosDeadline = Double.parseDouble(properties_.getProperty("qos-deadline", "0").trim());
+		qualityController_ = qosDeadline <= 0 ? null
+		                   : new QualityController(cameraConfiguration_, qosDeadline,
+		                                           Double.parseDouble(properties_.getProperty("qos-headroom", "0.5").trim()),
+		                                           Double.parseDouble(properties_.getProperty("qos-drop-fraction", "0.05").trim()),
+		                                           Integer.parseInt(properties_.getProperty("qos-recover-intervals", "5").trim()));
+		
+		// the other outputs, whose cameras take their frames from these
+		if (primary == null) {
+			for (int i = 1; i < outputs.size(); i++) {
+				outputs_.add(new VideoMapper(configuration, outputs, i, this));
+			}
+		}
+	}
+	
+	/**
+	Returns the names listed in the outputs property, or none for a single output configured by the properties as they are.
+	*/
+	protected static java.util.List<String> getOutputNames(Properties properties) {
+	
+		java.util.List<String> outputs = new ArrayList<>();
+		for (String output : properties.getProperty("outputs", "").split(",")) {
+			output = output.trim();
+			if (output.contains(".")) {
+				throw new IllegalArgumentException("Output name " + output + " has a dot, which would make its properties ambiguous.");
+			}
+			if (!output.isEmpty() && !outputs.contains(output)) {
+				outputs.add(output);
+			}
+		}
+		return outputs;
+	}
+	
+	/**
+	Returns an output's configuration: the properties, with those prefixed by output.<name>. in place of the ones they
+	name without it, so that an output overrides the layout, mappers or anything else for itself. The prefix keeps
+	outputs' properties apart from those of cameras, mappers and sinks, which share the namespace with any name.
+	*/
+	protected static Properties getOutputProperties(Properties properties, String output) {
+	
+		Properties outputProperties = new Properties();
+		String prefix = OUTPUT_PREFIX + output + ".";
+		for (String name : properties.stringPropertyNames()) {
+			outputProperties.setProperty(name, properties.getProperty(name));
+		}
+		for (String name : properties.stringPropertyNames()) {
+			if (name.startsWith(prefix) && name.length() > prefix.length()) {
+				outputProperties.setProperty(name.substring(prefix.length()), properties.getProperty(name));
+			}
+		}
+		return outputProperties;
+	}
+	
+	/**
+	Returns this output followed by the others, if it is the first.
+	*/
+	public java.util.List<VideoMapper> getOutputs() {
+	
+		java.util.List<VideoMapper> outputs = new ArrayList<>();
+		outputs.add(this);
+		outputs.addAll(outputs_);
+		return outputs;
+	}
+	
+	/**
+	Works out the pixels that cameras share at the seams of mappers with blend zones and the cameras' weights at them,
+	or returns null if no mapper has a blend zone. Each camera reaches a pixel through the last of its mappers that does,
+	as later mappers win overlaps in merge(). Planar frames are not blended.
+	Coverage comes from the mappers' projections, before the cameras' frame sizes are known; where a camera's table
+	turns out not to sample a pixel, SeamBlend.split() leaves the camera out of that pixel's blend.
+	*/
+	protected SeamBlend createSeamBlend(java.util.List<CameraConfiguration> cameraConfiguration) {
+	
+		boolean blend = false;
+		for (CameraConfiguration cc : cameraConfiguration) {
+			blend |= cc.getMappers().stream().anyMatch(mapper -> mapper.blend_ > 0);
+		}
+		if (!blend) {
+			return null;
+		}
+		if (pixelFormat_.isPlanar()) {
+			logger_.info("Planar frames are not blended at seams.");
+			return null;
+		}
+		long t0 = System.nanoTime();
+		java.util.List<SeamBlend.Coverage> cameras = new ArrayList<>();
+		for (CameraConfiguration cc : cameraConfiguration) {
+			CameraConfiguration.Mapper[] mappers = cc.getMappers().toArray(new CameraConfiguration.Mapper[0]);
+			cameras.add((x, y) -> {
+				for (int j = mappers.length-1; j >= 0; j--) {
+					int weight = mappers[j].getBlendWeight(x, y);
+					if (weight > 0 && mappers[j].maps(x, y)) {
+						return weight | (mappers[j].covers(x, y) ? SeamBlend.OWNED : 0);
+					}
+				}
+				return 0;
+			});
+		}
+		SeamBlend seamBlend = new SeamBlend(outputResolution_.width, outputResolution_.height, cameras);
+		logger_.info(String.format("Seam blend: %s, built in %.0fms.", seamBlend, (System.nanoTime()-t0)/1e6));
+		return seamBlend;
+	}
+	
+	protected CameraConfiguration getCamera(String name) {
+	
+		for (CameraConfiguration cc : cameraConfiguration_) {
+			if (cc.name_.equals(name)) {
+				return cc;
+			}
+		}
+		return null;
+	}
+	
+	protected void addOutputSink(String name, String type, String prefix) {
+	
+		try {
+			String sinkName = outputName_ == null ? name : outputName_ + "." + name; // as sinks of different outputs may be named alike
+			outputSinks_.add(OutputSink.create(sinkName, type, prefix, properties_, outputResolution_.width, outputResolution_.height, byteOrder_,
+			                                   pixelFormat_.isPlanar() ? PixelFormat.I420 : PixelFormat.RGB));
+		}
+		catch (Exception ex) {
+			logger_.log(Level.SEVERE, "Output sink " + name + " configuration failed.", ex);
+		}
+	}
+	
+	/**
+	Starts the output sinks, the video streams, the output schedule if any, and the metrics.
+	*/
+	public void start() throws Exception {
+		
+		for (VideoMapper output : outputs_) { // before the streams, so their cameras take frames from the first
+			output.start();
+		}
+		for (OutputSink sink : outputSinks_) {
+			sink.start();
+		}
+		if (primary_ == null) { // which stops the others
+			Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
 		}
 		
 		// start video streams
 		for (CameraConfiguration cc : cameraConfiguration_) {
 			cc.start();
 		}
+		if (outputFPS_ > 0) {
+			outputScheduler_ = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "VideoMapper output");
+				thread.setDaemon(true);
+				return thread;
+			});
+			long period = Math.round(1e9 / outputFPS_);
+			outputScheduler_.scheduleAtFixedRate(this::compositeOutput, period, period, TimeUnit.NANOSECONDS);
+		}
 		
-		(new java.util.Timer()).schedule(new TimerTask() {
+		// per-stage timing, always over JMX, and as a line on standard output every metrics-log-interval seconds unless 0
+		outputMetrics_.register();
+		double metricsLogInterval = Double.parseDouble(properties_.getProperty("metrics-log-interval", "1").trim());
+		long metricsPeriod = metricsLogInterval > 0 ? Math.round(metricsLogInterval*1000) : 1000;
+		metricsTimer_ = new java.util.Timer("VideoMapper metrics"); // not a daemon, it keeps a headless process running
+		metricsTimer_.schedule(new TimerTask() {
 			public void run() {
-				System.out.println("FPS:" + frames_.getAndSet(0));
+				for (CameraConfiguration cc : cameraConfiguration_) {
+					cc.updateClockOffset(); // follows drift between the frame source clocks and System.nanoTime()
+				}
+				if (metricsLogInterval > 0) {
+					logMetrics(metricsPeriod/1000.);
+				}
+			}
+		}, metricsPeriod, metricsPeriod);
+		if (qualityController_ != null) {
+			long qosPeriod = Math.round(Double.parseDouble(properties_.getProperty("qos-interval", "1").trim()) * 1000);
+			metricsTimer_.schedule(new TimerTask() {
+				public void run() {
+					qualityController_.evaluate();
+				}
+			}, qosPeriod, qosPeriod);
+		}
+	}
+	
+	/**
+	Stops in the order frames flow: the video streams, then the camera threads once they have handled the frames
+	already taken, the output schedule, the recordings and last the output sinks, which ends encoded streams cleanly.
+	It runs once, on shutdown or when every stream has ended; the first output stops the others once the camera threads have.
+	*/
+	public void stop() {
+	
+		if (!stopped_.compareAndSet(false, true)) {
+			return;
+		}
+		for (CameraConfiguration cc : cameraConfiguration_) {
+			cc.stop();
+		}
+		if (primary_ == null) {
+			ingest_.stop();
+			for (VideoMapper output : outputs_) {
+				output.stop();
+			}
+		}
+		if (outputScheduler_ != null) {
+			outputScheduler_.shutdown();
+			try {
+				outputScheduler_.awaitTermination(1, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		for (CameraConfiguration cc : cameraConfiguration_) {
+			cc.closeRecorder();
+		}
+		compositor_.stop();
+		for (OutputSink sink : outputSinks_) {
+			sink.stop();
+		}
+		if (metricsTimer_ != null) {
+			metricsTimer_.cancel();
+		}
+		if (displayCanvas_ != null) {
+			displayCanvas_.stop();
+		}
+	}
+	
+	/**
+	Called once a camera's stream has ended. The last to end stops a headless process, which has nothing left to show;
+	a display keeps showing the last frames.
+	*/
+	protected void streamEnded(CameraConfiguration camera) {
+	
+		for (CameraConfiguration cc : cameraConfiguration_) {
+			if (!cc.isEnded()) {
+				return;
+			}
+		}
+		logger_.info("All video streams have ended.");
+		if (getOutputs().stream().allMatch(output -> output.outputJComponent_ == null && output.displayCanvas_ == null)) {
+			new Thread(() -> System.exit(0), "VideoMapper exit").start(); // runs the shutdown hook, which stops everything
+		}
+	}
+	
+	/**
+	With hot-reload, watches the properties file and the layout, and recalibrates the cameras a change to either affects.
+	*/
+	public void watch(Path propertiesFile) throws Exception {
+	
+		for (VideoMapper output : outputs_) {
+			output.watch(propertiesFile);
+		}
+		if (!hotReload_) {
+			return;
+		}
+		java.util.List<Path> files = new ArrayList<>();
+		files.add(propertiesFile);
+		if (properties_.getProperty("layout") != null) {
+			files.add(Paths.get(properties_.getProperty("layout")));
+		}
+		new FileWatcher("VideoMapper reload", files, 500, () -> reload(propertiesFile)).start();
+	}
+	
+	/**
+	Reads the configuration again and gives each camera its new calibration and mappers. Cameras whose tables come out
+	the same are left alone; the others rebuild, on this thread, only the tables of mappers that changed, and swap the
+	result in between two of their frames. Everything else in the configuration still needs a restart, as do changes
+	to the pixels cameras blend at seams, which every camera's table is split by.
+	*/
+	protected void reload(Path propertiesFile) {
+	
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream(propertiesFile.toFile())) {
+			properties.load(in);
+		}
+		catch (IOException ex) {
+			logger_.log(Level.WARNING, "Configuration not reloaded.", ex);
+			return;
+		}
+		if (outputName_ != null) {
+			properties = getOutputProperties(properties, outputName_);
+		}
+		BufferedImage layout = outputLayout_;
+		byte[] layoutBytes = outputLayoutBytes_;
+		LayoutIndex layoutIndex = outputLayoutIndex_;
+		try {
+			byte[] bytes = Files.readAllBytes(Paths.get(properties.getProperty("layout")));
+			if (!Arrays.equals(bytes, layoutBytes)) {
+				layout = ImageIO.read(new ByteArrayInputStream(bytes));
+				layoutBytes = bytes;
+				layoutIndex = new LayoutIndex(layout);
+			}
+		}
+		catch (Exception ex) {
+			logger_.log(Level.WARNING, "Layout not reloaded.", ex);
+		}
+		if (layout != outputLayout_ && (layout == null || layout.getWidth() != outputResolution_.width || layout.getHeight() != outputResolution_.height)) {
+			logger_.warning("Layout of another size needs a restart; configuration not reloaded.");
+			return;
+		}
+		
+		// cameras whose configuration fails to read keep their calibration
+		java.util.List<CameraConfiguration> calibrations = new ArrayList<>();
+		for (CameraConfiguration cc : cameraConfiguration_) {
+			try {
+				calibrations.add(new CameraConfiguration(cc.name_, properties, layoutIndex, layoutBytes, false));
+			}
+			catch (Exception ex) {
+				logger_.log(Level.SEVERE, cc.name_ + ": recalibration failed, calibration kept.", ex);
+				calibrations.add(cc.calibration_);
+			}
+		}
+		if (!Objects.equals(createSeamBlend(calibrations), seamBlend_)) {
+			logger_.warning("Seam blending of other pixels needs a restart; configuration not reloaded.");
+			return;
+		}
+		Iterator<CameraConfiguration> calibration = calibrations.iterator();
+		for (CameraConfiguration cc : cameraConfiguration_) {
+			CameraConfiguration reloaded = calibration.next();
+			if (reloaded == cc.calibration_) {
+				continue;
+			}
+			try {
+				cc.recalibrate(reloaded);
+			}
+			catch (Exception ex) {
+				logger_.log(Level.SEVERE, cc.name_ + ": recalibration failed, calibration kept.", ex);
+			}
+		}
+		if (layout != outputLayout_) {
+			outputBackground_ = createBackground(layout);
+			if (pixelFormat_.isPlanar()) {
+				outputPlanarBackground_ = createPlanarBackground(outputBackground_);
+			}
+		}
+	}
+	
+	/**
+	Returns the component the output is displayed in: a DisplayCanvas with display-mode native, otherwise the JComponent.
+	*/
+	public Component getOutputComponent() {
+	
+		if (displayNative_) {
+			if (displayCanvas_ == null) {
+				displayCanvas_ = new DisplayCanvas(outputResolution_.width, outputResolution_.height, () -> outputBackground_, remapSpanMin_, outputMetrics_);
 			}
-		}, 1000, 1000);
+			return displayCanvas_;
+		}
+		return getOutputJComponent();
 	}
 	
 	public JComponent getOutputJComponent() {
@@ -165,205 +647,1700 @@ class VideoMapper {
 	private class OutputJComponent extends JComponent {
 	
 		@Override
-		protected void paintComponent(Graphics g) {
-
-			double scale = Math.min(((double)getWidth())/outputResolution_.width, ((double)getHeight())/outputResolution_.height);
-			int w = (int)Math.round(outputResolution_.width * scale);
-			int h = (int)Math.round(outputResolution_.height * scale);
-			int x = (getWidth()-w)/2;
-			int y = (getHeight()-h)/2;
-
-			outputLock_.lock();
-			g.drawImage(outputImage_, x, y, w, h, null); // scales from rendered size to renderComponent size
-			outputLock_.unlock();
+		protected void paintComponent(Graphics g) {
+
+			double scale = Math.min(((double)getWidth())/outputResolution_.width, ((double)getHeight())/outputResolution_.height);
+			int w = (int)Math.round(outputResolution_.width * scale);
+			int h = (int)Math.round(outputResolution_.height * scale);
+			int x = (getWidth()-w)/2;
+			int y = (getHeight()-h)/2;
+
+			long t0 = System.nanoTime();
+			compositor_.paint(g, x, y, w, h); // scales from rendered size to renderComponent size
+			outputMetrics_.record(Metrics.Stage.PAINT, System.nanoTime() - t0);
+		}
+	
+		@Override
+		public Dimension getPreferredSize() {
+			return outputResolution_;
+		}
+
+		@Override
+		public boolean isOpaque() {
+			return true;
+		}
+
+		@Override
+		public boolean isLightweight() {
+			return true;
+		}
+		
+	} // OutputJComponent
+	
+	/**
+	One tick of the output schedule: composites the cameras' latest frames and publishes a single output frame.
+	*/
+	protected void compositeOutput() {
+	
+		try {
+			boolean changed = false;
+			for (CameraConfiguration cc : cameraConfiguration_) {
+				changed |= cc.compositeLatest();
+			}
+			if (changed || !outputSkipUnchanged_) {
+				compositor_.publish();
+				repaintOutput();
+			}
+		}
+		catch (Exception ex) {
+			logger_.log(Level.SEVERE, "Output compositing failed.", ex); // an exception would cancel the schedule
+		}
+	}
+	
+	/**
+	Asks the display, if any, to show the output again; repeated requests are coalesced.
+	*/
+	protected void repaintOutput() {
+	
+		if (outputJComponent_ != null) {
+			outputJComponent_.repaint();
+		}
+		DisplayCanvas displayCanvas = displayCanvas_;
+		if (displayCanvas != null) {
+			displayCanvas.requestRender();
+		}
+	}
+	
+	protected void logMetrics(double seconds) {
+	
+		StringBuilder sb = new StringBuilder("FPS: ");
+		for (CameraConfiguration cc : cameraConfiguration_) {
+			cc.metrics_.summarize(sb, seconds);
+			sb.append(", ");
+		}
+		outputMetrics_.summarize(sb, seconds);
+		for (OutputSink sink : outputSinks_) {
+			sb.append(", ");
+			sink.getMetrics().summarize(sb, seconds);
+		}
+		if (qualityController_ != null) {
+			sb.append(", ").append(qualityController_);
+		}
+		System.out.println(sb);
+	}
+	
+	/**
+	Returns an output frame's pixels, with the layout as background where no camera is mapped.
+	*/
+	protected int[] createOutputPixels() {
+	
+		return outputBackground_.clone();
+	}
+	
+	protected int[] createBackground(BufferedImage layout) {
+	
+		int[] outputPixels = new int[outputResolution_.width * outputResolution_.height];
+		if (layout != null) {
+			layout.getRGB(0, 0, outputResolution_.width, outputResolution_.height, outputPixels, 0, outputResolution_.width);
+			for (int i = 0; i < outputPixels.length; i++) { // drawn over black, as when it was drawn into the image
+				int argb = outputPixels[i];
+				int a = argb >>> 24;
+				outputPixels[i] = a == 255 ? argb & 0xFFFFFF
+				                : ((argb >> 16 & 0xFF) * a / 255) << 16 | ((argb >> 8 & 0xFF) * a / 255) << 8 | (argb & 0xFF) * a / 255;
+			}
+		}
+		return outputPixels;
+	}
+	
+	protected byte[] createPlanarBackground(int[] background) {
+	
+		byte[] planes = new byte[PixelFormat.I420.getFrameBytes(outputResolution_.width, outputResolution_.height)];
+		PixelFormat.I420.fromRGB(background, outputResolution_.width, outputResolution_.height, planes);
+		return planes;
+	}
+	
+	/**
+	Wraps output pixels for painting, without copying them; only called once there is a display to paint on.
+	*/
+	protected BufferedImage createOutputImage(int[] outputPixels) {
+	
+		DirectColorModel colorModel = new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF); // as TYPE_INT_RGB
+		WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(outputPixels, outputPixels.length),
+			outputResolution_.width, outputResolution_.height, outputResolution_.width, colorModel.getMasks(), null);
+		BufferedImage outputImage = new BufferedImage(colorModel, raster, false, null);
+		outputImage.setAccelerationPriority(0.0f);
+		return outputImage;
+	}
+	
+	/**
+	Hands a finished frame to every output sink, which either writes it or queues a copy of it.
+	The presentation timestamp is that of the newest camera frame in the output, or -1 if unknown.
+	Only one thread at a time may export, which the compositors guarantee.
+	*/
+	protected void exportFrame(int[] outputPixels, long pts) {
+	
+		exportFrame(IntBuffer.wrap(outputPixels), pts);
+	}
+	
+	/**
+	Hands a finished frame held in a buffer, such as one off the heap, to every output sink, as exportFrame() does an array.
+	*/
+	protected void exportFrame(IntBuffer outputPixels, long pts) {
+	
+		outputMetrics_.countFrame();
+		if (outputSinks_.isEmpty()) {
+			return;
+		}
+		long t0 = System.nanoTime();
+		for (OutputSink sink : outputSinks_) {
+			sink.publish(outputPixels, pts);
+		}
+		outputMetrics_.record(Metrics.Stage.EXPORT, System.nanoTime() - t0);
+	}
+	
+	/**
+	Hands a finished I420 frame to every output sink, as exportFrame() does packed pixels.
+	*/
+	protected void exportFrame(byte[] outputFrame, long pts) {
+	
+		outputMetrics_.countFrame();
+		if (outputSinks_.isEmpty()) {
+			return;
+		}
+		long t0 = System.nanoTime();
+		for (OutputSink sink : outputSinks_) {
+			sink.publish(outputFrame, pts);
+		}
+		outputMetrics_.record(Metrics.Stage.EXPORT, System.nanoTime() - t0);
+	}
+
+	/**
+	Collects the camera regions into output frames, and hands finished frames to the display and the output sinks.
+	*/
+	protected abstract class Compositor {
+	
+		// publish only when asked to, rather than after every camera frame
+		protected final boolean deferred_;
+		
+		protected Compositor(boolean deferred) {
+		
+			deferred_ = deferred;
+		}
+	
+		/**
+		Exports and displays the regions written so far as one output frame.
+		*/
+		public abstract void publish();
+		
+		/**
+		Draws the most recent complete frame.
+		*/
+		public abstract void paint(Graphics g, int x, int y, int w, int h);
+		
+		/**
+		Releases what the compositor holds outside the heap, once the cameras have stopped writing.
+		*/
+		public void stop() {
+		}
+		
+		/**
+		Records the capture-to-publication latency of every layer's frame that wasn't in a published output frame before,
+		and returns the presentation timestamp of the most recently captured frame in the output, or -1 if unknown.
+		Called by the publishing thread when it publishes an output frame.
+		*/
+		protected long published(Collection<? extends Layer> layers) {
+		
+			long now = System.nanoTime();
+			long newest = NO_TIME;
+			long pts = -1;
+			for (Layer layer : layers) {
+				if (layer.captureNanos_ == NO_TIME) {
+					continue;
+				}
+				if (layer.unpublished_) {
+					layer.metrics_.record(Metrics.Stage.LATENCY, now - layer.captureNanos_);
+					layer.unpublished_ = false;
+				}
+				if (newest == NO_TIME || layer.captureNanos_ - newest > 0) {
+					newest = layer.captureNanos_;
+					pts = layer.pts_;
+				}
+			}
+			return pts;
+		}
+		
+		/**
+		The input through which one camera writes its region, of packed pixels or planar frames as the compositor takes.
+		*/
+		public abstract class Layer {
+		
+			protected final Metrics metrics_;
+			
+			// the frame in the output, owned by the publishing thread
+			protected long pts_ = -1;
+			protected long captureNanos_ = NO_TIME;
+			protected boolean unpublished_ = false;
+			
+			protected Layer(Metrics metrics) {
+			
+				metrics_ = metrics;
+			}
+			
+			protected void setFrame(long pts, long captureNanos) {
+			
+				pts_ = pts;
+				captureNanos_ = captureNanos;
+				unpublished_ = true;
+			}
+		}
+		
+	} // Compositor
+	
+	/**
+	Compositor of packed pixels, which every mode but the planar one is.
+	*/
+	protected abstract class PackedCompositor extends Compositor {
+	
+		protected PackedCompositor(boolean deferred) {
+		
+			super(deferred);
+		}
+		
+		/**
+		Returns the input through which one camera writes its region, timed into the camera's metrics.
+		*/
+		public abstract PackedLayer createLayer(Metrics metrics);
+		
+		public abstract class PackedLayer extends Layer {
+		
+			protected RemapTable remapTable_ = null; // the table last written with, owned by the publishing thread
+			
+			protected PackedLayer(Metrics metrics) {
+			
+				super(metrics);
+			}
+			
+			/**
+			Copies the pixels of a camera frame selected by the table into the output.
+			The frame's presentation timestamp and capture time, in System.nanoTime() terms, are passed on to the export
+			and the latency metrics; either may be unknown, as -1 and NO_TIME.
+			*/
+			public abstract void write(RemapTable remapTable, IntBuffer cameraFramePixels, long pts, long captureNanos);
+			
+			/**
+			Called before writing with a table, by the thread writing the output pixels. When a camera's table changes,
+			with its resolution or calibration, puts the background back on the pixels the old table wrote,
+			so none of them keep showing the old mapping.
+			*/
+			protected void setRemapTable(RemapTable remapTable, int[] outputPixels) {
+			
+				if (remapTable_ != null && remapTable_ != remapTable) {
+					remapTable_.restore(outputBackground_, outputPixels);
+				}
+				remapTable_ = remapTable;
+			}
+		}
+		
+	} // PackedCompositor
+	
+	/**
+	Original compositor: one shared image, with camera writes, export and painting serialized by a fair lock.
+	*/
+	protected class LockingCompositor extends PackedCompositor {
+	
+		protected final int[] outputPixels_ = createOutputPixels();
+		protected BufferedImage outputImage_ = null; // created on first paint, over outputPixels_
+		protected final Lock outputLock_ = new ReentrantLock(true);
+		protected final java.util.List<PackedLayer> layers_ = new CopyOnWriteArrayList<>();
+		
+		public LockingCompositor(boolean deferred) {
+		
+			super(deferred);
+		}
+		
+		@Override
+		public PackedLayer createLayer(Metrics metrics) {
+		
+			PackedLayer layer = new PackedLayer(metrics) {
+			
+				@Override
+				public void write(RemapTable remapTable, IntBuffer cameraFramePixels, long pts, long captureNanos) {
+				
+					long t0 = System.nanoTime();
+					outputLock_.lock();
+					try {
+						metrics_.record(Metrics.Stage.LOCK, System.nanoTime() - t0);
+						setRemapTable(remapTable, outputPixels_);
+						remapTable.remap(cameraFramePixels, outputPixels_);
+						setFrame(pts, captureNanos);
+						if (!deferred_) {
+							exportFrame(outputPixels_, published(layers_));
+						}
+					}
+					finally {
+						outputLock_.unlock();
+					}
+				}
+			};
+			layers_.add(layer);
+			return layer;
+		}
+		
+		@Override
+		public void publish() {
+		
+			long t0 = System.nanoTime();
+			outputLock_.lock();
+			try {
+				outputMetrics_.record(Metrics.Stage.LOCK, System.nanoTime() - t0);
+				exportFrame(outputPixels_, published(layers_));
+			}
+			finally {
+				outputLock_.unlock();
+			}
+		}
+		
+		@Override
+		public void paint(Graphics g, int x, int y, int w, int h) {
+		
+			long t0 = System.nanoTime();
+			outputLock_.lock();
+			try {
+				outputMetrics_.record(Metrics.Stage.LOCK, System.nanoTime() - t0);
+				if (outputImage_ == null) {
+					outputImage_ = createOutputImage(outputPixels_);
+				}
+				g.drawImage(outputImage_, x, y, w, h, null);
+			}
+			finally {
+				outputLock_.unlock();
+			}
+		}
+		
+	} // LockingCompositor
+	
+	/**
+	Compositor writing straight into a single framebuffer off the heap, in the configured byte order, which with
+	framebuffer-file is the file itself, memory-mapped and laid out as the file sink's. Camera writes, exports and
+	painting take turns on a fair lock, as in LockingCompositor; with the file, a camera frame also takes the OS file lock
+	readers hold while they read, and is skipped while a reader holds it, as the file sink skips frames, so readers
+	never see a camera's pixels half written. Nothing copies the framebuffer into the file: each camera's pixels go
+	there as they are mapped, and exports hand the framebuffer itself to the output sinks. The display paints from an
+	image that takes, under the lock, only the pixels of the tables written since its last paint, as Java2D draws
+	pixels it can't reach as an array one at a time.
+	*/
+	protected class FramebufferCompositor extends PackedCompositor {
+	
+		protected final IntBuffer outputPixels_;
+		protected final Lock outputLock_ = new ReentrantLock(true);
+		protected final java.util.List<PackedLayer> layers_ = new CopyOnWriteArrayList<>();
+		
+		// guarded by outputLock_
+		protected FileChannel fileChannel_; // null without a file, or once closed
+		protected boolean painting_ = false; // once the display has painted, from when written tables are kept for it
+		protected final Set<RemapTable> unpainted_ = Collections.newSetFromMap(new IdentityHashMap<>()); // since the last paint
+		
+		// owned by the event dispatch thread, created on first paint
+		protected int[] paintPixels_ = null;
+		protected BufferedImage outputImage_ = null;
+		
+		public FramebufferCompositor(boolean deferred, String file) {
+		
+			super(deferred);
+			
+			int bytes = 4 * outputResolution_.width * outputResolution_.height;
+			FileChannel fileChannel = null;
+			ByteBuffer buffer = null;
+			if (!file.isEmpty()) {
+				try {
+					fileChannel = new RandomAccessFile(file, "rw").getChannel();
+					buffer = fileChannel.map(MapMode.READ_WRITE, 0, bytes);
+				}
+				catch (IOException ex) {
+					logger_.log(Level.SEVERE, "Framebuffer file " + file + " not mapped, exporting to output sinks only.", ex);
+					closeFile(fileChannel);
+					fileChannel = null;
+					buffer = null;
+				}
+			}
+			fileChannel_ = fileChannel;
+			outputPixels_ = (buffer != null ? buffer : ByteBuffer.allocateDirect(bytes)).order(byteOrder_).asIntBuffer();
+			outputPixels_.put(0, outputBackground_);
+		}
+		
+		@Override
+		public PackedLayer createLayer(Metrics metrics) {
+		
+			PackedLayer layer = new PackedLayer(metrics) {
+			
+				@Override
+				public void write(RemapTable remapTable, IntBuffer cameraFramePixels, long pts, long captureNanos) {
+				
+					long t0 = System.nanoTime();
+					outputLock_.lock();
+					FileLock lock = null;
+					try {
+						if (fileChannel_ != null) {
+							lock = fileChannel_.tryLock();
+							if (lock == null) {
+								metrics_.countSkipped();
+								return;
+							}
+						}
+						metrics_.record(Metrics.Stage.LOCK, System.nanoTime() - t0);
+						if (remapTable_ != null && remapTable_ != remapTable) { // as setRemapTable() does for arrays
+							remapTable_.restore(outputBackground_, outputPixels_);
+							setUnpainted(remapTable_);
+						}
+						remapTable_ = remapTable;
+						remapTable.remap(cameraFramePixels, outputPixels_);
+						setUnpainted(remapTable);
+						setFrame(pts, captureNanos);
+						if (!deferred_) {
+							export();
+						}
+					}
+					catch (IOException ex) {
+						logger_.log(Level.SEVERE, "Framebuffer file not locked, camera frame skipped.", ex);
+					}
+					finally {
+						releaseFile(lock);
+						outputLock_.unlock();
+					}
+				}
+			};
+			layers_.add(layer);
+			return layer;
+		}
+		
+		/**
+		Keeps a table just written for the next paint, once the display paints. Called under the lock.
+		*/
+		protected void setUnpainted(RemapTable remapTable) {
+		
+			if (painting_) {
+				unpainted_.add(remapTable);
+			}
+		}
+		
+		@Override
+		public void publish() {
+		
+			long t0 = System.nanoTime();
+			outputLock_.lock();
+			try {
+				outputMetrics_.record(Metrics.Stage.LOCK, System.nanoTime() - t0);
+				export();
+			}
+			finally {
+				outputLock_.unlock();
+			}
+		}
+		
+		/**
+		Hands the framebuffer to the output sinks; the file, if any, already holds the frame.
+		*/
+		protected void export() {
+		
+			exportFrame(outputPixels_, published(layers_));
+		}
+		
+		@Override
+		public void paint(Graphics g, int x, int y, int w, int h) {
+		
+			if (outputImage_ == null) {
+				paintPixels_ = new int[outputPixels_.capacity()];
+				outputImage_ = createOutputImage(paintPixels_);
+			}
+			long t0 = System.nanoTime();
+			outputLock_.lock();
+			try {
+				outputMetrics_.record(Metrics.Stage.LOCK, System.nanoTime() - t0);
+				if (!painting_) {
+					outputPixels_.get(0, paintPixels_);
+					painting_ = true;
+				}
+				for (RemapTable remapTable : unpainted_) {
+					remapTable.copy(outputPixels_, paintPixels_);
+				}
+				unpainted_.clear();
+			}
+			finally {
+				outputLock_.unlock();
+			}
+			g.drawImage(outputImage_, x, y, w, h, null);
+		}
+		
+		@Override
+		public void stop() {
+		
+			outputLock_.lock();
+			try {
+				closeFile(fileChannel_);
+				fileChannel_ = null;
+			}
+			finally {
+				outputLock_.unlock();
+			}
+		}
+		
+		protected void releaseFile(FileLock lock) {
+		
+			if (lock != null) {
+				try {
+					lock.release();
+				}
+				catch (IOException ex) {
+					ex.printStackTrace();
+				}
+			}
+		}
+		
+		protected void closeFile(FileChannel fileChannel) {
+		
+			if (fileChannel != null) {
+				try {
+					fileChannel.close();
+				}
+				catch (IOException ex) {
+					ex.printStackTrace();
+				}
+			}
+		}
+		
+	} // FramebufferCompositor
+	
+	/**
+	Lock-free compositor. Each camera gathers its pixels into a private region buffer, concurrently with the others,
+	and hands it over through a triple buffer. Whichever camera finds no publish in progress scatters the newest
+	regions into the composite, exports it, and swaps it into another triple buffer for the display, so neither
+	cameras nor painting ever wait for each other, and every displayed or exported frame is complete.
+	*/
+	protected class DoubleBufferedCompositor extends PackedCompositor {
+	
+		protected final java.util.List<RegionLayer> layers_ = new CopyOnWriteArrayList<>();
+		protected final AtomicBoolean dirty_ = new AtomicBoolean(); // some layer has a region not yet published
+		protected final AtomicBoolean publishing_ = new AtomicBoolean();
+		
+		// owned by whichever thread holds publishing_
+		protected final int[] composite_ = createOutputPixels();
+		protected OutputFrame spare_ = new OutputFrame();
+		protected long sequence_ = 0;
+		
+		// exchanged between the publisher and the painter; showing_ is only touched by the event dispatch thread
+		protected final AtomicReference<OutputFrame> ready_ = new AtomicReference<>(new OutputFrame());
+		protected OutputFrame showing_ = new OutputFrame();
+		
+		public DoubleBufferedCompositor(boolean deferred) {
+		
+			super(deferred);
+		}
+		
+		@Override
+		public PackedLayer createLayer(Metrics metrics) {
+		
+			RegionLayer layer = new RegionLayer(metrics);
+			layers_.add(layer);
+			return layer;
+		}
+		
+		@Override
+		public void publish() {
+		
+			// a request made while another thread is publishing is picked up by that thread's next pass
+			while (dirty_.get() && publishing_.compareAndSet(false, true)) {
+				try {
+					dirty_.set(false);
+					for (RegionLayer layer : layers_) {
+						layer.scatter(composite_);
+					}
+					System.arraycopy(composite_, 0, spare_.pixels_, 0, composite_.length);
+					exportFrame(spare_.pixels_, published(layers_));
+					spare_.sequence_ = ++sequence_;
+					spare_ = ready_.getAndSet(spare_);
+				}
+				finally {
+					publishing_.set(false);
+				}
+			}
+		}
+		
+		@Override
+		public void paint(Graphics g, int x, int y, int w, int h) {
+		
+			if (ready_.get().sequence_ > showing_.sequence_) {
+				showing_ = ready_.getAndSet(showing_);
+			}
+			if (showing_.image_ == null) {
+				showing_.image_ = createOutputImage(showing_.pixels_);
+			}
+			g.drawImage(showing_.image_, x, y, w, h, null);
+		}
+		
+		protected class OutputFrame {
+		
+			protected final int[] pixels_ = createOutputPixels();
+			protected BufferedImage image_ = null; // created when first painted
+			protected volatile long sequence_ = 0;
+		}
+		
+		protected class RegionFrame {
+		
+			protected RemapTable remapTable_ = null;
+			protected int[] region_ = new int[0];
+			protected long pts_ = -1;
+			protected long captureNanos_ = NO_TIME;
+			protected volatile long sequence_ = 0;
+		}
+		
+		protected class RegionLayer extends PackedLayer {
+		
+			// writing_ is owned by the camera thread, taken_ by the publisher, ready_ is exchanged between them
+			protected RegionFrame writing_ = new RegionFrame();
+			protected final AtomicReference<RegionFrame> ready_ = new AtomicReference<>(new RegionFrame());
+			protected RegionFrame taken_ = new RegionFrame();
+			protected long sequence_ = 0;
+			
+			protected RegionLayer(Metrics metrics) {
+			
+				super(metrics);
+			}
+			
+			@Override
+			public void write(RemapTable remapTable, IntBuffer cameraFramePixels, long pts, long captureNanos) {
+			
+				if (writing_.region_.length != remapTable.getMappedPixels()) {
+					writing_.region_ = new int[remapTable.getMappedPixels()];
+				}
+				writing_.remapTable_ = remapTable;
+				remapTable.gather(cameraFramePixels, writing_.region_);
+				writing_.pts_ = pts;
+				writing_.captureNanos_ = captureNanos;
+				writing_.sequence_ = ++sequence_;
+				writing_ = ready_.getAndSet(writing_);
+				dirty_.set(true);
+				if (!deferred_) {
+					publish();
+				}
+			}
+			
+			protected void scatter(int[] outputPixels) {
+			
+				if (ready_.get().sequence_ > taken_.sequence_) {
+					taken_ = ready_.getAndSet(taken_);
+					setRemapTable(taken_.remapTable_, outputPixels);
+					taken_.remapTable_.scatter(taken_.region_, outputPixels);
+					setFrame(taken_.pts_, taken_.captureNanos_);
+				}
+			}
+		}
+		
+	} // DoubleBufferedCompositor
+	
+	/**
+	Compositor for planar camera frames: one shared I420 frame, with camera writes, export and painting serialized by
+	a fair lock, as in LockingCompositor. Frames are exported in I420 as they are; only painting converts colors,
+	from a copy taken under the lock, and only when a camera has written since the last paint.
+	*/
+	protected class PlanarCompositor extends Compositor {
+	
+		protected final byte[] outputFrame_ = outputPlanarBackground_.clone();
+		protected final Lock outputLock_ = new ReentrantLock(true);
+		protected final java.util.List<PlanarLayer> layers_ = new CopyOnWriteArrayList<>();
+		protected long written_ = 0; // frames written, guarded by outputLock_
+		
+		// owned by the event dispatch thread, created on first paint
+		protected byte[] paintFrame_ = null;
+		protected int[] paintPixels_ = null;
+		protected BufferedImage outputImage_ = null;
+		protected long painted_ = -1;
+		
+		public PlanarCompositor(boolean deferred) {
+		
+			super(deferred);
+		}
+		
+		/**
+		Returns the input through which one camera writes its region, timed into the camera's metrics.
+		*/
+		public PlanarLayer createLayer(Metrics metrics) {
+		
+			PlanarLayer layer = new PlanarLayer(metrics);
+			layers_.add(layer);
+			return layer;
+		}
+		
+		@Override
+		public void publish() {
+		
+			long t0 = System.nanoTime();
+			outputLock_.lock();
+			try {
+				outputMetrics_.record(Metrics.Stage.LOCK, System.nanoTime() - t0);
+				exportFrame(outputFrame_, published(layers_));
+			}
+			finally {
+				outputLock_.unlock();
+			}
+		}
+		
+		@Override
+		public void paint(Graphics g, int x, int y, int w, int h) {
+		
+			if (outputImage_ == null) {
+				paintFrame_ = new byte[outputFrame_.length];
+				paintPixels_ = new int[outputResolution_.width * outputResolution_.height];
+				outputImage_ = createOutputImage(paintPixels_);
+			}
+			long t0 = System.nanoTime();
+			long written;
+			outputLock_.lock();
+			try {
+				outputMetrics_.record(Metrics.Stage.LOCK, System.nanoTime() - t0);
+				written = written_;
+				if (written != painted_) {
+					System.arraycopy(outputFrame_, 0, paintFrame_, 0, outputFrame_.length);
+				}
+			}
+			finally {
+				outputLock_.unlock();
+			}
+			if (written != painted_) {
+				PixelFormat.I420.toRGB(paintFrame_, outputResolution_.width, outputResolution_.height, paintPixels_);
+				painted_ = written;
+			}
+			g.drawImage(outputImage_, x, y, w, h, null);
+		}
+		
+		public class PlanarLayer extends Layer {
+		
+			protected PlanarRemapTable remapTable_ = null; // the table last written with, guarded by outputLock_
+			
+			protected PlanarLayer(Metrics metrics) {
+			
+				super(metrics);
+			}
+			
+			/**
+			Copies the samples of a planar camera frame selected by the table into the output, as PackedLayer.write() does pixels.
+			*/
+			public void write(PlanarRemapTable remapTable, ByteBuffer cameraFrame, long pts, long captureNanos) {
+			
+				long t0 = System.nanoTime();
+				outputLock_.lock();
+				try {
+					metrics_.record(Metrics.Stage.LOCK, System.nanoTime() - t0);
+					if (remapTable_ != null && remapTable_ != remapTable) { // as setRemapTable() does for packed pixels
+						remapTable_.restore(outputPlanarBackground_, outputFrame_);
+					}
+					remapTable_ = remapTable;
+					remapTable.remap(cameraFrame, outputFrame_);
+					written_++;
+					setFrame(pts, captureNanos);
+					if (!deferred_) {
+						exportFrame(outputFrame_, published(layers_));
+					}
+				}
+				finally {
+					outputLock_.unlock();
+				}
+			}
+		}
+		
+	} // PlanarCompositor
+
+	final class CameraConfiguration implements QualityController.Camera {
+	
+		// configured properties set at initilization time
+		public final String name_;
+		private final FrameSource frameSource_;
+		private FrameRecorder frameRecorder_ = null;
+		
+		// with several outputs, the first output's camera reads the frames, and hands each to the others' cameras too
+		private final CameraConfiguration leader_; // of the first output, or null for that one
+		private final java.util.List<CameraConfiguration> followers_ = new ArrayList<>(); // complete before start()
+		
+		// camera placement
+		private final char cameraOrientation_;
+		private final double cameraX_;
+		private final double cameraY_;
+		private final double cameraZ_;
+		
+		// camera lens properties
+		private final double cameraFOVAngle_;
+		private final double cameraFOVDiameter_;
+		private final double cameraFOVCenterX_;
+		private final double cameraFOVCenterY_;
+		
+		private volatile Dimension cameraResolution_ = null;
+		private volatile SourceRegion sourceRegion_ = null; // of the source frames that camera frames are
+		private final Collection<Mapper> mapper_ = new LinkedList<>();
+		private CameraTable table_ = null;
+		private final Metrics metrics_;
+		private final PackedCompositor.PackedLayer layer_; // null for planar frames
+		private final PlanarCompositor.PlanarLayer planarLayer_; // null for packed pixels
+		
+		// the configuration and layout this camera's calibration and mappers were read from, in place of the outer ones
+		protected final Properties properties_;
+		protected final LayoutIndex outputLayoutIndex_;
+		protected final byte[] outputLayoutBytes_;
+		
+		// the configuration tables are built from: this one, until a reload brings a new calibration and mappers,
+		// which wait in recalibration_ for the camera thread to swap them in with their table
+		private volatile CameraConfiguration calibration_ = this;
+		private final AtomicReference<Recalibration> recalibration_ = new AtomicReference<>();
+		
+		// each mapper's table by its inputs, kept with hot reload for mappers a reload leaves unchanged
+		private final Map<String, int[]> mapperMaps_ = new ConcurrentHashMap<>();
+		
+		private long lastPTS_ = -1; // owned by the camera thread
+		
+		// frames wait here for a camera thread, as many as <camera>.queue, with <camera>.drop oldest|newest|block when full
+		private FrameIngest.Channel channel_ = null;
+		private volatile boolean ended_ = false;
+		
+		// with source-roi, the frame source is asked for just the region the table reads, at the density it reads it;
+		// the table for the region waits here until the first frame of it arrives
+		private final boolean sourceROI_;
+		private final int sourceROIMargin_;
+		private final double sourceScale_; // 0 for the sampling density's
+		private SourceRegion requestedRegion_ = null; // owned by the camera thread
+		private CameraTable requestedTable_ = null;
+		private long requestedNanos_ = 0;
+		
+		// with an output schedule, the newest frame waits here for the next tick, replacing any frame not yet taken
+		private final AtomicReference<PendingFrame> latestFrame_ = new AtomicReference<>();
+		private PendingFrame currentFrame_ = null; // owned by the output thread
+		
+		// with QoS, lower priorities give up work first; at each level below full, frames are composited with a table
+		// built along with the camera's table and replaced with it, see CameraTable
+		private final int priority_;
+		private volatile QualityController.Level qosLevel_ = QualityController.Level.FULL;
+		private long qosFrames_ = 0; // owned by the camera thread
+		
+		// with display-mode native, the camera's input to the display, created with its first frame once there is one
+		private DisplayCanvas.Layer displayLayer_ = null;
+		
+		public CameraConfiguration(String name) throws Exception {
+		
+			this(name, VideoMapper.this.properties_, VideoMapper.this.outputLayoutIndex_, VideoMapper.this.outputLayoutBytes_, true);
+		}
+		
+		/**
+		Reads a camera's configuration. Only a live one has a frame source and a layer in the output;
+		a reload builds others just for their calibration and mappers.
+		*/
+		protected CameraConfiguration(String name, Properties properties, LayoutIndex layoutIndex, byte[] layoutBytes, boolean live) throws Exception {
+			
+			name_ = name;
+			properties_ = properties;
+			outputLayoutIndex_ = layoutIndex;
+			outputLayoutBytes_ = layoutBytes;
+			leader_ = live && primary_ != null ? primary_.getCamera(name_) : null;
+			if (live && primary_ != null && leader_ == null) {
+				throw new RuntimeException(name_ + " is not a camera of the first output, " + primary_.outputName_ + ".");
+			}
+			frameSource_ = leader_ != null ? leader_.frameSource_ : live ? FrameSource.create(name_, properties_, byteOrder_, pixelFormat_) : null;
+			boolean sourceROI = Boolean.parseBoolean(properties_.getProperty(name_ + ".source-roi", "false").trim());
+			if (sourceROI && live && sharedFrames_ && primary_ == null) {
+				logger_.info(name_ + ": frames are shared by outputs, source-roi ignored.");
+			}
+			sourceROI_ = sourceROI && !sharedFrames_; // a region for one output's tables would leave others short
+			sourceROIMargin_ = Integer.parseInt(properties_.getProperty(name_ + ".source-roi-margin", "8").trim());
+			String sourceScale = properties_.getProperty(name_ + ".source-scale", "auto").trim();
+			sourceScale_ = "auto".equalsIgnoreCase(sourceScale) ? 0 : Double.parseDouble(sourceScale);
+			priority_ = Integer.parseInt(properties_.getProperty(name_ + ".priority", "0").trim());
+			metrics_ = live ? new Metrics(primary_ == null ? name_ : outputName_ + "." + name_) : null;
+			layer_ = live && packedCompositor_ != null ? packedCompositor_.createLayer(metrics_) : null;
+			planarLayer_ = live && planarCompositor_ != null ? planarCompositor_.createLayer(metrics_) : null;
+
+			// camera location
+			cameraOrientation_ = properties_.getProperty(name_ + ".camera-orientation", "N").toUpperCase().charAt(0); // N|S|E|W
+			double cameraNSPosition = Double.parseDouble(properties_.getProperty(name_ + ".camera-NS-position", "0.0")); // relative to origin
+			double cameraEWPosition_ = Double.parseDouble(properties_.getProperty(name_ + ".camera-EW-position", "0.0")); // relative to origin
+			AffineTransform worldToCamera = new AffineTransform();
+			worldToCamera.rotate(Math.PI/180.*(cameraOrientation_=='E' ? 90. : cameraOrientation_=='S' ? 180. : cameraOrientation_=='W' ? 270. : 0.));
+			double[] cameraPosition = { Double.parseDouble(properties_.getProperty(name_ + ".camera-EW-position", "0.0")), // E/W relative to origin
+			                            Double.parseDouble(properties_.getProperty(name_ + ".camera-NS-position", "0.0"))}; // N/S relative to origin
+			worldToCamera.transform(cameraPosition, 0, cameraPosition, 0, 1);
+			cameraX_ = cameraPosition[0];
+			cameraY_ = cameraPosition[1];
+			cameraZ_ = Double.parseDouble(properties_.getProperty(name_ + ".camera-height", "24.0")); // height above origin
+			
+			// camera properties
+			cameraFOVAngle_ = Double.parseDouble(properties_.getProperty(name_ + ".camera-fov-angle", "180.0")); // view in degrees			
+			cameraFOVDiameter_ = Double.parseDouble(properties_.getProperty(name_ + ".camera-fov-diameter", "1.0")); // fraction of image width at fov angle
+			cameraFOVCenterX_ = Double.parseDouble(properties_.getProperty(name_ + ".camera-fov-center-X", "0.5")); // fraction of image width
+			cameraFOVCenterY_ = Double.parseDouble(properties_.getProperty(name_ + ".camera-fov-center-Y", "0.5")); // fraction of image height
+
+			// pixel mappers
+			for (int i = 0; ; i++) {
+				String mapperName = properties_.getProperty(name_ + ".mapper"+i);
+				if (mapperName == null || mapperName.trim().isEmpty()) { // an empty one ends a list an output inherits
+					break;
+				}
+				try {
+					Class<?> mapperClass = Class.forName(properties_.getProperty(mapperName + ".class"));
+					mapper_.add((Mapper)mapperClass.getDeclaredConstructor(CameraConfiguration.class, String.class).newInstance(this, mapperName));
+				}
+				catch (Exception ex) {
+					logger_.log(Level.SEVERE, "Mapper initialization failed.", ex);
+				}
+			}
+			if (mapper_.isEmpty()) {
+				throw new RuntimeException("No mappers configured.");
+			}
+			if (leader_ != null) {
+				leader_.followers_.add(this);
+			}
+		}
+		
+		public void start() throws Exception {
+		
+			metrics_.register();
+			String record = properties_.getProperty("record");
+			if (record != null && !record.trim().isEmpty() && leader_ == null) {
+				long segmentBytes = Long.parseLong(properties_.getProperty("record-segment-size", "256").trim()) << 20;
+				frameRecorder_ = new FrameRecorder(name_, Paths.get(record.trim(), name_), segmentBytes, byteOrder_, pixelFormat_);
+				if (sourceROI_) {
+					logger_.info(name_ + ": recording whole frames, source-roi ignored.");
+				}
+			}
+			int queue = Integer.parseInt(properties_.getProperty(name_ + ".queue", "1").trim());
+			DropPolicy drop = DropPolicy.create(properties_, name_ + ".");
+			channel_ = ingest_.open(leader_ == null ? name_ : outputName_ + "." + name_, this::handleFrame, queue, drop);
+			if (leader_ == null) {
+				frameSource_.start(followers_.isEmpty() ? channel_::offer : this::shareFrame, this::streamEnded, metrics_);
+			}
+		}
+		
+		/**
+		Hands a frame to this camera and to the same camera of every other output, each on a channel of its own,
+		so that each output composites it at its own pace, and it is disposed of once all have.
+		*/
+		protected void shareFrame(FrameSource.Frame frame) {
+		
+			FrameSource.SharedFrame shared = new FrameSource.SharedFrame(frame, 1 + followers_.size());
+			channel_.offer(shared);
+			for (CameraConfiguration follower : followers_) {
+				follower.metrics_.countFrame();
+				follower.channel_.offer(shared);
+			}
+		}
+		
+		/**
+		Tears down a stream that has ended or failed, on a camera thread rather than the source's own,
+		which may be a Gstreamer streaming thread that stopping the pipeline would wait for. The channels the source
+		offers to are closed first, so that with the block drop policy none of its streaming threads waits on them
+		for a camera thread, as this one is busy stopping it.
+		*/
+		protected void streamEnded() {
+		
+			ingest_.execute(() -> {
+				channel_.close();
+				for (CameraConfiguration follower : followers_) {
+					if (follower.channel_ != null) {
+						follower.channel_.close();
+					}
+				}
+				frameSource_.stop();
+				ended_ = true;
+				VideoMapper.this.streamEnded(this);
+			});
+		}
+		
+		public boolean isEnded() {
+		
+			return ended_;
+		}
+		
+		public void stop() {
+		
+			if (channel_ != null) {
+				channel_.close(); // before the source, which may be blocked offering to it, see streamEnded()
+			}
+			if (frameSource_ != null && leader_ == null) {
+				for (CameraConfiguration follower : followers_) {
+					if (follower.channel_ != null) {
+						follower.channel_.close();
+					}
+				}
+				frameSource_.stop();
+			}
+		}
+		
+		public void closeRecorder() {
+		
+			if (frameRecorder_ != null) {
+				frameRecorder_.close();
+			}
+		}
+		
+		public void handleFrame(FrameSource.Frame frame) {
+
+			if (!setCameraResolution(frame.getWidth(), frame.getHeight())) {
+				metrics_.countSkipped();
+				frame.dispose();
+				return;
+			}
+			
+			// gaps in the presentation timestamps are frames lost upstream, mostly dropped by the appsink or the camera's queue
+			long pts = frame.getPTS();
+			if (pts >= 0) {
+				long duration = frame.getDuration();
+				if (lastPTS_ >= 0 && duration > 0) {
+					long missing = Math.round((double)(pts - lastPTS_) / duration) - 1;
+					if (missing > 0) {
+						metrics_.countDropped(missing);
+					}
+				}
+				lastPTS_ = pts;
+			}
+			long clockOffset = frameSource_.getClockOffset();
+			long captureNanos = pts >= 0 && clockOffset != NO_TIME ? pts + clockOffset : NO_TIME;
+			
+			if (frameRecorder_ != null) {
+				long t0 = System.nanoTime();
+				frameRecorder_.record(frame, t0, captureNanos);
+				metrics_.record(Metrics.Stage.RECORD, System.nanoTime() - t0);
+			}
+			
+			// overloaded, cameras composite only every other frame at the last QoS level, and with a degraded table before it
+			QualityController.Level level = qosLevel_;
+			if (level == QualityController.Level.DROPPING && (qosFrames_++ & 1) != 0) {
+				metrics_.countSkipped();
+				frame.dispose();
+				return;
+			}
+			FrameTable remapTable = table_.get(level);
+			
+			if (outputFPS_ > 0) {
+				PendingFrame replaced = latestFrame_.getAndSet(new PendingFrame(frame, remapTable, pts, captureNanos));
+				if (replaced != null) {
+					metrics_.countSkipped();
+					replaced.frame_.dispose();
+				}
+				return;
+			}
+			
+			// update the output image with pixels from this camera frame
+			processFrame(frame, remapTable, pts, captureNanos);
+			frame.dispose();
+			
+			repaintOutput();
+		}
+		
+		/**
+		Sets the size of the camera's frames, building the pixel mapping table for it whenever it changes,
+		and swaps in a calibration reloaded since the last frame. Returns false for a frame to skip, one of another size
+		than asked for that comes while the frame source changes over to a region.
+		*/
+		public boolean setCameraResolution(int w, int h) {
+		
+			Recalibration recalibration = recalibration_.getAndSet(null);
+			if (recalibration != null) {
+				calibration_ = recalibration.calibration_;
+				table_ = recalibration.resolution_ != null && recalibration.resolution_.width == w && recalibration.resolution_.height == h
+				       ? recalibration.table_ : null;
+				logger_.info(name_ + ": recalibrated.");
+				if (qualityController_ != null) { // panorama mappers may have come or gone
+					qualityController_.rebuild();
+				}
+				if (sourceRegion_ != null && !sourceRegion_.isFull()) {
+					// the region was derived from the previous calibration's table: whole frames again, to derive it anew
+					requestRegion(SourceRegion.full(sourceRegion_.sourceWidth_, sourceRegion_.sourceHeight_), null);
+				}
+			}
+			if (cameraResolution_ == null || cameraResolution_.width != w || cameraResolution_.height != h) {
+				if (requestedRegion_ != null && requestedRegion_.isFrameSize(w, h)) {
+					sourceRegion_ = requestedRegion_;
+					table_ = requestedTable_;
+					logger_.info(name_ + ": frames now " + sourceRegion_ + ".");
+				}
+				else if (requestedRegion_ != null && System.nanoTime() - requestedNanos_ < REGION_TIMEOUT) {
+					return false;
+				}
+				else {
+					if (requestedRegion_ != null) {
+						logger_.warning(name_ + ": frame source did not change to " + requestedRegion_ + ", taking " + w + "x" + h + " frames as whole.");
+					}
+					sourceRegion_ = SourceRegion.full(w, h);
+					table_ = null;
+				}
+				requestedRegion_ = null;
+				requestedTable_ = null;
+				cameraResolution_ = new Dimension(w, h);
+			}
+			if(table_ == null) { // initialize pixel mapping table
+				CameraConfiguration calibration = calibration_;
+				calibration.cameraResolution_ = cameraResolution_;
+				calibration.sourceRegion_ = sourceRegion_;
+				int[][] map = calibration.getCachedMap(null, true);
+				table_ = compileRemapTable(calibration, map, cameraResolution_);
+				logger_.info(name_ + ": " + table_);
+				if (sourceROI_ && frameRecorder_ == null && frameSource_ != null && getSourceRegion().isFull()) {
+					negotiateRegion(calibration, map);
+				}
+			}
+			return true;
+		}
+		
+		/**
+		Derives the region of the frames that a table just built for whole frames reads. Unless that is most of them,
+		builds the table for the region and asks the frame source for it, to swap the table in with its first frame.
+		The table is built by a copy of the calibration set to the region's frames, as the reload thread reads the
+		calibration's frame size and region in recalibrate() meanwhile; the copy's mapper tables are kept with the
+		calibration's, for a reload to reuse.
+		*/
+		protected void negotiateRegion(CameraConfiguration calibration, int[][] map) {
+		
+			Dimension resolution = cameraResolution_;
+			SourceRegion region = SourceRegion.analyze(map, outputResolution_.width, resolution.width, resolution.height, sourceROIMargin_, sourceScale_);
+			if (region.getFraction() > REGION_FRACTION_MAX) {
+				logger_.info(name_ + ": table reads " + region + ", whole frames kept.");
+				return;
+			}
+			Dimension frameResolution = new Dimension(region.frameWidth_, region.frameHeight_);
+			CameraTable table;
+			try {
+				CameraConfiguration regional = new CameraConfiguration(calibration.name_, calibration.properties_, calibration.outputLayoutIndex_,
+				                                                       calibration.outputLayoutBytes_, false);
+				regional.cameraResolution_ = frameResolution;
+				regional.sourceRegion_ = region;
+				table = compileRemapTable(regional, regional.getCachedMap(null, true), frameResolution);
+				calibration.mapperMaps_.putAll(regional.mapperMaps_);
+			}
+			catch (Exception ex) {
+				logger_.log(Level.SEVERE, name_ + ": table for " + region + " not built, whole frames kept.", ex);
+				return;
+			}
+			if (requestRegion(region, table)) {
+				logger_.info(name_ + ": table reads " + region + ", " + Math.round(100*region.getFraction()) + "% of the pixels, asked the frame source for it.");
+			}
+		}
+		
+		protected boolean requestRegion(SourceRegion region, CameraTable table) {
+		
+			if (!frameSource_.setRegion(region)) {
+				logger_.info(name_ + ": frame source can't crop or scale, whole frames kept.");
+				return false;
+			}
+			requestedRegion_ = region;
+			requestedTable_ = table;
+			requestedNanos_ = System.nanoTime();
+			return true;
+		}
+		
+		/**
+		The region of the source frames that the camera's frames are, as tables are built for: whole frames unless one was negotiated.
+		*/
+		protected SourceRegion getSourceRegion() {
+		
+			Dimension resolution = cameraResolution_;
+			SourceRegion region = sourceRegion_;
+			return region != null && region.isFrameSize(resolution.width, resolution.height) ? region : SourceRegion.full(resolution.width, resolution.height);
+		}
+		
+		/**
+		Compiles a table as compileTable() does, along with the tables QoS levels below full use instead of it.
+		*/
+		protected CameraTable compileRemapTable(CameraConfiguration calibration, int[][] map, Dimension cameraResolution) {
+		
+			FrameTable remapTable = compileTable(calibration, map, cameraResolution);
+			if (qualityController_ == null) {
+				return new CameraTable(remapTable, remapTable, remapTable);
+			}
+			int[][] noPanorama = calibration.skipPanorama(map);
+			int[][] halfDensity = RemapTable.halveDensity(noPanorama[0], noPanorama[1], outputResolution_.width, cameraResolution.width);
+			return new CameraTable(remapTable, noPanorama == map ? remapTable : compileTable(calibration, noPanorama, cameraResolution),
+			                       compileTable(calibration, halfDensity, cameraResolution));
+		}
+		
+		protected FrameTable compileTable(CameraConfiguration calibration, int[][] map, Dimension cameraResolution) {
+		
+			if (pixelFormat_.isPlanar()) {
+				PlanarRemapTable table = PlanarRemapTable.compile(map[0], map[1], cameraResolution.width, cameraResolution.height, pixelFormat_,
+				                                                  outputResolution_.width, outputResolution_.height, remapSpanMin_, calibration.getTileKeys());
+				return remapPool_ != null ? table.parallelize(remapChunkPixels_, remapPool_) : table;
+			}
+			if (seamBlend_ != null) { // the camera's own pixels as any table, its samples of shared ones for the blend
+				int camera = cameraConfiguration_.indexOf(this);
+				int[][][] split = seamBlend_.split(camera, map);
+				RemapTable own = compileOwnTable(calibration, split[0], cameraResolution);
+				RemapTable shared = RemapTable.compile(split[1][0], split[1][1], cameraResolution.width, remapSpanMin_);
+				RemapTable whole = displayNative_ ? RemapTable.compile(split[2][0], split[2][1], cameraResolution.width, remapSpanMin_) : own;
+				return new BlendRemapTable(own, shared, whole, seamBlend_, camera);
+			}
+			return compileOwnTable(calibration, map, cameraResolution);
+		}
+		
+		/**
+		Compiles a table of packed pixels, reordered, parallelized and vectorized as configured.
+		*/
+		protected RemapTable compileOwnTable(CameraConfiguration calibration, int[][] map, Dimension cameraResolution) {
+		
+			RemapTable remapTable = RemapTable.compile(map[0], map[1], cameraResolution.width, remapSpanMin_);
+			IntToLongFunction tileKeys = calibration.getTileKeys();
+			if (tileKeys != null) {
+				remapTable = remapTable.reorder(tileKeys);
+			}
+			if (remapPool_ != null) {
+				remapTable = new ParallelRemapTable(remapTable, remapChunkPixels_, remapPool_);
+			}
+			if (remapVector_) {
+				remapTable = remapTable.vectorize(cameraResolution.height);
+			}
+			return remapTable;
+		}
+		
+		/**
+		Called on the reload thread with the camera's configuration read again. Unless its tables come out the same as
+		the current ones, builds the new table, reusing those of unchanged mappers, and leaves both for the camera thread.
+		*/
+		protected void recalibrate(CameraConfiguration calibration) {
+		
+			Dimension resolution = cameraResolution_;
+			CameraConfiguration current = calibration_;
+			if (resolution == null) { // no frame yet, so no table to build before the first
+				recalibration_.set(new Recalibration(calibration, null, null));
+				return;
+			}
+			calibration.cameraResolution_ = resolution;
+			calibration.sourceRegion_ = sourceRegion_;
+			if (resolution.equals(current.cameraResolution_) && calibration.getMapKey().equals(current.getMapKey())) {
+				recalibration_.set(null); // an edit reverted before the camera took it in must not be swapped in after all
+				return;
+			}
+			logger_.info(name_ + ": calibration changed, rebuilding.");
+			CameraTable table = compileRemapTable(calibration, calibration.getCachedMap(current, false), resolution);
+			logger_.info(name_ + ": " + table);
+			recalibration_.set(new Recalibration(calibration, table, resolution));
+		}
+		
+		public FrameTable getRemapTable() {
+		
+			CameraTable table = table_;
+			return table != null ? table.remapTable_ : null;
+		}
+		
+		/**
+		Returns the maps without the output pixels of panorama mappers, or the same maps if there are none.
+		*/
+		protected int[][] skipPanorama(int[][] map) {
+		
+			Mapper[] mappers = mapper_.toArray(new Mapper[0]);
+			if (Arrays.stream(mappers).noneMatch(mapper -> mapper instanceof PanoramaMapper)) {
+				return map;
+			}
+			int width = outputResolution_.width;
+			IntPredicate panorama = outputIndex -> {
+				for (int j = mappers.length-1; j >= 0; j--) { // later mappers win overlaps, as in merge()
+					if (mappers[j].covers(outputIndex % width, outputIndex / width)) {
+						return mappers[j] instanceof PanoramaMapper;
+					}
+				}
+				return false;
+			};
+			int[] nearest = new int[map[0].length];
+			int[] bilinear = new int[map[1].length];
+			int n = 0;
+			int m = 0;
+			for (int i = 0; i < map[0].length; i += 2) {
+				if (!panorama.test(map[0][i])) {
+					nearest[n++] = map[0][i];
+					nearest[n++] = map[0][i+1];
+				}
+			}
+			for (int i = 0; i < map[1].length; i += 3) {
+				if (!panorama.test(map[1][i])) {
+					bilinear[m++] = map[1][i];
+					bilinear[m++] = map[1][i+1];
+					bilinear[m++] = map[1][i+2];
+				}
+			}
+			return new int[][] {Arrays.copyOf(nearest, n), Arrays.copyOf(bilinear, m)};
+		}
+		
+		@Override
+		public String getName() {
+		
+			return name_;
+		}
+		
+		@Override
+		public Metrics getMetrics() {
+		
+			return metrics_;
 		}
-	
+		
 		@Override
-		public Dimension getPreferredSize() {
-			return outputResolution_;
+		public int getPriority() {
+		
+			return priority_;
 		}
-
+		
 		@Override
-		public boolean isOpaque() {
-			return true;
+		public boolean hasPanorama() {
+		
+			return getMappers().stream().anyMatch(mapper -> mapper instanceof PanoramaMapper);
 		}
-
+		
 		@Override
-		public boolean isLightweight() {
-			return true;
+		public void setLevel(QualityController.Level level) {
+		
+			qosLevel_ = level;
 		}
 		
-	} // OutputJComponent
-
-	private final class CameraConfiguration {
-	
-		// configured properties set at initilization time
-		public final String name_;
-		public final String pipelineString_;
+		public Collection<Mapper> getMappers() {
 		
-		// camera placement
-		private final char cameraOrientation_;
-		private final double cameraX_;
-		private final double cameraY_;
-		private final double cameraZ_;
+			return Collections.unmodifiableCollection(calibration_.mapper_);
+		}
 		
-		// camera lens properties
-		private final double cameraFOVAngle_;
-		private final double cameraFOVDiameter_;
-		private final double cameraFOVCenterX_;
-		private final double cameraFOVCenterY_;
+		/**
+		Returns the keys to reorder the table by, from the lut-order of the mapper each output pixel is of,
+		or null if every mapper keeps raster order. Each mapper's pixels stay together, in mapper order.
+		*/
+		protected IntToLongFunction getTileKeys() {
 		
-		private Dimension cameraResolution_ = null;
-		private final Collection<Mapper> mapper_ = new LinkedList<>();
-		private int[] map_ = null;
+			Mapper[] mappers = mapper_.toArray(new Mapper[0]);
+			boolean raster = true;
+			for (Mapper mapper : mappers) {
+				raster &= mapper.lutOrder_.isRaster();
+			}
+			if (raster) {
+				return null;
+			}
+			int width = outputResolution_.width;
+			return outputIndex -> {
+				int x = outputIndex % width;
+				int y = outputIndex / width;
+				for (int j = mappers.length-1; j >= 0; j--) { // later mappers win overlaps, as in merge()
+					if (mappers[j].covers(x, y)) {
+						return (long)j << 48 | mappers[j].lutOrder_.getTileKey(x, y);
+					}
+				}
+				return (long)mappers.length << 48;
+			};
+		}
 		
-		// keep a reference to running pipeline to keep it from getting GCed and crashing
-		private Pipeline pipeline_;
+		/**
+		A reloaded calibration, with its table if one was built, for the resolution it was built for.
+		*/
+		private class Recalibration {
 		
-		public CameraConfiguration(String name) throws Exception {
+			private final CameraConfiguration calibration_;
+			private final CameraTable table_;
+			private final Dimension resolution_;
 			
-			name_ = name;
-			pipelineString_ = properties_.getProperty(name_ + ".pipeline");
-
-			// camera location
-			cameraOrientation_ = properties_.getProperty(name_ + ".camera-orientation", "N").toUpperCase().charAt(0); // N|S|E|W
-			double cameraNSPosition = Double.parseDouble(properties_.getProperty(name_ + ".camera-NS-position", "0.0")); // relative to origin
-			double cameraEWPosition_ = Double.parseDouble(properties_.getProperty(name_ + ".camera-EW-position", "0.0")); // relative to origin
-			AffineTransform worldToCamera = new AffineTransform();
-			worldToCamera.rotate(Math.PI/180.*(cameraOrientation_=='E' ? 90. : cameraOrientation_=='S' ? 180. : cameraOrientation_=='W' ? 270. : 0.));
-			double[] cameraPosition = { Double.parseDouble(properties_.getProperty(name_ + ".camera-EW-position", "0.0")), // E/W relative to origin
-			                            Double.parseDouble(properties_.getProperty(name_ + ".camera-NS-position", "0.0"))}; // N/S relative to origin
-			worldToCamera.transform(cameraPosition, 0, cameraPosition, 0, 1);
-			cameraX_ = cameraPosition[0];
-			cameraY_ = cameraPosition[1];
-			cameraZ_ = Double.parseDouble(properties_.getProperty(name_ + ".camera-height", "24.0")); // height above origin
+			private Recalibration(CameraConfiguration calibration, CameraTable table, Dimension resolution) {
 			
-			// camera properties
-			cameraFOVAngle_ = Double.parseDouble(properties_.getProperty(name_ + ".camera-fov-angle", "180.0")); // view in degrees			
-			cameraFOVDiameter_ = Double.parseDouble(properties_.getProperty(name_ + ".camera-fov-diameter", "1.0")); // fraction of image width at fov angle
-			cameraFOVCenterX_ = Double.parseDouble(properties_.getProperty(name_ + ".camera-fov-center-X", "0.5")); // fraction of image width
-			cameraFOVCenterY_ = Double.parseDouble(properties_.getProperty(name_ + ".camera-fov-center-Y", "0.5")); // fraction of image height
-
-			// pixel mappers
-			for (int i = 0; ; i++) {
-				String mapperName = properties_.getProperty(name_ + ".mapper"+i);
-				if (mapperName == null) {
-					break;
-				}
-				try {
-					Class<?> mapperClass = Class.forName(properties_.getProperty(mapperName + ".class"));
-					mapper_.add((Mapper)mapperClass.getDeclaredConstructor(CameraConfiguration.class, String.class).newInstance(this, mapperName));
-				}
-				catch (Exception ex) {
-					logger_.log(Level.SEVERE, "Mapper initialization failed.", ex);
-				}
+				calibration_ = calibration;
+				table_ = table;
+				resolution_ = resolution;
 			}
-			if (mapper_.isEmpty()) {
-				throw new RuntimeException("No mappers configured.");
+		}
+		
+		/**
+		A camera's table, with the tables it composites with at QoS levels below full, which are the same table
+		without QoS. Built together and replaced together, so the degraded tables go when the camera's table does.
+		*/
+		private class CameraTable {
+		
+			private final FrameTable remapTable_;
+			private final FrameTable noPanorama_;
+			private final FrameTable halfDensity_;
+			
+			private CameraTable(FrameTable remapTable, FrameTable noPanorama, FrameTable halfDensity) {
+			
+				remapTable_ = remapTable;
+				noPanorama_ = noPanorama;
+				halfDensity_ = halfDensity;
+			}
+			
+			/**
+			Returns the table to composite with at a QoS level.
+			*/
+			private FrameTable get(QualityController.Level level) {
+			
+				return level == QualityController.Level.FULL ? remapTable_
+				     : level == QualityController.Level.NO_PANORAMA ? noPanorama_ : halfDensity_;
 			}
 			
+			@Override
+			public String toString() {
+			
+				return remapTable_.toString();
+			}
 		}
 		
-		public void start() {
+		/**
+		Called on the output thread: writes the newest frame waiting since the last tick, returning false if there was none.
+		Unless unchanged regions are skipped, the previous frame is kept and written again.
+		*/
+		public boolean compositeLatest() {
 		
-			Bin bin = Bin.launch(pipelineString_, true);
-			pipeline_ = new Pipeline();
-			AppSink appSink = new AppSink(name_);
-			appSink.set("drop", true);
-			appSink.set("max-buffers", 1);
-			appSink.setCaps(new Caps("video/x-raw," + (byteOrder_ == ByteOrder.LITTLE_ENDIAN ? "format=BGRx" : "format=xRGB")));
-			pipeline_.addMany(bin, appSink);
-			pipeline_.linkMany(bin, appSink);
-			pipeline_.play();
-			(new Thread() {
-				public void run() {
-					while (true) {
-						frames_.getAndIncrement();
-						handleSample(appSink.pullSample());
-					}
+			PendingFrame latest = latestFrame_.getAndSet(null);
+			if (latest != null) {
+				if (currentFrame_ != null) {
+					currentFrame_.frame_.dispose();
+				}
+				currentFrame_ = latest;
+			}
+			else if (outputSkipUnchanged_ || currentFrame_ == null) {
+				return false;
+			}
+			processFrame(currentFrame_.frame_, currentFrame_.remapTable_, currentFrame_.pts_, currentFrame_.captureNanos_);
+			if (outputSkipUnchanged_) {
+				currentFrame_.frame_.dispose();
+				currentFrame_ = null;
+			}
+			return true;
+		}
+		
+		protected void processFrame(FrameSource.Frame frame, FrameTable remapTable, long pts, long captureNanos) {
+		
+			long t0 = System.nanoTime();
+			ByteBuffer bb = frame.map();
+			metrics_.record(Metrics.Stage.MAP, System.nanoTime() - t0);
+			if (bb != null) { // not sure why null would ever be encountered
+				// tables are compiled for the pixel format, planar with the planar compositor, see compileTable()
+				if (planarLayer_ != null) {
+					processFrame(bb, (PlanarRemapTable)remapTable, pts, captureNanos);
 				}
-			}).start();
+				else {
+					processFrame(bb.order(byteOrder_).asIntBuffer(), (RemapTable)remapTable, pts, captureNanos);
+				}
+				frame.unmap();
+			}
 		}
 		
-		public void handleSample(Sample sample) {
+		/**
+		Copies the samples of a planar camera frame to the output.
+		*/
+		public void processFrame(ByteBuffer cameraFrame, PlanarRemapTable remapTable, long pts, long captureNanos) {
+		
+			long t0 = System.nanoTime();
+			planarLayer_.write(remapTable, cameraFrame, pts, captureNanos);
+			metrics_.record(Metrics.Stage.WRITE, System.nanoTime() - t0);
+		}
 
-			Structure capsStruct = sample.getCaps().getStructure(0);
-			int w = capsStruct.getInteger("width");
-			int h = capsStruct.getInteger("height");
-			if (cameraResolution_ == null || cameraResolution_.width != w || cameraResolution_.height != h) {
-				cameraResolution_ = new Dimension(w, h);
-				map_ = null;
+		public void processFrame(IntBuffer cameraFramePixels, RemapTable remapTable, long pts, long captureNanos) {
+
+			// copy pixels from the current frame to the output, and to the display at its own resolution
+			long t0 = System.nanoTime();
+			layer_.write(remapTable, cameraFramePixels, pts, captureNanos);
+			DisplayCanvas displayCanvas = displayCanvas_;
+			if (displayCanvas != null) {
+				if (displayLayer_ == null) {
+					displayLayer_ = displayCanvas.createLayer();
+				}
+				displayLayer_.write(remapTable, cameraFramePixels);
 			}
-			if(map_ == null) { // initialize pixel mapping table
-				map_ = getMap(); 
+			metrics_.record(Metrics.Stage.WRITE, System.nanoTime() - t0);
+		}
+		
+		/**
+		Follows drift between the frame source's clock, in which frame timestamps are given, and System.nanoTime().
+		*/
+		public void updateClockOffset() {
+		
+			if (leader_ == null) { // the first output's camera follows it for all outputs
+				frameSource_.updateClockOffset();
 			}
+		}
+		
+		/**
+		A frame waiting for the output thread, with the table matching its resolution.
+		*/
+		private class PendingFrame {
+		
+			private final FrameSource.Frame frame_;
+			private final FrameTable remapTable_;
+			private final long pts_;
+			private final long captureNanos_;
 			
-			// update the output image with pixels from this camera frame
-			Buffer buffer = sample.getBuffer();
-			ByteBuffer bb = buffer.map(false);
-			if (bb != null) { // not sure why null would ever be encountered
-				processFrame(bb.order(byteOrder_).asIntBuffer());
-				buffer.unmap();
-			}
-			sample.dispose();
+			private PendingFrame(FrameSource.Frame frame, FrameTable remapTable, long pts, long captureNanos) {
 			
-			if (outputJComponent_ != null) {
-				outputJComponent_.repaint();
+				frame_ = frame;
+				remapTable_ = remapTable;
+				pts_ = pts;
+				captureNanos_ = captureNanos;
 			}
 		}
-
-		public void processFrame(IntBuffer cameraFramePixels) {
-
-			outputLock_.lock();
-			// copy pixels from the current frame to the output
-			int[] outputPixels = ((DataBufferInt)outputImage_.getRaster().getDataBuffer()).getData();
-			for(int i = 0; i < map_.length; i+=2) {
-				int outputPixelIndex = map_[i+0];
-				int cameraPixelIndex = map_[i+1];
-				outputPixels[outputPixelIndex] = cameraFramePixels.get(cameraPixelIndex);
+	
+		/**
+		Returns the pixel mapping table from the LUT cache if one was built from the same inputs,
+		otherwise builds it and stores it for next time.
+		*/
+		public int[][] getCachedMap() {
+		
+			return getCachedMap(null, true);
+		}
+		
+		/**
+		As getCachedMap(), reusing the tables of mappers unchanged from a previous calibration, if given,
+		and building the others one by one on this thread, or on the common pool if parallel.
+		With hot reload, the cache holds each mapper's table rather than the merged one, so that the mappers' tables
+		are kept from the start and a reload only rebuilds those of changed mappers, see getMapperMap().
+		*/
+		public int[][] getCachedMap(CameraConfiguration previous, boolean parallel) {
+		
+			if (lutCache_ == null || hotReload_) {
+				return getMap(previous, parallel);
 			}
-			
-			try {
-				outputMappedBuffer_.rewind();
-				FileLock lock = outputFileChannel_.tryLock();
-				if (lock != null) {
-					outputMappedBuffer_.asIntBuffer().put(outputPixels);
-					lock.release();
-				}
+			String key = getMapKey();
+			int[][] map = lutCache_.load(key);
+			if (map == null) {
+				map = getMap(previous, parallel);
+				lutCache_.store(key, map);
+			}
+			else {
+				logger_.info(name_ + ": pixel mapping table loaded from LUT cache.");
 			}
-			catch(Exception ex) {
-				ex.printStackTrace();
+			return map;
+		}
+		
+		/**
+		Digest of everything getMap() depends on: camera calibration, mapper properties (blend zones among them), layout,
+		resolutions and pixel format, which decides whether blend zones reach past masks,
+		and of the lut-order the table is compiled in, so that a reload changing it rebuilds the table.
+		*/
+		protected String getMapKey() {
+		
+			LutCache.Key key = addSourceRegion(new LutCache.Key()
+				.add(outputResolution_.width).add(outputResolution_.height)
+				.add(cameraResolution_.width).add(cameraResolution_.height))
+				.add(pixelFormat_.toString())
+				.add(outputLayoutBytes_)
+				.addProperties(properties_, name_ + ".camera-")
+				.addProperties(properties_, name_ + ".mapper")
+				.addProperties(properties_, "lut-order")
+				.addProperties(properties_, "lut-tile");
+			for (Mapper mapper : mapper_) {
+				key.addProperties(properties_, mapper.name_ + ".");
 			}
-			outputLock_.unlock();
+			return key.toString();
 		}
 	
-		public int[] getMap() {
+		/**
+		Adds the source region to a key, unless frames are whole, which keeps the keys of whole frames as they were.
+		*/
+		protected LutCache.Key addSourceRegion(LutCache.Key key) {
 		
-			int[] m = new int[outputResolution_.width*outputResolution_.height];
-			for (int i = 0; i < m.length; i++) {
-				m[i] = -1;
+			SourceRegion region = getSourceRegion();
+			return region.isFull() ? key : key.add(region.toString());
+		}
+	
+		/**
+		Merges the mappers' tables into {{outputIndex, cameraIndex}* for nearest-pixel mappers, {outputIndex, cameraIndex, weights}* for bilinear ones},
+		each sorted by output index.
+		*/
+		public int[][] getMap() {
+		
+			return getMap(null, true);
+		}
+		
+		protected int[][] getMap(CameraConfiguration previous, boolean parallel) {
+		
+			// mappers are built concurrently, but merged in configured order so later mappers still win overlaps
+			java.util.List<Mapper> mappers = new ArrayList<>(mapper_);
+			Stream<Mapper> stream = parallel ? mappers.parallelStream() : mappers.stream();
+			return merge(mappers, stream.map(mapper -> getMapperMap(mapper, previous)).collect(Collectors.toList()));
+		}
+		
+		/**
+		Returns a mapper's table, kept with hot reload so that a reload can reuse it, or the previous calibration's
+		if that was built from the same inputs, or the one in the LUT cache.
+		*/
+		protected int[] getMapperMap(Mapper mapper, CameraConfiguration previous) {
+		
+			if (!hotReload_) {
+				return mapper.getMap();
 			}
-			for (Mapper mapper : mapper_) {
-				int[] mm = mapper.getMap();
-				for (int i = 0; i < mm.length; i += 2) {
-					m[mm[i]] = mm[i+1];
+			String key = addSourceRegion(new LutCache.Key()
+				.add(outputResolution_.width).add(outputResolution_.height)
+				.add(cameraResolution_.width).add(cameraResolution_.height))
+				.add(pixelFormat_.toString())
+				.add(outputLayoutBytes_)
+				.addProperties(properties_, name_ + ".camera-")
+				.addProperties(properties_, mapper.name_ + ".")
+				.toString();
+			int[] map = previous == null ? null : previous.mapperMaps_.get(key);
+			if (map == null && lutCache_ != null) {
+				int[][] cached = lutCache_.load(key);
+				map = cached != null && cached.length == 1 ? cached[0] : null;
+			}
+			if (map == null) {
+				map = mapper.getMap();
+				if (previous != null) {
+					logger_.info(name_ + ": " + mapper.name_ + " rebuilt.");
+				}
+				if (lutCache_ != null) {
+					lutCache_.store(key, new int[][] {map});
+				}
+			}
+			mapperMaps_.put(key, map);
+			return map;
+		}
+		
+		/**
+		Merges the tables of the mappers, in their order, as getMap() does.
+		*/
+		public int[][] merge(java.util.List<Mapper> mappers, java.util.List<int[]> mapperMaps) {
+		
+			int[] m = new int[outputResolution_.width*outputResolution_.height];
+			int[] w = null; // bilinear weights, 0 for nearest pixel
+			Arrays.fill(m, -1);
+			for (int j = 0; j < mappers.size(); j++) {
+				int[] mm = mapperMaps.get(j);
+				if (mappers.get(j).getMapStride() == 3) {
+					if (w == null) {
+						w = new int[m.length];
+					}
+					for (int i = 0; i < mm.length; i += 3) {
+						m[mm[i]] = mm[i+1];
+						w[mm[i]] = mm[i+2];
+					}
+				}
+				else {
+					for (int i = 0; i < mm.length; i += 2) {
+						m[mm[i]] = mm[i+1];
+						if (w != null) {
+							w[mm[i]] = 0;
+						}
+					}
 				}
 			}
 			int n = 0;
+			int nb = 0;
 			for (int i = 0; i < m.length; i++) {
 				if (m[i] > 0 && m[i] < cameraResolution_.width*cameraResolution_.height) {
-					n++;
+					if (w != null && w[i] != 0) {
+						nb++;
+					}
+					else {
+						n++;
+					}
 				}
 			}
 			int[] map = new int[2*n];
+			int[] bilinear = new int[3*nb];
 			n = 0;
+			nb = 0;
 			for (int i = 0; i < m.length; i++) {
 				if (m[i] > 0 && m[i] < cameraResolution_.width*cameraResolution_.height) {
-					map[n++] = i;
-					map[n++] = m[i];
+					if (w != null && w[i] != 0) {
+						bilinear[nb++] = i;
+						bilinear[nb++] = m[i];
+						bilinear[nb++] = w[i];
+					}
+					else {
+						map[n++] = i;
+						map[n++] = m[i];
+					}
 				}
 			}
-			return map;
+			return new int[][] {map, bilinear};
 		}
 		
 	
@@ -375,7 +2352,15 @@ class VideoMapper {
 			protected final String[] bounds_;
 			protected final String flip_;
 			protected final String rotate_;
-			protected final boolean[][] mask_;
+			protected final boolean bilinear_;
+			protected final int maskLabel_;
+			protected final LutOrder lutOrder_;
+			protected final int blend_; // pixels past the edge of the mask to blend with other cameras' mappers, 0 for none
+			
+			// maskLabel_ when the mapper has no maskColor, and so maps all output pixels in its bounds,
+			// or when no pixel of the layout has its color
+			protected static final int NO_MASK = -1;
+			protected static final int EMPTY_MASK = -2;
 			
 			public Mapper(String name) {
 			
@@ -383,25 +2368,68 @@ class VideoMapper {
 				bounds_ = properties_.getProperty(name_ + ".bounds", "0,0,1,1").split(",");
 				flip_ = properties_.getProperty(name_ + ".flip", "");
 				rotate_ = properties_.getProperty(name_ + ".rotate", "0");
-				Color maskColor = null;
-				boolean[][] mask = null;
+				bilinear_ = "bilinear".equalsIgnoreCase(properties_.getProperty(name_ + ".interpolation", "nearest").trim());
+				maskLabel_ = getMaskLabel();
+				lutOrder_ = LutOrder.create(name_, properties_);
+				blend_ = Math.max(Integer.parseInt(properties_.getProperty(name_ + ".blend", "0").trim()), 0);
+			}
+			
+			/**
+			True if the output pixel is the mapper's by its mask.
+			*/
+			protected boolean covers(int x, int y) {
+			
+				return maskLabel_ == NO_MASK || maskLabel_ >= 0 && outputLayoutIndex_.getLabel(x, y) == maskLabel_;
+			}
+			
+			/**
+			Returns the mapper's weight at an output pixel for seam blending, 0 to 255: without a blend zone, full where it covers the pixel.
+			*/
+			protected int getBlendWeight(int x, int y) {
+			
+				return covers(x, y) ? 255 : 0;
+			}
+			
+			/**
+			True if the output pixel projects into the camera, wherever the mask is.
+			*/
+			protected boolean maps(int x, int y) {
+			
+				return true;
+			}
+			
+			/**
+			Returns which output pixels are the mapper's, as the label of its maskColor in the shared layout index,
+			NO_MASK for all of them or EMPTY_MASK for none.
+			*/
+			protected int getMaskLabel() {
+			
+				int mc;
 				try {
-					int mc = Integer.parseInt(properties_.getProperty(name_ + ".maskColor"), 16) & 0x00FFFFFF;
-					mask = new boolean[outputResolution_.width][outputResolution_.height];
-					if (outputLayout_ != null) {
-						for (int x = 0; x < mask.length; x++) {
-							for (int y = 0; y < mask[x].length; y++) {
-								mask[x][y] = mc == (outputLayout_.getRGB(x, y)&0x00FFFFFF);
-							}
-						}
-					}
+					mc = Integer.parseInt(properties_.getProperty(name_ + ".maskColor"), 16) & 0x00FFFFFF;
 				}
 				catch (Exception ex) {
+					return NO_MASK;
 				}
-				mask_ = mask;
+				int label = outputLayoutIndex_ == null ? -1 : outputLayoutIndex_.getLabel(mc);
+				if (label < 0 && outputLayoutIndex_ != null) {
+					logger_.warning(String.format(outputLayoutIndex_.isOther(mc)
+						? "%s: maskColor %06X is beyond the first %d colors of the layout, which are all a mask can be; it maps nothing."
+						: "%s: maskColor %06X is not in the layout; it maps nothing.", name_, mc, LayoutIndex.MAX_LABELS));
+				}
+				return label < 0 ? EMPTY_MASK : label;
 			}
 			
+			/**
+			Returns {outputIndex, cameraIndex} pairs, or with bilinear interpolation {outputIndex, cameraIndex, weights} triples
+			in the form of RemapTable.getBilinearSample().
+			*/
 			public abstract int[] getMap();
+			
+			public int getMapStride() {
+			
+				return bilinear_ ? 3 : 2;
+			}
 		}
 		
 		public abstract class FisheyeMapper extends Mapper {
@@ -412,10 +2440,26 @@ class VideoMapper {
 			protected int boundsWidth_;
 			protected int boundsHeight_;
 			protected final AffineTransform outputToRendering_;
+			
+			// lens constants hoisted out of the per-pixel math
+			protected final double cameraFOVFactor_;
+			protected final double cameraFOVNormalization_;
+			
+			// output rows per parallel task in getMap()
+			protected static final int ROWS_PER_BAND = 16;
+			
+			// region of the source frames the camera's frames are, set by getMap()
+			protected SourceRegion sourceRegion_;
+			
+			// with a blend zone, the signed distance of each pixel in bounds to the edge of the mask, built when first needed
+			protected volatile int[] blendDistances_ = null;
 					
 			public FisheyeMapper(String name) {
 			
 				super(name);
+				
+				cameraFOVFactor_ = cameraFOVAngle_/180.;
+				cameraFOVNormalization_ = Math.sin(Math.PI/2/cameraFOVFactor_);
 
 				try {
 					boundsX_ = (int)Math.round(Double.parseDouble(bounds_[0])*outputResolution_.width);
@@ -447,109 +2491,243 @@ class VideoMapper {
 			
 			public int[] getMap() {
 		
-				int[] map = new int[2*outputResolution_.width*outputResolution_.height];
-				int i = 0;
-				for (int outputImageY = 0; outputImageY < outputResolution_.height; outputImageY++) {
-					for (int outputImageX = 0; outputImageX < outputResolution_.width; outputImageX++) {
-
-						double[] s2r = output_image_2_rendering(outputImageX, outputImageY);
-						if (s2r == null) {
-							continue;
-						}
-						double rendering_x = s2r[0];
-						double rendering_y = s2r[1];
-						
-						double[] r2w = rendering_2_world(rendering_x, rendering_y);
-						if (r2w == null) {
-							continue;
+				sourceRegion_ = getSourceRegion();
+				
+				// output rows are independent, so bands of them are mapped in parallel on the common ForkJoin pool
+				int x0 = Math.max(boundsX_, 0);
+				int x1 = Math.min(boundsX_+boundsWidth_, outputResolution_.width);
+				int y0 = Math.max(boundsY_, 0);
+				int y1 = Math.min(boundsY_+boundsHeight_, outputResolution_.height);
+				if (x0 >= x1 || y0 >= y1) {
+					return new int[0];
+				}
+				if (blend_ > 0) {
+					getBlendDistances();
+				}
+				int bands = (y1-y0 + ROWS_PER_BAND-1) / ROWS_PER_BAND;
+				int[][] bandMap = new int[bands][];
+				IntStream.range(0, bands).parallel().forEach(b -> {
+					bandMap[b] = getMap(x0, x1, y0 + b*ROWS_PER_BAND, Math.min(y0 + (b+1)*ROWS_PER_BAND, y1));
+				});
+				
+				int n = 0;
+				for (int[] m : bandMap) {
+					n += m.length;
+				}
+				int[] map = new int[n];
+				n = 0;
+				for (int[] m : bandMap) {
+					System.arraycopy(m, 0, map, n, m.length);
+					n += m.length;
+				}
+				return map;
+			}
+			
+			@Override
+			protected boolean covers(int x, int y) {
+			
+				return x >= boundsX_ && x < boundsX_+boundsWidth_ && y >= boundsY_ && y < boundsY_+boundsHeight_ && super.covers(x, y);
+			}
+			
+			@Override
+			protected int getBlendWeight(int x, int y) {
+			
+				if (blend_ == 0) {
+					return super.getBlendWeight(x, y);
+				}
+				int x0 = Math.max(boundsX_, 0);
+				int y0 = Math.max(boundsY_, 0);
+				int x1 = Math.min(boundsX_+boundsWidth_, outputResolution_.width);
+				int y1 = Math.min(boundsY_+boundsHeight_, outputResolution_.height);
+				if (x < x0 || x >= x1 || y < y0 || y >= y1) {
+					return 0;
+				}
+				return SeamBlend.getWeight(getBlendDistances()[(y-y0)*(x1-x0) + x-x0], blend_);
+			}
+			
+			/**
+			Returns the signed distance of each output pixel in bounds, clipped to the output, to the edge of the mask.
+			*/
+			protected int[] getBlendDistances() {
+			
+				int[] distances = blendDistances_;
+				if (distances == null) {
+					synchronized (this) {
+						distances = blendDistances_;
+						if (distances == null) {
+							int x0 = Math.max(boundsX_, 0);
+							int y0 = Math.max(boundsY_, 0);
+							int w = Math.max(Math.min(boundsX_+boundsWidth_, outputResolution_.width) - x0, 0);
+							int h = Math.max(Math.min(boundsY_+boundsHeight_, outputResolution_.height) - y0, 0);
+							boolean[] inside = new boolean[w*h];
+							for (int y = 0; y < h; y++) {
+								for (int x = 0; x < w; x++) {
+									inside[y*w + x] = super.covers(x0+x, y0+y);
+								}
+							}
+							distances = SeamBlend.getSignedDistances(inside, w, h, 3*(blend_+1));
+							blendDistances_ = distances;
 						}
-						double world_o_clock = r2w[0];
-						double world_from_center = r2w[1];
-
-						double[] w2cv = world_2_camera_view(world_o_clock, world_from_center);
-						if (w2cv == null) {
-							continue;
+					}
+				}
+				return distances;
+			}
+			
+			@Override
+			protected boolean maps(int x, int y) {
+			
+				double[] xy = new double[2];
+				return output_image_2_rendering(x, y, xy) && rendering_2_world(xy) && world_2_camera_view(xy);
+			}
+			
+			/**
+			Maps one rectangle of the output image, in raster order.
+			With a mask, only the spans of its label within the rectangle are visited, as the layout index lists them;
+			with a blend zone too, every pixel the mapper has a weight at.
+			Coordinates are passed between the stages in a single scratch array, so nothing is allocated per pixel.
+			*/
+			protected int[] getMap(int x0, int x1, int y0, int y1) {
+			
+				if (maskLabel_ == EMPTY_MASK) {
+					return new int[0];
+				}
+				double[] xy = new double[2];
+				int i = 0;
+				if (blend_ > 0 && maskLabel_ != NO_MASK && !pixelFormat_.isPlanar()) { // as planar frames are not blended
+					int[] map = new int[getMapStride()*(x1-x0)*(y1-y0)];
+					for (int outputImageY = y0; outputImageY < y1; outputImageY++) {
+						for (int outputImageX = x0; outputImageX < x1; outputImageX++) {
+							if (getBlendWeight(outputImageX, outputImageY) > 0) {
+								i = mapPixel(outputImageX, outputImageY, xy, map, i);
+							}
 						}
-						double camera_view_o_clock = w2cv[0];
-						double camera_view_radius = w2cv[1];
-						
-						int[] cv2ci = camera_view_2_camera_image(camera_view_o_clock, camera_view_radius);
-						if (cv2ci == null) {
-							continue;
+					}
+					return Arrays.copyOf(map, i);
+				}
+				if (maskLabel_ == NO_MASK) {
+					int[] map = new int[getMapStride()*(x1-x0)*(y1-y0)];
+					for (int outputImageY = y0; outputImageY < y1; outputImageY++) {
+						for (int outputImageX = x0; outputImageX < x1; outputImageX++) {
+							i = mapPixel(outputImageX, outputImageY, xy, map, i);
 						}
-						int camera_image_x = cv2ci[0];
-						int camera_image_y = cv2ci[1];
-
-						int outputImageIndex = outputImageY*outputResolution_.width + outputImageX;
-						int cameraImageIndex = camera_image_y*cameraResolution_.width + camera_image_x;
-						map[i++] = outputImageIndex;
-						map[i++] = cameraImageIndex;
+					}
+					return Arrays.copyOf(map, i);
+				}
+				int[] map = new int[getMapStride()*outputLayoutIndex_.count(maskLabel_, x0, x1, y0, y1)];
+				int[] spans = outputLayoutIndex_.getSpans(maskLabel_);
+				for (int s = outputLayoutIndex_.getFirstSpan(maskLabel_, y0); s < spans.length && spans[s] < y1; s += 3) {
+					int outputImageY = spans[s];
+					int spanX1 = Math.min(spans[s+2], x1);
+					for (int outputImageX = Math.max(spans[s+1], x0); outputImageX < spanX1; outputImageX++) {
+						i = mapPixel(outputImageX, outputImageY, xy, map, i);
 					}
 				}
 				return Arrays.copyOf(map, i);
 			}
+			
+			/**
+			Appends the entry of one output pixel to map at i, if it maps to the camera, returning where the next one goes.
+			*/
+			protected int mapPixel(int outputImageX, int outputImageY, double[] xy, int[] map, int i) {
+			
+				if (!output_image_2_rendering(outputImageX, outputImageY, xy)) {
+					return i;
+				}
+				if (!rendering_2_world(xy)) {
+					return i;
+				}
+				if (!world_2_camera_view(xy)) {
+					return i;
+				}
+				
+				int outputImageIndex = outputImageY*outputResolution_.width + outputImageX;
+				if (bilinear_) {
+					if (!camera_view_2_camera_position(xy)) {
+						return i;
+					}
+					map[i++] = outputImageIndex;
+					RemapTable.getBilinearSample(xy[0], xy[1], cameraResolution_.width, cameraResolution_.height, map, i);
+					return i + 2;
+				}
+				int cameraImageIndex = camera_view_2_camera_image(xy);
+				if (cameraImageIndex < 0) {
+					return i;
+				}
+				map[i++] = outputImageIndex;
+				map[i++] = cameraImageIndex;
+				return i;
+			}
 
-			protected double[] // {camera_view_o_clock, camera_view_radius}
-			world_2_camera_view(double world_o_clock, double world_from_center) {
+			protected boolean // {world_o_clock, world_from_center} -> {camera_view_o_clock, camera_view_radius}
+			world_2_camera_view(double[] xy) {
 
-				double camera_view_o_clock = world_o_clock;
-				double f = cameraFOVAngle_/180.;
-				double camera_view_radius = Math.sin(world_from_center/f) / Math.sin(Math.PI/2/f);
-				return new double[] {camera_view_o_clock, camera_view_radius};
+				// camera_view_o_clock = world_o_clock
+				xy[1] = Math.sin(xy[1]/cameraFOVFactor_) / cameraFOVNormalization_; // camera_view_radius
+				return true;
 			}
 
-			protected int[] // {camera_image_x, camera_image_y}
-			camera_view_2_camera_image(double camera_view_o_clock, double camera_view_radius) {
+			protected boolean // {camera_view_o_clock, camera_view_radius} -> {camera_image_x, camera_image_y}, unrounded
+			camera_view_2_camera_position(double[] xy) {
 
+				double camera_view_o_clock = xy[0];
+				double camera_view_radius = xy[1];
 				double x = camera_view_radius * Math.sin(camera_view_o_clock);
 				double y = camera_view_radius * Math.cos(camera_view_o_clock);
 
-				double r = cameraFOVDiameter_ * cameraResolution_.width / 2.;
+				// the lens is calibrated on whole source frames, which the camera's frames may be a region of
+				double r = cameraFOVDiameter_ * sourceRegion_.sourceWidth_ / 2.;
 				x *= r;
 				y *= r;
-				x += cameraFOVCenterX_ * cameraResolution_.width;
-				y += cameraFOVCenterY_ * cameraResolution_.height;
+				x += cameraFOVCenterX_ * sourceRegion_.sourceWidth_;
+				y += cameraFOVCenterY_ * sourceRegion_.sourceHeight_;
+				
+				xy[0] = sourceRegion_.toFrameX(x);
+				xy[1] = sourceRegion_.toFrameY(y);
+				return true;
+			}
 
-  				int camera_image_x = (int)Math.round(x);
-				int camera_image_y = (int)Math.round(y);
+			protected int // {camera_view_o_clock, camera_view_radius} -> camera_image_index, or -1 if unmapped
+			camera_view_2_camera_image(double[] xy) {
+
+				if (!camera_view_2_camera_position(xy)) {
+					return -1;
+				}
+
+  				int camera_image_x = (int)Math.round(xy[0]);
+				int camera_image_y = (int)Math.round(xy[1]);
 				
 				// optional: drop pixels if out of frame
 // 				if (camera_image_x < 0 || camera_image_x >= cameraResolution_.width || camera_image_y < 0 || camera_image_y >= cameraResolution_.height) {
-// 					return null;
+// 					return -1;
 // 				}
 				
 				// otherwise use nearest in-frame pixel
 				camera_image_x = Math.max(Math.min(camera_image_x, cameraResolution_.width-1), 0);
 				camera_image_y = Math.max(Math.min(camera_image_y, cameraResolution_.height-1), 0);
 				
-				return new int[] {camera_image_x, camera_image_y};
+				return camera_image_y*cameraResolution_.width + camera_image_x;
 			}
 			
-			protected double[] // {rendering_x, rendering_y}
-			output_image_2_rendering(int outputImageX, int outputImageY) {
+			protected boolean // (outputImageX, outputImageY) -> {rendering_x, rendering_y}
+			output_image_2_rendering(int outputImageX, int outputImageY, double[] xy) {
 			
 				if (outputImageX < boundsX_ || outputImageX >= boundsX_+boundsWidth_
 				 || outputImageY < boundsY_ || outputImageY >= boundsY_+boundsHeight_) {
-				 	return null;
-				}
-				if (mask_ != null && !mask_[outputImageX][outputImageY]) {
-					return null;
+				 	return false;
 				}
 				
-				double[] rxy = {outputImageX, outputImageY};
+				xy[0] = outputImageX;
+				xy[1] = outputImageY;
 				
-				outputToRendering_.transform(rxy, 0, rxy, 0, 1);
+				outputToRendering_.transform(xy, 0, xy, 0, 1);
 				
 				// TODO: check of between rendering corners
 				
-				double rendering_x = rxy[0];
-				double rendering_y = rxy[1];
-				
-				return new double[] {rendering_x, rendering_y}; 
+				return true; 
 			}			
 			
-			protected abstract double[] // {world_o_clock, world_from_center}
-			rendering_2_world(double rendering_x, double rendering_y);
+			protected abstract boolean // {rendering_x, rendering_y} -> {world_o_clock, world_from_center}
+			rendering_2_world(double[] xy);
 
 		} // FisheyeMapper
 		
@@ -584,23 +2762,24 @@ class VideoMapper {
 				projectionOriginY_ = -cameraY_;
 			}
 			
-			protected double[] // {world_o_clock, world_from_center}
-			rendering_2_world(double rendering_x, double rendering_y) {
+			protected boolean // {rendering_x, rendering_y} -> {world_o_clock, world_from_center}
+			rendering_2_world(double[] xy) {
 			
+				double rendering_x = xy[0];
+				double rendering_y = xy[1];
 				double projection_z = -cameraZ_;
 				double projection_x = (rendering_x - renderingOriginX_) * scaleX_ + projectionOriginX_;
 				double projection_y = (rendering_y - renderingOriginY_) * scaleY_ + projectionOriginY_;
 				
 				if (projection_y < 0) {
-					return null;
+					return false;
 				}
 				
 				double xz = Math.sqrt(projection_x*projection_x + projection_z*projection_z);
 
-				double world_o_clock = Math.PI - Math.atan2(projection_x, projection_z);
-				double world_from_center = Math.atan2(xz, projection_y);
-				
-				return new double[] {world_o_clock, world_from_center};
+				xy[0] = Math.PI - Math.atan2(projection_x, projection_z); // world_o_clock
+				xy[1] = Math.atan2(xz, projection_y); // world_from_center
+				return true;
 			}
 
 		} // BirdseyeMapper
@@ -611,6 +2790,12 @@ class VideoMapper {
 			private final double horizontalFOVleft_;
 			private final double verticalFOV_;
 			private final double verticalFOVtop_;
+			
+			// angles in radians, derived once from the configured degrees
+			private final double verticalFOVAngle_;
+			private final double verticalFOVAngleCenter_;
+			private final double horizontalFOVAngle_;
+			private final double horizontalFOVAngleCenter_;
 		
 			public PanoramaMapper(String name) {
 				super(name);
@@ -618,29 +2803,32 @@ class VideoMapper {
 				horizontalFOVleft_ = Double.parseDouble(properties_.getProperty(name_ + ".horizontal-fov-left", ""+(-.5*horizontalFOV_)));
 				verticalFOV_ = Double.parseDouble(properties_.getProperty(name_ + ".vertical-fov", "120.0"));
 				verticalFOVtop_ = Double.parseDouble(properties_.getProperty(name_ + ".vertical-fov-top", ""+(-.5*verticalFOV_)));
+				
+				verticalFOVAngle_ = verticalFOV_ * Math.PI / 180.;
+				verticalFOVAngleCenter_ = verticalFOVtop_ * Math.PI / 180. + verticalFOVAngle_/2;
+				horizontalFOVAngle_ = horizontalFOV_ * Math.PI/180.;
+				horizontalFOVAngleCenter_ = horizontalFOVleft_ * Math.PI/180. + horizontalFOVAngle_/2;
 			}
 			
-			protected double[] // {world_o_clock, world_from_center}
-			rendering_2_world(double rendering_x, double rendering_y) {
+			protected boolean // {rendering_x, rendering_y} -> {world_o_clock, world_from_center}
+			rendering_2_world(double[] xy) {
 
-				double vertical_fov_angle = verticalFOV_ * Math.PI / 180.;
-				double vertical_fov_angle_top = verticalFOVtop_ * Math.PI / 180.;
-				double horizontal_fov_angle = horizontalFOV_ * Math.PI/180.;
-				double horizontal_fov_angle_left = horizontalFOVleft_ * Math.PI/180.;
+				double rendering_x = xy[0];
+				double rendering_y = xy[1];
   
-				double vertical_angle = (vertical_fov_angle_top+vertical_fov_angle/2) + (rendering_y-boundsHeight_/2.) * vertical_fov_angle / boundsHeight_;
-				double horizontal_angle = (horizontal_fov_angle_left+horizontal_fov_angle/2) + (rendering_x-boundsWidth_/2.) * horizontal_fov_angle / boundsWidth_;
+				double vertical_angle = verticalFOVAngleCenter_ + (rendering_y-boundsHeight_/2.) * verticalFOVAngle_ / boundsHeight_;
+				double horizontal_angle = horizontalFOVAngleCenter_ + (rendering_x-boundsWidth_/2.) * horizontalFOVAngle_ / boundsWidth_;
   
 				double projection_z = -Math.sin(vertical_angle);
-				double xy = Math.cos(vertical_angle);
-				double projection_x = xy * Math.sin(horizontal_angle);
-				double projection_y = xy * Math.cos(horizontal_angle);
+				double horizontal_radius = Math.cos(vertical_angle);
+				double projection_x = horizontal_radius * Math.sin(horizontal_angle);
+				double projection_y = horizontal_radius * Math.cos(horizontal_angle);
  
 				double xz = Math.sqrt(projection_x*projection_x + projection_z*projection_z);
 
-				double world_o_clock = Math.PI - Math.atan2(projection_x, projection_z);
-				double world_from_center = Math.atan2(xz, projection_y);
-				return new double[] {world_o_clock, world_from_center};
+				xy[0] = Math.PI - Math.atan2(projection_x, projection_z); // world_o_clock
+				xy[1] = Math.atan2(xz, projection_y); // world_from_center
+				return true;
 			}
 
 		} // PanoramaMapper
@@ -0,0 +1,76 @@
+package rabuchanan2077.video;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+/**
+Common setup of the JMH benchmarks: the shipped parking.properties and displayMask.png, headless and without
+Gstreamer, with the LUT cache and export turned off so every run measures the same work.
+Files are found relative to the videomapper.root system property, by default the working directory.
+*/
+final class Benchmarks {
+
+	public static final String ROOT = System.getProperty("videomapper.root", ".");
+
+	// camera frame size of the shipped configuration's cameras
+	public static final int CAMERA_WIDTH = 1296;
+	public static final int CAMERA_HEIGHT = 972;
+
+	private Benchmarks() {
+	}
+
+	/**
+	Loads the shipped configuration, with the given properties replacing its own.
+	The "*.interpolation" property, if given, applies to every mapper.
+	*/
+	public static Properties loadProperties(Map<String, String> overrides) throws IOException {
+
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream(new File(ROOT, "resources/parking.properties"))) {
+			properties.load(in);
+		}
+		properties.setProperty("layout", new File(ROOT, properties.getProperty("layout")).getPath());
+		properties.setProperty("lut-cache", "");
+		properties.setProperty("export", "none");
+		properties.setProperty("output-fps", "0");
+		for (Map.Entry<String, String> override : overrides.entrySet()) {
+			if (override.getKey().equals("*.interpolation")) {
+				for (String name : properties.stringPropertyNames()) {
+					if (name.endsWith(".class")) {
+						properties.setProperty(name.substring(0, name.length() - ".class".length()) + ".interpolation", override.getValue());
+					}
+				}
+			}
+			else {
+				properties.setProperty(override.getKey(), override.getValue());
+			}
+		}
+		return properties;
+	}
+
+	/**
+	Builds a VideoMapper from the shipped configuration, with every camera's frame size set and its pixel mapping table built.
+	*/
+	public static VideoMapper createVideoMapper(Map<String, String> overrides) throws IOException {
+
+		VideoMapper videoMapper = new VideoMapper(loadProperties(overrides));
+		for (VideoMapper.CameraConfiguration cc : videoMapper.cameraConfiguration_) {
+			cc.setCameraResolution(CAMERA_WIDTH, CAMERA_HEIGHT);
+		}
+		return videoMapper;
+	}
+
+	/**
+	A synthetic BGRx camera frame of seeded noise, in a direct buffer like a mapped Gstreamer buffer.
+	*/
+	public static IntBuffer createFrame(int width, int height, long seed) {
+
+		IntBuffer frame = ByteBuffer.allocateDirect(4*width*height).order(ByteOrder.nativeOrder()).asIntBuffer();
+		Random random = new Random(seed);
+		for (int i = 0; i < frame.capacity(); i++) {
+			frame.put(i, random.nextInt() & 0x00FFFFFF);
+		}
+		return frame;
+	}
+}
@@ -0,0 +1,48 @@
+package rabuchanan2077.video;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+Building a camera's whole pixel mapping table from its mappers, and the merge step alone on precomputed mapper tables.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Djava.awt.headless=true", "--add-modules", "jdk.incubator.vector"})
+public class CameraMapBenchmark {
+
+	@Param({"nearest", "bilinear"})
+	public String interpolation;
+
+	protected VideoMapper.CameraConfiguration camera_;
+	protected java.util.List<VideoMapper.CameraConfiguration.Mapper> mappers_;
+	protected java.util.List<int[]> mapperMaps_;
+
+	@Setup
+	public void setup() throws Exception {
+
+		VideoMapper videoMapper = Benchmarks.createVideoMapper(Map.of("*.interpolation", interpolation));
+		camera_ = videoMapper.cameraConfiguration_.get(0);
+		mappers_ = new ArrayList<>(camera_.getMappers());
+		mapperMaps_ = new ArrayList<>();
+		for (VideoMapper.CameraConfiguration.Mapper mapper : mappers_) {
+			mapperMaps_.add(mapper.getMap());
+		}
+	}
+
+	@Benchmark
+	public int[][] getMap() {
+
+		return camera_.getMap();
+	}
+
+	@Benchmark
+	public int[][] merge() {
+
+		return camera_.merge(mappers_, mapperMaps_);
+	}
+}
@@ -0,0 +1,59 @@
+package rabuchanan2077.video;
+
+import java.awt.image.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+Table building of a single mapper of the shipped configuration, the first of each kind, and indexing of its layout.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Djava.awt.headless=true", "--add-modules", "jdk.incubator.vector"})
+public class MapperBenchmark {
+
+	@Param({"BirdseyeMapper", "PanoramaMapper"})
+	public String mapper;
+
+	@Param({"nearest", "bilinear"})
+	public String interpolation;
+
+	protected VideoMapper.CameraConfiguration.Mapper mapper_;
+	protected BufferedImage layout_;
+
+	@Setup
+	public void setup() throws Exception {
+
+		VideoMapper videoMapper = Benchmarks.createVideoMapper(Map.of("*.interpolation", interpolation));
+		layout_ = videoMapper.outputLayout_;
+		for (VideoMapper.CameraConfiguration cc : videoMapper.cameraConfiguration_) {
+			for (VideoMapper.CameraConfiguration.Mapper m : cc.getMappers()) {
+				if (mapper_ == null && m.getClass().getSimpleName().equals(mapper)) {
+					mapper_ = m;
+				}
+			}
+		}
+		if (mapper_ == null) {
+			throw new IllegalStateException("No " + mapper + " in the shipped configuration.");
+		}
+	}
+
+	@Benchmark
+	public int[] getMap() {
+
+		return mapper_.getMap();
+	}
+
+	/**
+	Indexing the layout, done once for all mappers, where each used to scan it for a mask of its own.
+	*/
+	@Benchmark
+	public LayoutIndex createLayoutIndex() {
+
+		return new LayoutIndex(layout_);
+	}
+}
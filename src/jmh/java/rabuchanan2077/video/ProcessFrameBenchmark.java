@@ -0,0 +1,56 @@
+package rabuchanan2077.video;
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+The per-frame path: one synthetic BGRx frame from every camera of the shipped configuration written through
+processFrame() into the output, as one composited output frame, for each compositor and remap kernel.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Djava.awt.headless=true", "--add-modules", "jdk.incubator.vector"})
+public class ProcessFrameBenchmark {
+
+	@Param({"locked", "double-buffered"})
+	public String compositor;
+
+	@Param({"scalar", "vector"})
+	public String kernel;
+
+	@Param({"nearest", "bilinear"})
+	public String interpolation;
+
+	protected VideoMapper.CameraConfiguration[] cameras_;
+	protected RemapTable[] tables_;
+	protected IntBuffer[] frames_;
+
+	@Setup
+	public void setup() throws Exception {
+
+		VideoMapper videoMapper = Benchmarks.createVideoMapper(Map.of(
+			"compositor", compositor,
+			"remap-kernel", kernel,
+			"*.interpolation", interpolation));
+		cameras_ = videoMapper.cameraConfiguration_.toArray(new VideoMapper.CameraConfiguration[0]);
+		tables_ = new RemapTable[cameras_.length];
+		frames_ = new IntBuffer[cameras_.length];
+		for (int i = 0; i < cameras_.length; i++) {
+			tables_[i] = (RemapTable)cameras_[i].getRemapTable(); // packed frames, so never a PlanarRemapTable
+			frames_[i] = Benchmarks.createFrame(Benchmarks.CAMERA_WIDTH, Benchmarks.CAMERA_HEIGHT, i);
+		}
+	}
+
+	@Benchmark
+	public void processFrame() {
+
+		for (int i = 0; i < cameras_.length; i++) {
+			cameras_[i].processFrame(frames_[i], tables_[i], -1, VideoMapper.NO_TIME);
+		}
+	}
+}
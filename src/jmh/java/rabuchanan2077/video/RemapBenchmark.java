@@ -0,0 +1,83 @@
+package rabuchanan2077.video;
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+The remap kernels alone on the table of a single mapper of the shipped configuration, the first of each kind: nearest-pixel
+sampling against bilinear interpolation over the same mapper, each with the scalar and the Vector API kernel, and with the
+table in each lut-order. Dividing the table's bytes moved, as printed at setup, by the time gives the memory bandwidth
+achieved, to choose a <mapper>.lut-order by.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Djava.awt.headless=true", "--add-modules", "jdk.incubator.vector"})
+public class RemapBenchmark {
+
+	@Param({"BirdseyeMapper", "PanoramaMapper"})
+	public String mapper;
+
+	@Param({"nearest", "bilinear"})
+	public String interpolation;
+
+	@Param({"scalar", "vector"})
+	public String kernel;
+
+	@Param({"raster", "tile", "morton"})
+	public String lutOrder;
+
+	@Param({"32"})
+	public int lutTile;
+
+	protected RemapTable table_;
+	protected IntBuffer frame_;
+	protected int[] output_;
+
+	@Setup
+	public void setup() throws Exception {
+
+		VideoMapper videoMapper = Benchmarks.createVideoMapper(Map.of("*.interpolation", interpolation));
+		VideoMapper.CameraConfiguration.Mapper found = null;
+		for (VideoMapper.CameraConfiguration cc : videoMapper.cameraConfiguration_) {
+			for (VideoMapper.CameraConfiguration.Mapper m : cc.getMappers()) {
+				if (found == null && m.getClass().getSimpleName().equals(mapper)) {
+					found = m;
+				}
+			}
+		}
+		if (found == null) {
+			throw new IllegalStateException("No " + mapper + " in the shipped configuration.");
+		}
+
+		int[] map = found.getMap();
+		boolean bilinear = found.getMapStride() == 3;
+		table_ = bilinear ? RemapTable.compile(new int[0], map, Benchmarks.CAMERA_WIDTH, videoMapper.remapSpanMin_)
+		                  : RemapTable.compile(map, new int[0], Benchmarks.CAMERA_WIDTH, videoMapper.remapSpanMin_);
+		int outputWidth = videoMapper.outputResolution_.width;
+		LutOrder order = new LutOrder(LutOrder.Mode.valueOf(lutOrder.toUpperCase()), lutTile, lutTile);
+		if (!order.isRaster()) {
+			table_ = table_.reorder(o -> order.getTileKey(o % outputWidth, o / outputWidth));
+		}
+		if (kernel.equals("vector")) {
+			table_ = table_.vectorize(Benchmarks.CAMERA_HEIGHT);
+		}
+		frame_ = Benchmarks.createFrame(Benchmarks.CAMERA_WIDTH, Benchmarks.CAMERA_HEIGHT, 0);
+		output_ = new int[outputWidth*videoMapper.outputResolution_.height];
+
+		// 4 camera pixels read per bilinear sample, 1 otherwise, 1 output pixel written, and the table read
+		long bytes = (bilinear ? 20L : 8L)*table_.getMappedPixels() + table_.getSize();
+		System.out.println(found.name_ + ", " + order + ": " + bytes + " bytes moved per remap, " + table_);
+	}
+
+	@Benchmark
+	public int[] remap() {
+
+		table_.remap(frame_, output_);
+		return output_;
+	}
+}
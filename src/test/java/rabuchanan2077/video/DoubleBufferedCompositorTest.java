@@ -0,0 +1,103 @@
+package rabuchanan2077.video;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import org.junit.jupiter.api.*;
+
+/**
+Four cameras writing through the double-buffered compositor at once, as fast as they can, while the test paints
+frames as the event dispatch thread does. Each camera fills its quarter of the output with one value per frame, marked
+in the top byte that background pixels leave clear, so a frame in which any quarter holds two values, or one value
+over part of the background, has a region torn by a write in progress.
+*/
+class DoubleBufferedCompositorTest {
+
+	protected static final int WRITERS = 4;
+	protected static final int MARK = 0x01000000;
+
+	@Test
+	void publishesNoTornRegions() throws Exception {
+
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream("resources/parking.properties")) {
+			properties.load(in);
+		}
+		properties.setProperty("compositor", "double-buffered");
+		properties.setProperty("lut-cache", "");
+		properties.setProperty("export", "none");
+		properties.setProperty("output-fps", "0");
+		properties.setProperty("display", "false");
+		VideoMapper videoMapper = new VideoMapper(properties);
+		VideoMapper.DoubleBufferedCompositor compositor = (VideoMapper.DoubleBufferedCompositor)videoMapper.compositor_;
+		int pixels = videoMapper.outputResolution_.width*videoMapper.outputResolution_.height;
+		int quarter = pixels / WRITERS;
+
+		AtomicBoolean stop = new AtomicBoolean();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread[] writers = new Thread[WRITERS];
+		for (int w = 0; w < WRITERS; w++) {
+			// each output pixel of the quarter from a camera pixel spread over the frame, so regions are gathered pixel by pixel
+			int[] map = new int[2*quarter];
+			for (int i = 0, k = 0; i < quarter; i++) {
+				map[k++] = w*quarter + i;
+				map[k++] = (int)((w*quarter + i)*7L % pixels);
+			}
+			RemapTable table = RemapTable.compile(map, new int[0], pixels, 8);
+			VideoMapper.PackedCompositor.PackedLayer layer = compositor.createLayer(new Metrics("writer" + w));
+			IntBuffer frame = IntBuffer.allocate(pixels);
+			writers[w] = new Thread(() -> {
+				try {
+					for (int value = 1; !stop.get(); value++) {
+						for (int i = 0; i < pixels; i++) {
+							frame.put(i, MARK | value);
+						}
+						layer.write(table, frame, value, System.nanoTime());
+					}
+				}
+				catch (Throwable t) {
+					failure.compareAndSet(null, t);
+				}
+			});
+			writers[w].start();
+		}
+
+		long frames = 0;
+		long torn = 0;
+		try {
+			long end = System.currentTimeMillis() + 2000;
+			while (System.currentTimeMillis() < end) {
+				if (compositor.ready_.get().sequence_ > compositor.showing_.sequence_) {
+					compositor.showing_ = compositor.ready_.getAndSet(compositor.showing_);
+					frames++;
+					int[] output = compositor.showing_.pixels_;
+					for (int w = 0; w < WRITERS; w++) {
+						// a quarter not yet written shows the background
+						boolean written = (output[w*quarter] & MARK) != 0;
+						for (int i = w*quarter; i < (w+1)*quarter; i++) {
+							if (written ? output[i] != output[w*quarter] : (output[i] & MARK) != 0) {
+								torn++;
+								break;
+							}
+						}
+					}
+				}
+				else {
+					Thread.yield();
+				}
+			}
+		}
+		finally {
+			stop.set(true);
+			for (Thread writer : writers) {
+				writer.join();
+			}
+		}
+		assertNull(failure.get());
+		assertTrue(frames > 0, "no frame published");
+		assertEquals(0, torn, torn + " torn regions in " + frames + " frames");
+	}
+}
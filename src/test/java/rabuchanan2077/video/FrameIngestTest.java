@@ -0,0 +1,205 @@
+package rabuchanan2077.video;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import org.junit.jupiter.api.*;
+
+/**
+Camera channels on a pool of one thread, with frames that only count how often they are disposed of. Holding up the
+pool's thread fills a channel, to see what each drop policy gives.
+*/
+class FrameIngestTest {
+
+	protected static class TestFrame extends FrameSource.Frame {
+
+		protected final long pts_;
+		protected final AtomicInteger disposed_ = new AtomicInteger();
+
+		protected TestFrame(long pts) {
+
+			pts_ = pts;
+		}
+
+		@Override
+		public int getWidth() {
+
+			return 1;
+		}
+
+		@Override
+		public int getHeight() {
+
+			return 1;
+		}
+
+		@Override
+		public long getPTS() {
+
+			return pts_;
+		}
+
+		@Override
+		public long getDuration() {
+
+			return -1;
+		}
+
+		@Override
+		public ByteBuffer map() {
+
+			return null;
+		}
+
+		@Override
+		public void dispose() {
+
+			disposed_.incrementAndGet();
+		}
+	}
+
+	protected FrameIngest ingest_;
+
+	@BeforeEach
+	void createIngest() {
+
+		ingest_ = new FrameIngest(1);
+	}
+
+	@AfterEach
+	void stopIngest() {
+
+		ingest_.stop();
+	}
+
+	/**
+	Occupies the pool's only thread until the returned latch is counted down, so channels fill up.
+	*/
+	protected CountDownLatch holdPool() throws InterruptedException {
+
+		CountDownLatch held = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ingest_.execute(() -> {
+			held.countDown();
+			try {
+				release.await();
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		held.await();
+		return release;
+	}
+
+	/**
+	Checks that every frame is disposed of exactly once, allowing the pool a while to dispose of those still queued.
+	*/
+	protected static void assertDisposed(TestFrame[] frames) throws InterruptedException {
+
+		long end = System.currentTimeMillis() + 2000;
+		while (Arrays.stream(frames).anyMatch(frame -> frame.disposed_.get() == 0) && System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+		for (TestFrame frame : frames) {
+			assertEquals(1, frame.disposed_.get(), "frame " + frame.pts_ + " disposed of");
+		}
+	}
+
+	/**
+	Offers frames 0, 1 and 2 to a channel of two frames while the pool is held, then lets it drain, returning the
+	timestamps of the frames handled, after checking that every frame was disposed of.
+	*/
+	protected java.util.List<Long> offerThree(DropPolicy dropPolicy) throws Exception {
+
+		java.util.List<Long> handled = Collections.synchronizedList(new ArrayList<>());
+		FrameIngest.Channel channel = ingest_.open("test", frame -> {
+			handled.add(frame.getPTS());
+			frame.dispose();
+		}, 2, dropPolicy);
+		TestFrame[] frames = {new TestFrame(0), new TestFrame(1), new TestFrame(2)};
+		CountDownLatch release = holdPool();
+		Thread streaming = new Thread(() -> {
+			for (TestFrame frame : frames) {
+				channel.offer(frame);
+			}
+		});
+		streaming.start();
+		streaming.join(500);
+		assertEquals(dropPolicy == DropPolicy.BLOCK, streaming.isAlive(), "source waiting for room");
+		release.countDown();
+		streaming.join(2000);
+		assertFalse(streaming.isAlive());
+		assertDisposed(frames);
+		return handled;
+	}
+
+	@Test
+	void oldestDropsTheLongestQueued() throws Exception {
+
+		assertEquals(java.util.List.of(1L, 2L), offerThree(DropPolicy.OLDEST));
+	}
+
+	@Test
+	void newestDropsTheFrameOffered() throws Exception {
+
+		assertEquals(java.util.List.of(0L, 1L), offerThree(DropPolicy.NEWEST));
+	}
+
+	@Test
+	void blockWaitsForRoom() throws Exception {
+
+		assertEquals(java.util.List.of(0L, 1L, 2L), offerThree(DropPolicy.BLOCK));
+	}
+
+	/**
+	As when a stream ends: the pool's only thread stops the source, waiting for its streaming thread, which is blocked
+	offering a frame to the camera's full channel, which only the pool drains. Closing the channel first releases it,
+	and it takes no more frames, which would block the streaming thread again.
+	*/
+	@Test
+	void closingReleasesABlockedSource() throws Exception {
+
+		java.util.List<Long> handled = Collections.synchronizedList(new ArrayList<>());
+		FrameIngest.Channel channel = ingest_.open("test", frame -> {
+			handled.add(frame.getPTS());
+			frame.dispose();
+		}, 1, DropPolicy.BLOCK);
+		TestFrame[] frames = new TestFrame[5];
+		for (int i = 0; i < frames.length; i++) {
+			frames[i] = new TestFrame(i);
+		}
+		Thread streaming = new Thread(() -> {
+			for (TestFrame frame : frames) {
+				channel.offer(frame);
+			}
+		});
+
+		CompletableFuture<Boolean> stopped = new CompletableFuture<>();
+		CountDownLatch stopping = new CountDownLatch(1);
+		ingest_.execute(() -> {
+			try {
+				stopping.countDown();
+				long end = System.currentTimeMillis() + 2000;
+				while (streaming.getState() != Thread.State.TIMED_WAITING && System.currentTimeMillis() < end) { // on the second frame
+					Thread.sleep(10);
+				}
+				channel.close();
+				streaming.join(2000); // as stopping the pipeline waits for its streaming threads
+				stopped.complete(!streaming.isAlive());
+			}
+			catch (InterruptedException ex) {
+				stopped.complete(false);
+			}
+		});
+		stopping.await();
+		streaming.start();
+
+		assertTrue(stopped.get(5, TimeUnit.SECONDS), "source still blocked on a closed channel");
+		assertDisposed(frames); // one that got in as the channel closed, by the pool once free
+		assertTrue(handled.isEmpty());
+	}
+}
@@ -0,0 +1,125 @@
+package rabuchanan2077.video;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.*;
+
+/**
+A writer filling a three-slot ring as fast as it can while a reader takes the latest frame over and over, so slots are
+overwritten during reads all the time. Frame n holds n in every pixel and n * PTS_STEP as its presentation timestamp,
+so a frame the reader accepts with mixed pixels, pixels of another frame, or another frame's timestamps was torn.
+*/
+class FrameRingTest {
+
+	protected static final int WIDTH = 640;
+	protected static final int HEIGHT = 480;
+	protected static final int SLOTS = 3;
+	protected static final long PTS_STEP = 1000;
+
+	@TempDir
+	Path directory_;
+
+	@Test
+	void acceptsNoTornFrames() throws Exception {
+
+		int pixels = WIDTH*HEIGHT;
+		String path = directory_.resolve("ring").toString();
+		FrameRing.Writer writer = FrameRing.create(path, SLOTS, WIDTH, HEIGHT, FrameRing.FORMAT_BGRX, 4*pixels, ByteOrder.nativeOrder());
+		FrameRing.Reader reader = FrameRing.open(path);
+		assertEquals(0, reader.getLatest());
+
+		AtomicBoolean stop = new AtomicBoolean();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread writerThread = new Thread(() -> {
+			try {
+				int[] frame = new int[pixels];
+				for (int value = 1; !stop.get(); value++) {
+					Arrays.fill(frame, value);
+					assertEquals(value, writer.write(frame, value*PTS_STEP));
+				}
+			}
+			catch (Throwable t) {
+				failure.compareAndSet(null, t);
+			}
+		});
+		writerThread.start();
+
+		long accepted = 0;
+		long rejected = 0;
+		long torn = 0;
+		long start = System.currentTimeMillis();
+		try {
+			int[] frame = new int[pixels];
+			long last = 0;
+			long lastTimestamp = 0;
+			long end = start + 2000;
+			while (System.currentTimeMillis() < end) {
+				long sequence = reader.getLatest();
+				if (sequence == last) {
+					Thread.yield();
+					continue;
+				}
+				if (!reader.read(sequence, frame)) {
+					rejected++;
+					continue;
+				}
+				accepted++;
+				assertTrue(sequence > last, "sequence " + sequence + " after " + last);
+				last = sequence;
+				for (int value : frame) {
+					if (value != (int)sequence) {
+						torn++;
+						break;
+					}
+				}
+				assertEquals(sequence*PTS_STEP, reader.getLastPTS(), "presentation timestamp of frame " + sequence);
+				assertTrue(reader.getLastTimestamp() >= lastTimestamp, "timestamp of frame " + sequence);
+				lastTimestamp = reader.getLastTimestamp();
+			}
+			// stamped by the wall clock, to within the test's run
+			assertTrue(lastTimestamp >= start*1_000_000L - 1_000_000_000L && lastTimestamp <= (end + 1000)*1_000_000L);
+		}
+		finally {
+			stop.set(true);
+			writerThread.join();
+			reader.close();
+			writer.close();
+		}
+		assertNull(failure.get());
+		assertTrue(accepted > 0, "no frame accepted");
+		assertEquals(0, torn, torn + " torn frames accepted of " + accepted + ", " + rejected + " rejected");
+	}
+
+	@Test
+	void overwrittenFramesAreRejected() throws IOException {
+
+		String path = directory_.resolve("ring").toString();
+		FrameRing.Writer writer = FrameRing.create(path, SLOTS, 4, 2, FrameRing.FORMAT_I420, 12, ByteOrder.BIG_ENDIAN);
+		FrameRing.Reader reader = FrameRing.open(path);
+		try {
+			byte[] frame = new byte[12];
+			for (int value = 1; value <= SLOTS + 1; value++) {
+				Arrays.fill(frame, (byte)value);
+				writer.write(frame, value*PTS_STEP);
+			}
+			assertEquals(SLOTS + 1, reader.getLatest());
+			// frame 1 shared its slot with the latest
+			assertFalse(reader.read(1, frame));
+			assertEquals(-1, reader.getLastPTS());
+			assertTrue(reader.read(2, frame));
+			assertArrayEquals(new byte[] {2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2}, frame);
+			assertEquals(2*PTS_STEP, reader.getLastPTS());
+			assertEquals(FrameRing.FORMAT_I420, reader.getFormat());
+		}
+		finally {
+			reader.close();
+			writer.close();
+		}
+	}
+}
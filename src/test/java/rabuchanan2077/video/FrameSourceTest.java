@@ -0,0 +1,189 @@
+package rabuchanan2077.video;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.*;
+
+/**
+The synthetic and raw-file sources, taking their frames one by one as fast as they come, with source-fps 0: the
+pattern's pixels, and a small file of numbered bytes whose frames must come back whole, in order, as they were written.
+*/
+class FrameSourceTest {
+
+	@TempDir
+	protected Path directory_;
+
+	protected static Properties createProperties(String source, String size) {
+
+		Properties properties = new Properties();
+		properties.setProperty("test.source", source);
+		properties.setProperty("test.source-size", size);
+		properties.setProperty("test.source-fps", "0");
+		return properties;
+	}
+
+	/**
+	Writes frames of width x height packed pixels, each byte the frame's number times the frame size plus its own offset.
+	*/
+	protected Path createFile(int frames, int width, int height, int extra) throws IOException {
+
+		byte[] bytes = new byte[frames*width*height*4 + extra];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte)i;
+		}
+		return Files.write(directory_.resolve("test.raw"), bytes);
+	}
+
+	protected static void assertFrame(FrameSource.Frame frame, int f, int width, int height) {
+
+		assertEquals(width, frame.getWidth());
+		assertEquals(height, frame.getHeight());
+		ByteBuffer pixels = frame.map();
+		assertEquals(width*height*4, pixels.remaining());
+		for (int i = 0; i < pixels.remaining(); i++) {
+			assertEquals((byte)(f*width*height*4 + i), pixels.get(pixels.position() + i), "byte " + i + " of frame " + f);
+		}
+	}
+
+	@Test
+	void syntheticFramesCycleThePattern() throws Exception {
+
+		Properties properties = createProperties("synthetic", "32x8");
+		FrameSource source = FrameSource.create("test", properties, ByteOrder.BIG_ENDIAN, PixelFormat.RGB);
+		assertTrue(source instanceof SyntheticFrameSource);
+		source.open();
+		long pts = -1;
+		for (int n = 0; n < 6; n++) {
+			FrameSource.Frame frame = source.next();
+			assertEquals(32, frame.getWidth());
+			assertEquals(8, frame.getHeight());
+			assertEquals(-1, frame.getDuration());
+			assertTrue(frame.getPTS() >= Math.max(0, pts), "timestamps from 0, in order");
+			pts = frame.getPTS();
+
+			// red across, green down, and a bar of 2 pixels, at 8 pixels further along in each of the 4 frames
+			IntBuffer pixels = frame.map().order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+			int barX = 8*(n % 4);
+			for (int y = 0; y < 8; y++) {
+				for (int x = 0; x < 32; x++) {
+					int b = x >= barX && x < barX + 2 ? 255 : 0;
+					assertEquals(255*x/31 << 16 | 255*y/7 << 8 | b, pixels.get(y*32 + x), "pixel " + x + "," + y + " of frame " + n);
+				}
+			}
+		}
+		source.stop();
+	}
+
+	@Test
+	void syntheticRegionsAreScaled() throws Exception {
+
+		SyntheticFrameSource source = new SyntheticFrameSource("test", createProperties("synthetic", "32x8"), ByteOrder.LITTLE_ENDIAN, PixelFormat.RGB);
+		assertFalse(source.setRegion(SourceRegion.full(64, 8)), "a region of another frame size");
+		SourceRegion region = new SourceRegion(32, 8, 16, 0, 16, 8, 8, 4);
+		assertTrue(source.setRegion(region));
+		FrameSource.Frame frame = source.next();
+		assertEquals(8, frame.getWidth());
+		assertEquals(4, frame.getHeight());
+		IntBuffer pixels = frame.map().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+		assertEquals(8*4, pixels.remaining());
+		for (int fx = 0; fx < 8; fx++) {
+			int x = (int)Math.round(region.toSourceX(fx));
+			assertTrue(x >= 16 && x < 32);
+			assertEquals(255*x/31, pixels.get(fx) >> 16 & 0xFF, "red of frame pixel " + fx);
+		}
+		assertTrue(source.setRegion(SourceRegion.full(32, 8)));
+		assertEquals(32, source.next().getWidth());
+	}
+
+	@Test
+	void syntheticPlanarFrames() throws Exception {
+
+		SyntheticFrameSource source = new SyntheticFrameSource("test", createProperties("synthetic", "30x10"), ByteOrder.LITTLE_ENDIAN, PixelFormat.I420);
+		ByteBuffer frame = source.next().map();
+		assertEquals(PixelFormat.I420.getFrameBytes(30, 10), frame.remaining());
+		byte[] planes = new byte[frame.remaining()];
+		frame.get(planes);
+		int[] rgb = new int[30*10];
+		PixelFormat.I420.toRGB(planes, 30, 10, rgb);
+		// the top left is black, and the bottom right, past the bar, yellow, within the rounding of colors shared by 2x2 pixels
+		assertEquals(0, rgb[0] >> 16 & 0xFF, 16);
+		assertEquals(255, rgb[30*10 - 1] >> 16 & 0xFF, 16);
+		assertEquals(255, rgb[30*10 - 1] >> 8 & 0xFF, 16);
+	}
+
+	@Test
+	void fileFramesComeInOrderUntilTheEnd() throws Exception {
+
+		Properties properties = createProperties("file", "4x2");
+		properties.setProperty("test.source-file", createFile(3, 4, 2, 5).toString()); // and part of a frame, ignored
+		properties.setProperty("test.source-loop", "false");
+		FrameSource source = FrameSource.create("test", properties, ByteOrder.BIG_ENDIAN, PixelFormat.RGB);
+		assertTrue(source instanceof RawFileFrameSource);
+		source.open();
+		for (int f = 0; f < 3; f++) {
+			assertFrame(source.next(), f, 4, 2);
+		}
+		assertNull(source.next());
+		source.stop();
+	}
+
+	@Test
+	void fileFramesLoop() throws Exception {
+
+		Properties properties = createProperties("file", "4x2");
+		properties.setProperty("test.source-file", createFile(3, 4, 2, 0).toString());
+		RawFileFrameSource source = new RawFileFrameSource("test", properties, PixelFormat.RGB);
+		source.open();
+		for (int n = 0; n < 7; n++) {
+			assertFrame(source.next(), n % 3, 4, 2);
+		}
+		source.stop();
+	}
+
+	@Test
+	void fileSourceNeedsAFrame() throws Exception {
+
+		Properties properties = createProperties("file", "4x2");
+		assertThrows(IllegalArgumentException.class, () -> new RawFileFrameSource("test", properties, PixelFormat.RGB));
+		properties.setProperty("test.source-file", createFile(0, 4, 2, 31).toString());
+		assertThrows(IOException.class, () -> new RawFileFrameSource("test", properties, PixelFormat.RGB));
+		properties.setProperty("test.source", "camera");
+		assertThrows(IllegalArgumentException.class, () -> FrameSource.create("test", properties, ByteOrder.BIG_ENDIAN, PixelFormat.RGB));
+	}
+
+	/**
+	On the source's own thread: every frame to the consumer, then the end of the stream, reported once.
+	*/
+	@Test
+	void startedSourceReportsItsEnd() throws Exception {
+
+		Properties properties = createProperties("file", "4x2");
+		properties.setProperty("test.source-file", createFile(5, 4, 2, 0).toString());
+		properties.setProperty("test.source-loop", "false");
+		FrameSource source = FrameSource.create("test", properties, ByteOrder.BIG_ENDIAN, PixelFormat.RGB);
+		java.util.List<FrameSource.Frame> frames = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch ended = new CountDownLatch(1);
+		AtomicInteger ends = new AtomicInteger();
+		Metrics metrics = new Metrics("test");
+		source.start(frames::add, () -> {
+			ends.incrementAndGet();
+			ended.countDown();
+		}, metrics);
+		assertTrue(ended.await(5, TimeUnit.SECONDS));
+		source.end("stream failed."); // as a failure after the end would
+		source.stop();
+		assertEquals(1, ends.get());
+		assertEquals(5, frames.size());
+		assertEquals(5, metrics.getFrames());
+		for (int f = 0; f < 5; f++) {
+			assertFrame(frames.get(f), f, 4, 2);
+		}
+	}
+}
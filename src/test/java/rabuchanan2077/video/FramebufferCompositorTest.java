@@ -0,0 +1,93 @@
+package rabuchanan2077.video;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.*;
+
+/**
+The framebuffer compositor of the sample configuration, over a file, written by a camera whose table moves from one
+half of the output to the other: the file must hold every camera frame as written, and the display every pixel the
+camera changed, including those it gave back to the background.
+*/
+class FramebufferCompositorTest {
+
+	@TempDir
+	protected Path directory_;
+
+	protected static int[] toPixels(byte[] bytes, ByteOrder byteOrder) {
+
+		int[] pixels = new int[bytes.length / 4];
+		ByteBuffer.wrap(bytes).order(byteOrder).asIntBuffer().get(pixels);
+		return pixels;
+	}
+
+	/**
+	Returns a table writing every output pixel from first to last, from camera pixels numbered alike.
+	*/
+	protected static RemapTable createTable(int first, int last) {
+
+		int[] map = new int[2*(last - first)];
+		for (int i = first, k = 0; i < last; i++) {
+			map[k++] = i;
+			map[k++] = i;
+		}
+		return RemapTable.compile(map, new int[0], last, 8);
+	}
+
+	@Test
+	void camerasWriteTheFileAndTheDisplayTakesTheirPixels() throws Exception {
+
+		Path file = directory_.resolve("framebuffer");
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream("resources/parking.properties")) {
+			properties.load(in);
+		}
+		properties.setProperty("compositor", "framebuffer");
+		properties.setProperty("framebuffer-file", file.toString());
+		properties.remove("export");
+		properties.setProperty("lut-cache", "");
+		properties.setProperty("output-fps", "0");
+		properties.setProperty("display", "false");
+		VideoMapper videoMapper = new VideoMapper(properties);
+		VideoMapper.FramebufferCompositor compositor = (VideoMapper.FramebufferCompositor)videoMapper.compositor_;
+		assertTrue(videoMapper.outputSinks_.isEmpty(), "export defaults to none with a file");
+		int pixels = videoMapper.outputResolution_.width*videoMapper.outputResolution_.height;
+		int[] background = videoMapper.outputBackground_;
+		assertArrayEquals(background, toPixels(Files.readAllBytes(file), videoMapper.byteOrder_));
+
+		VideoMapper.PackedCompositor.PackedLayer layer = compositor.createLayer(new Metrics("test"));
+		BufferedImage display = new BufferedImage(videoMapper.outputResolution_.width, videoMapper.outputResolution_.height, BufferedImage.TYPE_INT_RGB);
+		Graphics g = display.getGraphics();
+		int[] camera = new int[pixels];
+		RemapTable[] tables = {createTable(0, pixels/2), createTable(pixels/2, pixels)};
+		try {
+			for (int frame = 1; frame <= 4; frame++) {
+				Arrays.fill(camera, 0x010101 * frame);
+				RemapTable table = tables[frame / 3];
+				layer.write(table, IntBuffer.wrap(camera), frame, System.nanoTime());
+
+				int[] expected = background.clone();
+				int first = table == tables[0] ? 0 : pixels/2;
+				Arrays.fill(expected, first, first + pixels/2, 0x010101 * frame);
+				assertArrayEquals(expected, toPixels(Files.readAllBytes(file), videoMapper.byteOrder_), "file after frame " + frame);
+				if (frame > 1) { // the first paint copies the whole framebuffer, later ones the tables written since
+					assertEquals(frame == 3 ? 2 : 1, compositor.unpainted_.size());
+				}
+				compositor.paint(g, 0, 0, display.getWidth(), display.getHeight());
+				assertArrayEquals(expected, compositor.paintPixels_, "display after frame " + frame);
+				assertTrue(compositor.unpainted_.isEmpty());
+			}
+		}
+		finally {
+			g.dispose();
+			compositor.stop();
+		}
+	}
+}
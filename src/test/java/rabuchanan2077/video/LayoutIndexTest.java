@@ -0,0 +1,127 @@
+package rabuchanan2077.video;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+
+/**
+The label plane and label spans of small layouts, against the pixels they are built from.
+*/
+class LayoutIndexTest {
+
+	protected static final int A = 0x00FFFFFF;
+	protected static final int B = 0x000000FF;
+	protected static final int C = 0x00FF0000;
+
+	protected static BufferedImage createImage(int[][] rows) {
+
+		BufferedImage image = new BufferedImage(rows[0].length, rows.length, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < rows.length; y++) {
+			for (int x = 0; x < rows[y].length; x++) {
+				image.setRGB(x, y, 0xFF000000 | rows[y][x]);
+			}
+		}
+		return image;
+	}
+
+	@Test
+	void spansOfEachColor() {
+
+		LayoutIndex index = new LayoutIndex(createImage(new int[][] {
+			{A, A, B, B, A, A},
+			{B, B, B, B, B, B},
+			{A, C, C, A, A, A},
+		}));
+		// labels in order of first appearance, whatever the alpha
+		assertEquals(0, index.getLabel(A));
+		assertEquals(1, index.getLabel(0xFF000000 | B));
+		assertEquals(2, index.getLabel(C));
+		assertEquals(-1, index.getLabel(0x0000FF00));
+		assertEquals(2, index.getLabel(2, 2));
+		assertEquals(1, index.getLabel(5, 1));
+
+		assertArrayEquals(new int[] {0, 0, 2, 0, 4, 6, 2, 0, 1, 2, 3, 6}, index.getSpans(0));
+		assertArrayEquals(new int[] {0, 2, 4, 1, 0, 6}, index.getSpans(1));
+		assertArrayEquals(new int[] {2, 1, 3}, index.getSpans(2));
+
+		assertEquals(0, index.getFirstSpan(0, 0));
+		assertEquals(6, index.getFirstSpan(0, 1)); // none in row 1, so row 2's first
+		assertEquals(12, index.getFirstSpan(0, 3)); // past the last
+		assertEquals(4, index.count(0, 1, 5, 0, 3));
+		assertEquals(0, index.count(0, 0, 6, 1, 2));
+		assertEquals(2, index.count(2, 0, 6, 0, 3));
+	}
+
+	@Test
+	void spansCoverTheLabelPlane() {
+
+		int width = 97;
+		int height = 41;
+		int[] colors = {A, B, C, 0x00123456};
+		Random random = new Random(3);
+		int[][] rows = new int[height][width];
+		for (int[] row : rows) {
+			for (int x = 0; x < width; x++) {
+				// runs of a color, as layouts have
+				row[x] = x > 0 && random.nextInt(4) > 0 ? row[x-1] : colors[random.nextInt(colors.length)];
+			}
+		}
+		LayoutIndex index = new LayoutIndex(createImage(rows));
+
+		for (int color : colors) {
+			int label = index.getLabel(color);
+			assertTrue(label >= 0, "label of " + Integer.toHexString(color));
+			boolean[] covered = new boolean[width*height];
+			int[] spans = index.getSpans(label);
+			int previous = -1;
+			for (int i = 0; i < spans.length; i += 3) {
+				assertTrue(spans[i]*width + spans[i+1] > previous, "spans in raster order");
+				assertTrue(spans[i+1] < spans[i+2]);
+				for (int x = spans[i+1]; x < spans[i+2]; x++) {
+					covered[spans[i]*width + x] = true;
+				}
+				previous = spans[i]*width + spans[i+2] - 1;
+			}
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					assertEquals(index.getLabel(x, y) == label, covered[y*width + x], "pixel " + x + "," + y + " of label " + label);
+					assertEquals(index.getLabel(rows[y][x]), index.getLabel(x, y));
+				}
+			}
+			// counts within rectangles, against the plane
+			for (int r = 0; r < 20; r++) {
+				int x0 = random.nextInt(width);
+				int x1 = x0 + random.nextInt(width - x0 + 1);
+				int y0 = random.nextInt(height);
+				int y1 = y0 + random.nextInt(height - y0 + 1);
+				int n = 0;
+				for (int y = y0; y < y1; y++) {
+					for (int x = x0; x < x1; x++) {
+						n += index.getLabel(x, y) == label ? 1 : 0;
+					}
+				}
+				assertEquals(n, index.count(label, x0, x1, y0, y1), "label " + label + " in " + x0 + "-" + x1 + "," + y0 + "-" + y1);
+			}
+		}
+	}
+
+	@Test
+	void colorsBeyondTheLabelsShareOther() {
+
+		int colors = LayoutIndex.MAX_LABELS + 10;
+		int[][] rows = new int[1][colors];
+		for (int x = 0; x < colors; x++) {
+			rows[0][x] = x;
+		}
+		LayoutIndex index = new LayoutIndex(createImage(rows));
+		assertEquals(LayoutIndex.MAX_LABELS - 1, index.getLabel(LayoutIndex.MAX_LABELS - 1));
+		assertEquals(-1, index.getLabel(LayoutIndex.MAX_LABELS));
+		assertTrue(index.isOther(LayoutIndex.MAX_LABELS));
+		assertFalse(index.isOther(LayoutIndex.MAX_LABELS - 1));
+		assertFalse(index.isOther(colors));
+		assertEquals(LayoutIndex.OTHER, index.getLabel(colors - 1, 0));
+		assertArrayEquals(new int[] {0, 0, 1}, index.getSpans(0));
+	}
+}
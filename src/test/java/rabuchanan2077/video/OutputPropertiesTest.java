@@ -0,0 +1,98 @@
+package rabuchanan2077.video;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.stream.*;
+import org.junit.jupiter.api.*;
+
+/**
+The properties each output reads: the configuration, with those prefixed by output.<name>. in place of the ones they
+name. Two outputs are built headless from the sample configuration, the second dropping a mapper and changing its rate.
+*/
+class OutputPropertiesTest {
+
+	protected static Properties createProperties() {
+
+		Properties properties = new Properties();
+		properties.setProperty("outputs", "driver, assist");
+		properties.setProperty("output-fps", "30");
+		properties.setProperty("N.mapper0", "northBirdseye");
+		properties.setProperty("N.mapper1", "northPanorama");
+		properties.setProperty("output.assist.output-fps", "15");
+		properties.setProperty("output.assist.N.mapper1", "");
+		properties.setProperty("output.driver.display", "false");
+		properties.setProperty("assist.queue", "4"); // a sink or camera named like an output, not an override
+		return properties;
+	}
+
+	@Test
+	void prefixedPropertiesOverrideTheirOutputOnly() {
+
+		Properties properties = createProperties();
+		Properties assist = VideoMapper.getOutputProperties(properties, "assist");
+		assertEquals("15", assist.getProperty("output-fps"));
+		assertEquals("northBirdseye", assist.getProperty("N.mapper0"));
+		assertEquals("", assist.getProperty("N.mapper1"));
+		assertEquals("4", assist.getProperty("assist.queue"));
+		assertNull(assist.getProperty("display"), "another output's override");
+		assertNull(assist.getProperty("queue"), "a name without the output. prefix");
+		// the prefixed ones stay, and the configuration is left as it is
+		assertEquals("15", assist.getProperty("output.assist.output-fps"));
+		assertEquals("30", properties.getProperty("output-fps"));
+		assertEquals("northPanorama", properties.getProperty("N.mapper1"));
+
+		Properties driver = VideoMapper.getOutputProperties(properties, "driver");
+		assertEquals("30", driver.getProperty("output-fps"));
+		assertEquals("northPanorama", driver.getProperty("N.mapper1"));
+		assertEquals("false", driver.getProperty("display"));
+
+		// an output only a prefix of another's name gets none of its properties
+		assertEquals("30", VideoMapper.getOutputProperties(properties, "assis").getProperty("output-fps"));
+	}
+
+	@Test
+	void outputNamesAreListedOnce() {
+
+		Properties properties = new Properties();
+		assertEquals(java.util.List.of(), VideoMapper.getOutputNames(properties));
+		properties.setProperty("outputs", " driver,assist,, driver ");
+		assertEquals(java.util.List.of("driver", "assist"), VideoMapper.getOutputNames(properties));
+		properties.setProperty("outputs", "driver,assist.left");
+		assertThrows(IllegalArgumentException.class, () -> VideoMapper.getOutputNames(properties));
+	}
+
+	@Test
+	void eachOutputReadsItsOwnProperties() throws Exception {
+
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream("resources/parking.properties")) {
+			properties.load(in);
+		}
+		properties.setProperty("lut-cache", "");
+		properties.setProperty("export", "none");
+		properties.setProperty("display", "false");
+		properties.setProperty("outputs", "driver,assist");
+		properties.setProperty("output-fps", "0");
+		properties.setProperty("output.assist.output-fps", "15");
+		properties.setProperty("output.assist.N.mapper1", "");
+		VideoMapper driver = new VideoMapper(properties);
+		java.util.List<VideoMapper> outputs = driver.getOutputs();
+		assertEquals(2, outputs.size());
+		VideoMapper assist = outputs.get(1);
+		assertEquals("driver", driver.outputName_);
+		assertEquals("assist", assist.outputName_);
+
+		assertEquals(0, driver.outputFPS_);
+		assertEquals(15, assist.outputFPS_);
+		assertEquals(java.util.List.of("northBirdseye", "northPanorama"), getMapperNames(driver.getCamera("N")));
+		assertEquals(java.util.List.of("northBirdseye"), getMapperNames(assist.getCamera("N")));
+		assertEquals(getMapperNames(driver.getCamera("S")), getMapperNames(assist.getCamera("S")));
+	}
+
+	protected static java.util.List<String> getMapperNames(VideoMapper.CameraConfiguration camera) {
+
+		return camera.getMappers().stream().map(mapper -> mapper.name_).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,124 @@
+package rabuchanan2077.video;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.*;
+
+/**
+A sink with a queue of two frames whose writer is held up in its first write, so that publishing fills the queue,
+to see what each drop policy gives. Frames are one pixel, holding the frame's presentation timestamp.
+*/
+class OutputSinkTest {
+
+	protected static class TestSink extends OutputSink {
+
+		protected final java.util.List<Long> written_ = Collections.synchronizedList(new ArrayList<>());
+		protected final CountDownLatch writing_ = new CountDownLatch(1);
+		protected final CountDownLatch release_ = new CountDownLatch(1);
+
+		protected TestSink(String name, DropPolicy dropPolicy) {
+
+			super(name, name + ".", createProperties(name, dropPolicy), 1, 1, ByteOrder.nativeOrder(), PixelFormat.RGB, 1);
+		}
+
+		protected static Properties createProperties(String name, DropPolicy dropPolicy) {
+
+			Properties properties = new Properties();
+			properties.setProperty(name + ".queue", "2");
+			properties.setProperty(name + ".drop", dropPolicy.toString().toLowerCase());
+			return properties;
+		}
+
+		@Override
+		protected boolean write(IntBuffer pixels, long pts) throws Exception {
+
+			assertEquals(pts, pixels.get(0), "pixels of frame " + pts);
+			writing_.countDown();
+			release_.await();
+			written_.add(pts);
+			return true;
+		}
+
+		@Override
+		protected boolean write(byte[] frame, long pts) {
+
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	Publishes frames 0 to 3 to a sink whose writer holds on to frame 0 until frames 1 and 2 fill its queue, then lets
+	it write, returning the timestamps of the frames written.
+	*/
+	protected java.util.List<Long> publishFour(DropPolicy dropPolicy) throws Exception {
+
+		TestSink sink = new TestSink("test-" + dropPolicy.toString().toLowerCase(), dropPolicy);
+		assertEquals(dropPolicy, sink.dropPolicy_);
+		sink.start();
+		try {
+			int[] pixels = new int[1];
+			Thread publishing = new Thread(() -> {
+				try {
+					for (int pts = 0; pts < 4; pts++) {
+						pixels[0] = pts;
+						sink.publish(pixels, pts);
+						if (pts == 0) {
+							sink.writing_.await();
+						}
+					}
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			publishing.start();
+			publishing.join(500);
+			assertEquals(dropPolicy == DropPolicy.BLOCK, publishing.isAlive(), "publisher waiting for room");
+			sink.release_.countDown();
+			publishing.join(2000);
+			assertFalse(publishing.isAlive());
+			long end = System.currentTimeMillis() + 2000;
+			while (sink.getMetrics().getFrames() + sink.getMetrics().getDropped() < 4 && System.currentTimeMillis() < end) {
+				Thread.sleep(10);
+			}
+			assertEquals(4, sink.getMetrics().getFrames() + sink.getMetrics().getDropped());
+			return new ArrayList<>(sink.written_);
+		}
+		finally {
+			sink.stop();
+		}
+	}
+
+	@Test
+	void oldestDropsTheLongestQueued() throws Exception {
+
+		assertEquals(java.util.List.of(0L, 2L, 3L), publishFour(DropPolicy.OLDEST));
+	}
+
+	@Test
+	void newestDropsTheFramePublished() throws Exception {
+
+		assertEquals(java.util.List.of(0L, 1L, 2L), publishFour(DropPolicy.NEWEST));
+	}
+
+	@Test
+	void blockWaitsForRoom() throws Exception {
+
+		assertEquals(java.util.List.of(0L, 1L, 2L, 3L), publishFour(DropPolicy.BLOCK));
+	}
+
+	@Test
+	void readsThePolicyOfItsPrefix() {
+
+		Properties properties = TestSink.createProperties("test", DropPolicy.BLOCK);
+		assertEquals(DropPolicy.BLOCK, DropPolicy.create(properties, "test."));
+		assertEquals(DropPolicy.OLDEST, DropPolicy.create(properties, "other."));
+		properties.setProperty("test.drop", " Newest ");
+		assertEquals(DropPolicy.NEWEST, DropPolicy.create(properties, "test."));
+		properties.setProperty("test.drop", "latest");
+		assertThrows(IllegalArgumentException.class, () -> DropPolicy.create(properties, "test."));
+	}
+}
@@ -0,0 +1,231 @@
+package rabuchanan2077.video;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import org.junit.jupiter.api.*;
+
+/**
+The quality controller's ladder, driven interval by interval with synthetic stage times and lost frames rather than
+real cameras: a 10ms deadline, cameras relaxed under half of it, late when over a tenth of their frames are lost,
+and three relaxed intervals before a step is taken back.
+*/
+class QualityControllerTest {
+
+	protected static final double DEADLINE_MILLIS = 10;
+	protected static final int RECOVER_INTERVALS = 3;
+	protected static final int FRAMES = 10; // per interval
+
+	protected static class TestCamera implements QualityController.Camera {
+
+		protected final String name_;
+		protected final int priority_;
+		protected boolean panorama_;
+		protected final Metrics metrics_;
+		protected QualityController.Level level_ = QualityController.Level.FULL;
+
+		protected TestCamera(String name, int priority, boolean panorama) {
+
+			name_ = name;
+			priority_ = priority;
+			panorama_ = panorama;
+			metrics_ = new Metrics(name);
+		}
+
+		public String getName() {
+
+			return name_;
+		}
+
+		public Metrics getMetrics() {
+
+			return metrics_;
+		}
+
+		public int getPriority() {
+
+			return priority_;
+		}
+
+		public boolean hasPanorama() {
+
+			return panorama_;
+		}
+
+		public void setLevel(QualityController.Level level) {
+
+			level_ = level;
+		}
+
+		/**
+		Records an interval's frames, each taking the given time to map and write, and frames lost before them.
+		*/
+		protected void interval(double millis, int lost) {
+
+			metrics_.countDropped(lost);
+			for (int i = 0; i < FRAMES; i++) {
+				metrics_.countFrame();
+				metrics_.record(Metrics.Stage.MAP, Math.round(millis * 1e6) / 2);
+				metrics_.record(Metrics.Stage.WRITE, Math.round(millis * 1e6) / 2);
+			}
+		}
+	}
+
+	// A, with panoramas, is wanted most; B and C share the lowest priority, B configured first
+	protected final TestCamera a_ = new TestCamera("A", 2, true);
+	protected final TestCamera b_ = new TestCamera("B", 1, false);
+	protected final TestCamera c_ = new TestCamera("C", 1, true);
+	protected final java.util.List<TestCamera> cameras_ = java.util.List.of(a_, b_, c_);
+	protected final QualityController controller_ = new QualityController(cameras_, DEADLINE_MILLIS, 0.5, 0.1, RECOVER_INTERVALS);
+
+	/**
+	One interval in which every camera takes the given time per frame, and the controller's evaluation of it.
+	*/
+	protected void interval(double millis) {
+
+		for (TestCamera camera : cameras_) {
+			camera.interval(millis, 0);
+		}
+		controller_.evaluate();
+	}
+
+	protected String getLevels() {
+
+		StringBuilder sb = new StringBuilder();
+		for (TestCamera camera : cameras_) {
+			sb.append(sb.length() > 0 ? " " : "").append(camera.name_).append(':').append(camera.level_);
+		}
+		return sb.toString();
+	}
+
+	@Test
+	void degradesAlongTheLadder() {
+
+		interval(20); // the first interval that composites frames only starts counting
+		assertEquals("A:FULL B:FULL C:FULL", getLevels());
+
+		String[] expected = {
+			// panoramas first, lowest priority first
+			"A:FULL B:FULL C:NO_PANORAMA",
+			"A:NO_PANORAMA B:FULL C:NO_PANORAMA",
+			// then half density, B before C as configured
+			"A:NO_PANORAMA B:HALF_DENSITY C:NO_PANORAMA",
+			"A:NO_PANORAMA B:HALF_DENSITY C:HALF_DENSITY",
+			"A:HALF_DENSITY B:HALF_DENSITY C:HALF_DENSITY",
+			// then dropping frames
+			"A:HALF_DENSITY B:DROPPING C:HALF_DENSITY",
+			"A:HALF_DENSITY B:DROPPING C:DROPPING",
+			"A:DROPPING B:DROPPING C:DROPPING",
+			// the bottom of the ladder
+			"A:DROPPING B:DROPPING C:DROPPING",
+		};
+		for (String levels : expected) {
+			interval(20);
+			assertEquals(levels, getLevels());
+		}
+	}
+
+	@Test
+	void nothingCountsUntilEveryCameraComposites() {
+
+		for (int i = 0; i < 3; i++) {
+			a_.interval(20, 0);
+			b_.interval(20, 0);
+			controller_.evaluate(); // C has no frames yet
+		}
+		assertEquals("A:FULL B:FULL C:FULL", getLevels());
+		interval(20);
+		assertEquals("A:FULL B:FULL C:FULL", getLevels());
+		interval(20);
+		assertEquals("A:FULL B:FULL C:NO_PANORAMA", getLevels());
+	}
+
+	@Test
+	void lostFramesCountAsLate() {
+
+		interval(1);
+		// one frame lost of eleven is within a tenth, two of twelve are not
+		a_.interval(1, 1);
+		b_.interval(1, 0);
+		c_.interval(1, 0);
+		controller_.evaluate();
+		assertEquals("A:FULL B:FULL C:FULL", getLevels());
+		a_.interval(1, 2);
+		b_.interval(1, 0);
+		c_.interval(1, 0);
+		controller_.evaluate();
+		assertEquals("A:FULL B:FULL C:NO_PANORAMA", getLevels());
+	}
+
+	@Test
+	void recoversAfterRelaxedIntervals() {
+
+		interval(20);
+		interval(20);
+		interval(20);
+		assertEquals("A:NO_PANORAMA B:FULL C:NO_PANORAMA", getLevels());
+
+		// within the deadline but not under half of it holds the cameras where they are
+		for (int i = 0; i < 2*RECOVER_INTERVALS; i++) {
+			interval(7);
+		}
+		assertEquals("A:NO_PANORAMA B:FULL C:NO_PANORAMA", getLevels());
+
+		// the last step taken goes back first, after as many relaxed intervals in a row as configured
+		for (int i = 1; i < RECOVER_INTERVALS; i++) {
+			interval(2);
+		}
+		interval(7); // starts the count again
+		for (int i = 1; i < RECOVER_INTERVALS; i++) {
+			interval(2);
+		}
+		assertEquals("A:NO_PANORAMA B:FULL C:NO_PANORAMA", getLevels());
+		interval(2);
+		assertEquals("A:FULL B:FULL C:NO_PANORAMA", getLevels());
+
+		// late again right after, so the next step back waits twice as long
+		interval(20);
+		assertEquals("A:NO_PANORAMA B:FULL C:NO_PANORAMA", getLevels());
+		for (int i = 1; i < 2*RECOVER_INTERVALS; i++) {
+			interval(2);
+		}
+		assertEquals("A:NO_PANORAMA B:FULL C:NO_PANORAMA", getLevels());
+		interval(2);
+		assertEquals("A:FULL B:FULL C:NO_PANORAMA", getLevels());
+
+		// the last step back waits as long, and once back at full quality, the wait is as configured again
+		for (int i = 1; i < 2*RECOVER_INTERVALS; i++) {
+			interval(2);
+		}
+		assertEquals("A:FULL B:FULL C:NO_PANORAMA", getLevels());
+		interval(2);
+		assertEquals("A:FULL B:FULL C:FULL", getLevels());
+		for (int i = 0; i <= RECOVER_INTERVALS; i++) {
+			interval(7);
+		}
+		interval(20);
+		assertEquals("A:FULL B:FULL C:NO_PANORAMA", getLevels());
+		for (int i = 1; i < RECOVER_INTERVALS; i++) {
+			interval(2);
+		}
+		assertEquals("A:FULL B:FULL C:NO_PANORAMA", getLevels());
+		interval(2);
+		assertEquals("A:FULL B:FULL C:FULL", getLevels());
+	}
+
+	@Test
+	void rebuildKeepsTheStepsTaken() {
+
+		interval(20);
+		interval(20);
+		interval(20);
+		interval(20);
+		assertEquals("A:NO_PANORAMA B:HALF_DENSITY C:NO_PANORAMA", getLevels());
+
+		// C's panoramas are gone after a reload, so its step is, and three steps down is further
+		c_.panorama_ = false;
+		controller_.rebuild();
+		assertEquals("A:NO_PANORAMA B:HALF_DENSITY C:HALF_DENSITY", getLevels());
+		assertEquals("qos step 3 of 7", controller_.toString());
+	}
+}
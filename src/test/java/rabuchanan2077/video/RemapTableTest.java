@@ -0,0 +1,225 @@
+package rabuchanan2077.video;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.*;
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.*;
+
+/**
+The remap kernels against each other on a fixed, seeded table and frame: the serial scalar kernel against the pixels the
+map names, and the parallel, vector and reordered tables against the serial kernel, bit for bit, through remap() and
+through gather() and scatter().
+The table mixes contiguous spans, runs, scattered pairs and bilinear samples, over an output with unmapped pixels.
+Bilinear samples are also checked against exact interpolation, at positions that include whole pixels and the frame's edges.
+*/
+class RemapTableTest {
+
+	protected static final int CAMERA_WIDTH = 211;
+	protected static final int CAMERA_HEIGHT = 97;
+	protected static final int OUTPUT_WIDTH = 173;
+	protected static final int OUTPUT_HEIGHT = 61;
+
+	protected static ForkJoinPool pool_;
+
+	protected int[] map_;
+	protected int[] bilinear_;
+	protected IntBuffer frame_;
+	protected RemapTable serial_;
+	protected int[] expected_;
+
+	@BeforeAll
+	static void createPool() {
+
+		pool_ = new ForkJoinPool(3);
+	}
+
+	@AfterAll
+	static void shutdownPool() {
+
+		pool_.shutdown();
+	}
+
+	@BeforeEach
+	void createTable() {
+
+		Random random = new Random(1);
+		java.util.List<Integer> map = new ArrayList<>();
+		java.util.List<Integer> bilinear = new ArrayList<>();
+		int[] sample = new int[2];
+		for (int o = 0; o < OUTPUT_WIDTH*OUTPUT_HEIGHT; o++) {
+			int kind = random.nextInt(10);
+			if (kind < 2) {
+				continue;
+			}
+			if (kind < 6) {
+				// a camera row read in order, which compiles to spans and runs
+				map.add(o);
+				map.add((o / OUTPUT_WIDTH % CAMERA_HEIGHT)*CAMERA_WIDTH + Math.min(o % OUTPUT_WIDTH, CAMERA_WIDTH-1));
+			}
+			else if (kind < 8) {
+				map.add(o);
+				map.add(random.nextInt(CAMERA_WIDTH*CAMERA_HEIGHT));
+			}
+			else {
+				RemapTable.getBilinearSample(random.nextDouble()*CAMERA_WIDTH, random.nextDouble()*CAMERA_HEIGHT, CAMERA_WIDTH, CAMERA_HEIGHT, sample, 0);
+				bilinear.add(o);
+				bilinear.add(sample[0]);
+				bilinear.add(sample[1]);
+			}
+		}
+		map_ = map.stream().mapToInt(Integer::intValue).toArray();
+		bilinear_ = bilinear.stream().mapToInt(Integer::intValue).toArray();
+		frame_ = ByteBuffer.allocateDirect(4*CAMERA_WIDTH*CAMERA_HEIGHT).order(ByteOrder.nativeOrder()).asIntBuffer();
+		for (int i = 0; i < frame_.capacity(); i++) {
+			frame_.put(i, random.nextInt());
+		}
+		serial_ = RemapTable.compile(map_, bilinear_, CAMERA_WIDTH, 8);
+		expected_ = remap(serial_);
+	}
+
+	@Test
+	void serialMatchesMap() {
+
+		int[] expected = new int[OUTPUT_WIDTH*OUTPUT_HEIGHT];
+		for (int i = 0; i < map_.length; i += 2) {
+			expected[map_[i]] = frame_.get(map_[i+1]);
+		}
+		for (int i = 0; i < bilinear_.length; i += 3) {
+			int c = bilinear_[i+1];
+			expected[bilinear_[i]] = RemapTable.blend(frame_.get(c), frame_.get(c+1), frame_.get(c+CAMERA_WIDTH),
+			                                          frame_.get(c+CAMERA_WIDTH+1), bilinear_[i+2]);
+		}
+		assertArrayEquals(expected, expected_);
+		assertEquals(map_.length/2 + bilinear_.length/3, serial_.getMappedPixels());
+		assertArrayEquals(expected_, remapToBuffer(serial_));
+		assertArrayEquals(expected_, gatherScatter(serial_));
+	}
+
+	@Test
+	void vectorMatchesSerial() {
+
+		// the kernel itself, as vectorize() would fall back to the scalar table on any difference
+		RemapTable vector = RemapTable.newVectorTable(serial_, null);
+		assumeTrue(vector != null, "jdk.incubator.vector not loaded");
+		assertArrayEquals(expected_, remap(vector));
+		assertArrayEquals(expected_, remapToBuffer(vector));
+		assertArrayEquals(gather(serial_), gather(vector));
+		assertArrayEquals(expected_, gatherScatter(vector));
+		assertNotSame(serial_, serial_.vectorize(CAMERA_HEIGHT));
+	}
+
+	@Test
+	void parallelMatchesSerial() {
+
+		for (int chunkPixels : new int[] {1, 7, 100, 4096}) {
+			RemapTable parallel = new ParallelRemapTable(serial_, chunkPixels, pool_);
+			assertArrayEquals(expected_, remap(parallel), "chunks of " + chunkPixels);
+			assertArrayEquals(expected_, remapToBuffer(parallel), "chunks of " + chunkPixels);
+			assertArrayEquals(gather(serial_), gather(parallel), "chunks of " + chunkPixels);
+			assertArrayEquals(expected_, gatherScatter(parallel), "chunks of " + chunkPixels);
+
+			RemapTable vector = parallel.vectorize(CAMERA_HEIGHT);
+			assertArrayEquals(expected_, remap(vector), "vector chunks of " + chunkPixels);
+			assertArrayEquals(gather(serial_), gather(vector), "vector chunks of " + chunkPixels);
+			assertArrayEquals(expected_, gatherScatter(vector), "vector chunks of " + chunkPixels);
+		}
+	}
+
+	@Test
+	void reorderedMatchesSerial() {
+
+		LutOrder[] orders = {
+			new LutOrder(LutOrder.Mode.TILE, 16, 16), new LutOrder(LutOrder.Mode.TILE, 32, 8),
+			new LutOrder(LutOrder.Mode.MORTON, 8, 8), new LutOrder(LutOrder.Mode.MORTON, 1, 1),
+		};
+		for (LutOrder order : orders) {
+			RemapTable reordered = serial_.reorder(o -> order.getTileKey(o % OUTPUT_WIDTH, o / OUTPUT_WIDTH));
+			assertEquals(serial_.getMappedPixels(), reordered.getMappedPixels(), order.toString());
+			assertArrayEquals(expected_, remap(reordered), order.toString());
+			assertArrayEquals(expected_, remapToBuffer(reordered), order.toString());
+			// the region holds the pixels in the new order, so only the round trip compares
+			assertArrayEquals(expected_, gatherScatter(reordered), order.toString());
+			assertArrayEquals(expected_, remap(reordered.vectorize(CAMERA_HEIGHT)), "vector " + order);
+			assertArrayEquals(expected_, remap(new ParallelRemapTable(reordered, 100, pool_)), "parallel " + order);
+		}
+	}
+
+	/**
+	Samples quarter pixels all over the frame, edges included: weights within a byte but for a whole top left one,
+	camera pixels reproduced exactly on whole positions, and blends within a level of exact bilinear interpolation,
+	the vector kernel's as the scalar one's.
+	*/
+	@Test
+	void bilinearSamplesWeighExactly() {
+
+		int[] sample = new int[2];
+		java.util.List<Integer> bilinear = new ArrayList<>();
+		java.util.List<Double> expected = new ArrayList<>();
+		for (int qy = 0; qy <= 4*(CAMERA_HEIGHT-1); qy += 3) {
+			for (int qx = 0; qx <= 4*(CAMERA_WIDTH-1); qx += 7) {
+				double x = qx / 4.;
+				double y = qy / 4.;
+				RemapTable.getBilinearSample(x, y, CAMERA_WIDTH, CAMERA_HEIGHT, sample, 0);
+				int w = sample[1];
+				int w00 = 256 - (w >>> 8 & 0xFF) - (w >>> 16 & 0xFF) - (w >>> 24);
+				assertTrue(w00 >= 0 && (w00 & 0xFF) == (w & 0xFF), "top left weight at " + x + "," + y);
+				int c = sample[0];
+				int pixel = RemapTable.blend(frame_.get(c), frame_.get(c+1), frame_.get(c+CAMERA_WIDTH), frame_.get(c+CAMERA_WIDTH+1), w);
+				if (qx % 4 == 0 && qy % 4 == 0 && x < CAMERA_WIDTH-1 && y < CAMERA_HEIGHT-1) { // a far edge's weight is one short
+					assertEquals(frame_.get((int)y*CAMERA_WIDTH + (int)x) & 0xFFFFFF, pixel & 0xFFFFFF, "pixel at " + x + "," + y);
+				}
+				for (int shift = 0; shift < 24; shift += 8) {
+					double exact = 0;
+					for (int j = 0; j < 4; j++) {
+						double fx = x - c % CAMERA_WIDTH;
+						double fy = y - c / CAMERA_WIDTH;
+						double weight = ((j & 1) == 1 ? fx : 1 - fx) * ((j >> 1) == 1 ? fy : 1 - fy);
+						exact += weight * (frame_.get(c + (j & 1) + (j >> 1)*CAMERA_WIDTH) >>> shift & 0xFF);
+					}
+					assertEquals(exact, pixel >>> shift & 0xFF, 1.0, "channel " + shift/8 + " at " + x + "," + y);
+				}
+				bilinear.add(bilinear.size() / 3);
+				bilinear.add(c);
+				bilinear.add(w);
+			}
+		}
+		RemapTable table = RemapTable.compile(new int[0], bilinear.stream().mapToInt(Integer::intValue).toArray(), CAMERA_WIDTH, 8);
+		RemapTable vector = RemapTable.newVectorTable(table, null);
+		assumeTrue(vector != null, "jdk.incubator.vector not loaded");
+		int[] region = gather(table);
+		assertArrayEquals(region, gather(vector));
+	}
+
+	protected int[] remap(RemapTable table) {
+
+		int[] output = new int[OUTPUT_WIDTH*OUTPUT_HEIGHT];
+		table.remap(frame_, output);
+		return output;
+	}
+
+	protected int[] remapToBuffer(RemapTable table) {
+
+		IntBuffer output = ByteBuffer.allocateDirect(4*OUTPUT_WIDTH*OUTPUT_HEIGHT).order(ByteOrder.nativeOrder()).asIntBuffer();
+		table.remap(frame_, output);
+		int[] pixels = new int[output.capacity()];
+		output.get(0, pixels);
+		return pixels;
+	}
+
+	protected int[] gather(RemapTable table) {
+
+		int[] region = new int[table.getMappedPixels()];
+		table.gather(frame_, region);
+		return region;
+	}
+
+	protected int[] gatherScatter(RemapTable table) {
+
+		int[] output = new int[OUTPUT_WIDTH*OUTPUT_HEIGHT];
+		table.scatter(gather(table), output);
+		return output;
+	}
+}
@@ -0,0 +1,223 @@
+package rabuchanan2077.video;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+
+/**
+Seam blending on small outputs: the alphas worked out from the cameras' weights, the chamfer distances the weights are
+taken from, and how split() divides a camera's maps between the pixels it writes alone and its samples for the blend.
+Mappers' blend zones are checked on the shipped configuration, as planar frames are not blended.
+*/
+class SeamBlendTest {
+
+	protected static final int OWNED = SeamBlend.OWNED;
+
+	/**
+	A 10x1 output: camera 0 owns x 0-3 and reaches into x 4, 5 and 9 with its blend zone, camera 1 owns x 4-8.
+	So x 4 and 5 are shared, and x 9, which only camera 0's blend zone reaches, is dropped.
+	*/
+	protected static SeamBlend createRow() {
+
+		int[][] weights = {
+			{255|OWNED, 255|OWNED, 255|OWNED, 255|OWNED, 128, 60, 0, 0, 0, 40},
+			{0, 0, 0, 0, 128|OWNED, 255|OWNED, 255|OWNED, 255|OWNED, 255|OWNED, 0},
+		};
+		java.util.List<SeamBlend.Coverage> cameras = new ArrayList<>();
+		for (int[] w : weights) {
+			cameras.add((x, y) -> w[x]);
+		}
+		return new SeamBlend(10, 1, cameras);
+	}
+
+	@Test
+	void alphasSumTo255() {
+
+		int width = 61;
+		int height = 37;
+		int cameras = 4;
+		Random random = new Random(5);
+		int[][] weights = new int[cameras][width*height];
+		for (int[] w : weights) {
+			for (int i = 0; i < w.length; i++) {
+				int weight = random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(255);
+				w[i] = weight > 0 && random.nextBoolean() ? weight | OWNED : weight;
+			}
+		}
+		java.util.List<SeamBlend.Coverage> coverage = new ArrayList<>();
+		for (int[] w : weights) {
+			coverage.add((x, y) -> w[y*width + x]);
+		}
+		SeamBlend blend = new SeamBlend(width, height, coverage);
+
+		int k = 0;
+		for (int i = 0; i < width*height; i++) {
+			int reach = 0;
+			for (int[] w : weights) {
+				reach += (w[i] & 0xFF) > 0 ? 1 : 0;
+			}
+			if (reach < 2) {
+				continue;
+			}
+			assertEquals(i, blend.pixels_[k], "shared pixel " + k);
+			int sum = 0;
+			for (int e = blend.start_[k]; e < blend.start_[k+1]; e++) {
+				assertTrue(blend.alpha_[e] > 0);
+				assertTrue((weights[blend.camera_[e]][i] & 0xFF) > 0);
+				sum += blend.alpha_[e];
+			}
+			assertEquals(255, sum, "alphas of pixel " + i);
+			k++;
+		}
+		assertEquals(k, blend.pixels_.length);
+	}
+
+	@Test
+	void alphasFollowWeights() {
+
+		SeamBlend blend = createRow();
+		assertArrayEquals(new int[] {4, 5}, blend.pixels_);
+		assertArrayEquals(new int[] {0, 2, 4}, blend.start_);
+		assertArrayEquals(new int[] {0, 1, 0, 1}, blend.camera_);
+		// 128:128 rounds up for the first, the last takes what is left; 60:255 shares 255 as 49 and 206
+		assertArrayEquals(new int[] {128, 127, 49, 206}, blend.alpha_);
+		assertEquals(Set.of(9), blend.dropped_[0].stream().boxed().collect(java.util.stream.Collectors.toSet()));
+		assertTrue(blend.dropped_[1].isEmpty());
+	}
+
+	@Test
+	void chamferDistances() {
+
+		// one pixel inside, in the middle of a 7x7 image
+		boolean[] inside = new boolean[49];
+		inside[3*7 + 3] = true;
+		int[] d = SeamBlend.getSignedDistances(inside, 7, 7, 30);
+		assertEquals(3, d[3*7 + 3]);
+		assertEquals(-3, d[3*7 + 4]);
+		assertEquals(-3, d[2*7 + 3]);
+		assertEquals(-4, d[2*7 + 2]);
+		assertEquals(-6, d[3*7 + 5]);
+		assertEquals(-7, d[2*7 + 5]);
+		assertEquals(-8, d[1*7 + 1]);
+		assertEquals(-12, d[0]);
+
+		// a half plane, x < 3 inside, with distances clamped to 5
+		inside = new boolean[8*4];
+		for (int i = 0; i < inside.length; i++) {
+			inside[i] = i % 8 < 3;
+		}
+		d = SeamBlend.getSignedDistances(inside, 8, 4, 5);
+		for (int y = 0; y < 4; y++) {
+			assertArrayEquals(new int[] {5, 5, 3, -3, -5, -5, -5, -5}, Arrays.copyOfRange(d, y*8, y*8 + 8), "row " + y);
+		}
+	}
+
+	@Test
+	void weightsFallAcrossTheBlendZone() {
+
+		int blend = 8;
+		assertEquals(255, SeamBlend.getWeight(3*(blend+1), blend));
+		assertEquals(0, SeamBlend.getWeight(-3*(blend+1), blend));
+		// the pixels either side of the edge share it evenly
+		assertEquals(255, SeamBlend.getWeight(3, blend) + SeamBlend.getWeight(-3, blend));
+		// chamfer distances are 3 or more either way, a pixel being at least one step from the other side
+		int previous = 0;
+		for (int distance = -3*(blend+1); distance <= 3*(blend+1); distance++) {
+			if (distance > -3 && distance < 3) {
+				continue;
+			}
+			int weight = SeamBlend.getWeight(distance, blend);
+			assertTrue(weight >= previous, "weight at " + distance);
+			previous = weight;
+		}
+	}
+
+	@Test
+	void split() {
+
+		SeamBlend blend = createRow();
+		// camera 0 samples x 0-5 and 9 nearest; camera 1 samples x 4, 6-8 nearest and x 5 bilinear
+		int[][] map0 = {{0, 100, 1, 101, 2, 102, 3, 103, 4, 104, 5, 105, 9, 109}, {}};
+		int[][] map1 = {{4, 204, 6, 206, 7, 207, 8, 208}, {5, 205, 0x40404040}};
+
+		int[][][] split = blend.split(0, map0);
+		assertArrayEquals(new int[] {0, 100, 1, 101, 2, 102, 3, 103}, split[0][0]);
+		assertArrayEquals(new int[] {0, 104, 1, 105}, split[1][0]);
+		assertArrayEquals(new int[] {0, 100, 1, 101, 2, 102, 3, 103, 4, 104, 5, 105}, split[2][0]);
+		assertEquals(0, split[0][1].length + split[1][1].length + split[2][1].length);
+
+		split = blend.split(1, map1);
+		assertArrayEquals(new int[] {6, 206, 7, 207, 8, 208}, split[0][0]);
+		assertArrayEquals(new int[] {0, 204}, split[1][0]);
+		assertArrayEquals(new int[] {1, 205, 0x40404040}, split[1][1]);
+		assertArrayEquals(new int[] {4, 204, 6, 206, 7, 207, 8, 208}, split[2][0]);
+		assertArrayEquals(new int[] {5, 205, 0x40404040}, split[2][1]);
+	}
+
+	@Test
+	void blendsOnlyWhatCamerasSample() {
+
+		SeamBlend blend = createRow();
+		// camera 0's frame ends short of x 5 after all
+		blend.split(0, new int[][] {{0, 100, 1, 101, 2, 102, 3, 103, 4, 104}, {}});
+		blend.split(1, new int[][] {{4, 204, 5, 205, 6, 206, 7, 207, 8, 208}, {}});
+		int[] output = new int[10];
+
+		// camera 1 alone so far: its samples in full
+		Arrays.fill(blend.getSamples(1), 0x00FF00FF);
+		blend.blend(1, output);
+		assertEquals(0x00FF00FF, output[4]);
+		assertEquals(0x00FF00FF, output[5]);
+
+		// camera 0 blends into x 4 only, and x 5 stays camera 1's
+		Arrays.fill(blend.getSamples(0), 0x0000FF00);
+		Arrays.fill(output, 0);
+		blend.blend(0, output);
+		// alphas 128 for camera 0's green, 127 for camera 1's red and blue
+		assertEquals(0x007F807F, output[4], Integer.toHexString(output[4]));
+		assertEquals(0, output[5]);
+		blend.blend(1, output);
+		assertEquals(0x00FF00FF, output[5]);
+	}
+
+	/**
+	Returns the camera of the shipped configuration's northBirdseye mapper, with the given pixel format and blend zone,
+	set to the shipped cameras' frame size.
+	*/
+	protected static VideoMapper.CameraConfiguration createNorth(String pixelFormat, int blend) throws IOException {
+
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream("resources/parking.properties")) {
+			properties.load(in);
+		}
+		properties.setProperty("lut-cache", "");
+		properties.setProperty("export", "none");
+		properties.setProperty("output-fps", "0");
+		properties.setProperty("display", "false");
+		properties.setProperty("pixel-format", pixelFormat);
+		properties.setProperty("northBirdseye.blend", Integer.toString(blend));
+		VideoMapper videoMapper = new VideoMapper(properties);
+		VideoMapper.CameraConfiguration north = videoMapper.cameraConfiguration_.stream().filter(cc -> cc.name_.equals("N")).findFirst().get();
+		north.setCameraResolution(1296, 972);
+		return north;
+	}
+
+	protected static int[] getNorthMap(VideoMapper.CameraConfiguration cc) {
+
+		return cc.getMappers().stream().filter(mapper -> mapper.name_.equals("northBirdseye")).findFirst().get().getMap();
+	}
+
+	@Test
+	void planarTablesStopAtTheMask() throws IOException {
+
+		int[] masked = getNorthMap(createNorth("rgb", 0));
+		VideoMapper.CameraConfiguration blended = createNorth("rgb", 8);
+		assertTrue(getNorthMap(blended).length > masked.length, "blend zone reaches past the mask");
+		// a planar table is the masked one, though its mapper has a blend zone, so the two must not share a cached table
+		VideoMapper.CameraConfiguration planar = createNorth("i420", 8);
+		assertArrayEquals(masked, getNorthMap(planar));
+		assertNotEquals(blended.getMapKey(), planar.getMapKey());
+	}
+}
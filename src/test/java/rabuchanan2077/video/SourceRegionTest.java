@@ -0,0 +1,98 @@
+package rabuchanan2077.video;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+
+/**
+Regions derived from small synthetic tables: a rectangle of output pixels sampling the source at a fixed step from
+a fixed corner, so the bounding box and the sampling density are known.
+*/
+class SourceRegionTest {
+
+	/**
+	Returns a nearest-pixel table of an output of the given size, output pixel (x, y) sampling source pixel
+	(x0 + step * x, y0 + step * y).
+	*/
+	protected static int[][] createMap(int outputWidth, int outputHeight, int sourceWidth, int x0, int y0, int step) {
+
+		int[] nearest = new int[2*outputWidth*outputHeight];
+		int k = 0;
+		for (int y = 0; y < outputHeight; y++) {
+			for (int x = 0; x < outputWidth; x++) {
+				nearest[k++] = y*outputWidth + x;
+				nearest[k++] = (y0 + step*y)*sourceWidth + x0 + step*x;
+			}
+		}
+		return new int[][] {nearest, {}};
+	}
+
+	@Test
+	void boundsWidenedByTheMarginToEvenEdges() {
+
+		// reads x 31-50 and y 17-26 of a 100x80 source, one source pixel per output pixel
+		int[][] map = createMap(20, 10, 100, 31, 17, 1);
+		assertEquals(new SourceRegion(100, 80, 31 & ~1, 17 & ~1, 52 - 30, 28 - 16, 22, 12), SourceRegion.analyze(map, 20, 100, 80, 0, 0));
+		assertEquals(new SourceRegion(100, 80, 28, 14, 26, 16, 26, 16), SourceRegion.analyze(map, 20, 100, 80, 2, 0));
+		// the margin stops at the frame's edges
+		assertEquals(new SourceRegion(100, 80, 0, 0, 100, 80, 100, 80), SourceRegion.analyze(map, 20, 100, 80, 60, 0));
+	}
+
+	@Test
+	void bilinearSamplesReadTheirNeighbors() {
+
+		int[][] map = {{}, {0, 10*100 + 10, 0x40404040}};
+		assertEquals(new SourceRegion(100, 80, 10, 10, 2, 2, 2, 2), SourceRegion.analyze(map, 1, 100, 80, 0, 0));
+		map = new int[][] {{0, 10*100 + 10}, {}};
+		assertEquals(new SourceRegion(100, 80, 10, 10, 2, 2, 2, 2), SourceRegion.analyze(map, 1, 100, 80, 0, 0));
+		map = new int[][] {{0, 11*100 + 11}, {}};
+		assertEquals(new SourceRegion(100, 80, 10, 10, 2, 2, 2, 2), SourceRegion.analyze(map, 1, 100, 80, 0, 0));
+		map = new int[][] {{}, {0, 11*100 + 11, 0x40404040}};
+		assertEquals(new SourceRegion(100, 80, 10, 10, 4, 4, 4, 4), SourceRegion.analyze(map, 1, 100, 80, 0, 0));
+	}
+
+	@Test
+	void scaledToTheSamplingDensity() {
+
+		// every fourth source pixel of x 0-156 and y 0-116, so a quarter of the region's size keeps every sample
+		int[][] map = createMap(40, 30, 200, 0, 0, 4);
+		SourceRegion region = SourceRegion.analyze(map, 40, 200, 150, 0, 0);
+		assertEquals(new SourceRegion(200, 150, 0, 0, 158, 118, 40, 30), region);
+		assertEquals(40.0*30 / (200*150), region.getFraction(), 1e-9);
+
+		// a given scale, never above 1
+		assertEquals(new SourceRegion(200, 150, 0, 0, 158, 118, 80, 60), SourceRegion.analyze(map, 40, 200, 150, 0, 0.5));
+		assertEquals(new SourceRegion(200, 150, 0, 0, 158, 118, 158, 118), SourceRegion.analyze(map, 40, 200, 150, 0, 2));
+
+		// denser than a source pixel per output pixel is never scaled up
+		map = createMap(40, 30, 200, 0, 0, 0);
+		assertEquals(new SourceRegion(200, 150, 0, 0, 2, 2, 2, 2), SourceRegion.analyze(map, 40, 200, 150, 0, 0));
+	}
+
+	@Test
+	void anEmptyTableReadsWholeFrames() {
+
+		SourceRegion region = SourceRegion.analyze(new int[][] {{}, {}}, 40, 200, 150, 8, 0);
+		assertTrue(region.isFull());
+		assertEquals(SourceRegion.full(200, 150), region);
+	}
+
+	@Test
+	void frameAndSourceCoordinatesConvertBothWays() {
+
+		SourceRegion unscaled = new SourceRegion(200, 150, 10, 20, 100, 50, 100, 50);
+		assertEquals(0, unscaled.toFrameX(10), 1e-9);
+		assertEquals(5, unscaled.toFrameY(25), 1e-9);
+		assertFalse(unscaled.isFull());
+
+		// halved: source pixels 10 and 11 both lie half a pixel from frame pixel 0's center
+		SourceRegion halved = new SourceRegion(200, 150, 10, 20, 100, 50, 50, 25);
+		assertEquals(-0.25, halved.toFrameX(10), 1e-9);
+		assertEquals(0.25, halved.toFrameX(11), 1e-9);
+		for (double x : new double[] {10, 33.5, 109}) {
+			assertEquals(x, halved.toSourceX(halved.toFrameX(x)), 1e-9);
+			assertEquals(x + 10, halved.toSourceY(halved.toFrameY(x + 10)), 1e-9);
+		}
+		assertTrue(halved.isFrameSize(50, 25));
+	}
+}